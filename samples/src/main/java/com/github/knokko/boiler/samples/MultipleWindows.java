@@ -11,7 +11,9 @@ import com.github.knokko.boiler.window.*;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.VkPushConstantRange;
 
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.github.knokko.boiler.utilities.ColorPacker.rgb;
 import static org.joml.Math.*;
@@ -27,6 +29,10 @@ import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
  *     but additional windows can be added by clicking on the blue 'spin' window.
  * </p>
  * <p>
+ *     The spin window has its own render loop, whereas the fill window and all additional windows are rendered by a
+ *     single <i>MultiWindowRenderLoop</i>, which renders all of them using 1 thread, 1 submission, and 1 present call.
+ * </p>
+ * <p>
  *     Note that this sample suffers from non-deterministic synchronization validation errors, which I expect to be
  *     false positives, see
  *     <a href="https://github.com/KhronosGroup/Vulkan-ValidationLayers/issues/8576">this VVL issue</a>.
@@ -54,11 +60,15 @@ public class MultipleWindows {
 
 		var eventLoop = new WindowEventLoop();
 		eventLoop.addWindow(new SpinWindowLoop(windows[1]));
-		eventLoop.addWindow(new FillWindowLoop(windows[0], 1f, 0f, 1f));
 
+		var fillLoop = new FillWindowsLoop(boiler);
+		fillLoop.addWindow(windows[0], 1f, 0f, 1f);
+		eventLoop.addWindows(fillLoop);
+
+		var fillLoops = new FillWindowsLoop[] { fillLoop };
 		//noinspection resource
 		glfwSetMouseButtonCallback(windows[1].properties.handle(), (clickedWindow, button, action, modifiers) -> {
-			if (action == GLFW_PRESS) startNewWindowThread(boiler, eventLoop);
+			if (action == GLFW_PRESS) addNewWindow(boiler, eventLoop, fillLoops);
 		});
 
 		eventLoop.runMain();
@@ -66,7 +76,7 @@ public class MultipleWindows {
 		boiler.destroyInitialObjects();
 	}
 
-	private static void startNewWindowThread(BoilerInstance boiler, WindowEventLoop windowLoop) {
+	private static void addNewWindow(BoilerInstance boiler, WindowEventLoop windowLoop, FillWindowsLoop[] fillLoops) {
 
 		var rng = new Random();
 		float red = rng.nextFloat();
@@ -78,29 +88,36 @@ public class MultipleWindows {
 				1000, 700, 2
 		).title(contextSuffix).hideFirstFrames(5)
 				.swapchainImageUsage(VK_IMAGE_USAGE_TRANSFER_DST_BIT);
-		windowLoop.addWindow(new FillWindowLoop(boiler.addWindow(builder), red, green, blue));
+		var window = boiler.addWindow(builder);
+
+		// When all fill windows have been closed, the old fill loop stopped, so we need a new one
+		if (fillLoops[0].hasStopped()) {
+			fillLoops[0] = new FillWindowsLoop(boiler);
+			fillLoops[0].addWindow(window, red, green, blue);
+			windowLoop.addWindows(fillLoops[0]);
+		} else fillLoops[0].addWindow(window, red, green, blue);
 	}
 
-	private static class FillWindowLoop extends SimpleWindowRenderLoop {
+	private static class FillWindowsLoop extends MultiWindowRenderLoop {
 
-		private final float red, green, blue;
+		private final Map<VkbWindow, float[]> colors = new ConcurrentHashMap<>();
 
-		public FillWindowLoop(VkbWindow window, float red, float green, float blue) {
-			super(
-					window, false, VK_PRESENT_MODE_FIFO_KHR,
-					ResourceUsage.TRANSFER_DEST, ResourceUsage.TRANSFER_DEST
-			);
-			this.red = red;
-			this.green = green;
-			this.blue = blue;
+		public FillWindowsLoop(BoilerInstance boiler) {
+			super(boiler, 2, ResourceUsage.TRANSFER_DEST, ResourceUsage.TRANSFER_DEST);
+		}
+
+		void addWindow(VkbWindow window, float red, float green, float blue) {
+			colors.put(window, new float[] { red, green, blue });
+			addWindow(window, VK_PRESENT_MODE_FIFO_KHR);
 		}
 
 		@Override
 		protected void recordFrame(
 				MemoryStack stack, int frameIndex, CommandRecorder recorder,
-				AcquiredImage swapchainImage, BoilerInstance boiler
+				VkbWindow window, AcquiredImage swapchainImage, BoilerInstance boiler
 		) {
-			recorder.clearColorImage(swapchainImage.getImage().vkImage, red, green, blue, 1f);
+			float[] color = colors.get(window);
+			recorder.clearColorImage(swapchainImage.getImage().vkImage, color[0], color[1], color[2], 1f);
 		}
 	}
 
@@ -7,6 +7,7 @@ import com.github.knokko.boiler.builders.WindowBuilder;
 import com.github.knokko.boiler.builders.instance.ValidationFeatures;
 import com.github.knokko.boiler.commands.CommandRecorder;
 import com.github.knokko.boiler.commands.SingleTimeCommands;
+import com.github.knokko.boiler.culling.AABBArray;
 import com.github.knokko.boiler.culling.FrustumCuller;
 import com.github.knokko.boiler.descriptors.*;
 import com.github.knokko.boiler.images.ImageBuilder;
@@ -36,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
 
 import static java.lang.Math.*;
 import static java.lang.Thread.sleep;
@@ -227,7 +229,7 @@ public class TerrainPlayground {
 				.forbidValidationErrors()
 				.allocationCallbacks(new SumAllocationCallbacks())
 				.addWindow(new WindowBuilder(1000, 800, numFramesInFlight)
-						.hideFirstFrames(4).maxOldSwapchains(1))
+						.hideFirstFrames(4).maxOldSwapchains(1).coalesceResizes(50_000_000L))
 				.requiredFeatures12("timeline semaphore", VkPhysicalDeviceVulkan12Features::timelineSemaphore)
 				.featurePicker12((stack, supported, toEnable) -> toEnable.timelineSemaphore(true))
 				.build();
@@ -313,7 +315,10 @@ public class TerrainPlayground {
 		var timeline = boiler.sync.createTimelineSemaphore(numFramesInFlight - 1, "TerrainTimeline");
 
 		long frameCounter = 0;
-		var swapchainResources = new SwapchainResourceManager<SwapchainResources, ImageResources>() {
+		// Create the depth images for new window sizes on a helper thread
+		var swapchainResources = new SwapchainResourceManager<SwapchainResources, ImageResources>(
+				ForkJoinPool.commonPool()
+		) {
 
 			@Override
 			protected SwapchainResources createSwapchain(int width, int height, int numImages) {
@@ -422,6 +427,9 @@ public class TerrainPlayground {
 			cameraController.oldY = y;
 		});
 
+		var fragmentBounds = new AABBArray(1000);
+		long[] visibleFragments = new long[16];
+
 		while (!glfwWindowShouldClose(boiler.window().properties.handle())) {
 			glfwPollEvents();
 			boiler.window().updateSize();
@@ -513,7 +521,8 @@ public class TerrainPlayground {
 
 				int quadCount = 0;
 				int fragmentCount = 0;
-				fragmentsToRender.removeIf(fragment -> {
+				fragmentBounds.clear();
+				for (var fragment : fragmentsToRender) {
 					float minX = (fragment.minU - cameraU) * HEIGHT_IMAGE_SIZE;
 					float minZ = (fragment.minV - cameraV) * HEIGHT_IMAGE_SIZE;
 					float maxX = (fragment.maxU - cameraU) * HEIGHT_IMAGE_SIZE;
@@ -524,9 +533,17 @@ public class TerrainPlayground {
 					var heightLookup = fragmentSize > threshold ? coarseHeightLookup : fineHeightLookup;
 					short[] heightBounds = heightLookup.getHeights(fragment.minU, fragment.minV, fragment.maxU, fragment.maxV);
 
-					var aabb = new FrustumCuller.AABB(minX, heightBounds[0] - camera.y, minZ, maxX, heightBounds[1] - camera.y, maxZ);
-					return frustumCuller.shouldCullAABB(aabb);
-				});
+					fragmentBounds.add(minX, heightBounds[0] - camera.y, minZ, maxX, heightBounds[1] - camera.y, maxZ);
+				}
+
+				int numWords = (fragmentBounds.size() + 63) / 64;
+				if (visibleFragments.length < numWords) visibleFragments = new long[numWords];
+				frustumCuller.cullAABBs(fragmentBounds, visibleFragments);
+				int fragmentIndex = 0;
+				for (var iterator = fragmentsToRender.iterator(); iterator.hasNext(); fragmentIndex++) {
+					iterator.next();
+					if ((visibleFragments[fragmentIndex / 64] & (1L << (fragmentIndex % 64))) == 0L) iterator.remove();
+				}
 
 				var pushConstants = stack.calloc(28);
 
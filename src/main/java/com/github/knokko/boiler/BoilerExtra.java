@@ -10,6 +10,7 @@ import java.util.Set;
  * @param instanceExtensions The instance extensions that we enabled
  * @param deviceExtensions The device extensions that we enabled
  * @param swapchainMaintenance True if and only if we enabled the swapchain maintenance feature
+ * @param presentWait True if and only if we enabled the present ID and present wait features
  * @param memoryPriority True if and only if we enabled the memory priority feature
  * @param pageableMemory True if and only if we enabled the pageable device local memory feature
  */
@@ -19,6 +20,7 @@ public record BoilerExtra(
 		Set<String> deviceExtensions,
 
 		boolean swapchainMaintenance,
+		boolean presentWait,
 		boolean memoryPriority,
 		boolean pageableMemory
 ) { }
@@ -290,11 +290,13 @@ public class BoilerInstance {
 	 *     <li>All windows (if any), alongside their swapchains and surfaces</li>
 	 *     <li>The returned fences in the fence bank</li>
 	 *     <li>The unused semaphores in the semaphore bank</li>
+	 *     <li>The shared samplers and image views (which must have been returned already)</li>
 	 *     <li>The VMA allocator</li>
 	 *     <li>The VkDevice</li>
 	 *     <li>The validation error thrower (if applicable)</li>
 	 *     <li>The VkInstance</li>
 	 *     <li>The OpenXR instance (if applicable)</li>
+	 *     <li>The native functions of the allocation callbacks (if applicable)</li>
 	 * </ul>
 	 */
 	public void destroyInitialObjects() {
@@ -304,6 +306,8 @@ public class BoilerInstance {
 			for (var window : windows) window.destroy();
 			sync.fenceBank.destroy();
 			sync.semaphoreBank.destroy();
+			images.viewCache.destroy();
+			images.samplerCache.destroy();
 			if (vmaAllocator != VK_NULL_HANDLE) vmaDestroyAllocator(vmaAllocator);
 			vkDestroyDevice(vkDevice, CallbackUserData.DEVICE.put(stack, allocationCallbacks));
 			if (validationErrorThrower != VK_NULL_HANDLE) {
@@ -315,6 +319,7 @@ public class BoilerInstance {
 			vkDestroyInstance(vkInstance, CallbackUserData.INSTANCE.put(stack, allocationCallbacks));
 			if (xr != null) xr.destroyInitialObjects();
 		}
+		if (allocationCallbacks != null) allocationCallbacks.destroy();
 
 		if (deviceProperties2 != null) deviceProperties2.free();
 		else deviceProperties.free();
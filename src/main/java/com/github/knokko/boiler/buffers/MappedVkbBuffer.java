@@ -1,5 +1,6 @@
 package com.github.knokko.boiler.buffers;
 
+import com.github.knokko.boiler.BoilerInstance;
 import com.github.knokko.boiler.utilities.ImageCoding;
 
 import java.awt.image.BufferedImage;
@@ -19,6 +20,17 @@ public class MappedVkbBuffer extends VkbBuffer {
 	 */
 	public long hostAddress;
 
+	/**
+	 * The offset (in bytes) of the first byte of this buffer into its memory allocation
+	 */
+	public long memoryOffset;
+
+	/**
+	 * The memory allocation to which this buffer is bound, if its memory type is <b>not</b> <i>HOST_COHERENT</i>.
+	 * When this is <b>null</b>, {@link #flush} and {@link #invalidate} don't do anything.
+	 */
+	public NonCoherentMemory nonCoherentMemory;
+
 	public MappedVkbBuffer(long vkBuffer, long offset, long size, long hostAddress) {
 		super(vkBuffer, offset, size);
 		this.hostAddress = hostAddress;
@@ -34,7 +46,53 @@ public class MappedVkbBuffer extends VkbBuffer {
 	@Override
 	public MappedVkbBuffer child(long childOffset, long childSize) {
 		validateChildRange(childOffset, childSize);
-		return new MappedVkbBuffer(vkBuffer, offset + childOffset, childSize, hostAddress + childOffset);
+		var child = new MappedVkbBuffer(vkBuffer, offset + childOffset, childSize, hostAddress + childOffset);
+		child.memoryOffset = memoryOffset + childOffset;
+		child.nonCoherentMemory = nonCoherentMemory;
+		child.memoryTypeIndex = memoryTypeIndex;
+		return child;
+	}
+
+	/**
+	 * Makes host writes to the given range of this buffer visible to the device. This is only needed when this
+	 * buffer is not <i>HOST_COHERENT</i> (when {@link #nonCoherentMemory} is not <b>null</b>), and it does nothing
+	 * otherwise. The range will be expanded to multiples of <i>nonCoherentAtomSize</i>.
+	 * @param rangeOffset The offset into this buffer, in bytes
+	 * @param rangeSize The size of the range, in bytes
+	 */
+	public void flush(BoilerInstance instance, long rangeOffset, long rangeSize) {
+		validateChildRange(rangeOffset, rangeSize);
+		if (nonCoherentMemory == null) return;
+		nonCoherentMemory.flush(instance, memoryOffset + rangeOffset, rangeSize);
+	}
+
+	/**
+	 * Flushes the whole buffer, see {@link #flush(BoilerInstance, long, long)}
+	 */
+	public void flush(BoilerInstance instance) {
+		flush(instance, 0L, size);
+	}
+
+	/**
+	 * Makes device writes to the given range of this buffer visible to the host. This is only needed when this buffer
+	 * is not <i>HOST_COHERENT</i> (when {@link #nonCoherentMemory} is not <b>null</b>), and it does nothing otherwise.
+	 * Call this after the device writes have completed (and have been made available to the host using a
+	 * pipeline barrier), but before reading the data. The range will be expanded to multiples of
+	 * <i>nonCoherentAtomSize</i>.
+	 * @param rangeOffset The offset into this buffer, in bytes
+	 * @param rangeSize The size of the range, in bytes
+	 */
+	public void invalidate(BoilerInstance instance, long rangeOffset, long rangeSize) {
+		validateChildRange(rangeOffset, rangeSize);
+		if (nonCoherentMemory == null) return;
+		nonCoherentMemory.invalidate(instance, memoryOffset + rangeOffset, rangeSize);
+	}
+
+	/**
+	 * Invalidates the whole buffer, see {@link #invalidate(BoilerInstance, long, long)}
+	 */
+	public void invalidate(BoilerInstance instance) {
+		invalidate(instance, 0L, size);
 	}
 
 	/**
@@ -0,0 +1,75 @@
+package com.github.knokko.boiler.buffers;
+
+import com.github.knokko.boiler.BoilerInstance;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkMappedMemoryRange;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVmaSuccess;
+import static com.github.knokko.boiler.utilities.BoilerMath.nextMultipleOf;
+import static java.lang.Math.min;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.util.vma.Vma.vmaFlushAllocation;
+import static org.lwjgl.util.vma.Vma.vmaInvalidateAllocation;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * Describes a mapped memory allocation whose memory type is <b>not</b> <i>HOST_COHERENT</i>, which means that host
+ * writes must be flushed, and device writes must be invalidated before the host can see them. This is used by
+ * {@link MappedVkbBuffer#flush} and {@link MappedVkbBuffer#invalidate}.
+ * @param vkMemory The <b>VkDeviceMemory</b>, or <b>VK_NULL_HANDLE</b> when the memory was allocated by VMA
+ * @param vmaAllocation The <b>VmaAllocation</b>, or 0 when the memory was not allocated by VMA
+ * @param allocationSize The size of the memory allocation, in bytes
+ */
+public record NonCoherentMemory(long vkMemory, long vmaAllocation, long allocationSize) {
+
+	/**
+	 * Flushes the given range of this memory allocation. The range will be expanded to multiples of
+	 * <i>nonCoherentAtomSize</i>.
+	 */
+	public void flush(BoilerInstance instance, long offset, long size) {
+		if (vmaAllocation != 0L) {
+			assertVmaSuccess(vmaFlushAllocation(
+					instance.vmaAllocator(), vmaAllocation, offset, size
+			), "FlushAllocation", null);
+		} else {
+			try (var stack = stackPush()) {
+				assertVkSuccess(vkFlushMappedMemoryRanges(
+						instance.vkDevice(), range(instance, stack, offset, size)
+				), "FlushMappedMemoryRanges", null);
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the given range of this memory allocation. The range will be expanded to multiples of
+	 * <i>nonCoherentAtomSize</i>.
+	 */
+	public void invalidate(BoilerInstance instance, long offset, long size) {
+		if (vmaAllocation != 0L) {
+			assertVmaSuccess(vmaInvalidateAllocation(
+					instance.vmaAllocator(), vmaAllocation, offset, size
+			), "InvalidateAllocation", null);
+		} else {
+			try (var stack = stackPush()) {
+				assertVkSuccess(vkInvalidateMappedMemoryRanges(
+						instance.vkDevice(), range(instance, stack, offset, size)
+				), "InvalidateMappedMemoryRanges", null);
+			}
+		}
+	}
+
+	private VkMappedMemoryRange range(BoilerInstance instance, MemoryStack stack, long offset, long size) {
+		// nonCoherentAtomSize is guaranteed to be a power of 2
+		long atomSize = instance.deviceProperties.limits().nonCoherentAtomSize();
+		long start = offset & -atomSize;
+		long end = min(nextMultipleOf(offset + size, atomSize), allocationSize);
+
+		var range = VkMappedMemoryRange.calloc(stack);
+		range.sType$Default();
+		range.memory(vkMemory);
+		range.offset(start);
+		range.size(end - start);
+		return range;
+	}
+}
@@ -2,8 +2,9 @@ package com.github.knokko.boiler.builders;
 
 import org.lwjgl.vulkan.*;
 
-import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static org.lwjgl.system.MemoryStack.stackPush;
@@ -13,38 +14,9 @@ import static org.lwjgl.vulkan.VK10.VK_QUEUE_GRAPHICS_BIT;
 
 class BasicDeviceFilter {
 
-	private static Set<String> getSupportedDeviceExtensions(VkPhysicalDevice vkPhysicalDevice) {
+	private static String supportsRequiredFeatures(CapabilitySnapshot capabilities, BoilerBuilder builder) {
 		try (var stack = stackPush()) {
-			var pNumExtensions = stack.callocInt(1);
-			assertVkSuccess(vkEnumerateDeviceExtensionProperties(
-					vkPhysicalDevice, (ByteBuffer) null, pNumExtensions, null
-			), "EnumerateDeviceExtensionProperties", "BasicDeviceFilter count");
-			int numExtensions = pNumExtensions.get(0);
-
-			// NOTE: Do NOT allocate this on the stack because this array can be dangerously large for the
-			// small default LWJGL stack
-			var pExtensions = VkExtensionProperties.calloc(numExtensions);
-			assertVkSuccess(vkEnumerateDeviceExtensionProperties(
-					vkPhysicalDevice, (ByteBuffer) null, pNumExtensions, pExtensions
-			), "EnumerateDeviceExtensionProperties", "BasicDeviceFilter extensions");
-
-			var extensions = new HashSet<String>(numExtensions);
-			for (int index = 0; index < numExtensions; index++) {
-				extensions.add(pExtensions.get(index).extensionNameString());
-			}
-			pExtensions.free();
-			return extensions;
-		}
-	}
-
-	private static String supportsRequiredFeatures(VkPhysicalDevice device, BoilerBuilder builder) {
-		try (var stack = stackPush()) {
-			var supportedFeatures = SupportedFeatures.query(
-					stack, device, builder.apiVersion,
-					!builder.vkRequiredFeatures10.isEmpty(), !builder.vkRequiredFeatures11.isEmpty(),
-					!builder.vkRequiredFeatures12.isEmpty(), !builder.vkRequiredFeatures13.isEmpty(),
-					!builder.vkRequiredFeatures14.isEmpty()
-			);
+			var supportedFeatures = capabilities.supportedFeatures(stack);
 			for (var requirement : builder.vkRequiredFeatures10) {
 				if (!requirement.predicate().test(supportedFeatures.features10())) return requirement.description();
 			}
@@ -66,8 +38,10 @@ class BasicDeviceFilter {
 
 	static VkPhysicalDevice[] getCandidates(
 			BoilerBuilder builder, VkInstance vkInstance,
-			long[] windowSurfaces, boolean printSelectionInfo
+			long[] windowSurfaces, boolean printSelectionInfo,
+			CapabilityCache capabilityCache, StartupProfiler profiler
 	) {
+		VkPhysicalDevice[] devices;
 		try (var stack = stackPush()) {
 			var pNumDevices = stack.callocInt(1);
 			assertVkSuccess(vkEnumeratePhysicalDevices(
@@ -80,111 +54,147 @@ class BasicDeviceFilter {
 					vkInstance, pNumDevices, pDevices
 			), "EnumeratePhysicalDevices", "BasicDeviceFilter devices");
 
-			var devices = new ArrayList<VkPhysicalDevice>(numDevices);
+			devices = new VkPhysicalDevice[numDevices];
+			for (int index = 0; index < numDevices; index++) {
+				devices[index] = new VkPhysicalDevice(pDevices.get(index), vkInstance);
+			}
+		}
+
+		// The property & feature queries of each device are independent, so they can be done concurrently. This is
+		// also done when there is only 1 device, so that the requirements are called on the same threads everywhere.
+		List<Verdict> verdicts;
+		if (builder.parallelInitialization) {
+			var futureVerdicts = Arrays.stream(devices).map(device -> CompletableFuture.supplyAsync(
+					() -> judge(builder, device, windowSurfaces, capabilityCache, profiler)
+			)).toList();
+			verdicts = futureVerdicts.stream().map(BasicDeviceFilter::join).toList();
+		} else {
+			verdicts = Arrays.stream(devices).map(
+					device -> judge(builder, device, windowSurfaces, capabilityCache, profiler)
+			).toList();
+		}
+
+		var candidates = new ArrayList<VkPhysicalDevice>(devices.length);
+		for (var verdict : verdicts) {
+			if (verdict.rejection == null) {
+				if (printSelectionInfo) System.out.println("BasicDeviceFilter: accepted " + verdict.deviceName + " (" + verdict.device.address() + ")");
+				candidates.add(verdict.device);
+			} else if (printSelectionInfo) {
+				System.out.println("BasicDeviceFilter: rejected " + verdict.deviceName + " because " + verdict.rejection);
+			}
+		}
+
+		return candidates.toArray(new VkPhysicalDevice[0]);
+	}
+
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException failed) {
+			if (failed.getCause() instanceof RuntimeException cause) throw cause;
+			if (failed.getCause() instanceof Error cause) throw cause;
+			throw failed;
+		}
+	}
+
+	private static Verdict judge(
+			BoilerBuilder builder, VkPhysicalDevice device, long[] windowSurfaces,
+			CapabilityCache capabilityCache, StartupProfiler profiler
+	) {
+		long startTime = profiler.start();
+		var verdict = judge(builder, device, windowSurfaces, capabilityCache);
+		profiler.finish("device-filter " + verdict.deviceName, startTime);
+		return verdict;
+	}
+
+	private static Verdict judge(
+			BoilerBuilder builder, VkPhysicalDevice device, long[] windowSurfaces, CapabilityCache capabilityCache
+	) {
+		try (var stack = stackPush()) {
+			var properties = VkPhysicalDeviceProperties.calloc(stack);
+			vkGetPhysicalDeviceProperties(device, properties);
+			String deviceName = properties.deviceNameString();
 
 			int desiredMajorVersion = VK_API_VERSION_MAJOR(builder.apiVersion);
 			int desiredMinorVersion = VK_API_VERSION_MINOR(builder.apiVersion);
+			int supportedMajorVersion = VK_API_VERSION_MAJOR(properties.apiVersion());
+			int supportedMinorVersion = VK_API_VERSION_MINOR(properties.apiVersion());
+			if (supportedMajorVersion < desiredMajorVersion ||
+					(supportedMajorVersion == desiredMajorVersion && supportedMinorVersion < desiredMinorVersion)
+			) {
+				return new Verdict(
+						device, deviceName,
+						"it doesn't support Vulkan " + desiredMajorVersion + "." + desiredMinorVersion
+				);
+			}
 
-			deviceLoop:
-			for (int index = 0; index < numDevices; index++) {
-				var device = new VkPhysicalDevice(pDevices.get(index), vkInstance);
-				var properties = VkPhysicalDeviceProperties.calloc(stack);
-				vkGetPhysicalDeviceProperties(device, properties);
-
-				int supportedMajorVersion = VK_API_VERSION_MAJOR(properties.apiVersion());
-				int supportedMinorVersion = VK_API_VERSION_MINOR(properties.apiVersion());
-				if (supportedMajorVersion < desiredMajorVersion ||
-						(supportedMajorVersion == desiredMajorVersion && supportedMinorVersion < desiredMinorVersion)
-				) {
-					if (printSelectionInfo) {
-						System.out.println(
-								"BasicDeviceFilter: rejected " + properties.deviceNameString() +
-										" because it doesn't support Vulkan " + desiredMajorVersion +
-										"." + desiredMinorVersion
-						);
-					}
-					continue;
-				}
+			// The extensions, features, and queue families don't depend on the surfaces, so they can be cached
+			var capabilities = capabilityCache.get(device, properties);
 
-				String missingFeature = supportsRequiredFeatures(device, builder);
-				if (missingFeature != null) {
-					if (printSelectionInfo) {
-						System.out.println("BasicDeviceFilter: rejected " + properties.deviceNameString() +
-								" because it doesn't support the required feature " + missingFeature);
-					}
-					continue;
-				}
+			String missingFeature = supportsRequiredFeatures(capabilities, builder);
+			if (missingFeature != null) {
+				return new Verdict(device, deviceName, "it doesn't support the required feature " + missingFeature);
+			}
 
-				var supportedExtensions = getSupportedDeviceExtensions(device);
-				for (String extension : builder.requiredVulkanDeviceExtensions) {
-					if (!supportedExtensions.contains(extension)) {
-						if (printSelectionInfo) {
-							System.out.println("BasicDeviceFilter: rejected " + properties.deviceNameString() +
-									" because it doesn't support the extension " + extension);
-						}
-						continue deviceLoop;
-					}
+			for (String extension : builder.requiredVulkanDeviceExtensions) {
+				if (!capabilities.extensions().contains(extension)) {
+					return new Verdict(device, deviceName, "it doesn't support the extension " + extension);
 				}
+			}
 
-				// canPresentToSurfaces[i] is true if and only if at least 1 queue family of the device can present to it
-				boolean[] canPresentToSurfaces = new boolean[builder.windows.size()];
-				boolean hasGraphicsQueueFamily = false;
-
-				var pNumQueueFamilies = stack.callocInt(1);
-				vkGetPhysicalDeviceQueueFamilyProperties(device, pNumQueueFamilies, null);
-				int numQueueFamilies = pNumQueueFamilies.get(0);
-				var pQueueFamilies = VkQueueFamilyProperties.calloc(numQueueFamilies, stack);
-				vkGetPhysicalDeviceQueueFamilyProperties(device, pNumQueueFamilies, pQueueFamilies);
-
-				var pPresentSupport = stack.callocInt(1);
-				for (int queueFamilyIndex = 0; queueFamilyIndex < numQueueFamilies; queueFamilyIndex++) {
-
-					for (int surfaceIndex = 0; surfaceIndex < windowSurfaces.length; surfaceIndex++) {
-						assertVkSuccess(vkGetPhysicalDeviceSurfaceSupportKHR(
-								device, queueFamilyIndex, windowSurfaces[surfaceIndex], pPresentSupport
-						), "GetPhysicalDeviceSurfaceSupportKHR", "BasicDeviceFilter");
-						if (pPresentSupport.get(0) == VK_TRUE) canPresentToSurfaces[surfaceIndex] = true;
-					}
-
-					if ((pQueueFamilies.get(queueFamilyIndex).queueFlags() & VK_QUEUE_GRAPHICS_BIT) != 0) {
-						hasGraphicsQueueFamily = true;
-					}
-				}
+			// canPresentToSurfaces[i] is true if and only if at least 1 queue family of the device can present to it
+			boolean[] canPresentToSurfaces = new boolean[builder.windows.size()];
+			boolean hasGraphicsQueueFamily = false;
+
+			var pQueueFamilies = capabilities.queueFamilies(stack);
+			int numQueueFamilies = pQueueFamilies.capacity();
+
+			var pPresentSupport = stack.callocInt(1);
+			for (int queueFamilyIndex = 0; queueFamilyIndex < numQueueFamilies; queueFamilyIndex++) {
 
-				boolean hasPresentQueueFamily = true;
-				for (boolean canPresent : canPresentToSurfaces) {
-					if (!canPresent) {
-						hasPresentQueueFamily = false;
-						break;
-					}
+				for (int surfaceIndex = 0; surfaceIndex < windowSurfaces.length; surfaceIndex++) {
+					assertVkSuccess(vkGetPhysicalDeviceSurfaceSupportKHR(
+							device, queueFamilyIndex, windowSurfaces[surfaceIndex], pPresentSupport
+					), "GetPhysicalDeviceSurfaceSupportKHR", "BasicDeviceFilter");
+					if (pPresentSupport.get(0) == VK_TRUE) canPresentToSurfaces[surfaceIndex] = true;
 				}
 
-				if (!hasPresentQueueFamily || !hasGraphicsQueueFamily) {
-					if (printSelectionInfo) {
-						System.out.println("BasicDeviceFilter: rejected " + properties.deviceNameString()
-								+ " because it doesn't have all required queue families: present = "
-								+ hasPresentQueueFamily + ", graphics = " + hasGraphicsQueueFamily);
-					}
-					continue;
+				if ((pQueueFamilies.get(queueFamilyIndex).queueFlags() & VK_QUEUE_GRAPHICS_BIT) != 0) {
+					hasGraphicsQueueFamily = true;
 				}
+			}
 
-				List<String> missedExtraRequirements = builder.extraDeviceRequirements.stream().map(requirements -> {
-					if (requirements.requirements().satisfiesRequirements(device, windowSurfaces, stack)) return null;
-					else return requirements.description();
-				}).filter(Objects::nonNull).toList();
-				if (!missedExtraRequirements.isEmpty()) {
-					if (printSelectionInfo) {
-						System.out.println("BasicDeviceFilter: rejected " + properties.deviceNameString()
-								+ " because it didn't satisfy the extra device requirements " + missedExtraRequirements);
-					}
-					continue;
+			boolean hasPresentQueueFamily = true;
+			for (boolean canPresent : canPresentToSurfaces) {
+				if (!canPresent) {
+					hasPresentQueueFamily = false;
+					break;
 				}
+			}
 
-				if (printSelectionInfo) System.out.println("BasicDeviceFilter: accepted " + properties.deviceNameString() + " (" + device.address() + ")");
-				devices.add(device);
+			if (!hasPresentQueueFamily || !hasGraphicsQueueFamily) {
+				return new Verdict(device, deviceName, "it doesn't have all required queue families: present = "
+						+ hasPresentQueueFamily + ", graphics = " + hasGraphicsQueueFamily);
 			}
 
-			return devices.toArray(new VkPhysicalDevice[0]);
+			List<String> missedExtraRequirements = builder.extraDeviceRequirements.stream().map(requirements -> {
+				if (requirements.requirements().satisfiesRequirements(device, windowSurfaces, stack)) return null;
+				else return requirements.description();
+			}).filter(Objects::nonNull).toList();
+			if (!missedExtraRequirements.isEmpty()) {
+				return new Verdict(
+						device, deviceName,
+						"it didn't satisfy the extra device requirements " + missedExtraRequirements
+				);
+			}
+
+			return new Verdict(device, deviceName, null);
 		}
 	}
+
+	/**
+	 * @param rejection The reason why the device was rejected, or null if the device was accepted
+	 */
+	private record Verdict(VkPhysicalDevice device, String deviceName, String rejection) {
+	}
 }
@@ -6,6 +6,8 @@ import com.github.knokko.boiler.builders.instance.ValidationFeatures;
 import com.github.knokko.boiler.builders.instance.VkInstanceCreator;
 import com.github.knokko.boiler.builders.queue.MinimalQueueFamilyMapper;
 import com.github.knokko.boiler.builders.queue.QueueFamilyMapper;
+import com.github.knokko.boiler.builders.startup.StartupListener;
+import com.github.knokko.boiler.builders.startup.StartupSpan;
 import com.github.knokko.boiler.builders.xr.BoilerXrBuilder;
 import com.github.knokko.boiler.debug.ValidationException;
 import com.github.knokko.boiler.exceptions.*;
@@ -16,7 +18,11 @@ import com.github.knokko.boiler.utilities.CollectionHelper;
 import com.github.knokko.boiler.xr.XrBoiler;
 import org.lwjgl.vulkan.*;
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -50,6 +56,8 @@ import static org.lwjgl.vulkan.KHRMaintenance2.VK_KHR_MAINTENANCE_2_EXTENSION_NA
 import static org.lwjgl.vulkan.KHRMaintenance3.VK_KHR_MAINTENANCE3_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRMultiview.VK_KHR_MULTIVIEW_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRPortabilityEnumeration.VK_KHR_PORTABILITY_ENUMERATION_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRPresentId.VK_KHR_PRESENT_ID_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRPresentWait.VK_KHR_PRESENT_WAIT_EXTENSION_NAME;
 import static org.lwjgl.vulkan.KHRSwapchain.VK_KHR_SWAPCHAIN_EXTENSION_NAME;
 import static org.lwjgl.vulkan.VK10.*;
 import static org.lwjgl.vulkan.VK11.VK_API_VERSION_1_1;
@@ -134,7 +142,11 @@ public class BoilerBuilder {
 	Collection<NamedExtraDeviceRequirements> extraDeviceRequirements = new ArrayList<>();
 
 	boolean printDeviceSelectionInfo = true;
+	Path capabilityCacheFile = null;
+	boolean parallelInitialization = true;
+	Collection<StartupListener> startupListeners = new ArrayList<>();
 	boolean enableSwapchainMaintenance = true;
+	boolean enablePresentWait = false;
 
 	QueueFamilyMapper queueFamilyMapper = new MinimalQueueFamilyMapper();
 
@@ -304,6 +316,18 @@ public class BoilerBuilder {
 		return this;
 	}
 
+	/**
+	 * Enables the {@code VK_KHR_present_id} and {@code VK_KHR_present_wait} extensions when they are supported, which
+	 * allows render loops to wait until their frames are actually displayed (see <i>VkbWindow.waitForPresent</i>).
+	 * When they are not supported, the device will simply be created without them, and
+	 * <i>BoilerExtra.presentWait()</i> will be false.
+	 * @return this
+	 */
+	public BoilerBuilder enablePresentWait() {
+		this.enablePresentWait = true;
+		return this;
+	}
+
 	// -----------------------------------------------------------------------------------------------------------------
 	// Physical device selection
 	// -----------------------------------------------------------------------------------------------------------------
@@ -317,7 +341,8 @@ public class BoilerBuilder {
 	 *
 	 * <p>
 	 *   By default, the builder will tell you (via standard output) which devices it rejected,
-	 *   Furthermore, it will tell you which physical device it chose.
+	 *   Furthermore, it will tell you which physical device it chose, and whether the capability cache file (see
+	 *   {@link #capabilityCache}) couldn't be read or saved.
 	 * </p>
 	 *
 	 * <p>
@@ -330,6 +355,26 @@ public class BoilerBuilder {
 		return this;
 	}
 
+	/**
+	 * <p>
+	 *   Lets the builder store a snapshot of the supported extensions, features, and queue family properties of each
+	 *   physical device in {@code file}. During later calls to <i>build()</i> (typically during the next launch of
+	 *   your application), the builder will evaluate the device requirements against these snapshots, rather than
+	 *   querying them again.
+	 * </p>
+	 *
+	 * <p>
+	 *   The snapshots are keyed by the vendor ID, device ID, driver version, and pipeline cache UUID of the device,
+	 *   as well as the API version and enabled layers. When any of these changes, the device will be queried again.
+	 *   The surface support and the extra device requirements are never cached, since they depend on the windows.
+	 *   By default, nothing will be stored.
+	 * </p>
+	 */
+	public BoilerBuilder capabilityCache(Path file) {
+		this.capabilityCacheFile = file;
+		return this;
+	}
+
 	/**
 	 * Enables the following device extensions. Any device that doesn't support them will be filtered out during
 	 * device selection.
@@ -626,6 +671,33 @@ public class BoilerBuilder {
 		return this;
 	}
 
+	/**
+	 * Adds a listener that will receive a timed {@link StartupSpan} for each phase of the <i>build()</i> method
+	 * (e.g. instance creation, device selection, device creation, and VMA creation), including a "total" span for
+	 * the whole method. This can be used to find out where the startup time goes.
+	 */
+	public BoilerBuilder startupListener(StartupListener listener) {
+		this.startupListeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * <p>
+	 *     By default, the <i>build()</i> method will create the GLFW windows while the <i>VkInstance</i> is being
+	 *     created on another thread, and it will check the requirements of each physical device on a thread pool.
+	 *     This means that your <i>vkInstanceCreator</i>, <i>beforeInstanceCreation</i>, and
+	 *     <i>extraDeviceRequirements</i> callbacks may be called from other threads.
+	 * </p>
+	 *
+	 * <p>
+	 *     If you chain this method, all work will be done on the thread that calls <i>build()</i>.
+	 * </p>
+	 */
+	public BoilerBuilder sequentialInitialization() {
+		this.parallelInitialization = false;
+		return this;
+	}
+
 	private void checkApiVersion(int required) {
 		if (VK_API_VERSION_MAJOR(apiVersion) < VK_API_VERSION_MAJOR(required)) {
 			throw new UnsupportedOperationException("API major version is too low for this feature");
@@ -654,22 +726,24 @@ public class BoilerBuilder {
 		if (didBuild) throw new IllegalStateException("This builder has been used already");
 		didBuild = true;
 
+		var profiler = new StartupProfiler(startupListeners);
+		long buildStartTime = profiler.start();
+
 		if (!windows.isEmpty() && windows.stream().allMatch(window -> window.handle == 0L) && initWindowingAPI) {
-			if (sdlFlags != 0L) {
-				assertSdlSuccess(SDL_Init(sdlFlags), "Init");
-			} else {
-				if (!glfwInit()) throw new GLFWFailureException("glfwInit() returned false");
-			}
+			profiler.span("windowing-init", () -> {
+				if (sdlFlags != 0L) {
+					assertSdlSuccess(SDL_Init(sdlFlags), "Init");
+				} else {
+					if (!glfwInit()) throw new GLFWFailureException("glfwInit() returned false");
+				}
+			});
 		}
 
-		for (var windowBuilder : windows) {
-			if (windowBuilder.title == null) windowBuilder.title = applicationName;
-			if (sdlFlags != 0) {
-				windowBuilder.createSdlWindow();
-			} else {
-				windowBuilder.createGlfwWindow();
-			}
-		}
+		// SDL needs a window before it can tell which instance extensions are required, but GLFW doesn't. When GLFW
+		// is used, the windows will be created while the VkInstance is being created on another thread.
+		boolean overlapWindows = parallelInitialization && sdlFlags == 0 &&
+				windows.stream().anyMatch(window -> window.handle == 0L);
+		if (!overlapWindows) profiler.span("windows", this::createWindows);
 
 		ExtraBuilder extra = new ExtraBuilder();
 		if (!windows.isEmpty()) {
@@ -693,6 +767,10 @@ public class BoilerBuilder {
 				this.desiredVulkanInstanceExtensions.add(VK_EXT_SURFACE_MAINTENANCE_1_EXTENSION_NAME);
 				this.desiredVulkanInstanceExtensions.add(VK_KHR_GET_SURFACE_CAPABILITIES_2_EXTENSION_NAME);
 			}
+			if (this.enablePresentWait) {
+				this.desiredVulkanDeviceExtensions.add(VK_KHR_PRESENT_ID_EXTENSION_NAME);
+				this.desiredVulkanDeviceExtensions.add(VK_KHR_PRESENT_WAIT_EXTENSION_NAME);
+			}
 		}
 		this.desiredVulkanDeviceExtensions.add(VK_EXT_MEMORY_PRIORITY_EXTENSION_NAME);
 		this.desiredVulkanDeviceExtensions.add(VK_EXT_PAGEABLE_DEVICE_LOCAL_MEMORY_EXTENSION_NAME);
@@ -713,6 +791,19 @@ public class BoilerBuilder {
 				supportedFeatures.pNext(swapchainFeatures);
 			}
 
+			VkPhysicalDevicePresentIdFeaturesKHR presentIdFeatures = null;
+			VkPhysicalDevicePresentWaitFeaturesKHR presentWaitFeatures = null;
+			if (deviceExtensions.contains(VK_KHR_PRESENT_ID_EXTENSION_NAME) &&
+					deviceExtensions.contains(VK_KHR_PRESENT_WAIT_EXTENSION_NAME)) {
+				presentIdFeatures = VkPhysicalDevicePresentIdFeaturesKHR.calloc(stack);
+				presentIdFeatures.sType$Default();
+				presentWaitFeatures = VkPhysicalDevicePresentWaitFeaturesKHR.calloc(stack);
+				presentWaitFeatures.sType$Default();
+
+				supportedFeatures.pNext(presentIdFeatures);
+				supportedFeatures.pNext(presentWaitFeatures);
+			}
+
 			VkPhysicalDeviceMemoryPriorityFeaturesEXT memoryPriorityFeatures = null;
 			if (deviceExtensions.contains(VK_EXT_MEMORY_PRIORITY_EXTENSION_NAME)) {
 				memoryPriorityFeatures = VkPhysicalDeviceMemoryPriorityFeaturesEXT.calloc(stack);
@@ -743,6 +834,12 @@ public class BoilerBuilder {
 				extra.swapchainMaintenance = true;
 			}
 
+			if (presentIdFeatures != null && presentIdFeatures.presentId() && presentWaitFeatures.presentWait()) {
+				ciDevice.pNext(presentIdFeatures);
+				ciDevice.pNext(presentWaitFeatures);
+				extra.presentWait = true;
+			}
+
 			if (memoryPriorityFeatures != null && memoryPriorityFeatures.memoryPriority()) {
 				ciDevice.pNext(memoryPriorityFeatures);
 				extra.memoryPriority = true;
@@ -757,10 +854,10 @@ public class BoilerBuilder {
 		XrBoiler xr = null;
 
 		if (xrBuilder != null) {
-			xr = xrBuilder.build(
+			xr = profiler.span("xr", () -> xrBuilder.build(
 					this, validationFeatures != null, requiredVulkanLayers.contains("VK_LAYER_LUNARG_api_dump"),
 					apiVersion, applicationName, applicationVersion, engineName, engineVersion
-			);
+			));
 		}
 
 		// Nice for VMA
@@ -769,9 +866,11 @@ public class BoilerBuilder {
 			this.desiredVulkanDeviceExtensions.add(VK_KHR_DEDICATED_ALLOCATION_EXTENSION_NAME);
 			this.desiredVulkanDeviceExtensions.add(VK_KHR_GET_MEMORY_REQUIREMENTS_2_EXTENSION_NAME);
 			this.desiredVulkanDeviceExtensions.add(VK_KHR_BIND_MEMORY_2_EXTENSION_NAME);
-			this.desiredVulkanDeviceExtensions.add(VK_EXT_MEMORY_BUDGET_EXTENSION_NAME);
 		}
 
+		// VK_EXT_memory_budget is not promoted to core, and is also used by MemoryInfo
+		this.desiredVulkanDeviceExtensions.add(VK_EXT_MEMORY_BUDGET_EXTENSION_NAME);
+
 		// Try to obtain maxMemoryAllocationSize from maintenance3
 		if (apiVersion == VK_API_VERSION_1_0) {
 			this.desiredVulkanDeviceExtensions.add(VK_KHR_MAINTENANCE3_EXTENSION_NAME);
@@ -821,10 +920,39 @@ public class BoilerBuilder {
 			}
 		}
 
-		var vkInstance = BoilerInstanceBuilder.createInstance(this, extra);
+		VkInstance vkInstance;
+		if (overlapWindows) {
+			var futureInstance = CompletableFuture.supplyAsync(
+					() -> profiler.span("instance", () -> BoilerInstanceBuilder.createInstance(this, extra))
+			);
+			try {
+				profiler.span("windows", this::createWindows);
+			} catch (RuntimeException | Error failed) {
+				// Don't leak the VkInstance that is being created on the other thread
+				try {
+					var abandonedInstance = futureInstance.join();
+					try (var stack = stackPush()) {
+						vkDestroyInstance(abandonedInstance, CallbackUserData.INSTANCE.put(stack, allocationCallbacks));
+					}
+				} catch (CompletionException instanceFailed) {
+					failed.addSuppressed(instanceFailed.getCause());
+				}
+				throw failed;
+			}
+			try {
+				vkInstance = futureInstance.join();
+			} catch (CompletionException failed) {
+				if (failed.getCause() instanceof RuntimeException cause) throw cause;
+				if (failed.getCause() instanceof Error cause) throw cause;
+				throw failed;
+			}
+		} else {
+			vkInstance = profiler.span("instance", () -> BoilerInstanceBuilder.createInstance(this, extra));
+		}
 
 		long validationErrorThrower = 0;
-		ThreadLocal<Boolean> alreadyThrowing = ThreadLocal.withInitial(() -> false);
+		// Validation errors can also be reported on the threads that check the physical devices
+		var alreadyThrowing = new AtomicBoolean(false);
 		BoilerInstance[] propagateInstance = { null };
 		if (forbidValidationErrors) {
 			if (!extra.instanceExtensions.contains(VK_EXT_DEBUG_UTILS_EXTENSION_NAME)) {
@@ -853,11 +981,10 @@ public class BoilerBuilder {
 						if ("VK_ERROR_OUT_OF_HOST_MEMORY".equals(message)) {
 							System.out.println("Hit weird error: " + error.pMessageIdNameString());
 							return VK_FALSE;
-						} else if (alreadyThrowing.get()) {
+						} else if (alreadyThrowing.getAndSet(true)) {
 							System.err.println("Validation error: " + message);
 							return VK_FALSE;
 						}
-						alreadyThrowing.set(true);
 						if (instance != null) instance.reportFatalValidationError();
 						throw new ValidationException(message);
 					} else {
@@ -880,21 +1007,25 @@ public class BoilerBuilder {
 			}
 		}
 
-		var deviceResult = BoilerDeviceBuilder.createDevice(this, vkInstance, extra);
+		var deviceResult = BoilerDeviceBuilder.createDevice(this, vkInstance, extra, profiler);
 
+		long windowSetupStartTime = profiler.start();
 		var windows = IntStream.range(0, this.windows.size()).mapToObj(windowIndex -> {
 			var windowBuilder = this.windows.get(windowIndex);
 			var vkSurface = deviceResult.windowSurfaces()[windowIndex];
 			var presentFamily = deviceResult.presentFamilies()[windowIndex];
 			return windowBuilder.build(deviceResult.vkPhysicalDevice(), vkSurface, extra.swapchainMaintenance, presentFamily);
 		}).collect(Collectors.toList());
+		if (!windows.isEmpty()) profiler.finish("window-setup", windowSetupStartTime);
 
+		long boilerInstanceStartTime = profiler.start();
 		var instance = new BoilerInstance(
 				xr, defaultTimeout, sdlFlags != 0, windows, apiVersion,
 				vkInstance, deviceResult.vkPhysicalDevice(), deviceResult.vkDevice(),
 				extra.build(), deviceResult.queueFamilies(), deviceResult.waitIdleLock(),
 				deviceResult.vmaAllocator(), validationErrorThrower, allocationCallbacks
 		);
+		profiler.finish("boiler-instance", boilerInstanceStartTime);
 		propagateInstance[0] = instance;
 		if (alreadyThrowing.get()) throw new ValidationException("A validation error occurred during initialization");
 		if (xr != null) xr.boilerInstance = instance;
@@ -903,6 +1034,18 @@ public class BoilerBuilder {
 			this.windows.get(windowIndex).callback.accept(windows.get(windowIndex));
 		}
 
+		profiler.finish("total", buildStartTime);
 		return instance;
 	}
+
+	private void createWindows() {
+		for (var windowBuilder : windows) {
+			if (windowBuilder.title == null) windowBuilder.title = applicationName;
+			if (sdlFlags != 0) {
+				windowBuilder.createSdlWindow();
+			} else {
+				windowBuilder.createGlfwWindow();
+			}
+		}
+	}
 }
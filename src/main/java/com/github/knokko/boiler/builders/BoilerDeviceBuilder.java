@@ -11,7 +11,6 @@ import org.lwjgl.util.vma.VmaAllocatorCreateInfo;
 import org.lwjgl.util.vma.VmaVulkanFunctions;
 import org.lwjgl.vulkan.*;
 
-import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -32,14 +31,21 @@ import static org.lwjgl.vulkan.VK10.*;
 
 class BoilerDeviceBuilder {
 
-	static Result createDevice(BoilerBuilder builder, VkInstance vkInstance, ExtraBuilder extra) {
+	static Result createDevice(
+			BoilerBuilder builder, VkInstance vkInstance, ExtraBuilder extra, StartupProfiler profiler
+	) {
 		VkPhysicalDevice vkPhysicalDevice;
 		VkDevice vkDevice;
 		long[] windowSurfaces;
 		QueueFamilies queueFamilies;
 		long vmaAllocator;
 
+		var capabilityCache = profiler.span("capability-cache", () -> new CapabilityCache(
+				builder.capabilityCacheFile, builder.apiVersion, extra.layers, builder.printDeviceSelectionInfo
+		));
+
 		try (var stack = stackPush()) {
+			long surfacesStartTime = profiler.start();
 			var pSurface = stack.callocLong(1);
 			windowSurfaces = builder.windows.stream().mapToLong(windowBuilder -> {
 				if (builder.sdlFlags != 0) {
@@ -56,9 +62,11 @@ class BoilerDeviceBuilder {
 
 				return pSurface.get(0);
 			}).toArray();
+			if (windowSurfaces.length > 0) profiler.finish("surfaces", surfacesStartTime);
 
+			long selectionStartTime = profiler.start();
 			VkPhysicalDevice[] candidateDevices = BasicDeviceFilter.getCandidates(
-					builder, vkInstance, windowSurfaces, builder.printDeviceSelectionInfo
+					builder, vkInstance, windowSurfaces, builder.printDeviceSelectionInfo, capabilityCache, profiler
 			);
 			if (candidateDevices.length == 0) throw new NoVkPhysicalDeviceException();
 
@@ -67,52 +75,41 @@ class BoilerDeviceBuilder {
 			);
 			if (vkPhysicalDevice == null) throw new NoVkPhysicalDeviceException();
 			if (builder.printDeviceSelectionInfo) System.out.println("Chose physical device " + vkPhysicalDevice.address());
+			profiler.finish("device-selection", selectionStartTime);
 		}
 
+		profiler.span("capability-cache-save", capabilityCache::save);
+
+		CapabilitySnapshot capabilities;
 		try (var stack = stackPush()) {
-			var pNumSupportedExtensions = stack.callocInt(1);
-			assertVkSuccess(vkEnumerateDeviceExtensionProperties(
-					vkPhysicalDevice, (ByteBuffer) null, pNumSupportedExtensions, null
-			), "EnumerateDeviceExtensionProperties", "BoilerDeviceBuilder count");
-			int numSupportedExtensions = pNumSupportedExtensions.get(0);
-
-			var pSupportedExtensions = VkExtensionProperties.calloc(numSupportedExtensions);
-			assertVkSuccess(vkEnumerateDeviceExtensionProperties(
-					vkPhysicalDevice, (ByteBuffer) null, pNumSupportedExtensions, pSupportedExtensions
-			), "EnumerateDeviceExtensionProperties", "BoilerDeviceBuilder extensions");
-
-			Set<String> supportedExtensions = new HashSet<>(numSupportedExtensions);
-			for (int index = 0; index < numSupportedExtensions; index++) {
-				supportedExtensions.add(pSupportedExtensions.get(index).extensionNameString());
-			}
-			pSupportedExtensions.free();
-			for (var extension : builder.requiredVulkanDeviceExtensions) {
-				if (!supportedExtensions.contains(extension)) {
-					// This is a programming error because the physical device selector must not choose physical
-					// devices that don't support all required extensions
-					throw new Error("Chosen device doesn't support required extension " + extension);
-				}
-			}
+			var properties = VkPhysicalDeviceProperties.calloc(stack);
+			vkGetPhysicalDeviceProperties(vkPhysicalDevice, properties);
+			capabilities = capabilityCache.get(vkPhysicalDevice, properties);
+		}
 
-			extra.deviceExtensions.addAll(builder.requiredVulkanDeviceExtensions);
-			for (var extension : builder.desiredVulkanDeviceExtensions) {
-				if (supportedExtensions.contains(extension)) extra.deviceExtensions.add(extension);
+		Set<String> supportedExtensions = capabilities.extensions();
+		for (var extension : builder.requiredVulkanDeviceExtensions) {
+			if (!supportedExtensions.contains(extension)) {
+				// This is a programming error because the physical device selector must not choose physical
+				// devices that don't support all required extensions
+				throw new Error("Chosen device doesn't support required extension " + extension);
 			}
 		}
 
+		extra.deviceExtensions.addAll(builder.requiredVulkanDeviceExtensions);
+		for (var extension : builder.desiredVulkanDeviceExtensions) {
+			if (supportedExtensions.contains(extension)) extra.deviceExtensions.add(extension);
+		}
+
 		VkbQueueFamily[] presentFamilies;
 		ReadWriteLock waitIdleLock = new ReentrantReadWriteLock();
 		try (var stack = stackPush()) {
+			long creationStartTime = profiler.start();
 			if (VK_API_VERSION_MAJOR(builder.apiVersion) != 1) {
 				throw new UnsupportedOperationException("Unknown api major version: " + VK_API_VERSION_MAJOR(builder.apiVersion));
 			}
 
-			var supportedFeatures = SupportedFeatures.query(
-					stack, vkPhysicalDevice, builder.apiVersion,
-					!builder.vkDeviceFeaturePicker10.isEmpty(), !builder.vkDeviceFeaturePicker11.isEmpty(),
-					!builder.vkDeviceFeaturePicker12.isEmpty(), !builder.vkDeviceFeaturePicker13.isEmpty(),
-					!builder.vkDeviceFeaturePicker14.isEmpty()
-			);
+			var supportedFeatures = capabilities.supportedFeatures(stack);
 
 			int minorVersion = VK_API_VERSION_MINOR(builder.apiVersion);
 			VkPhysicalDeviceFeatures enabledFeatures10;
@@ -164,11 +161,8 @@ class BoilerDeviceBuilder {
 				}
 			}
 
-			var pNumQueueFamilies = stack.callocInt(1);
-			vkGetPhysicalDeviceQueueFamilyProperties(vkPhysicalDevice, pNumQueueFamilies, null);
-			int numQueueFamilies = pNumQueueFamilies.get(0);
-			var pQueueFamilies = VkQueueFamilyProperties.calloc(numQueueFamilies, stack);
-			vkGetPhysicalDeviceQueueFamilyProperties(vkPhysicalDevice, pNumQueueFamilies, pQueueFamilies);
+			var pQueueFamilies = capabilities.queueFamilies(stack);
+			int numQueueFamilies = pQueueFamilies.capacity();
 
 			var presentSupportMatrix = new boolean[numQueueFamilies][windowSurfaces.length];
 			var pPresentSupport = stack.callocInt(1);
@@ -253,8 +247,10 @@ class BoilerDeviceBuilder {
 					queueFamilyMap.get(videoDecodeIndex),
 					Collections.unmodifiableCollection(queueFamilyMap.values())
 			);
+			profiler.finish("device-creation", creationStartTime);
 
 			if (builder.useVma) {
+				long vmaStartTime = profiler.start();
 				var vmaVulkanFunctions = VmaVulkanFunctions.calloc(stack);
 				vmaVulkanFunctions.set(vkInstance, vkDevice);
 
@@ -275,6 +271,7 @@ class BoilerDeviceBuilder {
 						ciAllocator, pAllocator
 				), "CreateAllocator", "BoilerDeviceBuilder");
 				vmaAllocator = pAllocator.get(0);
+				profiler.finish("vma", vmaStartTime);
 			} else {
 				vmaAllocator = VK_NULL_HANDLE;
 			}
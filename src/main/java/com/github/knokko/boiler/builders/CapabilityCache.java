@@ -0,0 +1,138 @@
+package com.github.knokko.boiler.builders;
+
+import org.lwjgl.vulkan.VkPhysicalDevice;
+import org.lwjgl.vulkan.VkPhysicalDeviceProperties;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores a {@link CapabilitySnapshot} for each physical device, so that the extensions, features, and queue families
+ * of each device are queried at most once during <i>BoilerBuilder.build()</i>. When a file is given, the snapshots
+ * will also be loaded from (and saved to) that file, so that subsequent launches don't need to query them at all.
+ * <br>
+ * The snapshots are keyed by the vendor ID, device ID, driver version, and pipeline cache UUID of the device, as well
+ * as the API version and the enabled layers of the <i>VkInstance</i>, since layers can add device extensions. When
+ * any of these changes, the device will be queried again. This class is thread-safe.
+ */
+class CapabilityCache {
+
+	private static final int MAGIC = 0x766B6263;
+	private static final int FORMAT_VERSION = 1;
+
+	private final Path file;
+	private final int apiVersion;
+	private final String layers;
+	private final boolean printDiagnostics;
+
+	private final Map<String, CapabilitySnapshot> loadedSnapshots = new HashMap<>();
+	private final Map<String, CapabilitySnapshot> usedSnapshots = new ConcurrentHashMap<>();
+	private volatile boolean changed;
+
+	CapabilityCache(Path file, int apiVersion, Set<String> layers, boolean printDiagnostics) {
+		this.file = file;
+		this.apiVersion = apiVersion;
+		this.layers = String.join(",", new TreeSet<>(layers));
+		this.printDiagnostics = printDiagnostics;
+		if (file != null) load();
+	}
+
+	private void load() {
+		try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) return;
+			int numSnapshots = input.readInt();
+			if (numSnapshots < 0) throw new IOException("Invalid number of snapshots: " + numSnapshots);
+
+			// Don't use numSnapshots as initial capacity, since a corrupt file could claim a huge number of snapshots
+			var snapshots = new HashMap<String, CapabilitySnapshot>();
+			for (int counter = 0; counter < numSnapshots; counter++) {
+				String key = input.readUTF();
+				if (!key.contains("|")) throw new IOException("Invalid key " + key);
+				snapshots.put(key, CapabilitySnapshot.read(input));
+			}
+			loadedSnapshots.putAll(snapshots);
+		} catch (NoSuchFileException missing) {
+			// This is expected during the first launch
+		} catch (IOException corrupt) {
+			if (printDiagnostics) {
+				System.out.println("CapabilityCache: ignoring " + file + " because it couldn't be read: " + corrupt.getMessage());
+			}
+		}
+	}
+
+	private String key(VkPhysicalDeviceProperties properties) {
+		var key = new StringBuilder();
+		key.append(properties.vendorID()).append(':').append(properties.deviceID()).append(':');
+		key.append(properties.driverVersion()).append(':');
+		var uuid = properties.pipelineCacheUUID();
+		for (int index = 0; index < uuid.capacity(); index++) {
+			key.append(String.format("%02x", uuid.get(index)));
+		}
+		key.append('|').append(apiVersion).append(':').append(layers);
+		return key.toString();
+	}
+
+	/**
+	 * Gets the snapshot of {@code device}, or queries it if this cache doesn't have a snapshot with the same key.
+	 * The caller must ensure that {@code device} supports the API version of this cache.
+	 * @param properties The properties of {@code device}, which are needed to compute the key
+	 */
+	CapabilitySnapshot get(VkPhysicalDevice device, VkPhysicalDeviceProperties properties) {
+		String key = key(properties);
+		var snapshot = usedSnapshots.get(key);
+		if (snapshot != null) return snapshot;
+
+		synchronized (loadedSnapshots) {
+			snapshot = loadedSnapshots.get(key);
+		}
+		if (snapshot == null) {
+			snapshot = CapabilitySnapshot.query(device, apiVersion);
+			changed = true;
+		}
+		usedSnapshots.put(key, snapshot);
+		return snapshot;
+	}
+
+	/**
+	 * Saves the snapshots that were used since this cache was created to the file, if any snapshot was queried. The
+	 * loaded snapshots of the same devices (with a different API version or different layers) will be kept, but the
+	 * snapshots of other devices (e.g. because their driver was updated) will be discarded.
+	 */
+	void save() {
+		if (file == null || !changed) return;
+		try {
+			var parent = file.toAbsolutePath().getParent();
+			if (parent != null) Files.createDirectories(parent);
+			var tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+			try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+				var snapshots = new HashMap<>(usedSnapshots);
+				var usedDevices = new HashSet<String>();
+				for (String key : snapshots.keySet()) usedDevices.add(key.substring(0, key.indexOf('|')));
+				synchronized (loadedSnapshots) {
+					for (var entry : loadedSnapshots.entrySet()) {
+						String device = entry.getKey().substring(0, entry.getKey().indexOf('|'));
+						if (usedDevices.contains(device)) snapshots.putIfAbsent(entry.getKey(), entry.getValue());
+					}
+				}
+				output.writeInt(MAGIC);
+				output.writeInt(FORMAT_VERSION);
+				output.writeInt(snapshots.size());
+				for (var entry : snapshots.entrySet()) {
+					output.writeUTF(entry.getKey());
+					entry.getValue().write(output);
+				}
+			}
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+			changed = false;
+		} catch (IOException failed) {
+			if (printDiagnostics) {
+				System.out.println("CapabilityCache: failed to save " + file + ": " + failed.getMessage());
+			}
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package com.github.knokko.boiler.builders;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * The supported device extensions, supported features, and queue family properties of a physical device. The
+ * features and queue family properties are stored as the raw bytes of their structs, so that they can be copied
+ * into fresh structs when the snapshot is restored from a {@link CapabilityCache}.
+ */
+record CapabilitySnapshot(
+		Set<String> extensions, byte[] features10, byte[] features11, byte[] features12,
+		byte[] features13, byte[] features14, byte[] queueFamilies
+) {
+
+	/**
+	 * The maximum number of queue families that {@link #read} accepts. Real devices have far fewer queue families.
+	 */
+	static final int MAX_QUEUE_FAMILIES = 64;
+
+	static CapabilitySnapshot query(VkPhysicalDevice device, int apiVersion) {
+		var extensions = queryExtensions(device);
+		try (var stack = stackPush()) {
+			var features = SupportedFeatures.query(stack, device, apiVersion, true, true, true, true, true);
+
+			var pNumQueueFamilies = stack.callocInt(1);
+			vkGetPhysicalDeviceQueueFamilyProperties(device, pNumQueueFamilies, null);
+			var pQueueFamilies = VkQueueFamilyProperties.calloc(pNumQueueFamilies.get(0), stack);
+			vkGetPhysicalDeviceQueueFamilyProperties(device, pNumQueueFamilies, pQueueFamilies);
+
+			return new CapabilitySnapshot(
+					Collections.unmodifiableSet(extensions),
+					copy(features.features10() != null ? features.features10().address() : 0L, VkPhysicalDeviceFeatures.SIZEOF),
+					copy(features.features11() != null ? features.features11().address() : 0L, VkPhysicalDeviceVulkan11Features.SIZEOF),
+					copy(features.features12() != null ? features.features12().address() : 0L, VkPhysicalDeviceVulkan12Features.SIZEOF),
+					copy(features.features13() != null ? features.features13().address() : 0L, VkPhysicalDeviceVulkan13Features.SIZEOF),
+					copy(features.features14() != null ? features.features14().address() : 0L, VkPhysicalDeviceVulkan14Features.SIZEOF),
+					copy(pQueueFamilies.address(), pQueueFamilies.remaining() * VkQueueFamilyProperties.SIZEOF)
+			);
+		}
+	}
+
+	private static Set<String> queryExtensions(VkPhysicalDevice vkPhysicalDevice) {
+		try (var stack = stackPush()) {
+			var pNumExtensions = stack.callocInt(1);
+			assertVkSuccess(vkEnumerateDeviceExtensionProperties(
+					vkPhysicalDevice, (ByteBuffer) null, pNumExtensions, null
+			), "EnumerateDeviceExtensionProperties", "CapabilitySnapshot count");
+			int numExtensions = pNumExtensions.get(0);
+
+			// NOTE: Do NOT allocate this on the stack because this array can be dangerously large for the
+			// small default LWJGL stack
+			var pExtensions = VkExtensionProperties.calloc(numExtensions);
+			assertVkSuccess(vkEnumerateDeviceExtensionProperties(
+					vkPhysicalDevice, (ByteBuffer) null, pNumExtensions, pExtensions
+			), "EnumerateDeviceExtensionProperties", "CapabilitySnapshot extensions");
+
+			var extensions = new HashSet<String>(numExtensions);
+			for (int index = 0; index < numExtensions; index++) {
+				extensions.add(pExtensions.get(index).extensionNameString());
+			}
+			pExtensions.free();
+			return extensions;
+		}
+	}
+
+	private static byte[] copy(long address, int size) {
+		if (address == 0L) return null;
+		var bytes = new byte[size];
+		memByteBuffer(address, size).get(bytes);
+		return bytes;
+	}
+
+	private static void restore(long address, byte[] bytes) {
+		memByteBuffer(address, bytes.length).put(bytes);
+	}
+
+	/**
+	 * Copies the supported features into fresh structs that are allocated on {@code stack}
+	 */
+	SupportedFeatures supportedFeatures(MemoryStack stack) {
+		VkPhysicalDeviceFeatures supported10 = null;
+		VkPhysicalDeviceVulkan11Features supported11 = null;
+		VkPhysicalDeviceVulkan12Features supported12 = null;
+		VkPhysicalDeviceVulkan13Features supported13 = null;
+		VkPhysicalDeviceVulkan14Features supported14 = null;
+
+		if (features10 != null) {
+			supported10 = VkPhysicalDeviceFeatures.calloc(stack);
+			restore(supported10.address(), features10);
+		}
+		if (features11 != null) {
+			supported11 = VkPhysicalDeviceVulkan11Features.calloc(stack);
+			restore(supported11.address(), features11);
+			supported11.pNext(0L);
+		}
+		if (features12 != null) {
+			supported12 = VkPhysicalDeviceVulkan12Features.calloc(stack);
+			restore(supported12.address(), features12);
+			supported12.pNext(0L);
+		}
+		if (features13 != null) {
+			supported13 = VkPhysicalDeviceVulkan13Features.calloc(stack);
+			restore(supported13.address(), features13);
+			supported13.pNext(0L);
+		}
+		if (features14 != null) {
+			supported14 = VkPhysicalDeviceVulkan14Features.calloc(stack);
+			restore(supported14.address(), features14);
+			supported14.pNext(0L);
+		}
+		return new SupportedFeatures(supported10, supported11, supported12, supported13, supported14);
+	}
+
+	/**
+	 * Copies the queue family properties into a fresh buffer that is allocated on {@code stack}
+	 */
+	VkQueueFamilyProperties.Buffer queueFamilies(MemoryStack stack) {
+		var pQueueFamilies = VkQueueFamilyProperties.calloc(queueFamilies.length / VkQueueFamilyProperties.SIZEOF, stack);
+		restore(pQueueFamilies.address(), queueFamilies);
+		return pQueueFamilies;
+	}
+
+	void write(DataOutputStream output) throws IOException {
+		output.writeInt(extensions.size());
+		for (String extension : extensions) output.writeUTF(extension);
+		writeBytes(output, features10);
+		writeBytes(output, features11);
+		writeBytes(output, features12);
+		writeBytes(output, features13);
+		writeBytes(output, features14);
+		writeBytes(output, queueFamilies);
+	}
+
+	private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+		if (bytes == null) {
+			output.writeInt(-1);
+		} else {
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * Reads a snapshot that was written by {@link #write}
+	 * @throws IOException If the input is corrupt, or if it was written by an LWJGL version whose struct sizes are
+	 * different
+	 */
+	static CapabilitySnapshot read(DataInputStream input) throws IOException {
+		int numExtensions = input.readInt();
+		if (numExtensions < 0) throw new IOException("Invalid number of extensions: " + numExtensions);
+
+		// Don't use numExtensions as initial capacity, since a corrupt input could claim a huge number of extensions
+		var extensions = new HashSet<String>();
+		for (int counter = 0; counter < numExtensions; counter++) extensions.add(input.readUTF());
+
+		var features10 = readBytes(input, VkPhysicalDeviceFeatures.SIZEOF);
+		var features11 = readBytes(input, VkPhysicalDeviceVulkan11Features.SIZEOF);
+		var features12 = readBytes(input, VkPhysicalDeviceVulkan12Features.SIZEOF);
+		var features13 = readBytes(input, VkPhysicalDeviceVulkan13Features.SIZEOF);
+		var features14 = readBytes(input, VkPhysicalDeviceVulkan14Features.SIZEOF);
+
+		// Don't trust queueFamiliesSize blindly either, since it determines the size of the allocated array
+		int queueFamiliesSize = input.readInt();
+		if (queueFamiliesSize < 0 || queueFamiliesSize > MAX_QUEUE_FAMILIES * VkQueueFamilyProperties.SIZEOF ||
+				queueFamiliesSize % VkQueueFamilyProperties.SIZEOF != 0) {
+			throw new IOException("Invalid size of queue family properties: " + queueFamiliesSize);
+		}
+		var queueFamilies = new byte[queueFamiliesSize];
+		input.readFully(queueFamilies);
+
+		return new CapabilitySnapshot(
+				Collections.unmodifiableSet(extensions), features10, features11,
+				features12, features13, features14, queueFamilies
+		);
+	}
+
+	private static byte[] readBytes(DataInputStream input, int expectedSize) throws IOException {
+		int size = input.readInt();
+		if (size == -1) return null;
+		if (size != expectedSize) throw new IOException("Expected struct size " + expectedSize + ", but got " + size);
+		var bytes = new byte[size];
+		input.readFully(bytes);
+		return bytes;
+	}
+}
@@ -11,7 +11,7 @@ class ExtraBuilder {
 	final Set<String> instanceExtensions = new HashSet<>();
 	final Set<String> deviceExtensions = new HashSet<>();
 
-	boolean swapchainMaintenance, memoryPriority, pageableMemory;
+	boolean swapchainMaintenance, presentWait, memoryPriority, pageableMemory;
 
 	BoilerExtra build() {
 		return new BoilerExtra(
@@ -19,6 +19,7 @@ class ExtraBuilder {
 				Collections.unmodifiableSet(instanceExtensions),
 				Collections.unmodifiableSet(deviceExtensions),
 				swapchainMaintenance,
+				presentWait,
 				memoryPriority,
 				pageableMemory
 		);
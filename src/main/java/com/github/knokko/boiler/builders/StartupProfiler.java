@@ -0,0 +1,43 @@
+package com.github.knokko.boiler.builders;
+
+import com.github.knokko.boiler.builders.startup.StartupListener;
+import com.github.knokko.boiler.builders.startup.StartupSpan;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+
+class StartupProfiler {
+
+	private final Collection<StartupListener> listeners;
+	private final long startTime = System.nanoTime();
+
+	StartupProfiler(Collection<StartupListener> listeners) {
+		this.listeners = listeners;
+	}
+
+	long start() {
+		return System.nanoTime();
+	}
+
+	synchronized void finish(String name, long spanStartTime) {
+		if (listeners.isEmpty()) return;
+		var span = new StartupSpan(
+				name, Thread.currentThread().getName(),
+				spanStartTime - startTime, System.nanoTime() - spanStartTime
+		);
+		for (var listener : listeners) listener.onSpan(span);
+	}
+
+	<T> T span(String name, Supplier<T> phase) {
+		long spanStartTime = start();
+		T result = phase.get();
+		finish(name, spanStartTime);
+		return result;
+	}
+
+	void span(String name, Runnable phase) {
+		long spanStartTime = start();
+		phase.run();
+		finish(name, spanStartTime);
+	}
+}
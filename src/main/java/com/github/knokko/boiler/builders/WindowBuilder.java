@@ -34,6 +34,7 @@ public class WindowBuilder {
 	int hideFirstFrames;
 	int maxOldSwapchains;
 	long acquireTimeout = 100_000_000L;
+	long resizeCoalescingTime;
 	boolean printSurfaceFormats;
 	SurfaceFormatPicker surfaceFormatPicker = new SimpleSurfaceFormatPicker(
 			VK_FORMAT_R8G8B8A8_SRGB, VK_FORMAT_B8G8R8A8_SRGB
@@ -116,6 +117,19 @@ public class WindowBuilder {
 		return this;
 	}
 
+	/**
+	 * Sets the minimum time (in nanoseconds) between two swapchain recreations that are caused by resizing the
+	 * window. The default value is 0, which means that the swapchain will be recreated during the first acquire after
+	 * each resize. Using a larger value (e.g. 50 milliseconds) will coalesce resize storms into fewer recreations, and
+	 * gives <i>SwapchainResourceManager</i>s with a helper executor time to build the resources for the new size in
+	 * the background. Note that recreations that are needed because the swapchain is <i>out of date</i> will always
+	 * happen immediately.
+	 */
+	public WindowBuilder coalesceResizes(long resizeCoalescingTime) {
+		this.resizeCoalescingTime = resizeCoalescingTime;
+		return this;
+	}
+
 	/**
 	 * Sets the timeout (in nanoseconds) that will be supplied to <i>vkAcquireNextImageKHR</i>. When it returns
 	 * <i>VK_TIMEOUT</i> (e.g. because the window is hidden behind another window), the current frame will be skipped,
@@ -233,7 +247,7 @@ public class WindowBuilder {
 			var properties = new WindowProperties(
 					handle, title, vkSurface, hideFirstFrames, surfaceFormat.format(), surfaceFormat.colorSpace(),
 					swapchainImageUsage, compositeAlpha, hasSwapchainMaintenance, maxOldSwapchains, maxFramesInFlight,
-					acquireTimeout
+					acquireTimeout, resizeCoalescingTime
 			);
 			return new VkbWindow(properties, presentFamily, supportedPresentModes, presentModes);
 		}
@@ -0,0 +1,11 @@
+package com.github.knokko.boiler.builders.startup;
+
+/**
+ * Receives the timed phases of <i>BoilerBuilder.build()</i>. Since some phases run on other threads, this listener
+ * may be called from other threads, but never from multiple threads at the same time.
+ */
+@FunctionalInterface
+public interface StartupListener {
+
+	void onSpan(StartupSpan span);
+}
@@ -0,0 +1,23 @@
+package com.github.knokko.boiler.builders.startup;
+
+/**
+ * A timed phase of <i>BoilerBuilder.build()</i>, for instance the creation of the <i>VkInstance</i>
+ * @param name The name of the phase, for instance "instance" or "device-selection"
+ * @param threadName The name of the thread that executed the phase
+ * @param startNanos The time at which the phase started, in nanoseconds since the start of <i>build()</i>
+ * @param durationNanos The duration of the phase, in nanoseconds
+ */
+public record StartupSpan(String name, String threadName, long startNanos, long durationNanos) {
+
+	/**
+	 * @return The duration of the phase, in milliseconds
+	 */
+	public double durationMillis() {
+		return durationNanos / 1_000_000.0;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s took %.1f ms (on %s)", name, durationMillis(), threadName);
+	}
+}
@@ -15,6 +15,7 @@ import static org.lwjgl.system.MemoryUtil.*;
 import static org.lwjgl.vulkan.KHRDynamicRendering.vkCmdBeginRenderingKHR;
 import static org.lwjgl.vulkan.KHRDynamicRendering.vkCmdEndRenderingKHR;
 import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
 import static org.lwjgl.vulkan.VK12.VK_RESOLVE_MODE_NONE;
 import static org.lwjgl.vulkan.VK13.*;
 
@@ -537,6 +538,171 @@ public class CommandRecorder {
 		}
 	}
 
+	private VkImageMemoryBarrier.Buffer allocateMipBarriers(
+			int capacity, ResourceUsage oldUsage, ResourceUsage newUsage
+	) {
+		var pImageBarriers = reuseImageBarriers.allocate(capacity);
+		for (int index = 0; index < capacity; index++) {
+			var pImageBarrier = pImageBarriers.get(index);
+			pImageBarrier.sType$Default();
+			pImageBarrier.srcAccessMask(oldUsage != null ? oldUsage.accessMask() : 0);
+			pImageBarrier.dstAccessMask(newUsage.accessMask());
+			pImageBarrier.oldLayout(oldUsage != null ? oldUsage.imageLayout() : VK_IMAGE_LAYOUT_UNDEFINED);
+			pImageBarrier.newLayout(newUsage.imageLayout());
+			pImageBarrier.srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+			pImageBarrier.dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+		}
+		return pImageBarriers;
+	}
+
+	private void recordMipBarriers(
+			VkImageMemoryBarrier.Buffer pImageBarriers, int count, ResourceUsage oldUsage, ResourceUsage newUsage
+	) {
+		if (count == 0) return;
+		pImageBarriers.limit(count);
+		vkCmdPipelineBarrier(
+				commandBuffer, oldUsage != null ? oldUsage.stageMask() : VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT,
+				newUsage.stageMask(), 0, null, null, pImageBarriers
+		);
+	}
+
+	/**
+	 * Like {@link #bulkTransitionLayout}, but transitions <b>all</b> mip levels of each image (as indicated by
+	 * {@link VkbImage#mipLevels}) rather than only the first mip level. Up to 100 images will be targeted per call
+	 * to <b>vkCmdPipelineBarrier</b>.
+	 * @param oldUsage Contains the oldLayout, srcAccessMask, and srcStageMask. May be <i>null</i> to transition
+	 *                 from <i>VK_IMAGE_LAYOUT_UNDEFINED</i>
+	 * @param newUsage Contains the newLayout, dstAccessMask, and dstStageMask
+	 * @param images The images whose layout should be transitioned
+	 */
+	public void bulkTransitionMipLevels(ResourceUsage oldUsage, ResourceUsage newUsage, VkbImage... images) {
+		if (images.length == 0) return;
+		int capacity = Math.min(images.length, 100);
+		var pImageBarriers = allocateMipBarriers(capacity, oldUsage, newUsage);
+
+		int index = 0;
+		for (VkbImage image : images) {
+			var pImageBarrier = pImageBarriers.get(index);
+			pImageBarrier.image(image.vkImage);
+			instance.images.subresourceRange(stack, pImageBarrier.subresourceRange(), image.aspectMask);
+			pImageBarrier.subresourceRange().levelCount(image.mipLevels);
+
+			index += 1;
+			if (index == capacity) {
+				recordMipBarriers(pImageBarriers, index, oldUsage, newUsage);
+				index = 0;
+			}
+		}
+		recordMipBarriers(pImageBarriers, index, oldUsage, newUsage);
+	}
+
+	/**
+	 * <p>
+	 *     Fills mip levels 1 to {@code mipLevels - 1} of each image in {@code images} by repeatedly downscaling the
+	 *     previous mip level using <i>vkCmdBlitImage</i> with <i>VK_FILTER_LINEAR</i>. The barriers of all images are
+	 *     batched: each mip level needs only 1 <i>vkCmdPipelineBarrier</i> for up to 100 images.
+	 * </p>
+	 *
+	 * <p>
+	 *     Before calling this method, <b>all</b> mip levels of each image must be in the
+	 *     <i>VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL</i> layout (e.g. using {@link #bulkTransitionMipLevels}), and the
+	 *     content of mip level 0 must have been written (e.g. using {@link #copyBufferToImage}). After this method,
+	 *     all mip levels of each image will be transitioned to {@code finalUsage}. The images must have been created
+	 *     with <i>VK_IMAGE_USAGE_TRANSFER_SRC_BIT</i>, and their format must support blitting, which you can check
+	 *     using {@link com.github.knokko.boiler.images.BoilerImages#supportsMipmapBlits}.
+	 * </p>
+	 * @param finalUsage The usage to which all mip levels should be transitioned, typically
+	 *                   {@link ResourceUsage#shaderRead}
+	 * @param images The images whose mip levels should be generated
+	 */
+	public void bulkGenerateMipmaps(ResourceUsage finalUsage, VkbImage... images) {
+		if (images.length == 0) return;
+		int maxMipLevels = 1;
+		for (VkbImage image : images) maxMipLevels = Math.max(maxMipLevels, image.mipLevels);
+
+		int capacity = Math.min(images.length, 100);
+		var imageBlitRegions = reuseImageBlit.allocate(1);
+		var blitRegion = imageBlitRegions.get(0);
+		blitRegion.srcOffsets().get(0).set(0, 0, 0);
+		blitRegion.dstOffsets().get(0).set(0, 0, 0);
+
+		for (int level = 1; level < maxMipLevels; level++) {
+			var pImageBarriers = allocateMipBarriers(
+					capacity, ResourceUsage.TRANSFER_DEST, ResourceUsage.TRANSFER_SOURCE
+			);
+			int index = 0;
+			for (VkbImage image : images) {
+				if (image.mipLevels <= level) continue;
+				var pImageBarrier = pImageBarriers.get(index);
+				pImageBarrier.image(image.vkImage);
+				instance.images.subresourceRange(stack, pImageBarrier.subresourceRange(), image.aspectMask);
+				pImageBarrier.subresourceRange().baseMipLevel(level - 1);
+
+				index += 1;
+				if (index == capacity) {
+					recordMipBarriers(pImageBarriers, index, ResourceUsage.TRANSFER_DEST, ResourceUsage.TRANSFER_SOURCE);
+					index = 0;
+				}
+			}
+			recordMipBarriers(pImageBarriers, index, ResourceUsage.TRANSFER_DEST, ResourceUsage.TRANSFER_SOURCE);
+
+			for (VkbImage image : images) {
+				if (image.mipLevels <= level) continue;
+
+				instance.images.subresourceLayers(blitRegion.srcSubresource(), image.aspectMask);
+				blitRegion.srcSubresource().mipLevel(level - 1);
+				blitRegion.srcOffsets().get(1).set(
+						Math.max(1, image.width >> (level - 1)), Math.max(1, image.height >> (level - 1)), 1
+				);
+				instance.images.subresourceLayers(blitRegion.dstSubresource(), image.aspectMask);
+				blitRegion.dstSubresource().mipLevel(level);
+				blitRegion.dstOffsets().get(1).set(
+						Math.max(1, image.width >> level), Math.max(1, image.height >> level), 1
+				);
+
+				vkCmdBlitImage(
+						commandBuffer, image.vkImage, VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+						image.vkImage, VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, imageBlitRegions, VK_FILTER_LINEAR
+				);
+			}
+		}
+
+		// All mip levels except the last one are now in the TRANSFER_SRC layout
+		var pImageBarriers = allocateMipBarriers(capacity, ResourceUsage.TRANSFER_SOURCE, finalUsage);
+		int index = 0;
+		for (VkbImage image : images) {
+			if (image.mipLevels == 1) continue;
+			var pImageBarrier = pImageBarriers.get(index);
+			pImageBarrier.image(image.vkImage);
+			instance.images.subresourceRange(stack, pImageBarrier.subresourceRange(), image.aspectMask);
+			pImageBarrier.subresourceRange().levelCount(image.mipLevels - 1);
+
+			index += 1;
+			if (index == capacity) {
+				recordMipBarriers(pImageBarriers, index, ResourceUsage.TRANSFER_SOURCE, finalUsage);
+				index = 0;
+			}
+		}
+		recordMipBarriers(pImageBarriers, index, ResourceUsage.TRANSFER_SOURCE, finalUsage);
+
+		// The last mip level of each image is still in the TRANSFER_DST layout
+		pImageBarriers = allocateMipBarriers(capacity, ResourceUsage.TRANSFER_DEST, finalUsage);
+		index = 0;
+		for (VkbImage image : images) {
+			var pImageBarrier = pImageBarriers.get(index);
+			pImageBarrier.image(image.vkImage);
+			instance.images.subresourceRange(stack, pImageBarrier.subresourceRange(), image.aspectMask);
+			pImageBarrier.subresourceRange().baseMipLevel(image.mipLevels - 1);
+
+			index += 1;
+			if (index == capacity) {
+				recordMipBarriers(pImageBarriers, index, ResourceUsage.TRANSFER_DEST, finalUsage);
+				index = 0;
+			}
+		}
+		recordMipBarriers(pImageBarriers, index, ResourceUsage.TRANSFER_DEST, finalUsage);
+	}
+
 	/**
 	 * Populates the given <i>VkRenderingAttachmentInfo</i> for a color image. This is typically used right before
 	 * <i>beginSimpleDynamicRendering</i>
@@ -684,6 +850,27 @@ public class CommandRecorder {
 		vkCmdBindIndexBuffer(commandBuffer, indexBuffer.vkBuffer, indexBuffer.offset, indexType);
 	}
 
+	/**
+	 * Calls <i>vkCmdDrawIndexedIndirectCount(KHR)</i>, which requires either Vulkan 1.2 with the
+	 * <i>drawIndirectCount</i> feature, or the <i>VK_KHR_draw_indirect_count</i> extension.
+	 * @param commands The buffer (segment) containing the tightly-packed <i>VkDrawIndexedIndirectCommand</i>s
+	 * @param count The buffer (segment) whose first 4 bytes contain the number of draw commands
+	 * @param maxDrawCount The maximum number of draw commands that will be executed
+	 */
+	public void drawIndexedIndirectCount(VkbBuffer commands, VkbBuffer count, int maxDrawCount) {
+		if (instance.apiVersion >= VK_API_VERSION_1_2) {
+			VK12.vkCmdDrawIndexedIndirectCount(
+					commandBuffer, commands.vkBuffer, commands.offset, count.vkBuffer, count.offset,
+					maxDrawCount, VkDrawIndexedIndirectCommand.SIZEOF
+			);
+		} else {
+			KHRDrawIndirectCount.vkCmdDrawIndexedIndirectCountKHR(
+					commandBuffer, commands.vkBuffer, commands.offset, count.vkBuffer, count.offset,
+					maxDrawCount, VkDrawIndexedIndirectCommand.SIZEOF
+			);
+		}
+	}
+
 	/**
 	 * Calls <i>vkCmdEndRendering(KHR)</i>
 	 */
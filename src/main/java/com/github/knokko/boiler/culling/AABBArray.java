@@ -0,0 +1,77 @@
+package com.github.knokko.boiler.culling;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of axis-aligned bounding boxes, stored in structure-of-arrays layout: the i-th box is
+ * ({@code minX[i]}, {@code minY[i]}, {@code minZ[i]}) to ({@code maxX[i]}, {@code maxY[i]}, {@code maxZ[i]}).
+ * This layout allows {@link FrustumCuller#cullAABBs} to test many boxes without creating any objects. The arrays may
+ * be replaced by larger arrays when boxes are added, so you should not hold on to them.
+ */
+public class AABBArray {
+
+	public float[] minX, minY, minZ, maxX, maxY, maxZ;
+	private int size;
+
+	/**
+	 * @param initialCapacity The initial length of the arrays
+	 */
+	public AABBArray(int initialCapacity) {
+		this.minX = new float[initialCapacity];
+		this.minY = new float[initialCapacity];
+		this.minZ = new float[initialCapacity];
+		this.maxX = new float[initialCapacity];
+		this.maxY = new float[initialCapacity];
+		this.maxZ = new float[initialCapacity];
+	}
+
+	/**
+	 * Appends a box, and returns its index
+	 */
+	public int add(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		if (size == this.minX.length) {
+			int newCapacity = Math.max(16, 2 * size);
+			this.minX = Arrays.copyOf(this.minX, newCapacity);
+			this.minY = Arrays.copyOf(this.minY, newCapacity);
+			this.minZ = Arrays.copyOf(this.minZ, newCapacity);
+			this.maxX = Arrays.copyOf(this.maxX, newCapacity);
+			this.maxY = Arrays.copyOf(this.maxY, newCapacity);
+			this.maxZ = Arrays.copyOf(this.maxZ, newCapacity);
+		}
+		set(size, minX, minY, minZ, maxX, maxY, maxZ);
+		return size++;
+	}
+
+	/**
+	 * Appends {@code box}, and returns its index
+	 */
+	public int add(FrustumCuller.AABB box) {
+		return add(box.minX(), box.minY(), box.minZ(), box.maxX(), box.maxY(), box.maxZ());
+	}
+
+	/**
+	 * Overwrites the box at the given index
+	 */
+	public void set(int index, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		this.minX[index] = minX;
+		this.minY[index] = minY;
+		this.minZ[index] = minZ;
+		this.maxX[index] = maxX;
+		this.maxY[index] = maxY;
+		this.maxZ[index] = maxZ;
+	}
+
+	/**
+	 * @return The number of boxes that have been added
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all boxes, but keeps the arrays, so they can be reused
+	 */
+	public void clear() {
+		size = 0;
+	}
+}
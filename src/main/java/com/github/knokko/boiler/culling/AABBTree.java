@@ -0,0 +1,492 @@
+package com.github.knokko.boiler.culling;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * <p>
+ *     A dynamic bounding volume hierarchy (BVH) of axis-aligned bounding boxes, which can be used to cull many objects
+ *     at once with a {@link FrustumCuller}. All nodes are stored in flat arrays, and the tree is kept balanced using
+ *     tree rotations, so boxes can be inserted, updated, and removed at any time.
+ * </p>
+ *
+ * <p>
+ *     Each leaf stores a <i>fat</i> box, which is the box that was inserted, enlarged by {@code margin} in every
+ *     direction. When a box is updated, but its new bounds are still contained by its fat box, the tree doesn't
+ *     need to be modified. The culling methods test the fat boxes, so they may return a few objects that are just
+ *     outside the frustum.
+ * </p>
+ *
+ * <p>
+ *     This class is <b>not</b> thread-safe: you must not modify the tree while it is being culled. The culling
+ *     methods themselves may be called concurrently.
+ * </p>
+ */
+public class AABBTree {
+
+	private static final int NULL = -1;
+
+	private final float margin;
+
+	private float[] minX, minY, minZ, maxX, maxY, maxZ;
+	private int[] parent, child1, child2, height, values;
+
+	private int root = NULL;
+	private int freeList = NULL;
+	private int leafCount;
+
+	/**
+	 * @param initialCapacity The initial number of nodes for which space is allocated. The tree will grow when needed.
+	 * @param margin The amount by which inserted boxes are enlarged in each direction, see the class documentation
+	 */
+	public AABBTree(int initialCapacity, float margin) {
+		if (margin < 0f) throw new IllegalArgumentException("Margin (" + margin + ") must not be negative");
+		this.margin = margin;
+
+		int capacity = max(initialCapacity, 16);
+		this.minX = new float[capacity];
+		this.minY = new float[capacity];
+		this.minZ = new float[capacity];
+		this.maxX = new float[capacity];
+		this.maxY = new float[capacity];
+		this.maxZ = new float[capacity];
+		this.parent = new int[capacity];
+		this.child1 = new int[capacity];
+		this.child2 = new int[capacity];
+		this.height = new int[capacity];
+		this.values = new int[capacity];
+		linkFreeNodes(0, capacity);
+	}
+
+	private void linkFreeNodes(int minNode, int boundNode) {
+		for (int node = minNode; node < boundNode; node++) {
+			parent[node] = node + 1 < boundNode ? node + 1 : freeList;
+			height[node] = -1;
+		}
+		freeList = minNode;
+	}
+
+	private int allocateNode() {
+		if (freeList == NULL) {
+			int oldCapacity = parent.length;
+			int newCapacity = 2 * oldCapacity;
+			minX = Arrays.copyOf(minX, newCapacity);
+			minY = Arrays.copyOf(minY, newCapacity);
+			minZ = Arrays.copyOf(minZ, newCapacity);
+			maxX = Arrays.copyOf(maxX, newCapacity);
+			maxY = Arrays.copyOf(maxY, newCapacity);
+			maxZ = Arrays.copyOf(maxZ, newCapacity);
+			parent = Arrays.copyOf(parent, newCapacity);
+			child1 = Arrays.copyOf(child1, newCapacity);
+			child2 = Arrays.copyOf(child2, newCapacity);
+			height = Arrays.copyOf(height, newCapacity);
+			values = Arrays.copyOf(values, newCapacity);
+			linkFreeNodes(oldCapacity, newCapacity);
+		}
+
+		int node = freeList;
+		freeList = parent[node];
+		parent[node] = NULL;
+		child1[node] = NULL;
+		child2[node] = NULL;
+		height[node] = 0;
+		return node;
+	}
+
+	private void freeNode(int node) {
+		parent[node] = freeList;
+		height[node] = -1;
+		freeList = node;
+	}
+
+	private boolean isLeaf(int node) {
+		return child1[node] == NULL;
+	}
+
+	private void checkProxy(int proxy) {
+		if (proxy < 0 || proxy >= parent.length || height[proxy] != 0) {
+			throw new IllegalArgumentException("Invalid proxy " + proxy);
+		}
+	}
+
+	/**
+	 * Inserts a box into the tree
+	 * @param value An arbitrary value that will be returned by the culling methods when this box is visible, typically
+	 *              the index of the object in your own data structures
+	 * @return The proxy of the box, which is needed to update or remove it
+	 */
+	public int insert(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int value) {
+		int leaf = allocateNode();
+		setFatBounds(leaf, minX, minY, minZ, maxX, maxY, maxZ);
+		values[leaf] = value;
+		insertLeaf(leaf);
+		leafCount += 1;
+		return leaf;
+	}
+
+	/**
+	 * Inserts {@code box} into the tree, see {@link #insert(float, float, float, float, float, float, int)}
+	 */
+	public int insert(FrustumCuller.AABB box, int value) {
+		return insert(box.minX(), box.minY(), box.minZ(), box.maxX(), box.maxY(), box.maxZ(), value);
+	}
+
+	/**
+	 * Removes the box with the given proxy from the tree. The proxy becomes invalid, and may be reused by a later
+	 * insertion.
+	 */
+	public void remove(int proxy) {
+		checkProxy(proxy);
+		removeLeaf(proxy);
+		freeNode(proxy);
+		leafCount -= 1;
+	}
+
+	/**
+	 * Changes the bounds of the box with the given proxy. When the new bounds are still contained by the fat box of
+	 * the proxy, this method does nothing.
+	 * @return true if the tree was restructured, false if the fat box was still large enough
+	 */
+	public boolean update(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		checkProxy(proxy);
+		if (this.minX[proxy] <= minX && this.minY[proxy] <= minY && this.minZ[proxy] <= minZ &&
+				this.maxX[proxy] >= maxX && this.maxY[proxy] >= maxY && this.maxZ[proxy] >= maxZ) return false;
+
+		removeLeaf(proxy);
+		setFatBounds(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+		insertLeaf(proxy);
+		return true;
+	}
+
+	/**
+	 * @return The value that was passed to {@link #insert} when the proxy was created
+	 */
+	public int getValue(int proxy) {
+		checkProxy(proxy);
+		return values[proxy];
+	}
+
+	/**
+	 * @return The number of boxes in the tree
+	 */
+	public int size() {
+		return leafCount;
+	}
+
+	/**
+	 * @return The height of the tree: 0 when it contains at most 1 box
+	 */
+	public int height() {
+		return root == NULL ? 0 : height[root];
+	}
+
+	private void setFatBounds(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		if (minX > maxX || minY > maxY || minZ > maxZ) throw new IllegalArgumentException("Invalid bounds");
+		this.minX[node] = minX - margin;
+		this.minY[node] = minY - margin;
+		this.minZ[node] = minZ - margin;
+		this.maxX[node] = maxX + margin;
+		this.maxY[node] = maxY + margin;
+		this.maxZ[node] = maxZ + margin;
+	}
+
+	private void setUnionBounds(int node, int left, int right) {
+		minX[node] = min(minX[left], minX[right]);
+		minY[node] = min(minY[left], minY[right]);
+		minZ[node] = min(minZ[left], minZ[right]);
+		maxX[node] = max(maxX[left], maxX[right]);
+		maxY[node] = max(maxY[left], maxY[right]);
+		maxZ[node] = max(maxZ[left], maxZ[right]);
+	}
+
+	private static float surfaceArea(float width, float height, float depth) {
+		return 2f * (width * height + height * depth + depth * width);
+	}
+
+	private float surfaceArea(int node) {
+		return surfaceArea(maxX[node] - minX[node], maxY[node] - minY[node], maxZ[node] - minZ[node]);
+	}
+
+	private float unionSurfaceArea(int left, int right) {
+		return surfaceArea(
+				max(maxX[left], maxX[right]) - min(minX[left], minX[right]),
+				max(maxY[left], maxY[right]) - min(minY[left], minY[right]),
+				max(maxZ[left], maxZ[right]) - min(minZ[left], minZ[right])
+		);
+	}
+
+	private float descendCost(int leaf, int child, float inheritanceCost) {
+		float cost = unionSurfaceArea(leaf, child) + inheritanceCost;
+		if (!isLeaf(child)) cost -= surfaceArea(child);
+		return cost;
+	}
+
+	private void insertLeaf(int leaf) {
+		if (root == NULL) {
+			root = leaf;
+			parent[leaf] = NULL;
+			return;
+		}
+
+		// Find the best sibling for the new leaf, using the surface area heuristic
+		int sibling = root;
+		while (!isLeaf(sibling)) {
+			float area = surfaceArea(sibling);
+			float combinedArea = unionSurfaceArea(sibling, leaf);
+
+			// The cost of creating a new parent for this node and the new leaf
+			float cost = 2f * combinedArea;
+
+			// The minimum cost of pushing the leaf further down the tree
+			float inheritanceCost = 2f * (combinedArea - area);
+			float cost1 = descendCost(leaf, child1[sibling], inheritanceCost);
+			float cost2 = descendCost(leaf, child2[sibling], inheritanceCost);
+
+			if (cost < cost1 && cost < cost2) break;
+			sibling = cost1 < cost2 ? child1[sibling] : child2[sibling];
+		}
+
+		int oldParent = parent[sibling];
+		int newParent = allocateNode();
+		parent[newParent] = oldParent;
+		setUnionBounds(newParent, leaf, sibling);
+		height[newParent] = height[sibling] + 1;
+		child1[newParent] = sibling;
+		child2[newParent] = leaf;
+		parent[sibling] = newParent;
+		parent[leaf] = newParent;
+
+		if (oldParent == NULL) root = newParent;
+		else if (child1[oldParent] == sibling) child1[oldParent] = newParent;
+		else child2[oldParent] = newParent;
+
+		refitAncestors(parent[leaf]);
+	}
+
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			root = NULL;
+			return;
+		}
+
+		int oldParent = parent[leaf];
+		int grandParent = parent[oldParent];
+		int sibling = child1[oldParent] == leaf ? child2[oldParent] : child1[oldParent];
+		freeNode(oldParent);
+		parent[sibling] = grandParent;
+
+		if (grandParent == NULL) {
+			root = sibling;
+		} else {
+			if (child1[grandParent] == oldParent) child1[grandParent] = sibling;
+			else child2[grandParent] = sibling;
+			refitAncestors(grandParent);
+		}
+	}
+
+	private void refitAncestors(int node) {
+		while (node != NULL) {
+			node = balance(node);
+			int left = child1[node];
+			int right = child2[node];
+			height[node] = 1 + max(height[left], height[right]);
+			setUnionBounds(node, left, right);
+			node = parent[node];
+		}
+	}
+
+	private void replaceChild(int oldParent, int oldChild, int newChild) {
+		if (oldParent == NULL) root = newChild;
+		else if (child1[oldParent] == oldChild) child1[oldParent] = newChild;
+		else child2[oldParent] = newChild;
+	}
+
+	/**
+	 * Performs a left or right rotation if node {@code a} is imbalanced
+	 * @return The node that took the place of {@code a}
+	 */
+	private int balance(int a) {
+		if (isLeaf(a) || height[a] < 2) return a;
+
+		int b = child1[a];
+		int c = child2[a];
+		int balance = height[c] - height[b];
+
+		// Rotate c up
+		if (balance > 1) {
+			int f = child1[c];
+			int g = child2[c];
+
+			child1[c] = a;
+			parent[c] = parent[a];
+			parent[a] = c;
+			replaceChild(parent[c], a, c);
+
+			int keep = height[f] > height[g] ? f : g;
+			int move = keep == f ? g : f;
+			child2[c] = keep;
+			child2[a] = move;
+			parent[move] = a;
+			setUnionBounds(a, b, move);
+			setUnionBounds(c, a, keep);
+			height[a] = 1 + max(height[b], height[move]);
+			height[c] = 1 + max(height[a], height[keep]);
+			return c;
+		}
+
+		// Rotate b up
+		if (balance < -1) {
+			int d = child1[b];
+			int e = child2[b];
+
+			child1[b] = a;
+			parent[b] = parent[a];
+			parent[a] = b;
+			replaceChild(parent[b], a, b);
+
+			int keep = height[d] > height[e] ? d : e;
+			int move = keep == d ? e : d;
+			child2[b] = keep;
+			child1[a] = move;
+			parent[move] = a;
+			setUnionBounds(a, c, move);
+			setUnionBounds(b, a, keep);
+			height[a] = 1 + max(height[c], height[move]);
+			height[b] = 1 + max(height[a], height[keep]);
+			return b;
+		}
+
+		return a;
+	}
+
+	/**
+	 * Collects the values of all boxes that could be visible by {@code culler}, in no particular order. Nodes
+	 * that are completely in front of a frustum plane will not test their children against that plane, and nodes
+	 * that are completely inside the frustum will not test their children at all.
+	 * @return The values of the (potentially) visible boxes
+	 */
+	public int[] cull(FrustumCuller culler) {
+		var result = new IntList(64);
+		int rootMask = root == NULL ? -1 : testNode(culler, root, FrustumCuller.ALL_PLANES);
+		if (rootMask != -1) traverse(culler, root, rootMask, result, new IntList(64));
+		return result.toArray();
+	}
+
+	/**
+	 * Does the same as {@link #cull}, but splits the traversal of large trees over multiple threads
+	 */
+	public int[] cullParallel(FrustumCuller culler) {
+		int rootMask = root == NULL ? -1 : testNode(culler, root, FrustumCuller.ALL_PLANES);
+		if (rootMask == -1) return new int[0];
+
+		// Split the top of the tree into enough subtrees to keep all threads busy
+		int targetSubtrees = 8 * Runtime.getRuntime().availableProcessors();
+		var subtrees = new IntList(2 * targetSubtrees);
+		var result = new IntList(64);
+		subtrees.add(root);
+		subtrees.add(rootMask);
+		for (int iteration = 0; iteration < 10 && subtrees.size < 2 * targetSubtrees; iteration++) {
+			var nextSubtrees = new IntList(2 * subtrees.size);
+			for (int index = 0; index < subtrees.size; index += 2) {
+				int node = subtrees.values[index];
+				int planeMask = subtrees.values[index + 1];
+				if (isLeaf(node) || planeMask == 0) {
+					nextSubtrees.add(node);
+					nextSubtrees.add(planeMask);
+					continue;
+				}
+				for (int child : new int[] { child1[node], child2[node] }) {
+					int childMask = testNode(culler, child, planeMask);
+					if (childMask == -1) continue;
+					if (isLeaf(child)) result.add(values[child]);
+					else {
+						nextSubtrees.add(child);
+						nextSubtrees.add(childMask);
+					}
+				}
+			}
+			subtrees = nextSubtrees;
+		}
+
+		var finalSubtrees = subtrees;
+		var partialResults = IntStream.range(0, finalSubtrees.size / 2).parallel().mapToObj(index -> {
+			var partialResult = new IntList(64);
+			traverse(
+					culler, finalSubtrees.values[2 * index], finalSubtrees.values[2 * index + 1],
+					partialResult, new IntList(64)
+			);
+			return partialResult;
+		}).toList();
+
+		for (var partialResult : partialResults) result.addAll(partialResult);
+		return result.toArray();
+	}
+
+	private int testNode(FrustumCuller culler, int node, int planeMask) {
+		if (planeMask == 0) return 0;
+		return culler.testAABB(
+				minX[node], minY[node], minZ[node], maxX[node], maxY[node], maxZ[node], planeMask
+		);
+	}
+
+	/**
+	 * Collects the values of all visible leaves in the subtree of {@code startNode}, which is already known to
+	 * intersect the frustum. Its children still need to be tested against the planes in {@code startMask}.
+	 */
+	private void traverse(FrustumCuller culler, int startNode, int startMask, IntList result, IntList stack) {
+		stack.add(startNode);
+		stack.add(startMask);
+		while (stack.size > 0) {
+			int planeMask = stack.values[--stack.size];
+			int node = stack.values[--stack.size];
+			if (isLeaf(node)) {
+				result.add(values[node]);
+				continue;
+			}
+
+			int left = child1[node];
+			int leftMask = testNode(culler, left, planeMask);
+			if (leftMask != -1) {
+				stack.add(left);
+				stack.add(leftMask);
+			}
+
+			int right = child2[node];
+			int rightMask = testNode(culler, right, planeMask);
+			if (rightMask != -1) {
+				stack.add(right);
+				stack.add(rightMask);
+			}
+		}
+	}
+
+	private static class IntList {
+
+		int[] values;
+		int size;
+
+		IntList(int initialCapacity) {
+			this.values = new int[initialCapacity];
+		}
+
+		void add(int value) {
+			if (size == values.length) values = Arrays.copyOf(values, 2 * size);
+			values[size++] = value;
+		}
+
+		void addAll(IntList other) {
+			if (size + other.size > values.length) {
+				values = Arrays.copyOf(values, max(2 * values.length, size + other.size));
+			}
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
@@ -2,6 +2,9 @@ package com.github.knokko.boiler.culling;
 
 import org.joml.Vector3f;
 
+import java.nio.ByteBuffer;
+import java.util.stream.IntStream;
+
 import static org.joml.Math.*;
 
 public class FrustumCuller {
@@ -37,8 +40,35 @@ public class FrustumCuller {
 		return new Vector3f(sin(toRadians(yaw)) * yawDamper, sin(toRadians(pitch)), -cos(toRadians(yaw)) * yawDamper);
 	}
 
+	/**
+	 * {@link #cullAABBs} will use multiple threads when it needs to test at least this many boxes
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 15;
+
+	/**
+	 * The number of boxes that each thread of {@link #cullAABBs} should test at once. This must be a multiple of 64,
+	 * so that no two threads write to the same element of the visibility bitset.
+	 */
+	private static final int BOXES_PER_TASK = 1 << 13;
+
+	/**
+	 * The number of bytes that {@link #putPlanes} writes
+	 */
+	public static final int PLANES_SIZE = 6 * 4 * 4;
+
+	/**
+	 * The plane mask that contains all 6 planes, see {@link #testAABB}
+	 */
+	static final int ALL_PLANES = 0b111111;
+
 	private final Plane topFace, bottomFace, rightFace, leftFace, farFace, nearFace;
 
+	/**
+	 * The components of the normal vectors (and their absolute values) and distances of the 6 planes, which are used
+	 * by {@link #cullAABBs}
+	 */
+	private final float[] normalX, normalY, normalZ, absNormalX, absNormalY, absNormalZ, distances;
+
 	/**
 	 * Creates a <i>FrustumCuller</i> for a camera located at <i>cameraPosition</i> with the given rotation and
 	 * parameters.
@@ -106,6 +136,24 @@ public class FrustumCuller {
 		this.bottomFace = new Plane(cameraPosition,
 				cross(rightDirection, add(frontTimesFar, scale(downDirection, halfVerticalSide)))
 		);
+
+		Plane[] planes = { nearFace, farFace, leftFace, rightFace, bottomFace, topFace };
+		this.normalX = new float[planes.length];
+		this.normalY = new float[planes.length];
+		this.normalZ = new float[planes.length];
+		this.absNormalX = new float[planes.length];
+		this.absNormalY = new float[planes.length];
+		this.absNormalZ = new float[planes.length];
+		this.distances = new float[planes.length];
+		for (int index = 0; index < planes.length; index++) {
+			normalX[index] = planes[index].normal.x;
+			normalY[index] = planes[index].normal.y;
+			normalZ[index] = planes[index].normal.z;
+			absNormalX[index] = abs(normalX[index]);
+			absNormalY[index] = abs(normalY[index]);
+			absNormalZ[index] = abs(normalZ[index]);
+			distances[index] = planes[index].distance;
+		}
 	}
 
 	/**
@@ -120,6 +168,128 @@ public class FrustumCuller {
 				&& isOnForwardPlane(box, bottomFace) && isOnForwardPlane(box, topFace));
 	}
 
+	/**
+	 * Tests all boxes of {@code boxes}, and stores the result in the {@code visible} bitset: bit {@code i % 64} of
+	 * {@code visible[i / 64]} will be 1 if box {@code i} could be visible, and 0 if it can be culled. The result is
+	 * the same as calling {@link #shouldCullAABB} for each box, but much faster when there are many boxes.
+	 * @param boxes The boxes to be tested
+	 * @param visible The visibility bitset, whose length must be at least {@code (boxes.size() + 63) / 64}
+	 */
+	public void cullAABBs(AABBArray boxes, long[] visible) {
+		cullAABBs(
+				boxes.minX, boxes.minY, boxes.minZ, boxes.maxX, boxes.maxY, boxes.maxZ,
+				0, boxes.size(), visible
+		);
+	}
+
+	/**
+	 * Tests {@code count} boxes stored in structure-of-arrays layout, starting at index {@code offset}. The result is
+	 * stored in the {@code visible} bitset: bit {@code i % 64} of {@code visible[i / 64]} will be 1 if box
+	 * {@code offset + i} could be visible, and 0 if it can be culled. All other bits of the first
+	 * {@code (count + 63) / 64} elements of {@code visible} will be cleared.
+	 * <p>
+	 *     The boxes are tested without any allocations, and large batches are split over multiple threads.
+	 * </p>
+	 */
+	public void cullAABBs(
+			float[] minX, float[] minY, float[] minZ, float[] maxX, float[] maxY, float[] maxZ,
+			int offset, int count, long[] visible
+	) {
+		int numWords = (count + 63) / 64;
+		if (visible.length < numWords) {
+			throw new IllegalArgumentException("Visibility bitset has length " + visible.length + ", but " + count +
+					" boxes need a length of at least " + numWords);
+		}
+		if (count < PARALLEL_THRESHOLD) {
+			cullRange(minX, minY, minZ, maxX, maxY, maxZ, offset, 0, count, visible);
+			return;
+		}
+
+		int numTasks = (count + BOXES_PER_TASK - 1) / BOXES_PER_TASK;
+		IntStream.range(0, numTasks).parallel().forEach(taskIndex -> {
+			int minIndex = taskIndex * BOXES_PER_TASK;
+			int boundIndex = Math.min(count, minIndex + BOXES_PER_TASK);
+			cullRange(minX, minY, minZ, maxX, maxY, maxZ, offset, minIndex, boundIndex, visible);
+		});
+	}
+
+	/**
+	 * Tests the boxes {@code offset + minIndex} up to (but not including) {@code offset + boundIndex}.
+	 * {@code minIndex} must be a multiple of 64.
+	 */
+	private void cullRange(
+			float[] minX, float[] minY, float[] minZ, float[] maxX, float[] maxY, float[] maxZ,
+			int offset, int minIndex, int boundIndex, long[] visible
+	) {
+		for (int wordStart = minIndex; wordStart < boundIndex; wordStart += 64) {
+			int wordBound = Math.min(boundIndex, wordStart + 64);
+			long word = 0L;
+			for (int index = wordStart; index < wordBound; index++) {
+				int box = offset + index;
+				float halfWidth = (maxX[box] - minX[box]) * 0.5f;
+				float halfHeight = (maxY[box] - minY[box]) * 0.5f;
+				float halfDepth = (maxZ[box] - minZ[box]) * 0.5f;
+				float centerX = (minX[box] + maxX[box]) * 0.5f;
+				float centerY = (minY[box] + maxY[box]) * 0.5f;
+				float centerZ = (minZ[box] + maxZ[box]) * 0.5f;
+
+				boolean isVisible = true;
+				for (int plane = 0; plane < 6; plane++) {
+					float radius = halfWidth * absNormalX[plane] + halfHeight * absNormalY[plane] +
+							halfDepth * absNormalZ[plane];
+					float distance = normalX[plane] * centerX + (normalY[plane] * centerY +
+							normalZ[plane] * centerZ) - distances[plane];
+					isVisible &= -radius <= distance;
+				}
+				word |= (isVisible ? 1L : 0L) << (index - wordStart);
+			}
+			visible[wordStart / 64] = word;
+		}
+	}
+
+	/**
+	 * Stores the 6 planes of this frustum in {@code destination}, which is needed for culling on the GPU. Each plane
+	 * is stored as a <i>vec4</i>, where the <i>xyz</i> components are the normal vector, and the <i>w</i> component is
+	 * the distance. A box is in front of a plane if
+	 * {@code dot(normal, center) - distance >= -dot(halfExtents, abs(normal))}. The position of
+	 * {@code destination} will be advanced by {@link #PLANES_SIZE} bytes.
+	 */
+	public void putPlanes(ByteBuffer destination) {
+		for (int plane = 0; plane < 6; plane++) {
+			destination.putFloat(normalX[plane]);
+			destination.putFloat(normalY[plane]);
+			destination.putFloat(normalZ[plane]);
+			destination.putFloat(distances[plane]);
+		}
+	}
+
+	/**
+	 * Tests a box against the planes in {@code planeMask} (bit {@code i} corresponds to plane {@code i}). This is used
+	 * for hierarchical culling, where the children of a box that is completely in front of a plane don't need to be
+	 * tested against that plane.
+	 * @return -1 if the box can be culled, or otherwise {@code planeMask} without the planes that the box is
+	 * completely in front of
+	 */
+	int testAABB(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int planeMask) {
+		float halfWidth = (maxX - minX) * 0.5f;
+		float halfHeight = (maxY - minY) * 0.5f;
+		float halfDepth = (maxZ - minZ) * 0.5f;
+		float centerX = (minX + maxX) * 0.5f;
+		float centerY = (minY + maxY) * 0.5f;
+		float centerZ = (minZ + maxZ) * 0.5f;
+
+		for (int plane = 0; plane < 6; plane++) {
+			if ((planeMask & (1 << plane)) == 0) continue;
+			float radius = halfWidth * absNormalX[plane] + halfHeight * absNormalY[plane] +
+					halfDepth * absNormalZ[plane];
+			float distance = normalX[plane] * centerX + (normalY[plane] * centerY +
+					normalZ[plane] * centerZ) - distances[plane];
+			if (!(-radius <= distance)) return -1;
+			if (distance >= radius) planeMask &= ~(1 << plane);
+		}
+		return planeMask;
+	}
+
 	public record AABB(
 			float minX, float minY, float minZ,
 			float maxX, float maxY, float maxZ
@@ -0,0 +1,212 @@
+package com.github.knokko.boiler.culling;
+
+import com.github.knokko.boiler.BoilerInstance;
+import com.github.knokko.boiler.buffers.VkbBuffer;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.descriptors.DescriptorSetLayoutBuilder;
+import com.github.knokko.boiler.descriptors.DescriptorUpdater;
+import com.github.knokko.boiler.descriptors.VkbDescriptorSetLayout;
+import com.github.knokko.boiler.memory.callbacks.CallbackUserData;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDrawIndexedIndirectCommand;
+import org.lwjgl.vulkan.VkPushConstantRange;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * <p>
+ *     Culls instances on the GPU using a compute shader, and compacts the visible instances into a buffer of
+ *     <i>VkDrawIndexedIndirectCommand</i>s, which can be drawn using
+ *     {@link CommandRecorder#drawIndexedIndirectCount}. The compiled compute shader is the {@link #SHADER_PATH}
+ *     resource, and its GLSL source is the {@code com/github/knokko/boiler/culling/frustum-cull.comp} resource.
+ * </p>
+ *
+ * <p>
+ *     The descriptor set layout has 3 storage buffer bindings:
+ * </p>
+ * <ol start="0">
+ *     <li>The instance buffer, containing {@link #INSTANCE_SIZE} bytes per instance (see {@link #putInstance})</li>
+ *     <li>The command buffer, which must have room for {@link #COMMAND_SIZE} bytes per instance, and needs
+ *     <i>VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT</i></li>
+ *     <li>The count buffer, which must have at least 4 bytes, and needs <i>VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT</i>
+ *     and <i>VK_BUFFER_USAGE_TRANSFER_DST_BIT</i></li>
+ * </ol>
+ */
+public class GpuFrustumCuller {
+
+	/**
+	 * The size of each instance in the instance buffer, in bytes
+	 */
+	public static final int INSTANCE_SIZE = 48;
+
+	/**
+	 * The size of each draw command in the command buffer, in bytes
+	 */
+	public static final int COMMAND_SIZE = VkDrawIndexedIndirectCommand.SIZEOF;
+
+	/**
+	 * The size of the push constants: the frustum planes, followed by the instance count
+	 */
+	public static final int PUSH_CONSTANTS_SIZE = FrustumCuller.PLANES_SIZE + 4;
+
+	/**
+	 * The <i>local_size_x</i> of the compute shader
+	 */
+	public static final int GROUP_SIZE = 64;
+
+	/**
+	 * The class loader resource path of the compiled compute shader that is shipped with vk-boiler
+	 */
+	public static final String SHADER_PATH = "com/github/knokko/boiler/culling/frustum-cull.comp.spv";
+
+	/**
+	 * Stores an instance in the instance buffer
+	 * @param instances The host buffer of the instance buffer
+	 * @param index The index of the instance
+	 * @param indexCount The {@code indexCount} of the draw command of this instance
+	 * @param firstIndex The {@code firstIndex} of the draw command of this instance
+	 * @param vertexOffset The {@code vertexOffset} of the draw command of this instance
+	 * @param firstInstance The {@code firstInstance} of the draw command of this instance, which can be used by the
+	 *                      vertex shader to look up per-instance data
+	 */
+	public static void putInstance(
+			ByteBuffer instances, int index, FrustumCuller.AABB bounds,
+			int indexCount, int firstIndex, int vertexOffset, int firstInstance
+	) {
+		int offset = index * INSTANCE_SIZE;
+		instances.putFloat(offset, bounds.minX());
+		instances.putFloat(offset + 4, bounds.minY());
+		instances.putFloat(offset + 8, bounds.minZ());
+		instances.putFloat(offset + 12, 0f);
+		instances.putFloat(offset + 16, bounds.maxX());
+		instances.putFloat(offset + 20, bounds.maxY());
+		instances.putFloat(offset + 24, bounds.maxZ());
+		instances.putFloat(offset + 28, 0f);
+		instances.putInt(offset + 32, indexCount);
+		instances.putInt(offset + 36, firstIndex);
+		instances.putInt(offset + 40, vertexOffset);
+		instances.putInt(offset + 44, firstInstance);
+	}
+
+	/**
+	 * Writes the push constants of the compute shader to {@code destination}, and advances its position by
+	 * {@link #PUSH_CONSTANTS_SIZE}
+	 */
+	public static void putPushConstants(ByteBuffer destination, FrustumCuller culler, int instanceCount) {
+		culler.putPlanes(destination);
+		destination.putInt(instanceCount);
+	}
+
+	private final BoilerInstance instance;
+	public final VkbDescriptorSetLayout descriptorSetLayout;
+	public final long pipelineLayout, pipeline;
+
+	/**
+	 * Creates the descriptor set layout, pipeline layout, and compute pipeline, using the compute shader at
+	 * {@link #SHADER_PATH}
+	 * @param name The debug name of the created objects
+	 */
+	public GpuFrustumCuller(BoilerInstance instance, String name) {
+		this(instance, SHADER_PATH, name);
+	}
+
+	/**
+	 * Creates the descriptor set layout, pipeline layout, and compute pipeline
+	 * @param shaderPath The class loader resource path of the compiled compute shader
+	 * @param name The debug name of the created objects
+	 */
+	public GpuFrustumCuller(BoilerInstance instance, String shaderPath, String name) {
+		this.instance = instance;
+		try (var stack = stackPush()) {
+			var builder = new DescriptorSetLayoutBuilder(stack, 3);
+			for (int binding = 0; binding < 3; binding++) {
+				builder.set(binding, binding, VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, VK_SHADER_STAGE_COMPUTE_BIT);
+			}
+			this.descriptorSetLayout = builder.build(instance, name + "-DescriptorSetLayout");
+
+			var pushConstants = VkPushConstantRange.calloc(1, stack);
+			pushConstants.get(0).set(VK_SHADER_STAGE_COMPUTE_BIT, 0, PUSH_CONSTANTS_SIZE);
+			this.pipelineLayout = instance.pipelines.createLayout(
+					pushConstants, name + "-PipelineLayout", descriptorSetLayout.vkDescriptorSetLayout
+			);
+		}
+		this.pipeline = instance.pipelines.createComputePipeline(pipelineLayout, shaderPath, name);
+	}
+
+	/**
+	 * Writes the instance buffer, command buffer, and count buffer to {@code descriptorSet}, which must have been
+	 * allocated with {@link #descriptorSetLayout}
+	 */
+	public void updateDescriptorSet(
+			MemoryStack stack, long descriptorSet, VkbBuffer instances, VkbBuffer commands, VkbBuffer count
+	) {
+		var updater = new DescriptorUpdater(stack, 3);
+		updater.writeStorageBuffer(0, descriptorSet, 0, instances);
+		updater.writeStorageBuffer(1, descriptorSet, 1, commands);
+		updater.writeStorageBuffer(2, descriptorSet, 2, count);
+		updater.update(instance);
+	}
+
+	/**
+	 * Records the commands to reset the draw count, cull the first {@code instanceCount} instances, and make the
+	 * resulting draw commands visible to {@link CommandRecorder#drawIndexedIndirectCount}. This must be recorded
+	 * outside a render pass.
+	 * @param descriptorSet The descriptor set, see {@link #updateDescriptorSet}
+	 * @param culler The frustum against which the instances should be tested
+	 * @param commands The same command buffer as in the descriptor set
+	 * @param count The same count buffer as in the descriptor set
+	 */
+	public void record(
+			CommandRecorder recorder, long descriptorSet, FrustumCuller culler,
+			int instanceCount, VkbBuffer commands, VkbBuffer count
+	) {
+		// Wait until previous indirect draws are done with the buffers
+		recorder.bulkBufferBarrier(
+				ResourceUsage.INDIRECT_COMMAND_READ,
+				new ResourceUsage(
+						0, VK_ACCESS_TRANSFER_WRITE_BIT | VK_ACCESS_SHADER_WRITE_BIT,
+						VK_PIPELINE_STAGE_TRANSFER_BIT | VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT
+				),
+				commands, count
+		);
+		vkCmdFillBuffer(recorder.commandBuffer, count.vkBuffer, count.offset, 4, 0);
+		recorder.bufferBarrier(
+				count, ResourceUsage.TRANSFER_DEST,
+				ResourceUsage.computeBuffer(VK_ACCESS_SHADER_READ_BIT | VK_ACCESS_SHADER_WRITE_BIT)
+		);
+
+		var pushConstants = recorder.stack.malloc(PUSH_CONSTANTS_SIZE);
+		putPushConstants(pushConstants, culler, instanceCount);
+		pushConstants.flip();
+
+		vkCmdBindPipeline(recorder.commandBuffer, VK_PIPELINE_BIND_POINT_COMPUTE, pipeline);
+		recorder.bindComputeDescriptors(pipelineLayout, descriptorSet);
+		vkCmdPushConstants(recorder.commandBuffer, pipelineLayout, VK_SHADER_STAGE_COMPUTE_BIT, 0, pushConstants);
+		vkCmdDispatch(recorder.commandBuffer, (instanceCount + GROUP_SIZE - 1) / GROUP_SIZE, 1, 1);
+
+		recorder.bulkBufferBarrier(
+				ResourceUsage.computeBuffer(VK_ACCESS_SHADER_WRITE_BIT), ResourceUsage.INDIRECT_COMMAND_READ,
+				commands, count
+		);
+	}
+
+	/**
+	 * Destroys the compute pipeline, pipeline layout, and descriptor set layout
+	 */
+	public void destroy() {
+		try (var stack = stackPush()) {
+			vkDestroyPipeline(instance.vkDevice(), pipeline, CallbackUserData.PIPELINE.put(stack, instance));
+			vkDestroyPipelineLayout(
+					instance.vkDevice(), pipelineLayout, CallbackUserData.PIPELINE_LAYOUT.put(stack, instance)
+			);
+			vkDestroyDescriptorSetLayout(
+					instance.vkDevice(), descriptorSetLayout.vkDescriptorSetLayout,
+					CallbackUserData.DESCRIPTOR_SET_LAYOUT.put(stack, instance)
+			);
+		}
+	}
+}
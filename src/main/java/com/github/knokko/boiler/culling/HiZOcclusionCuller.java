@@ -0,0 +1,380 @@
+package com.github.knokko.boiler.culling;
+
+import com.github.knokko.boiler.BoilerInstance;
+import com.github.knokko.boiler.buffers.VkbBuffer;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.descriptors.DescriptorCombiner;
+import com.github.knokko.boiler.descriptors.DescriptorSetLayoutBuilder;
+import com.github.knokko.boiler.descriptors.DescriptorUpdater;
+import com.github.knokko.boiler.descriptors.VkbDescriptorSetLayout;
+import com.github.knokko.boiler.images.ImageBuilder;
+import com.github.knokko.boiler.images.VkbImage;
+import com.github.knokko.boiler.memory.MemoryBlock;
+import com.github.knokko.boiler.memory.MemoryCombiner;
+import com.github.knokko.boiler.memory.callbacks.CallbackUserData;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+import com.github.knokko.boiler.utilities.BoilerMath;
+import org.joml.Matrix4f;
+import org.lwjgl.vulkan.VkImageMemoryBarrier;
+import org.lwjgl.vulkan.VkPushConstantRange;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * <p>
+ *     Occlusion culling using a hierarchical depth buffer (Hi-Z). This class owns a depth pyramid (an
+ *     <i>R32_SFLOAT</i> image with a full mip chain, where each texel contains the maximum depth of the texels that
+ *     it covers in the previous level), and 2 compute pipelines: one to build the depth pyramid from a depth
+ *     attachment, and one to test instances against it. The compiled shaders are the {@link #REDUCE_SHADER_PATH}
+ *     and {@link #CULL_SHADER_PATH} resources, and their GLSL sources are the {@code hiz-reduce.comp} and
+ *     {@code hiz-cull.comp} resources in {@code com/github/knokko/boiler/culling}.
+ * </p>
+ *
+ * <p>
+ *     The culling is done in 2 phases per frame:
+ * </p>
+ * <ol>
+ *     <li>{@link #recordCull} with phase 0 emits draw commands for all instances that were visible during the
+ *     previous frame (and are still inside the frustum). You should draw them right away.</li>
+ *     <li>{@link #recordBuildPyramid} builds the depth pyramid from the depth attachment, which now contains the
+ *     depth of the instances that were drawn in phase 0.</li>
+ *     <li>{@link #recordCull} with phase 1 tests all instances against the depth pyramid, emits draw commands for the
+ *     visible instances that were <b>not</b> drawn in phase 0, and stores which instances are visible for the
+ *     next frame. You should draw them too, using the same depth attachment.</li>
+ * </ol>
+ *
+ * <p>
+ *     The instance, command, and count buffers use the same layout as {@link GpuFrustumCuller}. The visibility
+ *     buffer needs 4 bytes per instance, and must be cleared using {@link #recordResetVisibility} before the first
+ *     frame. Since the depth pyramid and visibility are per-frame state, you need 1 instance of this class per frame
+ *     in flight. The depth image must have been created with <i>VK_IMAGE_USAGE_SAMPLED_BIT</i>, and when its size
+ *     changes, you need to create a new instance of this class.
+ * </p>
+ */
+public class HiZOcclusionCuller {
+
+	/**
+	 * The size of the push constants of the cull shader: the view-projection matrix, the size of the depth pyramid,
+	 * the instance count, and the phase
+	 */
+	public static final int CULL_PUSH_CONSTANTS_SIZE = 64 + 8 + 4 + 4;
+
+	/**
+	 * The class loader resource path of the compiled reduction shader that is shipped with vk-boiler
+	 */
+	public static final String REDUCE_SHADER_PATH = "com/github/knokko/boiler/culling/hiz-reduce.comp.spv";
+
+	/**
+	 * The class loader resource path of the compiled cull shader that is shipped with vk-boiler
+	 */
+	public static final String CULL_SHADER_PATH = "com/github/knokko/boiler/culling/hiz-cull.comp.spv";
+
+	private static final int REDUCE_GROUP_SIZE = 8;
+
+	private final BoilerInstance instance;
+
+	/**
+	 * The depth pyramid. Level 0 has the same size as the depth attachment.
+	 */
+	public final VkbImage pyramid;
+	private final MemoryBlock pyramidMemory;
+	private final long[] levelViews;
+	private final long fullView;
+	private final long sampler;
+
+	private final VkbDescriptorSetLayout reduceSetLayout, cullSetLayout;
+	private final long reducePipelineLayout, reducePipeline, cullPipelineLayout, cullPipeline;
+	private final long descriptorPool;
+	private final long[] reduceSets;
+	private final long cullSet;
+
+	private VkbBuffer commands, count, visibility;
+
+	/**
+	 * Creates the depth pyramid, pipelines, and descriptor sets, using the shaders at {@link #REDUCE_SHADER_PATH} and
+	 * {@link #CULL_SHADER_PATH}
+	 * @param depthImage The depth attachment, which must have an image view
+	 * @param name The debug name of the created objects
+	 */
+	public HiZOcclusionCuller(BoilerInstance instance, VkbImage depthImage, String name) {
+		this(instance, depthImage, REDUCE_SHADER_PATH, CULL_SHADER_PATH, name);
+	}
+
+	/**
+	 * Creates the depth pyramid, pipelines, and descriptor sets
+	 * @param depthImage The depth attachment, which must have an image view
+	 * @param reduceShaderPath The class loader resource path of the compiled reduction shader
+	 * @param cullShaderPath The class loader resource path of the compiled cull shader
+	 * @param name The debug name of the created objects
+	 */
+	public HiZOcclusionCuller(
+			BoilerInstance instance, VkbImage depthImage,
+			String reduceShaderPath, String cullShaderPath, String name
+	) {
+		if (depthImage.vkImageView == VK_NULL_HANDLE) {
+			throw new IllegalArgumentException("The depth image must have an image view");
+		}
+		this.instance = instance;
+
+		int numLevels = BoilerMath.mipLevelCount(depthImage.width, depthImage.height);
+		var combiner = new MemoryCombiner(instance, name + "-DepthPyramid");
+		this.pyramid = combiner.addImage(new ImageBuilder(
+				name + "-DepthPyramid", depthImage.width, depthImage.height
+		).format(VK_FORMAT_R32_SFLOAT).setUsage(
+				VK_IMAGE_USAGE_STORAGE_BIT | VK_IMAGE_USAGE_SAMPLED_BIT
+		).mipLevels(numLevels).doNotCreateView(), 0.5f);
+		this.pyramidMemory = combiner.build(false);
+
+		this.levelViews = new long[numLevels];
+		for (int level = 0; level < numLevels; level++) {
+			levelViews[level] = instance.images.createView(
+					pyramid.vkImage, VK_FORMAT_R32_SFLOAT, VK_IMAGE_ASPECT_COLOR_BIT,
+					level, 1, 1, name + "-DepthPyramid" + level
+			);
+		}
+		this.fullView = instance.images.createView(
+				pyramid.vkImage, VK_FORMAT_R32_SFLOAT, VK_IMAGE_ASPECT_COLOR_BIT,
+				0, numLevels, 1, name + "-DepthPyramid"
+		);
+		this.sampler = instance.images.samplerCache.borrowSimpleSampler(
+				VK_FILTER_NEAREST, VK_SAMPLER_MIPMAP_MODE_NEAREST, VK_SAMPLER_ADDRESS_MODE_CLAMP_TO_EDGE,
+				name + "-Sampler"
+		);
+
+		try (var stack = stackPush()) {
+			var reduceBuilder = new DescriptorSetLayoutBuilder(stack, 2);
+			reduceBuilder.set(0, 0, VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER, VK_SHADER_STAGE_COMPUTE_BIT);
+			reduceBuilder.set(1, 1, VK_DESCRIPTOR_TYPE_STORAGE_IMAGE, VK_SHADER_STAGE_COMPUTE_BIT);
+			this.reduceSetLayout = reduceBuilder.build(instance, name + "-ReduceDescriptorSetLayout");
+
+			var cullBuilder = new DescriptorSetLayoutBuilder(stack, 5);
+			for (int binding = 0; binding < 4; binding++) {
+				cullBuilder.set(binding, binding, VK_DESCRIPTOR_TYPE_STORAGE_BUFFER, VK_SHADER_STAGE_COMPUTE_BIT);
+			}
+			cullBuilder.set(4, 4, VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER, VK_SHADER_STAGE_COMPUTE_BIT);
+			this.cullSetLayout = cullBuilder.build(instance, name + "-CullDescriptorSetLayout");
+
+			var reducePushConstants = VkPushConstantRange.calloc(1, stack);
+			reducePushConstants.get(0).set(VK_SHADER_STAGE_COMPUTE_BIT, 0, 16);
+			this.reducePipelineLayout = instance.pipelines.createLayout(
+					reducePushConstants, name + "-ReducePipelineLayout", reduceSetLayout.vkDescriptorSetLayout
+			);
+
+			var cullPushConstants = VkPushConstantRange.calloc(1, stack);
+			cullPushConstants.get(0).set(VK_SHADER_STAGE_COMPUTE_BIT, 0, CULL_PUSH_CONSTANTS_SIZE);
+			this.cullPipelineLayout = instance.pipelines.createLayout(
+					cullPushConstants, name + "-CullPipelineLayout", cullSetLayout.vkDescriptorSetLayout
+			);
+		}
+		this.reducePipeline = instance.pipelines.createComputePipeline(
+				reducePipelineLayout, reduceShaderPath, name + "-Reduce"
+		);
+		this.cullPipeline = instance.pipelines.createComputePipeline(
+				cullPipelineLayout, cullShaderPath, name + "-Cull"
+		);
+
+		var descriptors = new DescriptorCombiner(instance);
+		this.reduceSets = descriptors.addMultiple(reduceSetLayout, numLevels);
+		long[] cullSets = descriptors.addMultiple(cullSetLayout, 1);
+		this.descriptorPool = descriptors.build(name + "-DescriptorPool");
+		this.cullSet = cullSets[0];
+
+		try (var stack = stackPush()) {
+			var updater = new DescriptorUpdater(stack, 2 * numLevels);
+			for (int level = 0; level < numLevels; level++) {
+				long sourceView = level == 0 ? depthImage.vkImageView : levelViews[level - 1];
+				int sourceLayout = level == 0 ? VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL : VK_IMAGE_LAYOUT_GENERAL;
+				updater.writeImage(
+						2 * level, reduceSets[level], 0, sourceView, sampler,
+						VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER, sourceLayout
+				);
+				updater.writeImage(
+						2 * level + 1, reduceSets[level], 1, levelViews[level], VK_NULL_HANDLE,
+						VK_DESCRIPTOR_TYPE_STORAGE_IMAGE, VK_IMAGE_LAYOUT_GENERAL
+				);
+			}
+			updater.update(instance);
+		}
+	}
+
+	/**
+	 * Writes the buffers to the descriptor set of the cull shader. You must call this method before the first call to
+	 * {@link #recordCull}.
+	 * @param instances The instance buffer, see {@link GpuFrustumCuller#putInstance}
+	 * @param commands The command buffer, which needs room for {@link GpuFrustumCuller#COMMAND_SIZE} bytes per
+	 *                 instance, and <i>VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT</i>
+	 * @param count The count buffer, which needs at least 4 bytes, and <i>VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT</i>
+	 *              and <i>VK_BUFFER_USAGE_TRANSFER_DST_BIT</i>
+	 * @param visibility The visibility buffer, which needs 4 bytes per instance, and
+	 *                   <i>VK_BUFFER_USAGE_TRANSFER_DST_BIT</i>
+	 */
+	public void setBuffers(VkbBuffer instances, VkbBuffer commands, VkbBuffer count, VkbBuffer visibility) {
+		this.commands = commands;
+		this.count = count;
+		this.visibility = visibility;
+		try (var stack = stackPush()) {
+			var updater = new DescriptorUpdater(stack, 5);
+			updater.writeStorageBuffer(0, cullSet, 0, instances);
+			updater.writeStorageBuffer(1, cullSet, 1, commands);
+			updater.writeStorageBuffer(2, cullSet, 2, count);
+			updater.writeStorageBuffer(3, cullSet, 3, visibility);
+			updater.writeImage(
+					4, cullSet, 4, fullView, sampler,
+					VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER, VK_IMAGE_LAYOUT_GENERAL
+			);
+			updater.update(instance);
+		}
+	}
+
+	/**
+	 * Marks all instances as invisible, which must be done before the first frame. Phase 1 of the first frame will
+	 * draw all instances that are visible.
+	 */
+	public void recordResetVisibility(CommandRecorder recorder) {
+		vkCmdFillBuffer(recorder.commandBuffer, visibility.vkBuffer, visibility.offset, visibility.size, 0);
+		recorder.bufferBarrier(
+				visibility, ResourceUsage.TRANSFER_DEST,
+				ResourceUsage.computeBuffer(VK_ACCESS_SHADER_READ_BIT | VK_ACCESS_SHADER_WRITE_BIT)
+		);
+	}
+
+	private void levelBarrier(CommandRecorder recorder, int level) {
+		var pBarrier = VkImageMemoryBarrier.calloc(1, recorder.stack);
+		pBarrier.sType$Default();
+		pBarrier.srcAccessMask(VK_ACCESS_SHADER_WRITE_BIT);
+		pBarrier.dstAccessMask(VK_ACCESS_SHADER_READ_BIT);
+		pBarrier.oldLayout(VK_IMAGE_LAYOUT_GENERAL);
+		pBarrier.newLayout(VK_IMAGE_LAYOUT_GENERAL);
+		pBarrier.srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+		pBarrier.dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED);
+		pBarrier.image(pyramid.vkImage);
+		instance.images.subresourceRange(recorder.stack, pBarrier.subresourceRange(), VK_IMAGE_ASPECT_COLOR_BIT);
+		pBarrier.subresourceRange().baseMipLevel(level);
+		vkCmdPipelineBarrier(
+				recorder.commandBuffer, VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT,
+				0, null, null, pBarrier
+		);
+	}
+
+	/**
+	 * Records the commands to build the depth pyramid from the depth attachment. The depth attachment must be in the
+	 * <i>VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL</i> layout, and its writes must be visible to the compute shader
+	 * stage (e.g. using a transition to {@link ResourceUsage#shaderRead} with
+	 * <i>VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT</i>). This must be recorded outside a render pass.
+	 */
+	public void recordBuildPyramid(CommandRecorder recorder) {
+		recorder.bulkTransitionMipLevels(
+				ResourceUsage.computeBuffer(VK_ACCESS_SHADER_READ_BIT),
+				ResourceUsage.compute(VK_IMAGE_LAYOUT_GENERAL, VK_ACCESS_SHADER_WRITE_BIT), pyramid
+		);
+
+		vkCmdBindPipeline(recorder.commandBuffer, VK_PIPELINE_BIND_POINT_COMPUTE, reducePipeline);
+		var pushConstants = recorder.stack.mallocInt(4);
+		int sourceWidth = pyramid.width;
+		int sourceHeight = pyramid.height;
+		for (int level = 0; level < levelViews.length; level++) {
+			int width = level == 0 ? sourceWidth : Math.max(1, sourceWidth / 2);
+			int height = level == 0 ? sourceHeight : Math.max(1, sourceHeight / 2);
+			pushConstants.put(0, sourceWidth).put(1, sourceHeight).put(2, width).put(3, height);
+
+			recorder.bindComputeDescriptors(reducePipelineLayout, reduceSets[level]);
+			vkCmdPushConstants(recorder.commandBuffer, reducePipelineLayout, VK_SHADER_STAGE_COMPUTE_BIT, 0, pushConstants);
+			vkCmdDispatch(
+					recorder.commandBuffer, (width + REDUCE_GROUP_SIZE - 1) / REDUCE_GROUP_SIZE,
+					(height + REDUCE_GROUP_SIZE - 1) / REDUCE_GROUP_SIZE, 1
+			);
+			levelBarrier(recorder, level);
+
+			sourceWidth = width;
+			sourceHeight = height;
+		}
+	}
+
+	/**
+	 * Records the commands to reset the draw count, cull all instances, and make the resulting draw commands visible
+	 * to {@link CommandRecorder#drawIndexedIndirectCount}. This must be recorded outside a render pass.
+	 * @param phase 0 to emit the instances that were visible during the previous frame, or 1 to test all instances
+	 *              against the depth pyramid (see the class documentation)
+	 * @param viewProjection The view-projection matrix, which must map to Vulkan clip space (with depth in [0, 1])
+	 * @param instanceCount The number of instances to test
+	 */
+	public void recordCull(CommandRecorder recorder, int phase, Matrix4f viewProjection, int instanceCount) {
+		if (phase != 0 && phase != 1) throw new IllegalArgumentException("Phase must be 0 or 1, but got " + phase);
+
+		// Wait until previous draws and culls are done with the buffers
+		recorder.bulkBufferBarrier(
+				new ResourceUsage(
+						0, VK_ACCESS_INDIRECT_COMMAND_READ_BIT | VK_ACCESS_SHADER_READ_BIT | VK_ACCESS_SHADER_WRITE_BIT,
+						VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT | VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT
+				),
+				new ResourceUsage(
+						0, VK_ACCESS_TRANSFER_WRITE_BIT | VK_ACCESS_SHADER_READ_BIT | VK_ACCESS_SHADER_WRITE_BIT,
+						VK_PIPELINE_STAGE_TRANSFER_BIT | VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT
+				),
+				commands, count, visibility
+		);
+		vkCmdFillBuffer(recorder.commandBuffer, count.vkBuffer, count.offset, 4, 0);
+		recorder.bufferBarrier(
+				count, ResourceUsage.TRANSFER_DEST,
+				ResourceUsage.computeBuffer(VK_ACCESS_SHADER_READ_BIT | VK_ACCESS_SHADER_WRITE_BIT)
+		);
+
+		var pushConstants = recorder.stack.malloc(CULL_PUSH_CONSTANTS_SIZE);
+		viewProjection.get(0, pushConstants);
+		pushConstants.putFloat(64, pyramid.width);
+		pushConstants.putFloat(68, pyramid.height);
+		pushConstants.putInt(72, instanceCount);
+		pushConstants.putInt(76, phase);
+
+		vkCmdBindPipeline(recorder.commandBuffer, VK_PIPELINE_BIND_POINT_COMPUTE, cullPipeline);
+		recorder.bindComputeDescriptors(cullPipelineLayout, cullSet);
+		vkCmdPushConstants(recorder.commandBuffer, cullPipelineLayout, VK_SHADER_STAGE_COMPUTE_BIT, 0, pushConstants);
+		vkCmdDispatch(
+				recorder.commandBuffer,
+				(instanceCount + GpuFrustumCuller.GROUP_SIZE - 1) / GpuFrustumCuller.GROUP_SIZE, 1, 1
+		);
+
+		recorder.bulkBufferBarrier(
+				ResourceUsage.computeBuffer(VK_ACCESS_SHADER_WRITE_BIT), ResourceUsage.INDIRECT_COMMAND_READ,
+				commands, count
+		);
+	}
+
+	/**
+	 * Draws the instances that were emitted by the last {@link #recordCull}, using
+	 * {@link CommandRecorder#drawIndexedIndirectCount}
+	 * @param maxDrawCount The maximum number of draw commands, typically the number of instances
+	 */
+	public void recordDraw(CommandRecorder recorder, int maxDrawCount) {
+		recorder.drawIndexedIndirectCount(commands, count, maxDrawCount);
+	}
+
+	/**
+	 * Destroys the depth pyramid, pipelines, descriptor pool, and layouts. The buffers are not destroyed.
+	 */
+	public void destroy() {
+		try (var stack = stackPush()) {
+			var device = instance.vkDevice();
+			vkDestroyDescriptorPool(device, descriptorPool, CallbackUserData.DESCRIPTOR_POOL.put(stack, instance));
+			vkDestroyPipeline(device, reducePipeline, CallbackUserData.PIPELINE.put(stack, instance));
+			vkDestroyPipeline(device, cullPipeline, CallbackUserData.PIPELINE.put(stack, instance));
+			vkDestroyPipelineLayout(device, reducePipelineLayout, CallbackUserData.PIPELINE_LAYOUT.put(stack, instance));
+			vkDestroyPipelineLayout(device, cullPipelineLayout, CallbackUserData.PIPELINE_LAYOUT.put(stack, instance));
+			vkDestroyDescriptorSetLayout(
+					device, reduceSetLayout.vkDescriptorSetLayout,
+					CallbackUserData.DESCRIPTOR_SET_LAYOUT.put(stack, instance)
+			);
+			vkDestroyDescriptorSetLayout(
+					device, cullSetLayout.vkDescriptorSetLayout,
+					CallbackUserData.DESCRIPTOR_SET_LAYOUT.put(stack, instance)
+			);
+			for (long view : levelViews) {
+				vkDestroyImageView(device, view, CallbackUserData.IMAGE_VIEW.put(stack, instance));
+			}
+			vkDestroyImageView(device, fullView, CallbackUserData.IMAGE_VIEW.put(stack, instance));
+		}
+		instance.images.samplerCache.returnSampler(sampler);
+		pyramidMemory.destroy(instance);
+	}
+}
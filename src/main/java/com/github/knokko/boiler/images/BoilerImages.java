@@ -11,13 +11,25 @@ import static org.lwjgl.vulkan.VK10.*;
 
 public class BoilerImages {
 
-	private final BoilerInstance instance;
+	final BoilerInstance instance;
+
+	/**
+	 * A reference-counted cache of shared samplers, which you can use to avoid creating many identical samplers
+	 */
+	public final SamplerCache samplerCache;
+
+	/**
+	 * A reference-counted cache of shared image views, which you can use to avoid creating many identical image views
+	 */
+	public final ImageViewCache viewCache;
 
 	/**
 	 * This constructor is meant for internal use only. You should use <i>boilerInstance.images</i> instead.
 	 */
 	public BoilerImages(BoilerInstance instance) {
 		this.instance = instance;
+		this.samplerCache = new SamplerCache(this);
+		this.viewCache = new ImageViewCache(this);
 	}
 
 	/**
@@ -43,6 +55,23 @@ public class BoilerImages {
 	 * @return The created <i>VkImageView</i> handle
 	 */
 	public long createView(long image, int format, int aspectMask, int mipLevels, int arrayLayers, String name) {
+		return createView(image, format, aspectMask, 0, mipLevels, arrayLayers, name);
+	}
+
+	/**
+	 * Creates an image view for a range of mip levels of an image using <i>vkCreateImageView</i>
+	 * @param image The <i>VkImage</i> for which a <i>VkImageView</i> should be created
+	 * @param format The format of the image view (usually the same as the format of the image)
+	 * @param aspectMask The aspect mask of the image view (usually <i>VK_IMAGE_ASPECT_COLOR_BIT</i>)
+	 * @param baseMipLevel The first mip level of the image that is accessible to the image view
+	 * @param mipLevels The number of mip levels of the image view
+	 * @param arrayLayers The number of array layers of the image view (usually the same as that of the image)
+	 * @param name The debug name of the image view (when <i>VK_EXT_debug_utils</i> is enabled)
+	 * @return The created <i>VkImageView</i> handle
+	 */
+	public long createView(
+			long image, int format, int aspectMask, int baseMipLevel, int mipLevels, int arrayLayers, String name
+	) {
 		try (var stack = stackPush()) {
 			var ciImageView = VkImageViewCreateInfo.calloc(stack);
 			ciImageView.sType$Default();
@@ -55,6 +84,7 @@ public class BoilerImages {
 					VK_COMPONENT_SWIZZLE_IDENTITY, VK_COMPONENT_SWIZZLE_IDENTITY
 			);
 			instance.images.subresourceRange(stack, ciImageView.subresourceRange(), aspectMask);
+			ciImageView.subresourceRange().baseMipLevel(baseMipLevel);
 			ciImageView.subresourceRange().levelCount(mipLevels);
 			ciImageView.subresourceRange().layerCount(arrayLayers);
 
@@ -189,6 +219,24 @@ public class BoilerImages {
 		layers.layerCount(1);
 	}
 
+	/**
+	 * Checks whether {@link com.github.knokko.boiler.commands.CommandRecorder#bulkGenerateMipmaps} can be used on
+	 * images with the given format and <i>VK_IMAGE_TILING_OPTIMAL</i>. This requires the
+	 * <i>VK_FORMAT_FEATURE_BLIT_SRC_BIT</i>, <i>VK_FORMAT_FEATURE_BLIT_DST_BIT</i>, and
+	 * <i>VK_FORMAT_FEATURE_SAMPLED_IMAGE_FILTER_LINEAR_BIT</i> in the <i>optimalTilingFeatures</i> of the format.
+	 * @param format The <i>VkFormat</i> of the image
+	 * @return true if the mip levels can be generated using <i>vkCmdBlitImage</i>
+	 */
+	public boolean supportsMipmapBlits(int format) {
+		int requiredFeatures = VK_FORMAT_FEATURE_BLIT_SRC_BIT | VK_FORMAT_FEATURE_BLIT_DST_BIT |
+				VK_FORMAT_FEATURE_SAMPLED_IMAGE_FILTER_LINEAR_BIT;
+		try (var stack = stackPush()) {
+			var formatProps = VkFormatProperties.calloc(stack);
+			vkGetPhysicalDeviceFormatProperties(instance.vkPhysicalDevice(), format, formatProps);
+			return (formatProps.optimalTilingFeatures() & requiredFeatures) == requiredFeatures;
+		}
+	}
+
 	/**
 	 * Iterates over the given <i>VkFormat</i>s, and returns the first format such that the corresponding
 	 * <i>optimalTilingFeatures</i> (as queried by <i>vkGetPhysicalDeviceFormatProperties</i>) has the
@@ -3,6 +3,7 @@ package com.github.knokko.boiler.images;
 import com.github.knokko.boiler.BoilerInstance;
 import com.github.knokko.boiler.memory.MemoryTypeSelector;
 import com.github.knokko.boiler.memory.callbacks.CallbackUserData;
+import com.github.knokko.boiler.utilities.BoilerMath;
 import org.lwjgl.vulkan.VkImageCreateInfo;
 import org.lwjgl.vulkan.VkImageViewCreateInfo;
 
@@ -47,6 +48,11 @@ public class ImageBuilder {
 	 */
 	public int depth = 1;
 
+	/**
+	 * {@link VkImageCreateInfo#flags()} The default value is 0.
+	 */
+	public int flags = 0;
+
 	/**
 	 * {@link VkImageCreateInfo#imageType()} The default value is <i>VK_IMAGE_TYPE_2D</i>
 	 */
@@ -149,6 +155,18 @@ public class ImageBuilder {
 		return this;
 	}
 
+	/**
+	 * Sets {@link #mipLevels} to the number of levels of a full mip chain (down to 1x1 pixels), and adds
+	 * <i>VK_IMAGE_USAGE_TRANSFER_SRC_BIT</i> to {@link #usage}, which is needed to generate the mip levels using
+	 * {@link com.github.knokko.boiler.commands.CommandRecorder#bulkGenerateMipmaps}. Note that this should be chained
+	 * <b>after</b> the 'basic usage' method (like {@link #texture}), since those overwrite the usage.
+	 * @return this
+	 */
+	public ImageBuilder fullMipChain() {
+		this.mipLevels = BoilerMath.mipLevelCount(width, height);
+		return this.addUsage(VK_IMAGE_USAGE_TRANSFER_SRC_BIT);
+	}
+
 	/**
 	 * Sets {@link #arrayLayers}
 	 * @return this
@@ -254,6 +272,37 @@ public class ImageBuilder {
 		return this.format(VK_FORMAT_R8G8B8A8_SRGB).addUsage(VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT);
 	}
 
+	/**
+	 * Adds <i>VK_IMAGE_CREATE_SPARSE_BINDING_BIT</i> and <i>VK_IMAGE_CREATE_SPARSE_RESIDENCY_BIT</i> to
+	 * {@link #flags}. Such images can't be added to a {@link com.github.knokko.boiler.memory.MemoryCombiner}: use
+	 * {@link com.github.knokko.boiler.images.sparse.SparseImage} instead.
+	 * @return this
+	 */
+	public ImageBuilder sparseResidency() {
+		this.flags |= VK_IMAGE_CREATE_SPARSE_BINDING_BIT | VK_IMAGE_CREATE_SPARSE_RESIDENCY_BIT;
+		return this;
+	}
+
+	/**
+	 * Use this for attachments that are only used on tile (e.g. multisampled color attachments or depth attachments
+	 * whose contents are not stored), on GPUs that support lazily-allocated memory. Such attachments may not need any
+	 * physical memory at all.
+	 * <ul>
+	 *     <li>Adds <i>VK_IMAGE_USAGE_TRANSIENT_ATTACHMENT_BIT</i> to {@link #usage}</li>
+	 *     <li>
+	 *         Changes {@link #memoryTypeSelector} to prefer memory types with
+	 *         <i>VK_MEMORY_PROPERTY_LAZILY_ALLOCATED_BIT</i>
+	 *     </li>
+	 * </ul>
+	 * Note that transient attachments can only have attachment usage flags.
+	 * @return this
+	 */
+	public ImageBuilder lazilyAllocated() {
+		return this.addUsage(VK_IMAGE_USAGE_TRANSIENT_ATTACHMENT_BIT).memoryTypeSelector(
+				(instance, memoryTypeBits) -> instance.memoryInfo.recommendedLazilyAllocatedMemoryType(memoryTypeBits)
+		);
+	}
+
 	/**
 	 * <ul>
 	 *     <li>
@@ -279,6 +328,7 @@ public class ImageBuilder {
 		try (var stack = stackPush()) {
 			var ciImage = VkImageCreateInfo.calloc(stack);
 			ciImage.sType$Default();
+			ciImage.flags(flags);
 			ciImage.imageType(type);
 			ciImage.format(format);
 			ciImage.extent().set(width, height, depth);
@@ -298,7 +348,7 @@ public class ImageBuilder {
 			long vkImage = pImage.get(0);
 
 			instance.debug.name(stack, vkImage, VK_OBJECT_TYPE_IMAGE, name);
-			return new VkbImage(vkImage, width, height, aspectMask);
+			return new VkbImage(vkImage, width, height, aspectMask, mipLevels);
 		}
 	}
 
@@ -0,0 +1,321 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.BoilerInstance;
+import com.github.knokko.boiler.buffers.MappedVkbBuffer;
+import com.github.knokko.boiler.buffers.VkbBuffer;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.memory.MemoryBlock;
+import com.github.knokko.boiler.memory.MemoryCombiner;
+import com.github.knokko.boiler.synchronization.AwaitableSubmission;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+import org.lwjgl.vulkan.VkBufferImageCopy;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * <p>
+ *     An asynchronous service to read images back from the GPU, for instance to capture screenshots or videos. It
+ *     owns a small ring of host-visible (and preferably host-cached) readback buffers (slots) with a fixed size. Each
+ *     capture copies the image in horizontal tiles (bands of rows) into as many free slots as needed, so the image
+ *     doesn't need to fit in a single buffer. When the submission that contains the copy commands completes, a
+ *     background thread hands the rows of each tile to the {@link Consumer}, after which the slots are recycled.
+ * </p>
+ *
+ * <p>
+ *     {@link #record} never blocks: when there are not enough free slots (because the GPU or the consumer is
+ *     lagging behind), the capture is dropped and {@link #record} returns <b>null</b>. This allows continuous capturing
+ *     at the full frame rate without stalling the render thread. You can use {@link #droppedCaptures()} to check how
+ *     many captures were dropped. Images that need more tiles than there are slots could never be captured, so
+ *     {@link #record} throws an {@link IllegalArgumentException} for them instead.
+ * </p>
+ *
+ * <p>
+ *     When the consumer throws a {@link RuntimeException}, the stack trace will be printed, the remaining rows of that
+ *     capture will be skipped, and the background thread will continue with the next capture. You can use
+ *     {@link #failedCaptures()} to check how many captures failed this way.
+ * </p>
+ *
+ * <p>
+ *     The intended usage per frame is:
+ * </p>
+ * <ol>
+ *     <li>Transition the image to {@link ResourceUsage#TRANSFER_SOURCE} while recording the frame</li>
+ *     <li>Call {@link #record} using the command recorder of the frame</li>
+ *     <li>Submit the command buffer</li>
+ *     <li>
+ *         If {@link #record} didn't return <b>null</b>, call {@link #submit} with the submission, or call
+ *         {@link #abandon} when the command buffer will not be submitted after all
+ *     </li>
+ * </ol>
+ */
+public class ImageReadback {
+
+	private final BoilerInstance instance;
+	private final long slotSize;
+	private final int numSlots;
+	private final int bytesPerPixel;
+	private final Consumer consumer;
+
+	private final MemoryBlock memory;
+	private final BlockingQueue<MappedVkbBuffer> freeSlots;
+	private final BlockingQueue<Capture> submittedCaptures = new LinkedBlockingQueue<>();
+	private final AtomicLong droppedCaptures = new AtomicLong();
+	private final AtomicLong failedCaptures = new AtomicLong();
+	private final Thread thread;
+
+	private volatile Throwable threadFailure;
+
+	/**
+	 * Creates the readback buffers, and starts the background thread
+	 * @param slotSize The size of each readback buffer, in bytes. It must be large enough to hold at least 1 row of
+	 *                 the images that will be captured.
+	 * @param numSlots The number of readback buffers. Together, they must be large enough to hold all tiles of the
+	 *                 images that will be captured.
+	 * @param bytesPerPixel The number of bytes per pixel of the images that will be captured (e.g. 4 for
+	 *                      <i>VK_FORMAT_B8G8R8A8_SRGB</i>)
+	 * @param consumer The consumer that will receive the captured rows (on the background thread)
+	 * @param name The debug name of the buffers and background thread
+	 */
+	public ImageReadback(
+			BoilerInstance instance, long slotSize, int numSlots,
+			int bytesPerPixel, Consumer consumer, String name
+	) {
+		this.instance = instance;
+		this.slotSize = slotSize;
+		this.numSlots = numSlots;
+		this.bytesPerPixel = bytesPerPixel;
+		this.consumer = consumer;
+
+		var combiner = new MemoryCombiner(instance, name);
+		var slots = new MappedVkbBuffer[numSlots];
+		for (int index = 0; index < numSlots; index++) {
+			slots[index] = combiner.addMappedReadbackBuffer(slotSize, 16, VK_BUFFER_USAGE_TRANSFER_DST_BIT);
+		}
+		this.memory = combiner.build(false);
+		this.freeSlots = new ArrayBlockingQueue<>(numSlots);
+		for (var slot : slots) freeSlots.add(slot);
+
+		this.thread = new Thread(this::consumeCaptures, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Records the commands to copy {@code image} to the readback buffers, if there are enough free readback buffers.
+	 * The image must be in the <i>VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL</i> layout, and its pixels must have
+	 * {@code bytesPerPixel} bytes. This method will also record a buffer barrier to make the copied data visible to
+	 * the host.
+	 * @param recorder The command recorder of the frame
+	 * @param image The image to be captured
+	 * @param frameIndex An arbitrary number that will be propagated to {@link Capture#frameIndex}
+	 * @return The pending capture, which you must pass to {@link #submit} after submitting the command buffer, or
+	 * <b>null</b> when the capture was dropped because there were not enough free readback buffers
+	 * @throws IllegalArgumentException When the image needs more tiles than there are readback buffers, since such
+	 * captures could never succeed
+	 */
+	public Capture record(CommandRecorder recorder, VkbImage image, long frameIndex) {
+		checkThreadFailure();
+		long rowSize = (long) bytesPerPixel * image.width;
+		int rowsPerTile = (int) Math.min(image.height, slotSize / rowSize);
+		if (rowsPerTile == 0) throw new IllegalArgumentException(
+				"Readback buffers of " + slotSize + " bytes can't hold a row of " + rowSize + " bytes"
+		);
+
+		int numTiles = (image.height + rowsPerTile - 1) / rowsPerTile;
+		if (numTiles > numSlots) {
+			int neededRowsPerTile = (image.height + numSlots - 1) / numSlots;
+			throw new IllegalArgumentException(
+					"Capturing a " + image.width + "x" + image.height + " image needs " + numTiles +
+							" readback buffers of " + slotSize + " bytes, but there are only " + numSlots +
+							": use at least " + numTiles + " slots, or slots of at least " +
+							neededRowsPerTile * rowSize + " bytes"
+			);
+		}
+		var tiles = new MappedVkbBuffer[numTiles];
+		for (int index = 0; index < numTiles; index++) {
+			tiles[index] = freeSlots.poll();
+			if (tiles[index] == null) {
+				for (int returnIndex = 0; returnIndex < index; returnIndex++) freeSlots.add(tiles[returnIndex]);
+				droppedCaptures.incrementAndGet();
+				return null;
+			}
+		}
+
+		var copyRegions = VkBufferImageCopy.calloc(1, recorder.stack);
+		var copyRegion = copyRegions.get(0);
+		copyRegion.bufferRowLength(0);
+		copyRegion.bufferImageHeight(0);
+		instance.images.subresourceLayers(copyRegion.imageSubresource(), image.aspectMask);
+
+		var usedRanges = new VkbBuffer[numTiles];
+		for (int index = 0; index < numTiles; index++) {
+			int firstRow = index * rowsPerTile;
+			int numRows = Math.min(rowsPerTile, image.height - firstRow);
+			copyRegion.bufferOffset(tiles[index].offset);
+			copyRegion.imageOffset().set(0, firstRow, 0);
+			copyRegion.imageExtent().set(image.width, numRows, 1);
+			vkCmdCopyImageToBuffer(
+					recorder.commandBuffer, image.vkImage, VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+					tiles[index].vkBuffer, copyRegions
+			);
+			usedRanges[index] = tiles[index].child(0, numRows * rowSize);
+		}
+		recorder.bulkBufferBarrier(ResourceUsage.TRANSFER_DEST, ResourceUsage.HOST_READ, usedRanges);
+
+		return new Capture(frameIndex, image.width, image.height, rowsPerTile, tiles);
+	}
+
+	/**
+	 * Hands a capture to the background thread, which will wait until {@code submission} completes, and then
+	 * pass the captured rows to the consumer.
+	 * @param capture The capture that was returned by {@link #record}
+	 * @param submission The submission of the command buffer in which the capture was recorded
+	 */
+	public void submit(Capture capture, AwaitableSubmission submission) {
+		checkThreadFailure();
+		if (capture.submission != null) throw new IllegalStateException("This capture has already been submitted");
+		if (capture.abandoned) throw new IllegalStateException("This capture has been abandoned");
+		capture.submission = submission;
+		submittedCaptures.add(capture);
+	}
+
+	/**
+	 * Returns the readback buffers of a capture that will never be submitted, for instance because recording the
+	 * command buffer failed. You must ensure that no pending command buffer contains the copy commands of the capture.
+	 * @param capture The capture that was returned by {@link #record}, but was not passed to {@link #submit}
+	 */
+	public void abandon(Capture capture) {
+		if (capture.submission != null) throw new IllegalStateException("This capture has already been submitted");
+		if (capture.abandoned) throw new IllegalStateException("This capture has already been abandoned");
+		capture.abandoned = true;
+		for (var tile : capture.tiles) freeSlots.add(tile);
+	}
+
+	/**
+	 * @return The number of captures that were dropped by {@link #record} because there were not enough free
+	 * readback buffers
+	 */
+	public long droppedCaptures() {
+		return droppedCaptures.get();
+	}
+
+	/**
+	 * @return The number of captures that were (partially) skipped because the consumer threw an exception
+	 */
+	public long failedCaptures() {
+		return failedCaptures.get();
+	}
+
+	private void checkThreadFailure() {
+		if (threadFailure != null) throw new IllegalStateException("Readback thread failed", threadFailure);
+	}
+
+	private void consumeCaptures() {
+		try {
+			while (true) {
+				var capture = submittedCaptures.take();
+				if (capture.tiles == null) return;
+
+				capture.submission.awaitCompletion();
+				int index = 0;
+				try {
+					for (; index < capture.tiles.length; index++) {
+						int firstRow = index * capture.rowsPerTile;
+						int numRows = Math.min(capture.rowsPerTile, capture.height - firstRow);
+						var tile = capture.tiles[index].child(0, (long) numRows * capture.width * bytesPerPixel);
+						tile.invalidate(instance);
+						ByteBuffer rows = tile.byteBuffer();
+						consumer.consumeRows(capture, firstRow, numRows, rows);
+						freeSlots.add(capture.tiles[index]);
+					}
+					consumer.finished(capture);
+				} catch (RuntimeException consumerFailure) {
+					// Skip the remaining rows of this capture, but keep the background thread alive
+					for (; index < capture.tiles.length; index++) freeSlots.add(capture.tiles[index]);
+					failedCaptures.incrementAndGet();
+					//noinspection CallToPrintStackTrace
+					consumerFailure.printStackTrace();
+				}
+			}
+		} catch (InterruptedException shouldNotHappen) {
+			threadFailure = shouldNotHappen;
+		} catch (Throwable failure) {
+			threadFailure = failure;
+			//noinspection CallToPrintStackTrace
+			failure.printStackTrace();
+		}
+	}
+
+	/**
+	 * Waits until all submitted captures have been consumed, stops the background thread, and destroys the readback
+	 * buffers. Captures that were recorded, but not submitted, will be discarded, so you must ensure that their
+	 * command buffers are no longer pending.
+	 */
+	public void destroy() {
+		submittedCaptures.add(new Capture(-1, 0, 0, 0, null));
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		memory.destroy(instance);
+		checkThreadFailure();
+	}
+
+	/**
+	 * A capture of 1 image, which is recorded by {@link #record}
+	 */
+	public static class Capture {
+
+		/**
+		 * The {@code frameIndex} that was passed to {@link #record}
+		 */
+		public final long frameIndex;
+
+		/**
+		 * The size of the captured image, in pixels
+		 */
+		public final int width, height;
+
+		final int rowsPerTile;
+		final MappedVkbBuffer[] tiles;
+		AwaitableSubmission submission;
+		boolean abandoned;
+
+		Capture(long frameIndex, int width, int height, int rowsPerTile, MappedVkbBuffer[] tiles) {
+			this.frameIndex = frameIndex;
+			this.width = width;
+			this.height = height;
+			this.rowsPerTile = rowsPerTile;
+			this.tiles = tiles;
+		}
+	}
+
+	/**
+	 * Receives the captured rows of the {@link ImageReadback}. All methods will be called on the background thread of
+	 * the readback service, in the order in which the captures were submitted.
+	 */
+	public interface Consumer {
+
+		/**
+		 * Consumes a band of rows of a capture. The bands of each capture will be consumed from top to bottom.
+		 * @param capture The capture to which the rows belong
+		 * @param firstRow The index of the first row in {@code rows}
+		 * @param numRows The number of rows in {@code rows}
+		 * @param rows The tightly-packed pixel data of the rows. This buffer is only valid during this method call,
+		 *             since the readback buffer will be reused afterward.
+		 */
+		void consumeRows(Capture capture, int firstRow, int numRows, ByteBuffer rows);
+
+		/**
+		 * Called after all rows of {@code capture} have been consumed. The default implementation does nothing.
+		 */
+		default void finished(Capture capture) {}
+	}
+}
@@ -0,0 +1,115 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.memory.callbacks.CallbackUserData;
+import org.lwjgl.system.MemoryStack;
+
+import static org.lwjgl.vulkan.VK10.vkDestroyImageView;
+
+/**
+ * <p>
+ *     A cache that deduplicates <i>VkImageView</i>s: when you borrow an image view with the same parameters as an
+ *     image view that is currently borrowed, you will get the same <i>VkImageView</i> handle. Each borrowed image view
+ *     has a reference count, and the image view will be destroyed when the last borrower returns it.
+ * </p>
+ *
+ * <p>
+ *     You should <b>not</b> create an instance of this class, but instead access it via
+ *     <i>boilerInstance.images.viewCache</i>. All methods of this class are thread-safe. Note that you must return
+ *     all shared image views of an image <b>before</b> destroying the image.
+ * </p>
+ */
+public class ImageViewCache {
+
+	private final SharedHandleCache<Key> cache;
+
+	ImageViewCache(BoilerImages images) {
+		this.cache = new SharedHandleCache<>("image view") {
+
+			@Override
+			long create(Key key, String name) {
+				return images.createView(
+						key.image, key.format, key.aspectMask, key.baseMipLevel, key.mipLevels, key.arrayLayers, name
+				);
+			}
+
+			@Override
+			void destroy(MemoryStack stack, long imageView) {
+				vkDestroyImageView(
+						images.instance.vkDevice(), imageView,
+						CallbackUserData.IMAGE_VIEW.put(stack, images.instance)
+				);
+			}
+		};
+	}
+
+	/**
+	 * Borrows a shared image view with 1 mip level and 1 array layer, like
+	 * {@link BoilerImages#createSimpleView(long, int, int, String)}. You must return it using
+	 * {@link #returnView(long)} when you no longer need it.
+	 * @param name The debug name of the image view, which is only used when a new image view needs to be created
+	 * @return The shared <i>VkImageView</i> handle
+	 */
+	public long borrowSimpleView(long image, int format, int aspectMask, String name) {
+		return borrowView(image, format, aspectMask, 1, 1, name);
+	}
+
+	/**
+	 * Borrows a shared image view that has the given parameters. When an image view with exactly the same
+	 * parameters is currently borrowed, its reference count will be incremented and its handle will be returned.
+	 * Otherwise, a new image view will be created using {@link BoilerImages#createView}. You must return it using
+	 * {@link #returnView(long)} when you no longer need it.
+	 * @param name The debug name of the image view, which is only used when a new image view needs to be created
+	 * @return The shared <i>VkImageView</i> handle
+	 */
+	public long borrowView(long image, int format, int aspectMask, int mipLevels, int arrayLayers, String name) {
+		return borrowView(image, format, aspectMask, 0, mipLevels, arrayLayers, name);
+	}
+
+	/**
+	 * Borrows a shared image view of a range of mip levels, like
+	 * {@link BoilerImages#createView(long, int, int, int, int, int, String)}. Image views with a different
+	 * {@code baseMipLevel} are never shared. You must return it using {@link #returnView(long)} when you no longer need
+	 * it.
+	 * @param name The debug name of the image view, which is only used when a new image view needs to be created
+	 * @return The shared <i>VkImageView</i> handle
+	 */
+	public long borrowView(
+			long image, int format, int aspectMask, int baseMipLevel, int mipLevels, int arrayLayers, String name
+	) {
+		return cache.borrow(new Key(image, format, aspectMask, baseMipLevel, mipLevels, arrayLayers), name);
+	}
+
+	/**
+	 * Decrements the reference count of an image view that was borrowed using {@link #borrowView} or
+	 * {@link #borrowSimpleView}. When the reference count reaches 0, the image view will be destroyed, so you must
+	 * ensure that no pending command buffers, descriptor sets, or framebuffers still use it.
+	 */
+	public void returnView(long imageView) {
+		cache.release(imageView);
+	}
+
+	/**
+	 * @return The number of times that the given image view is currently borrowed, or 0 if it is not in this cache
+	 */
+	public int referenceCount(long imageView) {
+		return cache.referenceCount(imageView);
+	}
+
+	/**
+	 * @return The number of distinct image views that are currently in this cache
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * This method will be called during <i>BoilerInstance.destroyInitialObjects</i>, so you should normally
+	 * <b>not</b> call this method yourself! It throws an {@link IllegalStateException} when not all borrowed image
+	 * views have been returned.
+	 */
+	public void destroy() {
+		cache.destroyAll();
+	}
+
+	private record Key(long image, int format, int aspectMask, int baseMipLevel, int mipLevels, int arrayLayers) {}
+}
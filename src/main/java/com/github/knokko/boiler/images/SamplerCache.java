@@ -0,0 +1,108 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.memory.callbacks.CallbackUserData;
+import org.lwjgl.system.MemoryStack;
+
+import static org.lwjgl.vulkan.VK10.VK_LOD_CLAMP_NONE;
+import static org.lwjgl.vulkan.VK10.vkDestroySampler;
+
+/**
+ * <p>
+ *     A cache that deduplicates <i>VkSampler</i>s: when you borrow a sampler with the same parameters as a sampler
+ *     that is currently borrowed, you will get the same <i>VkSampler</i> handle. Each borrowed sampler has a
+ *     reference count, and the sampler will be destroyed when the last borrower returns it. This is useful to avoid
+ *     exceeding <i>maxSamplerAllocationCount</i> when many materials use the same sampler parameters.
+ * </p>
+ *
+ * <p>
+ *     You should <b>not</b> create an instance of this class, but instead access it via
+ *     <i>boilerInstance.images.samplerCache</i>. All methods of this class are thread-safe.
+ * </p>
+ */
+public class SamplerCache {
+
+	private final SharedHandleCache<Key> cache;
+
+	SamplerCache(BoilerImages images) {
+		this.cache = new SharedHandleCache<>("sampler") {
+
+			@Override
+			long create(Key key, String name) {
+				return images.createSampler(
+						key.magMinFilter, key.mipMapMode, key.addressMode,
+						key.minLod, key.maxLod, key.normalized, name
+				);
+			}
+
+			@Override
+			void destroy(MemoryStack stack, long sampler) {
+				vkDestroySampler(
+						images.instance.vkDevice(), sampler,
+						CallbackUserData.SAMPLER.put(stack, images.instance)
+				);
+			}
+		};
+	}
+
+	/**
+	 * Borrows a shared sampler with the same default parameters as
+	 * {@link BoilerImages#createSimpleSampler(int, int, int, String)}. You must return it using
+	 * {@link #returnSampler(long)} when you no longer need it.
+	 * @param name The debug name of the sampler, which is only used when a new sampler needs to be created
+	 * @return The shared <i>VkSampler</i> handle
+	 */
+	public long borrowSimpleSampler(int magMinFilter, int mipMapMode, int addressMode, String name) {
+		return borrowSampler(magMinFilter, mipMapMode, addressMode, 0f, VK_LOD_CLAMP_NONE, true, name);
+	}
+
+	/**
+	 * Borrows a shared sampler that has the given parameters. When a sampler with exactly the same parameters is
+	 * currently borrowed, its reference count will be incremented and its handle will be returned. Otherwise, a new
+	 * sampler will be created using {@link BoilerImages#createSampler}. You must return it using
+	 * {@link #returnSampler(long)} when you no longer need it.
+	 * @param name The debug name of the sampler, which is only used when a new sampler needs to be created
+	 * @return The shared <i>VkSampler</i> handle
+	 */
+	public long borrowSampler(
+			int magMinFilter, int mipMapMode, int addressMode,
+			float minLod, float maxLod, boolean normalized, String name
+	) {
+		return cache.borrow(new Key(magMinFilter, mipMapMode, addressMode, minLod, maxLod, normalized), name);
+	}
+
+	/**
+	 * Decrements the reference count of a sampler that was borrowed using {@link #borrowSampler} or
+	 * {@link #borrowSimpleSampler}. When the reference count reaches 0, the sampler will be destroyed, so you must
+	 * ensure that no pending command buffers or descriptor sets still use it.
+	 */
+	public void returnSampler(long sampler) {
+		cache.release(sampler);
+	}
+
+	/**
+	 * @return The number of times that the given sampler is currently borrowed, or 0 if it is not in this cache
+	 */
+	public int referenceCount(long sampler) {
+		return cache.referenceCount(sampler);
+	}
+
+	/**
+	 * @return The number of distinct samplers that are currently in this cache
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * This method will be called during <i>BoilerInstance.destroyInitialObjects</i>, so you should normally
+	 * <b>not</b> call this method yourself! It throws an {@link IllegalStateException} when not all borrowed
+	 * samplers have been returned.
+	 */
+	public void destroy() {
+		cache.destroyAll();
+	}
+
+	private record Key(
+			int magMinFilter, int mipMapMode, int addressMode, float minLod, float maxLod, boolean normalized
+	) {}
+}
@@ -0,0 +1,92 @@
+package com.github.knokko.boiler.images;
+
+import org.lwjgl.system.MemoryStack;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.system.MemoryStack.stackPush;
+
+/**
+ * The shared implementation of {@link SamplerCache} and {@link ImageViewCache}: it maps each key to at most 1 Vulkan
+ * handle, and tracks how many times each handle was borrowed. The handle is destroyed when its reference count
+ * drops to 0. All methods are synchronized, so the caches can be used from multiple threads.
+ * @param <K> The key type, which must capture all creation parameters of the handle
+ */
+abstract class SharedHandleCache<K> {
+
+	private final String description;
+	private final Map<K, Entry> keyMap = new HashMap<>();
+	private final Map<Long, Entry> handleMap = new HashMap<>();
+
+	SharedHandleCache(String description) {
+		this.description = description;
+	}
+
+	abstract long create(K key, String name);
+
+	abstract void destroy(MemoryStack stack, long handle);
+
+	synchronized long borrow(K key, String name) {
+		var entry = keyMap.get(key);
+		if (entry == null) {
+			entry = new Entry(key, create(key, name), name);
+			keyMap.put(key, entry);
+			handleMap.put(entry.handle, entry);
+		}
+		entry.referenceCount += 1;
+		return entry.handle;
+	}
+
+	synchronized void release(long handle) {
+		var entry = handleMap.get(handle);
+		if (entry == null) throw new IllegalArgumentException("This " + description + " wasn't borrowed");
+
+		entry.referenceCount -= 1;
+		if (entry.referenceCount == 0) {
+			keyMap.remove(entry.key);
+			handleMap.remove(handle);
+			try (var stack = stackPush()) {
+				destroy(stack, handle);
+			}
+		}
+	}
+
+	synchronized int referenceCount(long handle) {
+		var entry = handleMap.get(handle);
+		return entry != null ? entry.referenceCount : 0;
+	}
+
+	synchronized int size() {
+		return keyMap.size();
+	}
+
+	synchronized void destroyAll() {
+		if (!handleMap.isEmpty()) {
+			int counter = 0;
+			for (var entry : handleMap.values()) {
+				counter += 1;
+				System.err.println(
+						"Shared " + description + " " + entry.name + " was borrowed " +
+								entry.referenceCount + " times, but not returned"
+				);
+				if (counter > 5) break;
+			}
+			throw new IllegalStateException("Not all borrowed " + description + "s have been returned");
+		}
+	}
+
+	private class Entry {
+
+		final K key;
+		final long handle;
+		final String name;
+		int referenceCount;
+
+		Entry(K key, long handle, String name) {
+			this.key = key;
+			this.handle = handle;
+			this.name = name;
+		}
+	}
+}
@@ -0,0 +1,280 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.BoilerInstance;
+import com.github.knokko.boiler.buffers.MappedVkbBuffer;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+import org.lwjgl.vulkan.VkBufferImageCopy;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.knokko.boiler.utilities.BoilerMath.leastCommonMultiple;
+import static com.github.knokko.boiler.utilities.BoilerMath.nextMultipleOf;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * <p>
+ *     Uploads many (mipmapped) textures at once from a single staging buffer. The intended usage is:
+ * </p>
+ * <ol>
+ *     <li>Create the textures, for instance using {@link ImageBuilder#fullMipChain()}</li>
+ *     <li>Create a {@link TextureUploader}, and call {@link #add} for each texture</li>
+ *     <li>
+ *         Create a {@link MappedVkbBuffer} staging buffer of (at least) {@link #stagingSize()} bytes, whose offset is a
+ *         multiple of {@link #stagingAlignment()}
+ *     </li>
+ *     <li>Write the pixels of mip level 0 of each texture to {@link #level0(MappedVkbBuffer, int)}</li>
+ *     <li>Call {@link #record} to record the upload commands, and submit the command buffer</li>
+ * </ol>
+ * <p>
+ *     When the format of a texture supports blitting (see {@link BoilerImages#supportsMipmapBlits}), its mip levels
+ *     will be generated on the GPU using {@link CommandRecorder#bulkGenerateMipmaps}. Otherwise, the mip levels
+ *     will be computed on the CPU during {@link #record}, and copied from the staging buffer. The CPU fallback only
+ *     supports formats with 4 8-bit channels (like <i>VK_FORMAT_R8G8B8A8_SRGB</i>).
+ * </p>
+ */
+public class TextureUploader {
+
+	private static final long MIN_STAGING_ALIGNMENT = 16;
+
+	private final BoilerInstance instance;
+	private final List<Texture> textures = new ArrayList<>();
+	private long stagingSize;
+	private long stagingAlignment = MIN_STAGING_ALIGNMENT;
+
+	public TextureUploader(BoilerInstance instance) {
+		this.instance = instance;
+	}
+
+	/**
+	 * Adds a texture that should be uploaded
+	 * @param image The texture image, which must have been created with at least
+	 *              <i>VK_IMAGE_USAGE_TRANSFER_DST_BIT</i>, and <i>VK_IMAGE_USAGE_TRANSFER_SRC_BIT</i> when it has more
+	 *              than 1 mip level and its format supports blitting
+	 * @param format The <i>VkFormat</i> of the image
+	 * @param bytesPerPixel The number of bytes per pixel of {@code format}
+	 * @return The index of the texture, which you need for {@link #level0(MappedVkbBuffer, int)}
+	 * @throws UnsupportedOperationException When the format doesn't support blitting, and isn't supported by the CPU
+	 * fallback either
+	 */
+	public int add(VkbImage image, int format, int bytesPerPixel) {
+		boolean cpuMipmaps = image.mipLevels > 1 && !instance.images.supportsMipmapBlits(format);
+		if (cpuMipmaps && (bytesPerPixel != 4 || !isRGBA8(format))) {
+			throw new UnsupportedOperationException(
+					"Format " + format + " doesn't support blitting, and the CPU fallback only supports RGBA8 formats"
+			);
+		}
+
+		// The buffer offset of vkCmdCopyBufferToImage must be a multiple of the texel size, which isn't always a power
+		// of 2 (e.g. VK_FORMAT_R8G8B8_UNORM)
+		long alignment = leastCommonMultiple(MIN_STAGING_ALIGNMENT, bytesPerPixel);
+		stagingAlignment = leastCommonMultiple(stagingAlignment, alignment);
+
+		int storedLevels = cpuMipmaps ? image.mipLevels : 1;
+		long[] levelOffsets = new long[storedLevels];
+		for (int level = 0; level < storedLevels; level++) {
+			stagingSize = nextMultipleOf(stagingSize, alignment);
+			levelOffsets[level] = stagingSize;
+			stagingSize += (long) bytesPerPixel * levelWidth(image, level) * levelHeight(image, level);
+		}
+
+		textures.add(new Texture(image, bytesPerPixel, isSrgb(format), cpuMipmaps, levelOffsets));
+		return textures.size() - 1;
+	}
+
+	/**
+	 * @return The minimum size of the staging buffer, in bytes
+	 */
+	public long stagingSize() {
+		return stagingSize;
+	}
+
+	/**
+	 * @return The required alignment of the offset of the staging buffer, in bytes. This is the least common multiple
+	 * of 16 and the texel sizes of all added textures.
+	 */
+	public long stagingAlignment() {
+		return stagingAlignment;
+	}
+
+	/**
+	 * @return True if the mip levels of the texture with the given index will be computed on the CPU, rather than
+	 * being blitted on the GPU
+	 */
+	public boolean usesCpuMipmaps(int textureIndex) {
+		return textures.get(textureIndex).cpuMipmaps;
+	}
+
+	/**
+	 * @param stagingBuffer The staging buffer, whose size must be at least {@link #stagingSize()}
+	 * @param textureIndex The index of the texture, as returned by {@link #add}
+	 * @return The segment of the staging buffer to which the pixels of mip level 0 of the texture should be
+	 * written (tightly packed, row by row)
+	 */
+	public MappedVkbBuffer level0(MappedVkbBuffer stagingBuffer, int textureIndex) {
+		var texture = textures.get(textureIndex);
+		return stagingBuffer.child(
+				texture.levelOffsets[0], (long) texture.bytesPerPixel * texture.image.width * texture.image.height
+		);
+	}
+
+	/**
+	 * Computes the mip levels of the textures that need the CPU fallback, and records all commands to copy the
+	 * textures from the staging buffer, generate their mip levels, and transition them to {@code finalUsage}. The
+	 * content of {@link #level0} of each texture must have been written before calling this method.
+	 * @param recorder The command recorder
+	 * @param stagingBuffer The staging buffer, whose size must be at least {@link #stagingSize()}, and whose offset
+	 *                      must be a multiple of {@link #stagingAlignment()}
+	 * @param finalUsage The usage to which all mip levels of all textures should be transitioned, typically
+	 *                   {@link ResourceUsage#shaderRead}
+	 */
+	public void record(CommandRecorder recorder, MappedVkbBuffer stagingBuffer, ResourceUsage finalUsage) {
+		if (stagingBuffer.size < stagingSize) throw new IllegalArgumentException(
+				"Staging buffer size is " + stagingBuffer.size + ", but at least " + stagingSize + " is needed"
+		);
+		if (stagingBuffer.offset % stagingAlignment != 0) throw new IllegalArgumentException(
+				"Staging buffer offset " + stagingBuffer.offset + " is not a multiple of " + stagingAlignment
+		);
+
+		List<VkbImage> gpuImages = new ArrayList<>();
+		List<VkbImage> cpuImages = new ArrayList<>();
+		var allImages = new VkbImage[textures.size()];
+		for (int index = 0; index < allImages.length; index++) {
+			var texture = textures.get(index);
+			allImages[index] = texture.image;
+			if (texture.cpuMipmaps) {
+				computeMipLevels(stagingBuffer, texture);
+				cpuImages.add(texture.image);
+			} else gpuImages.add(texture.image);
+		}
+
+		recorder.bulkTransitionMipLevels(null, ResourceUsage.TRANSFER_DEST, allImages);
+
+		int maxStoredLevels = 1;
+		for (var texture : textures) maxStoredLevels = Math.max(maxStoredLevels, texture.levelOffsets.length);
+		var copyRegions = VkBufferImageCopy.calloc(maxStoredLevels, recorder.stack);
+		for (var texture : textures) {
+			for (int level = 0; level < texture.levelOffsets.length; level++) {
+				var copyRegion = copyRegions.get(level);
+				copyRegion.bufferOffset(stagingBuffer.offset + texture.levelOffsets[level]);
+				copyRegion.bufferRowLength(0);
+				copyRegion.bufferImageHeight(0);
+				instance.images.subresourceLayers(copyRegion.imageSubresource(), texture.image.aspectMask);
+				copyRegion.imageSubresource().mipLevel(level);
+				copyRegion.imageOffset().set(0, 0, 0);
+				copyRegion.imageExtent().set(levelWidth(texture.image, level), levelHeight(texture.image, level), 1);
+			}
+			copyRegions.limit(texture.levelOffsets.length);
+			vkCmdCopyBufferToImage(
+					recorder.commandBuffer, stagingBuffer.vkBuffer, texture.image.vkImage,
+					VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, copyRegions
+			);
+			copyRegions.limit(maxStoredLevels);
+		}
+
+		recorder.bulkGenerateMipmaps(finalUsage, gpuImages.toArray(new VkbImage[0]));
+		recorder.bulkTransitionMipLevels(
+				ResourceUsage.TRANSFER_DEST, finalUsage, cpuImages.toArray(new VkbImage[0])
+		);
+	}
+
+	private void computeMipLevels(MappedVkbBuffer stagingBuffer, Texture texture) {
+		for (int level = 1; level < texture.levelOffsets.length; level++) {
+			int sourceWidth = levelWidth(texture.image, level - 1);
+			int sourceHeight = levelHeight(texture.image, level - 1);
+			var source = stagingBuffer.child(
+					texture.levelOffsets[level - 1], 4L * sourceWidth * sourceHeight
+			).byteBuffer();
+			var destination = stagingBuffer.child(
+					texture.levelOffsets[level],
+					4L * levelWidth(texture.image, level) * levelHeight(texture.image, level)
+			).byteBuffer();
+			downsampleRGBA8(source, sourceWidth, sourceHeight, destination, texture.srgb);
+		}
+	}
+
+	private static int levelWidth(VkbImage image, int level) {
+		return Math.max(1, image.width >> level);
+	}
+
+	private static int levelHeight(VkbImage image, int level) {
+		return Math.max(1, image.height >> level);
+	}
+
+	private static boolean isSrgb(int format) {
+		return format == VK_FORMAT_R8G8B8A8_SRGB || format == VK_FORMAT_B8G8R8A8_SRGB;
+	}
+
+	private static boolean isRGBA8(int format) {
+		return isSrgb(format) || format == VK_FORMAT_R8G8B8A8_UNORM || format == VK_FORMAT_B8G8R8A8_UNORM ||
+				format == VK_FORMAT_R8G8B8A8_UINT || format == VK_FORMAT_B8G8R8A8_UINT;
+	}
+
+	private static final float[] SRGB_TO_LINEAR = new float[256];
+
+	static {
+		for (int value = 0; value < 256; value++) {
+			float normalized = value / 255f;
+			SRGB_TO_LINEAR[value] = normalized <= 0.04045f ?
+					normalized / 12.92f : (float) Math.pow((normalized + 0.055f) / 1.055f, 2.4f);
+		}
+	}
+
+	private static int linearToSrgb(float linear) {
+		float normalized = linear <= 0.0031308f ?
+				linear * 12.92f : 1.055f * (float) Math.pow(linear, 1f / 2.4f) - 0.055f;
+		return Math.max(0, Math.min(255, Math.round(normalized * 255f)));
+	}
+
+	/**
+	 * Computes the next mip level of an image with 4 8-bit channels per pixel using a 2x2 box filter. When
+	 * {@code srgb} is true, the color channels (but not the alpha channel) will be averaged in linear space.
+	 * @param source The pixels of the source mip level, tightly packed
+	 * @param sourceWidth The width of the source mip level, in pixels
+	 * @param sourceHeight The height of the source mip level, in pixels
+	 * @param destination The buffer to which the pixels of the next mip level (of size
+	 *                    {@code max(1, sourceWidth / 2)} by {@code max(1, sourceHeight / 2)}) will be written
+	 * @param srgb Whether the color channels are sRGB-encoded
+	 */
+	static void downsampleRGBA8(
+			ByteBuffer source, int sourceWidth, int sourceHeight, ByteBuffer destination, boolean srgb
+	) {
+		int width = Math.max(1, sourceWidth / 2);
+		int height = Math.max(1, sourceHeight / 2);
+		int sourcePosition = source.position();
+		int destinationPosition = destination.position();
+
+		for (int y = 0; y < height; y++) {
+			int sourceY1 = Math.min(2 * y, sourceHeight - 1);
+			int sourceY2 = Math.min(2 * y + 1, sourceHeight - 1);
+			for (int x = 0; x < width; x++) {
+				int sourceX1 = Math.min(2 * x, sourceWidth - 1);
+				int sourceX2 = Math.min(2 * x + 1, sourceWidth - 1);
+
+				int index1 = sourcePosition + 4 * (sourceX1 + sourceY1 * sourceWidth);
+				int index2 = sourcePosition + 4 * (sourceX2 + sourceY1 * sourceWidth);
+				int index3 = sourcePosition + 4 * (sourceX1 + sourceY2 * sourceWidth);
+				int index4 = sourcePosition + 4 * (sourceX2 + sourceY2 * sourceWidth);
+				int destinationIndex = destinationPosition + 4 * (x + y * width);
+
+				for (int channel = 0; channel < 4; channel++) {
+					int value1 = source.get(index1 + channel) & 0xFF;
+					int value2 = source.get(index2 + channel) & 0xFF;
+					int value3 = source.get(index3 + channel) & 0xFF;
+					int value4 = source.get(index4 + channel) & 0xFF;
+
+					int result;
+					if (srgb && channel != 3) {
+						result = linearToSrgb(0.25f * (SRGB_TO_LINEAR[value1] + SRGB_TO_LINEAR[value2] +
+								SRGB_TO_LINEAR[value3] + SRGB_TO_LINEAR[value4]));
+					} else result = (value1 + value2 + value3 + value4 + 2) / 4;
+					destination.put(destinationIndex + channel, (byte) result);
+				}
+			}
+		}
+	}
+
+	private record Texture(VkbImage image, int bytesPerPixel, boolean srgb, boolean cpuMipmaps, long[] levelOffsets) {}
+}
@@ -26,10 +26,20 @@ public class VkbImage {
 	 */
 	public final int aspectMask;
 
-	public VkbImage(long vkImage, int width, int height, int aspectMask) {
+	/**
+	 * The number of mip levels of the image
+	 */
+	public final int mipLevels;
+
+	public VkbImage(long vkImage, int width, int height, int aspectMask, int mipLevels) {
 		this.vkImage = vkImage;
 		this.width = width;
 		this.height = height;
 		this.aspectMask = aspectMask;
+		this.mipLevels = mipLevels;
+	}
+
+	public VkbImage(long vkImage, int width, int height, int aspectMask) {
+		this(vkImage, width, height, aspectMask, 1);
 	}
 }
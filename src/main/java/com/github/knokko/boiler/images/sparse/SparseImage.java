@@ -0,0 +1,284 @@
+package com.github.knokko.boiler.images.sparse;
+
+import com.github.knokko.boiler.BoilerInstance;
+import com.github.knokko.boiler.images.ImageBuilder;
+import com.github.knokko.boiler.images.VkbImage;
+import com.github.knokko.boiler.memory.callbacks.CallbackUserData;
+import com.github.knokko.boiler.queues.VkbQueue;
+import com.github.knokko.boiler.synchronization.FenceSubmission;
+import com.github.knokko.boiler.synchronization.VkbFence;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static com.github.knokko.boiler.utilities.BoilerMath.nextMultipleOf;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * <p>
+ *     A partially-resident 2D image, whose tiles are bound to the pages of a fixed-size page pool using
+ *     <i>vkQueueBindSparse</i>. This is useful for images that are much larger than what should be resident, for
+ *     instance terrain heightmaps and virtual textures. The mip tail (the mip levels that are too small to be divided
+ *     in tiles) is always resident.
+ * </p>
+ *
+ * <p>
+ *     The device must support the <i>sparseBinding</i> and <i>sparseResidencyImage2D</i> features (which you need to
+ *     enable using a feature picker), and the queue that is passed to {@link #applyUpdate} must support
+ *     <i>VK_QUEUE_SPARSE_BINDING_BIT</i>. The intended usage per frame is:
+ * </p>
+ * <ol>
+ *     <li>Compute the requested tiles from the camera feedback, e.g. using {@link SparsePageTable#tilesInRegion}</li>
+ *     <li>Call {@link SparseResidency#update} of {@link #residency}</li>
+ *     <li>Call {@link #applyUpdate}, and let it signal a semaphore</li>
+ *     <li>Upload the contents of the {@link SparseResidency.Update#boundTiles}, after waiting on the semaphore</li>
+ * </ol>
+ * <p>
+ *     Note that you must ensure that the GPU no longer uses the tiles that are unbound by an update. Shaders should
+ *     sample a coarser resident mip level (or the mip tail) when the page table says that a tile is not resident,
+ *     for instance using a minimum-LOD texture that is derived from the page table.
+ * </p>
+ */
+public class SparseImage {
+
+	/**
+	 * The sparse image, as well as its image view
+	 */
+	public final VkbImage image;
+
+	/**
+	 * The residency of the tiles of this image. Use {@link SparseResidency#update} to change it, and
+	 * {@link #applyUpdate} to apply the changes to the image.
+	 */
+	public final SparseResidency residency;
+
+	/**
+	 * The size of each memory page, in bytes
+	 */
+	public final long pageSize;
+
+	private final BoilerInstance instance;
+	private final String name;
+	private final int aspectMask, memoryType;
+	private final long pagePool, mipTailMemory;
+	private final long pagePoolSize, mipTailMemorySize;
+
+	/**
+	 * Creates the sparse image, allocates the page pool, and binds the mip tail.
+	 * @param builder The properties of the image, which must have {@link ImageBuilder#sparseResidency()}, and at most
+	 *                1 array layer
+	 * @param numPages The number of pages in the page pool, which is the maximum number of resident tiles
+	 * @param bindQueue The queue that will be used to bind the mip tail. It must support
+	 *                  <i>VK_QUEUE_SPARSE_BINDING_BIT</i>.
+	 */
+	public SparseImage(BoilerInstance instance, ImageBuilder builder, int numPages, VkbQueue bindQueue) {
+		if ((builder.flags & VK_IMAGE_CREATE_SPARSE_RESIDENCY_BIT) == 0) {
+			throw new IllegalArgumentException("Use ImageBuilder.sparseResidency()");
+		}
+		if (numPages <= 0) throw new IllegalArgumentException("numPages (" + numPages + ") must be positive");
+		if (builder.type != VK_IMAGE_TYPE_2D || builder.arrayLayers != 1) {
+			throw new UnsupportedOperationException("Only 2D sparse images with 1 array layer are supported");
+		}
+		this.instance = instance;
+		this.name = builder.name;
+		this.aspectMask = builder.aspectMask;
+
+		var rawImage = builder.createRaw(instance);
+		long pagePool = VK_NULL_HANDLE, mipTailMemory = VK_NULL_HANDLE, imageView = VK_NULL_HANDLE;
+		long pagePoolSize = 0L, mipTailMemorySize = 0L;
+		try (var stack = stackPush()) {
+			var requirements = VkMemoryRequirements.calloc(stack);
+			vkGetImageMemoryRequirements(instance.vkDevice(), rawImage.vkImage, requirements);
+			this.pageSize = requirements.alignment();
+			this.memoryType = builder.memoryTypeSelector.chooseMemoryType(instance, requirements.memoryTypeBits());
+
+			var pNumSparseRequirements = stack.callocInt(1);
+			vkGetImageSparseMemoryRequirements(instance.vkDevice(), rawImage.vkImage, pNumSparseRequirements, null);
+			var sparseRequirements = VkSparseImageMemoryRequirements.calloc(pNumSparseRequirements.get(0), stack);
+			vkGetImageSparseMemoryRequirements(
+					instance.vkDevice(), rawImage.vkImage, pNumSparseRequirements, sparseRequirements
+			);
+
+			VkSparseImageMemoryRequirements colorRequirements = null;
+			for (var candidate : sparseRequirements) {
+				if ((candidate.formatProperties().aspectMask() & aspectMask) != 0) colorRequirements = candidate;
+				mipTailMemorySize += nextMultipleOf(candidate.imageMipTailSize(), pageSize);
+			}
+			if (colorRequirements == null) {
+				throw new UnsupportedOperationException("Image " + name + " doesn't support sparse residency");
+			}
+
+			var granularity = colorRequirements.formatProperties().imageGranularity();
+			var pageTable = new SparsePageTable(
+					builder.width, builder.height, granularity.width(), granularity.height(),
+					Math.min(builder.mipLevels, colorRequirements.imageMipTailFirstLod())
+			);
+			this.residency = new SparseResidency(pageTable, numPages);
+
+			pagePoolSize = numPages * pageSize;
+			pagePool = allocate(stack, pagePoolSize, "PagePool");
+			if (mipTailMemorySize > 0L) mipTailMemory = allocate(stack, mipTailMemorySize, "MipTail");
+
+			if (mipTailMemory != VK_NULL_HANDLE) {
+				int numTailBinds = 0;
+				for (var candidate : sparseRequirements) {
+					if (candidate.imageMipTailSize() > 0L) numTailBinds += 1;
+				}
+				var tailBinds = VkSparseMemoryBind.calloc(numTailBinds, stack);
+				long memoryOffset = 0L;
+				int bindIndex = 0;
+				for (var candidate : sparseRequirements) {
+					if (candidate.imageMipTailSize() == 0L) continue;
+					var tailBind = tailBinds.get(bindIndex++);
+					tailBind.resourceOffset(candidate.imageMipTailOffset());
+					tailBind.size(candidate.imageMipTailSize());
+					tailBind.memory(mipTailMemory);
+					tailBind.memoryOffset(memoryOffset);
+					if ((candidate.formatProperties().aspectMask() & VK_IMAGE_ASPECT_METADATA_BIT) != 0) {
+						tailBind.flags(VK_SPARSE_MEMORY_BIND_METADATA_BIT);
+					}
+					memoryOffset += nextMultipleOf(candidate.imageMipTailSize(), pageSize);
+				}
+
+				var opaqueBinds = VkSparseImageOpaqueMemoryBindInfo.calloc(1, stack);
+				opaqueBinds.image(rawImage.vkImage);
+				opaqueBinds.pBinds(tailBinds);
+
+				var bindInfo = VkBindSparseInfo.calloc(stack);
+				bindInfo.sType$Default();
+				bindInfo.pImageOpaqueBinds(opaqueBinds);
+
+				var fence = instance.sync.fenceBank.borrowFence(false, name + "MipTailBind");
+				bindQueue.bindSparse(bindInfo, fence, name + ": mip tail").awaitCompletion();
+				instance.sync.fenceBank.returnFence(fence);
+			}
+
+			var image = new VkbImage(rawImage.vkImage, builder.width, builder.height, aspectMask, builder.mipLevels);
+			if (builder.shouldCreateView) imageView = builder.createView(instance, image.vkImage);
+			image.vkImageView = imageView;
+			this.image = image;
+		} catch (Throwable failure) {
+			// Don't leak the image or its memory when e.g. sparse residency is unsupported or an allocation failed
+			try (var stack = stackPush()) {
+				if (imageView != VK_NULL_HANDLE) {
+					vkDestroyImageView(
+							instance.vkDevice(), imageView, CallbackUserData.IMAGE_VIEW.put(stack, instance)
+					);
+				}
+				destroyImage(stack, rawImage.vkImage);
+				if (pagePool != VK_NULL_HANDLE) freeMemory(stack, pagePool, pagePoolSize);
+				if (mipTailMemory != VK_NULL_HANDLE) freeMemory(stack, mipTailMemory, mipTailMemorySize);
+			} catch (Throwable cleanUpFailed) {
+				failure.addSuppressed(cleanUpFailed);
+			}
+			throw failure;
+		}
+		this.pagePool = pagePool;
+		this.pagePoolSize = pagePoolSize;
+		this.mipTailMemory = mipTailMemory;
+		this.mipTailMemorySize = mipTailMemorySize;
+	}
+
+	private long allocate(MemoryStack stack, long size, String description) {
+		var aiMemory = VkMemoryAllocateInfo.calloc(stack);
+		aiMemory.sType$Default();
+		aiMemory.allocationSize(size);
+		aiMemory.memoryTypeIndex(memoryType);
+
+		var pMemory = stack.callocLong(1);
+		assertVkSuccess(vkAllocateMemory(
+				instance.vkDevice(), aiMemory, CallbackUserData.MEMORY.put(stack, instance), pMemory
+		), "AllocateMemory", name + ": " + description);
+		instance.memoryInfo.trackAllocation(memoryType, size);
+		instance.debug.name(stack, pMemory.get(0), VK_OBJECT_TYPE_DEVICE_MEMORY, name + description);
+		return pMemory.get(0);
+	}
+
+	private void destroyImage(MemoryStack stack, long vkImage) {
+		vkDestroyImage(instance.vkDevice(), vkImage, CallbackUserData.IMAGE.put(stack, instance));
+	}
+
+	private void freeMemory(MemoryStack stack, long memory, long size) {
+		vkFreeMemory(instance.vkDevice(), memory, CallbackUserData.MEMORY.put(stack, instance));
+		instance.memoryInfo.trackFree(memoryType, size);
+	}
+
+	/**
+	 * Binds and unbinds the tiles of {@code update} using <i>vkQueueBindSparse</i>
+	 * @param queue The queue that should execute the bind operations. It must support
+	 *              <i>VK_QUEUE_SPARSE_BINDING_BIT</i>.
+	 * @param update The update that was returned by {@link SparseResidency#update} of {@link #residency}
+	 * @param waitSemaphores The binary semaphores that must be signalled before the bind operations can start (e.g.
+	 *                       the semaphore of the last submission that used the unbound tiles), possibly empty
+	 * @param fence The fence that will be signalled when the bind operations complete, may be <b>null</b>
+	 * @param signalSemaphores The binary semaphores that will be signalled when the bind operations complete, which
+	 *                         the tile uploads should wait on
+	 * @return A {@link FenceSubmission} if {@code fence} is not <b>null</b>, or <b>null</b> otherwise
+	 */
+	public FenceSubmission applyUpdate(
+			VkbQueue queue, SparseResidency.Update update,
+			long[] waitSemaphores, VkbFence fence, long... signalSemaphores
+	) {
+		if (update.isEmpty() && waitSemaphores.length == 0 && signalSemaphores.length == 0 && fence == null) return null;
+		var pageTable = residency.pageTable;
+		try (var stack = stackPush()) {
+			int numBinds = update.boundTiles().length + update.unboundTiles().length;
+			var binds = VkSparseImageMemoryBind.calloc(numBinds, stack);
+			for (int index = 0; index < update.boundTiles().length; index++) {
+				setTile(pageTable, binds.get(index), update.boundTiles()[index]);
+				binds.get(index).memory(pagePool);
+				binds.get(index).memoryOffset(update.boundPages()[index] * pageSize);
+			}
+			for (int index = 0; index < update.unboundTiles().length; index++) {
+				var bind = binds.get(update.boundTiles().length + index);
+				setTile(pageTable, bind, update.unboundTiles()[index]);
+				bind.memory(VK_NULL_HANDLE);
+			}
+
+			var bindInfo = VkBindSparseInfo.calloc(stack);
+			bindInfo.sType$Default();
+			bindInfo.pWaitSemaphores(stack.longs(waitSemaphores));
+			if (numBinds > 0) {
+				var imageBinds = VkSparseImageMemoryBindInfo.calloc(1, stack);
+				imageBinds.image(image.vkImage);
+				imageBinds.pBinds(binds);
+				bindInfo.pImageBinds(imageBinds);
+			}
+			bindInfo.pSignalSemaphores(stack.longs(signalSemaphores));
+
+			return queue.bindSparse(bindInfo, fence, name + ": update");
+		}
+	}
+
+	private void setTile(SparsePageTable pageTable, VkSparseImageMemoryBind bind, int tile) {
+		int mipLevel = pageTable.mipLevel(tile);
+		int x = pageTable.tileX(tile) * pageTable.tileWidth;
+		int y = pageTable.tileY(tile) * pageTable.tileHeight;
+		int mipWidth = Math.max(1, pageTable.width >> mipLevel);
+		int mipHeight = Math.max(1, pageTable.height >> mipLevel);
+
+		bind.subresource().set(aspectMask, mipLevel, 0);
+		bind.offset().set(x, y, 0);
+		bind.extent().set(
+				Math.min(pageTable.tileWidth, mipWidth - x), Math.min(pageTable.tileHeight, mipHeight - y), 1
+		);
+	}
+
+	/**
+	 * Destroys the image (view), the page pool, and the mip tail memory. You must ensure that the GPU no longer uses
+	 * the image, and that all bind operations have completed.
+	 */
+	public void destroy() {
+		try (var stack = stackPush()) {
+			if (image.vkImageView != VK_NULL_HANDLE) {
+				vkDestroyImageView(
+						instance.vkDevice(), image.vkImageView, CallbackUserData.IMAGE_VIEW.put(stack, instance)
+				);
+			}
+			destroyImage(stack, image.vkImage);
+			freeMemory(stack, pagePool, pagePoolSize);
+			if (mipTailMemory != VK_NULL_HANDLE) freeMemory(stack, mipTailMemory, mipTailMemorySize);
+		}
+	}
+}
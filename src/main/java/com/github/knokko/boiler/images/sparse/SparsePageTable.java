@@ -0,0 +1,189 @@
+package com.github.knokko.boiler.images.sparse;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     The page table of a partially-resident (sparse) 2D image. It divides each mip level (except the mip tail) in
+ *     tiles of {@code tileWidth x tileHeight} texels, and gives each tile a unique index. For each tile, it stores the
+ *     index of the memory page to which the tile is bound, or -1 when the tile is not resident.
+ * </p>
+ *
+ * <p>
+ *     This class doesn't use any Vulkan functions, so it can be tested without GPU. It is <b>not</b> thread-safe.
+ * </p>
+ */
+public class SparsePageTable {
+
+	/**
+	 * The size of mip level 0, in texels
+	 */
+	public final int width, height;
+
+	/**
+	 * The size of each tile, in texels. This should be the <i>imageGranularity</i> of the
+	 * <i>VkSparseImageFormatProperties</i> of the image.
+	 */
+	public final int tileWidth, tileHeight;
+
+	/**
+	 * The number of mip levels that are divided in tiles. Mip levels {@code >= numMipLevels} are part of the mip tail,
+	 * which is not tracked by this page table.
+	 */
+	public final int numMipLevels;
+
+	private final int[] firstTiles, tilesX, tilesY;
+	private final int[] pages;
+	private int numResidentTiles;
+
+	public SparsePageTable(int width, int height, int tileWidth, int tileHeight, int numMipLevels) {
+		if (width <= 0 || height <= 0 || tileWidth <= 0 || tileHeight <= 0 || numMipLevels < 0) {
+			throw new IllegalArgumentException(
+					"Invalid page table " + width + "x" + height + " with tiles of " + tileWidth + "x" + tileHeight +
+							" and " + numMipLevels + " mip levels"
+			);
+		}
+		this.width = width;
+		this.height = height;
+		this.tileWidth = tileWidth;
+		this.tileHeight = tileHeight;
+		this.numMipLevels = numMipLevels;
+
+		this.firstTiles = new int[numMipLevels + 1];
+		this.tilesX = new int[numMipLevels];
+		this.tilesY = new int[numMipLevels];
+		for (int mipLevel = 0; mipLevel < numMipLevels; mipLevel++) {
+			tilesX[mipLevel] = divideRoundUp(Math.max(1, width >> mipLevel), tileWidth);
+			tilesY[mipLevel] = divideRoundUp(Math.max(1, height >> mipLevel), tileHeight);
+			firstTiles[mipLevel + 1] = firstTiles[mipLevel] + tilesX[mipLevel] * tilesY[mipLevel];
+		}
+
+		this.pages = new int[firstTiles[numMipLevels]];
+		Arrays.fill(pages, -1);
+	}
+
+	private static int divideRoundUp(int value, int divisor) {
+		return (value + divisor - 1) / divisor;
+	}
+
+	/**
+	 * @return The total number of tiles of all mip levels (except the mip tail)
+	 */
+	public int numTiles() {
+		return pages.length;
+	}
+
+	/**
+	 * @return The number of tiles that are currently resident
+	 */
+	public int numResidentTiles() {
+		return numResidentTiles;
+	}
+
+	/**
+	 * @return The number of tiles in the horizontal direction of mip level {@code mipLevel}
+	 */
+	public int tilesX(int mipLevel) {
+		return tilesX[mipLevel];
+	}
+
+	/**
+	 * @return The number of tiles in the vertical direction of mip level {@code mipLevel}
+	 */
+	public int tilesY(int mipLevel) {
+		return tilesY[mipLevel];
+	}
+
+	/**
+	 * @return The index of the tile at ({@code tileX}, {@code tileY}) in mip level {@code mipLevel}
+	 */
+	public int tileIndex(int mipLevel, int tileX, int tileY) {
+		if (mipLevel < 0 || mipLevel >= numMipLevels) throw new IllegalArgumentException("Invalid mip level " + mipLevel);
+		if (tileX < 0 || tileX >= tilesX[mipLevel] || tileY < 0 || tileY >= tilesY[mipLevel]) {
+			throw new IllegalArgumentException("Tile (" + tileX + ", " + tileY + ") is outside mip level " + mipLevel);
+		}
+		return firstTiles[mipLevel] + tileX + tileY * tilesX[mipLevel];
+	}
+
+	/**
+	 * @return The mip level of the tile with index {@code tile}
+	 */
+	public int mipLevel(int tile) {
+		checkTile(tile);
+		// Since each mip level has at least 1 tile, firstTiles is strictly increasing
+		int mipLevel = Arrays.binarySearch(firstTiles, tile);
+		if (mipLevel >= 0) return mipLevel;
+		return -mipLevel - 2;
+	}
+
+	/**
+	 * @return The horizontal tile coordinate of the tile with index {@code tile}, within its mip level
+	 */
+	public int tileX(int tile) {
+		int mipLevel = mipLevel(tile);
+		return (tile - firstTiles[mipLevel]) % tilesX[mipLevel];
+	}
+
+	/**
+	 * @return The vertical tile coordinate of the tile with index {@code tile}, within its mip level
+	 */
+	public int tileY(int tile) {
+		int mipLevel = mipLevel(tile);
+		return (tile - firstTiles[mipLevel]) / tilesX[mipLevel];
+	}
+
+	/**
+	 * @return The index of the memory page to which {@code tile} is bound, or -1 if the tile is not resident
+	 */
+	public int getPage(int tile) {
+		checkTile(tile);
+		return pages[tile];
+	}
+
+	/**
+	 * @return True if and only if {@code tile} is bound to a memory page
+	 */
+	public boolean isResident(int tile) {
+		return getPage(tile) != -1;
+	}
+
+	void setPage(int tile, int page) {
+		checkTile(tile);
+		if (pages[tile] == -1 && page != -1) numResidentTiles += 1;
+		if (pages[tile] != -1 && page == -1) numResidentTiles -= 1;
+		pages[tile] = page;
+	}
+
+	private void checkTile(int tile) {
+		if (tile < 0 || tile >= pages.length) throw new IllegalArgumentException("Invalid tile " + tile);
+	}
+
+	/**
+	 * Computes the indices of all tiles of mip level {@code mipLevel} that overlap with the given texel region. This
+	 * can be used to convert camera feedback (e.g. the visible region of a terrain) to requested tiles.
+	 * @param mipLevel The mip level
+	 * @param minX The minimum x-coordinate of the region, in texels of mip level {@code mipLevel} (inclusive)
+	 * @param minY The minimum y-coordinate of the region, in texels of mip level {@code mipLevel} (inclusive)
+	 * @param maxX The maximum x-coordinate of the region, in texels of mip level {@code mipLevel} (exclusive)
+	 * @param maxY The maximum y-coordinate of the region, in texels of mip level {@code mipLevel} (exclusive)
+	 * @return The tile indices, in row-major order. The region will be clamped to the mip level.
+	 */
+	public int[] tilesInRegion(int mipLevel, int minX, int minY, int maxX, int maxY) {
+		if (mipLevel < 0 || mipLevel >= numMipLevels) throw new IllegalArgumentException("Invalid mip level " + mipLevel);
+		if (minX >= maxX || minY >= maxY) return new int[0];
+		int minTileX = Math.max(0, minX / tileWidth);
+		int minTileY = Math.max(0, minY / tileHeight);
+		int maxTileX = Math.min(tilesX[mipLevel], divideRoundUp(Math.max(0, maxX), tileWidth));
+		int maxTileY = Math.min(tilesY[mipLevel], divideRoundUp(Math.max(0, maxY), tileHeight));
+		if (minTileX >= maxTileX || minTileY >= maxTileY) return new int[0];
+
+		int[] tiles = new int[(maxTileX - minTileX) * (maxTileY - minTileY)];
+		int index = 0;
+		for (int tileY = minTileY; tileY < maxTileY; tileY++) {
+			for (int tileX = minTileX; tileX < maxTileX; tileX++) {
+				tiles[index++] = tileIndex(mipLevel, tileX, tileY);
+			}
+		}
+		return tiles;
+	}
+}
@@ -0,0 +1,160 @@
+package com.github.knokko.boiler.images.sparse;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ *     Decides which tiles of a {@link SparsePageTable} should be resident, given a fixed pool of memory pages and the
+ *     tiles that are requested by the camera feedback of each frame. Resident tiles are kept in a {@link TileLru}:
+ *     when a requested tile is not resident and all pages are in use, the page of the least recently requested tile
+ *     will be taken.
+ * </p>
+ *
+ * <p>
+ *     This class doesn't use any Vulkan functions, so it can be tested without GPU. Use {@link SparseImage} to apply
+ *     the updates to a real sparse image. It is <b>not</b> thread-safe.
+ * </p>
+ */
+public class SparseResidency {
+
+	/**
+	 * The page table whose residency is managed by this instance
+	 */
+	public final SparsePageTable pageTable;
+
+	private final TileLru lru;
+	private final int[] freePages;
+	private int numFreePages;
+
+	private final int[] requestEpochs;
+	private int currentEpoch;
+
+	private final int[] evictedTiles;
+	private final boolean[] isEvicted;
+	private int numEvictedTiles;
+
+	/**
+	 * @param pageTable The page table, which should initially have no resident tiles
+	 * @param numPages The number of memory pages in the page pool
+	 */
+	public SparseResidency(SparsePageTable pageTable, int numPages) {
+		if (pageTable.numResidentTiles() != 0) throw new IllegalArgumentException("Page table must be empty");
+		this.pageTable = pageTable;
+		this.lru = new TileLru(pageTable.numTiles());
+		this.freePages = new int[numPages];
+		for (int page = 0; page < numPages; page++) freePages[page] = numPages - 1 - page;
+		this.numFreePages = numPages;
+		this.requestEpochs = new int[pageTable.numTiles()];
+		this.evictedTiles = new int[pageTable.numTiles()];
+		this.isEvicted = new boolean[pageTable.numTiles()];
+	}
+
+	/**
+	 * Processes the camera feedback of 1 frame. All resident tiles in {@code requestedTiles} are marked as most
+	 * recently used. The requested tiles that are not resident will be bound to a free page, or to the page of the
+	 * least recently used tile that is <b>not</b> requested. The requested tiles are handled in order, so you should
+	 * put the most important tiles (e.g. the coarsest mip levels) first.
+	 * @param requestedTiles The indices of the tiles that are needed by the current frame
+	 * @param maxBinds The maximum number of tiles that can become resident during this update, which can be used to
+	 *                 spread the streaming over multiple frames
+	 * @return The tiles that became resident, and the tiles that are no longer resident (including the tiles that were
+	 * evicted using {@link #evict} since the previous update). The page table will already be updated.
+	 */
+	public Update update(int[] requestedTiles, int maxBinds) {
+		currentEpoch += 1;
+		for (int tile : requestedTiles) {
+			requestEpochs[tile] = currentEpoch;
+			if (pageTable.isResident(tile)) lru.touch(tile);
+		}
+
+		int numBinds = 0;
+		int[] boundTiles = new int[Math.max(0, Math.min(maxBinds, requestedTiles.length))];
+		int[] boundPages = new int[boundTiles.length];
+		int numUnbinds = 0;
+		int[] unboundTiles = new int[boundTiles.length + numEvictedTiles];
+
+		for (int tile : requestedTiles) {
+			if (numBinds == maxBinds) break;
+			if (pageTable.isResident(tile)) continue;
+
+			int page;
+			if (numFreePages > 0) {
+				numFreePages -= 1;
+				page = freePages[numFreePages];
+			} else {
+				int victim = lru.leastRecentlyUsed();
+
+				// Since all requested resident tiles were touched, this means that all resident tiles are requested
+				if (victim == -1 || requestEpochs[victim] == currentEpoch) break;
+
+				page = pageTable.getPage(victim);
+				pageTable.setPage(victim, -1);
+				lru.remove(victim);
+				unboundTiles[numUnbinds++] = victim;
+			}
+
+			pageTable.setPage(tile, page);
+			lru.touch(tile);
+			boundTiles[numBinds] = tile;
+			boundPages[numBinds] = page;
+			numBinds += 1;
+		}
+
+		// Evicted tiles that became resident again don't need to be unbound
+		for (int index = 0; index < numEvictedTiles; index++) {
+			int tile = evictedTiles[index];
+			isEvicted[tile] = false;
+			if (!pageTable.isResident(tile)) unboundTiles[numUnbinds++] = tile;
+		}
+		numEvictedTiles = 0;
+
+		return new Update(
+				Arrays.copyOf(boundTiles, numBinds),
+				Arrays.copyOf(boundPages, numBinds),
+				Arrays.copyOf(unboundTiles, numUnbinds)
+		);
+	}
+
+	/**
+	 * Makes {@code tile} non-resident, and returns its page to the pool. This can be used to evict tiles that are
+	 * certainly no longer needed, for instance when the terrain is unloaded. The tile will be included in the
+	 * {@link Update#unboundTiles} of the next update.
+	 * @return True if the tile was resident
+	 */
+	public boolean evict(int tile) {
+		int page = pageTable.getPage(tile);
+		if (page == -1) return false;
+		pageTable.setPage(tile, -1);
+		lru.remove(tile);
+		freePages[numFreePages++] = page;
+		if (!isEvicted[tile]) {
+			isEvicted[tile] = true;
+			evictedTiles[numEvictedTiles++] = tile;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The number of pages that are not bound to any tile
+	 */
+	public int numFreePages() {
+		return numFreePages;
+	}
+
+	/**
+	 * The result of {@link #update}
+	 * @param boundTiles The tiles that became resident. Their contents are undefined, so you need to upload them.
+	 * @param boundPages The page to which each tile in {@code boundTiles} is bound
+	 * @param unboundTiles The tiles that are no longer resident, because their pages were taken by
+	 *                     {@code boundTiles}, or because they were evicted
+	 */
+	public record Update(int[] boundTiles, int[] boundPages, int[] unboundTiles) {
+
+		/**
+		 * @return True if this update doesn't change the residency of any tile
+		 */
+		public boolean isEmpty() {
+			return boundTiles.length == 0 && unboundTiles.length == 0;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package com.github.knokko.boiler.images.sparse;
+
+import java.util.Arrays;
+
+/**
+ * A least-recently-used list of tile indices, which is implemented as a doubly-linked list on top of int arrays, so
+ * that all operations take constant time and don't allocate memory. It is <b>not</b> thread-safe.
+ */
+public class TileLru {
+
+	private final int[] previous, next;
+	private final boolean[] contained;
+	private int oldest = -1, newest = -1;
+	private int size;
+
+	/**
+	 * @param numTiles The number of tiles: all tile indices must be smaller than {@code numTiles}
+	 */
+	public TileLru(int numTiles) {
+		this.previous = new int[numTiles];
+		this.next = new int[numTiles];
+		this.contained = new boolean[numTiles];
+		Arrays.fill(previous, -1);
+		Arrays.fill(next, -1);
+	}
+
+	/**
+	 * Marks {@code tile} as the most recently used tile. If the tile is not yet in this list, it will be added.
+	 */
+	public void touch(int tile) {
+		if (contained[tile]) {
+			if (tile == newest) return;
+			unlink(tile);
+		}
+		contained[tile] = true;
+		size += 1;
+		previous[tile] = newest;
+		next[tile] = -1;
+		if (newest != -1) next[newest] = tile;
+		newest = tile;
+		if (oldest == -1) oldest = tile;
+	}
+
+	/**
+	 * Removes {@code tile} from this list, if it is in this list
+	 */
+	public void remove(int tile) {
+		if (!contained[tile]) return;
+		unlink(tile);
+		contained[tile] = false;
+	}
+
+	private void unlink(int tile) {
+		int previousTile = previous[tile];
+		int nextTile = next[tile];
+		if (previousTile != -1) next[previousTile] = nextTile;
+		else oldest = nextTile;
+		if (nextTile != -1) previous[nextTile] = previousTile;
+		else newest = previousTile;
+		previous[tile] = -1;
+		next[tile] = -1;
+		size -= 1;
+	}
+
+	/**
+	 * @return The least recently used tile, or -1 if this list is empty
+	 */
+	public int leastRecentlyUsed() {
+		return oldest;
+	}
+
+	/**
+	 * @return True if and only if {@code tile} is in this list
+	 */
+	public boolean contains(int tile) {
+		return contained[tile];
+	}
+
+	/**
+	 * @return The number of tiles in this list
+	 */
+	public int size() {
+		return size;
+	}
+}
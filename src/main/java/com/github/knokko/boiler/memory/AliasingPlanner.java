@@ -0,0 +1,48 @@
+package com.github.knokko.boiler.memory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import static com.github.knokko.boiler.utilities.BoilerMath.nextMultipleOf;
+
+class AliasingPlanner {
+
+	/**
+	 * Assigns a memory offset to each transient claim, such that claims with overlapping lifetimes never share memory,
+	 * while claims with disjoint lifetimes can share memory. The claims are placed from largest to smallest, and each
+	 * claim is placed at the lowest offset that doesn't collide with an already-placed claim whose lifetime overlaps.
+	 * @param sizes The size of each claim, in bytes
+	 * @param alignments The alignment of each claim, in bytes
+	 * @param lifetimes The lifetime of each claim
+	 * @param offsets The array in which the offset of each claim will be stored
+	 * @return The size of the memory region that is needed to hold all claims, in bytes
+	 */
+	static long plan(long[] sizes, long[] alignments, Lifetime[] lifetimes, long[] offsets) {
+		Integer[] order = IntStream.range(0, sizes.length).boxed().toArray(Integer[]::new);
+		Arrays.sort(order, Comparator.<Integer>comparingLong(index -> -sizes[index]).thenComparingInt(
+				index -> lifetimes[index].firstUse()
+		));
+
+		var placed = new ArrayList<Integer>(sizes.length);
+		long regionSize = 0L;
+		for (int index : order) {
+			var conflicts = placed.stream().filter(
+					other -> lifetimes[other].overlaps(lifetimes[index])
+			).sorted(Comparator.comparingLong(other -> offsets[other])).toList();
+
+			long candidate = 0L;
+			for (int other : conflicts) {
+				long aligned = nextMultipleOf(candidate, alignments[index]);
+				if (aligned + sizes[index] <= offsets[other]) break;
+				candidate = Math.max(candidate, offsets[other] + sizes[other]);
+			}
+
+			offsets[index] = nextMultipleOf(candidate, alignments[index]);
+			regionSize = Math.max(regionSize, offsets[index] + sizes[index]);
+			placed.add(index);
+		}
+		return regionSize;
+	}
+}
@@ -1,6 +1,7 @@
 package com.github.knokko.boiler.memory;
 
 import com.github.knokko.boiler.buffers.MappedVkbBuffer;
+import com.github.knokko.boiler.buffers.NonCoherentMemory;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -11,6 +12,7 @@ class BufferUsageClaims {
 
 	final List<BufferClaim> claims = new ArrayList<>();
 	final List<GroupedBufferClaims> groupedClaims = new ArrayList<>();
+	Lifetime lifetime;
 
 	void groupClaims(long maxSize) {
 		long offset = 0L;
@@ -36,6 +38,7 @@ class BufferUsageClaims {
 		for (var claim : claims) {
 			if (claim.buffer instanceof MappedVkbBuffer) groupedClaims.get(claim.groupIndex).shouldMapMemory = true;
 		}
+		for (var group : groupedClaims) group.lifetime = lifetime;
 	}
 
 	void setBuffer(int groupIndex, long vkBuffer, long memorySize, long memoryAlignment) {
@@ -44,15 +47,18 @@ class BufferUsageClaims {
 				claim.buffer.vkBuffer = vkBuffer;
 			}
 		}
+		groupedClaims.get(groupIndex).vkBuffer = vkBuffer;
 		groupedClaims.get(groupIndex).memorySize = memorySize;
 		groupedClaims.get(groupIndex).memoryAlignment = memoryAlignment;
 	}
 
-	void setHostAddress(int groupIndex, long address) {
+	void setHostAddress(int groupIndex, long address, NonCoherentMemory nonCoherentMemory) {
 		for (BufferClaim claim : claims) {
 			if (claim.groupIndex != groupIndex) continue;
-			if (claim.buffer instanceof MappedVkbBuffer) {
-				((MappedVkbBuffer) claim.buffer).hostAddress = address + groupedClaims.get(groupIndex).memoryOffset + claim.buffer.offset;
+			if (claim.buffer instanceof MappedVkbBuffer mappedBuffer) {
+				mappedBuffer.memoryOffset = groupedClaims.get(groupIndex).memoryOffset + claim.buffer.offset;
+				mappedBuffer.hostAddress = address + mappedBuffer.memoryOffset;
+				mappedBuffer.nonCoherentMemory = nonCoherentMemory;
 			}
 		}
 	}
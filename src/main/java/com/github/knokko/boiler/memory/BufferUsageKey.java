@@ -1,4 +1,6 @@
 package com.github.knokko.boiler.memory;
 
-record BufferUsageKey(int usage, boolean hostVisible, boolean preferablyDeviceLocal, float priority) {
+record BufferUsageKey(
+		int usage, boolean hostVisible, boolean preferablyDeviceLocal, boolean readback, float priority
+) {
 }
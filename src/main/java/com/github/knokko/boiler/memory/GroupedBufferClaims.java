@@ -5,6 +5,9 @@ class GroupedBufferClaims {
 	final long expectedSize;
 
 	boolean shouldMapMemory;
+	boolean dedicated;
+	Lifetime lifetime;
+	long vkBuffer;
 	long memorySize;
 	long memoryAlignment;
 	long memoryOffset;
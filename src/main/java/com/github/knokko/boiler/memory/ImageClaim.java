@@ -11,6 +11,8 @@ class ImageClaim {
 	final long alignment;
 	long memoryOffset = 0L;
 	int allocationIndex;
+	boolean dedicated;
+	Lifetime lifetime;
 
 	ImageClaim(VkbImage image, ImageBuilder builder, long memorySize, long alignment) {
 		this.image = image;
@@ -0,0 +1,18 @@
+package com.github.knokko.boiler.memory;
+
+/**
+ * The lifetime of a transient image or buffer: it is only used from use {@code firstUse} until use {@code lastUse}
+ * (both inclusive), for instance pass indices
+ */
+record Lifetime(int firstUse, int lastUse) {
+
+	Lifetime {
+		if (firstUse > lastUse) throw new IllegalArgumentException(
+				"firstUse (" + firstUse + ") must not be larger than lastUse (" + lastUse + ")"
+		);
+	}
+
+	boolean overlaps(Lifetime other) {
+		return firstUse <= other.lastUse && other.firstUse <= lastUse;
+	}
+}
@@ -46,6 +46,7 @@ public class MemoryBlock {
 			if (!recycle) {
 				for (MemoryAllocation allocation : allocations) {
 					vkFreeMemory(instance.vkDevice(), allocation.vkAllocation, memoryCallbacks);
+					instance.memoryInfo.trackFree(allocation.memoryType, allocation.size);
 				}
 			}
 		}
@@ -53,7 +54,7 @@ public class MemoryBlock {
 
 	MemoryAllocation getAllocation(int memoryType) {
 		for (MemoryAllocation allocation : allocations) {
-			if (allocation.memoryType == memoryType && !allocation.wasRecycled) {
+			if (allocation.memoryType == memoryType && !allocation.wasRecycled && !allocation.dedicated) {
 				return allocation;
 			}
 		}
@@ -67,15 +68,19 @@ public class MemoryBlock {
 		final int memoryType;
 		final float priority;
 		final long hostAddress;
+		final boolean dedicated;
 
 		boolean wasRecycled = false;
 
-		MemoryAllocation(long vkAllocation, long size, int memoryType, float priority, long hostAddress) {
+		MemoryAllocation(
+				long vkAllocation, long size, int memoryType, float priority, long hostAddress, boolean dedicated
+		) {
 			this.vkAllocation = vkAllocation;
 			this.size = size;
 			this.memoryType = memoryType;
 			this.priority = priority;
 			this.hostAddress = hostAddress;
+			this.dedicated = dedicated;
 		}
 	}
 }
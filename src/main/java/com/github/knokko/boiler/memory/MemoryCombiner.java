@@ -6,15 +6,23 @@ import com.github.knokko.boiler.buffers.VkbBuffer;
 import com.github.knokko.boiler.images.ImageBuilder;
 import com.github.knokko.boiler.images.VkbImage;
 import com.github.knokko.boiler.memory.callbacks.CallbackUserData;
+import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static com.github.knokko.boiler.utilities.BoilerMath.leastCommonMultiple;
 import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.KHRDedicatedAllocation.VK_KHR_DEDICATED_ALLOCATION_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRGetMemoryRequirements2.*;
 import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK11.vkGetBufferMemoryRequirements2;
+import static org.lwjgl.vulkan.VK11.vkGetImageMemoryRequirements2;
 
 /**
  * <p>
@@ -52,13 +60,39 @@ import static org.lwjgl.vulkan.VK10.*;
  *     </li>
  *     <li>Call {@link MemoryBlock#destroy} to destroy all buffers, images, and allocations</li>
  * </ol>
+ * <p>
+ *     Each claim has a backup memory type, which is used when the allocation in its preferred memory type fails.
+ *     Furthermore, claims are moved to their backup memory type (when it is in another heap) <i>before</i> the
+ *     allocation would exceed the budget of the preferred heap, see {@link MemoryInfo#wouldExceedBudget}. Claims with
+ *     a lower priority are moved first.
+ * </p>
+ * <p>
+ *     When the device supports dedicated allocations (Vulkan 1.1, or <i>VK_KHR_dedicated_allocation</i>), images and
+ *     buffers for which the driver reports <i>requiresDedicatedAllocation</i> get their own memory allocation. The
+ *     same holds for images and buffers for which the driver reports <i>prefersDedicatedAllocation</i>, if they are
+ *     at least {@link #setDedicatedAllocationThreshold} bytes large (typically large render targets). All other images
+ *     and buffers are still packed into shared allocations.
+ * </p>
+ * <p>
+ *     Images and buffers that are only used during a part of each frame (e.g. the intermediate images of a
+ *     post-processing chain) can be added using {@link #addTransientImage} and {@link #addTransientBuffer}. The
+ *     memory combiner will let transient images and buffers share memory when their lifetimes don't overlap.
+ * </p>
  */
 public class MemoryCombiner {
 
+	/**
+	 * The default value of {@link #setDedicatedAllocationThreshold}: 4 MiB
+	 */
+	public static final long DEFAULT_DEDICATED_ALLOCATION_THRESHOLD = 4L * 1024L * 1024L;
+
 	private final BoilerInstance instance;
 	private final String name;
+	private final boolean supportsDedicatedAllocations;
+	private long dedicatedAllocationThreshold = DEFAULT_DEDICATED_ALLOCATION_THRESHOLD;
 	final Map<BufferUsageKey, BufferUsageClaims> buffers = new HashMap<>();
 	final Map<MemoryTypeKey, MemoryTypeClaims> claims = new HashMap<>();
+	private final List<TransientBuffer> transientBuffers = new ArrayList<>();
 
 	/**
 	 * Constructs a new empty memory combiner
@@ -67,6 +101,65 @@ public class MemoryCombiner {
 	public MemoryCombiner(BoilerInstance instance, String name) {
 		this.instance = instance;
 		this.name = name;
+
+		if (VK_API_VERSION_MAJOR(instance.apiVersion) == 1 && VK_API_VERSION_MINOR(instance.apiVersion) == 0) {
+			var extensions = instance.extra.deviceExtensions();
+			this.supportsDedicatedAllocations = extensions.contains(VK_KHR_DEDICATED_ALLOCATION_EXTENSION_NAME) &&
+					extensions.contains(VK_KHR_GET_MEMORY_REQUIREMENTS_2_EXTENSION_NAME);
+		} else this.supportsDedicatedAllocations = true;
+	}
+
+	/**
+	 * Changes the minimum size (in bytes) of images and buffers that get a dedicated memory allocation when the driver
+	 * reports <i>prefersDedicatedAllocation</i>. Images and buffers for which the driver reports
+	 * <i>requiresDedicatedAllocation</i> always get a dedicated memory allocation. Use {@link Long#MAX_VALUE} to
+	 * disable dedicated allocations for images and buffers that don't require them.
+	 * This must be called before the images and buffers are added.
+	 */
+	public void setDedicatedAllocationThreshold(long threshold) {
+		this.dedicatedAllocationThreshold = threshold;
+	}
+
+	/**
+	 * Stores the memory requirements of {@code vkImage} or {@code vkBuffer} in {@code requirements}
+	 * @return true if the image or buffer should get a dedicated memory allocation
+	 */
+	private boolean getMemoryRequirements(
+			MemoryStack stack, long vkImage, long vkBuffer, VkMemoryRequirements requirements
+	) {
+		if (!supportsDedicatedAllocations) {
+			if (vkImage != VK_NULL_HANDLE) vkGetImageMemoryRequirements(instance.vkDevice(), vkImage, requirements);
+			else vkGetBufferMemoryRequirements(instance.vkDevice(), vkBuffer, requirements);
+			return false;
+		}
+
+		var dedicatedRequirements = VkMemoryDedicatedRequirementsKHR.calloc(stack);
+		dedicatedRequirements.sType$Default();
+
+		var requirements2 = VkMemoryRequirements2KHR.calloc(stack);
+		requirements2.sType$Default();
+		requirements2.pNext(dedicatedRequirements);
+
+		boolean core = VK_API_VERSION_MAJOR(instance.apiVersion) > 1 || VK_API_VERSION_MINOR(instance.apiVersion) > 0;
+		if (vkImage != VK_NULL_HANDLE) {
+			var info = VkImageMemoryRequirementsInfo2KHR.calloc(stack);
+			info.sType$Default();
+			info.image(vkImage);
+			if (core) vkGetImageMemoryRequirements2(instance.vkDevice(), info, requirements2);
+			else vkGetImageMemoryRequirements2KHR(instance.vkDevice(), info, requirements2);
+		} else {
+			var info = VkBufferMemoryRequirementsInfo2KHR.calloc(stack);
+			info.sType$Default();
+			info.buffer(vkBuffer);
+			if (core) vkGetBufferMemoryRequirements2(instance.vkDevice(), info, requirements2);
+			else vkGetBufferMemoryRequirements2KHR(instance.vkDevice(), info, requirements2);
+		}
+		requirements.set(requirements2.memoryRequirements());
+
+		return dedicatedRequirements.requiresDedicatedAllocation() || (
+				dedicatedRequirements.prefersDedicatedAllocation() &&
+						requirements.size() >= dedicatedAllocationThreshold
+		);
 	}
 
 	private MemoryTypeClaims getClaims(int memoryTypeIndex, int backupMemoryType, float priority) {
@@ -92,7 +185,7 @@ public class MemoryCombiner {
 		if (!instance.extra.memoryPriority()) priority = 0f;
 		VkbBuffer buffer = new VkbBuffer(size);
 		buffers.computeIfAbsent(
-				new BufferUsageKey(usage, false, false, priority),
+				new BufferUsageKey(usage, false, false, false, priority),
 				key -> new BufferUsageClaims()
 		).claims.add(new BufferClaim(buffer, alignment));
 		return buffer;
@@ -113,7 +206,7 @@ public class MemoryCombiner {
 	public MappedVkbBuffer addMappedBuffer(long size, long alignment, int usage) {
 		MappedVkbBuffer buffer = new MappedVkbBuffer(size);
 		buffers.computeIfAbsent(
-				new BufferUsageKey(usage, true, false, 0f),
+				new BufferUsageKey(usage, true, false, false, 0f),
 				key -> new BufferUsageClaims()
 		).claims.add(new BufferClaim(buffer, alignment));
 		return buffer;
@@ -140,12 +233,68 @@ public class MemoryCombiner {
 		if (!instance.extra.memoryPriority()) priority = 0f;
 		MappedVkbBuffer buffer = new MappedVkbBuffer(size);
 		buffers.computeIfAbsent(
-				new BufferUsageKey(usage, true, true, priority),
+				new BufferUsageKey(usage, true, true, false, priority),
 				key -> new BufferUsageClaims()
 		).claims.add(new BufferClaim(buffer, alignment));
 		return buffer;
 	}
 
+	/**
+	 * Adds a {@link MappedVkbBuffer} that will certainly be <b>host-visible</b>, and will preferably be
+	 * <b>host-cached</b>, which makes host reads much faster. This is intended for buffers that are written by the
+	 * device, and read by the host (e.g. screenshots or query results). Its memory will be mapped as soon as you call
+	 * {@link #build}. It will have the same `VkBuffer` as all other buffers added via this method, if their
+	 * {@code usage} flags are the same.
+	 * <p>
+	 *     The memory type may not be <b>host-coherent</b>, in which case you need to call
+	 *     {@link MappedVkbBuffer#invalidate} before reading data written by the device, and
+	 *     {@link MappedVkbBuffer#flush} after writing data that the device should read. To ensure that this doesn't
+	 *     affect other buffers, the {@link MappedVkbBuffer#offset} of the buffer will be a multiple of
+	 *     <i>nonCoherentAtomSize</i>.
+	 * </p>
+	 * @param size The size of the buffer, in bytes
+	 * @param alignment The alignment of the buffer, in bytes. The {@link MappedVkbBuffer#offset} will be a multiple of
+	 *                  {@code alignment}. Furthermore, the bound memory offset of the <b>VkBuffer</b> will be a
+	 *                  multiple of {@code alignment}.
+	 * @param usage The buffer usage flags: {@link VkBufferCreateInfo#usage()}
+	 * @return The created {@link MappedVkbBuffer}. <b>Note that its fields may be 0 until you call {@link #build}!</b>
+	 */
+	public MappedVkbBuffer addMappedReadbackBuffer(long size, long alignment, int usage) {
+		long atomSize = instance.deviceProperties.limits().nonCoherentAtomSize();
+		MappedVkbBuffer buffer = new MappedVkbBuffer(size);
+		buffers.computeIfAbsent(
+				new BufferUsageKey(usage, true, false, true, 0f),
+				key -> new BufferUsageClaims()
+		).claims.add(new BufferClaim(buffer, leastCommonMultiple(alignment, atomSize)));
+		return buffer;
+	}
+
+	/**
+	 * Adds a transient {@link VkbBuffer} that will probably be <b>device-local</b>, which is only used from use
+	 * {@code firstUse} until use {@code lastUse} (both inclusive). See {@link #addTransientImage} for more
+	 * information. Unlike the buffers added via {@link #addBuffer}, each transient buffer gets its own
+	 * <b>VkBuffer</b>.
+	 * @param size The size of the buffer, in bytes
+	 * @param alignment The alignment of the bound memory offset of the <b>VkBuffer</b>, in bytes
+	 * @param usage The buffer usage flags: {@link VkBufferCreateInfo#usage()}
+	 * @param firstUse The first use of the buffer
+	 * @param lastUse The last use of the buffer
+	 * @param priority Will be propagated to {@link VkMemoryPriorityAllocateInfoEXT#priority()} if
+	 *                 <i>VK_EXT_memory_priority</i> is enabled. Otherwise, it is ignored.
+	 * @return The created {@link VkbBuffer}. <b>Note that its fields may be 0 until you call {@link #build}!</b>
+	 */
+	public VkbBuffer addTransientBuffer(
+			long size, long alignment, int usage, int firstUse, int lastUse, float priority
+	) {
+		if (!instance.extra.memoryPriority()) priority = 0f;
+		VkbBuffer buffer = new VkbBuffer(size);
+		var claims = new BufferUsageClaims();
+		claims.lifetime = new Lifetime(firstUse, lastUse);
+		claims.claims.add(new BufferClaim(buffer, alignment));
+		transientBuffers.add(new TransientBuffer(new BufferUsageKey(usage, false, false, false, priority), claims));
+		return buffer;
+	}
+
 	/**
 	 * Adds a {@link VkbImage} that will probably be <b>device-local</b>, and probably <i>not</i> <b>host-visible</b>.
 	 * It will probably share the same memory allocation as the other images with the same priority,
@@ -156,16 +305,50 @@ public class MemoryCombiner {
 	 * @return The created {@link VkbImage}. <b>Note that its memory will not be bound until you call {@link #build}!</b>
 	 */
 	public VkbImage addImage(ImageBuilder builder, float priority) {
+		return addImage(builder, null, priority);
+	}
+
+	/**
+	 * Adds a transient {@link VkbImage}, which is only used from use {@code firstUse} until use {@code lastUse}
+	 * (both inclusive). The uses can be any increasing sequence, for instance the indices of the render passes
+	 * of a frame. Transient images and buffers whose lifetimes don't overlap may share the same memory, which can
+	 * greatly reduce the memory usage of e.g. post-processing chains.
+	 * <p>
+	 *     Since the memory is shared, the contents of the image are undefined at the start of its lifetime, so you
+	 *     should transition it from <i>VK_IMAGE_LAYOUT_UNDEFINED</i> at its first use. Furthermore, you need a memory
+	 *     barrier between the last use of an image or buffer and the first use of the next image or buffer that
+	 *     shares its memory.
+	 * </p>
+	 * <p>
+	 *     When the image is only used as an attachment on tile, you should consider using
+	 *     {@link ImageBuilder#lazilyAllocated()}.
+	 * </p>
+	 * @param builder The {@link ImageBuilder} containing all the required image properties
+	 * @param firstUse The first use of the image
+	 * @param lastUse The last use of the image
+	 * @param priority This will be propagated to {@link VkMemoryPriorityAllocateInfoEXT#priority()} if
+	 *                 <i>VK_EXT_memory_priority</i> is enabled. Otherwise, it is ignored.
+	 * @return The created {@link VkbImage}. <b>Note that its memory will not be bound until you call {@link #build}!</b>
+	 */
+	public VkbImage addTransientImage(ImageBuilder builder, int firstUse, int lastUse, float priority) {
+		return addImage(builder, new Lifetime(firstUse, lastUse), priority);
+	}
+
+	private VkbImage addImage(ImageBuilder builder, Lifetime lifetime, float priority) {
+		if ((builder.flags & VK_IMAGE_CREATE_SPARSE_BINDING_BIT) != 0) {
+			throw new IllegalArgumentException("Sparse images can't be added to a MemoryCombiner: use SparseImage");
+		}
 		VkbImage image = builder.createRaw(instance);
 		try (var stack = stackPush()) {
 			var requirements = VkMemoryRequirements.calloc(stack);
-			vkGetImageMemoryRequirements(instance.vkDevice(), image.vkImage, requirements);
+			boolean dedicated = getMemoryRequirements(stack, image.vkImage, VK_NULL_HANDLE, requirements);
 
 			int memoryTypeIndex = builder.memoryTypeSelector.chooseMemoryType(instance, requirements.memoryTypeBits());
 			int backupMemoryType = instance.memoryInfo.largestMemoryType(requirements.memoryTypeBits());
-			getClaims(memoryTypeIndex, backupMemoryType, priority).images.add(
-					new ImageClaim(image, builder, requirements.size(), requirements.alignment())
-			);
+			var claim = new ImageClaim(image, builder, requirements.size(), requirements.alignment());
+			claim.dedicated = dedicated && lifetime == null;
+			claim.lifetime = lifetime;
+			getClaims(memoryTypeIndex, backupMemoryType, priority).images.add(claim);
 		}
 		return image;
 	}
@@ -180,15 +363,16 @@ public class MemoryCombiner {
 			var requirements = VkMemoryRequirements.calloc(stack);
 			var pBuffer = stack.callocLong(1);
 
-			buffers.forEach((key, claim) -> {
+			BiConsumer<BufferUsageKey, BufferUsageClaims> createBuffers = (key, claim) -> {
 				long maxBufferSize = 123456789012345L;
 				if (instance.maintenance3Properties != null) {
 					maxBufferSize = instance.maintenance3Properties.maxMemoryAllocationSize();
 				}
 				claim.groupClaims(maxBufferSize);
 				String bufferName = name + (key.hostVisible() ? (": mapped" +
-						(key.preferablyDeviceLocal() ? " device" : "") + ") buffer usage " + key.usage()) :
-						(": buffer usage " + key.usage()));
+						(key.preferablyDeviceLocal() ? " device" : "") + (key.readback() ? " readback" : "") +
+						") buffer usage " + key.usage()) : (": buffer usage " + key.usage()));
+				if (claim.lifetime != null) bufferName += " (transient)";
 
 				for (int groupIndex = 0; groupIndex < claim.groupedClaims.size(); groupIndex++) {
 					ciBuffer.size(claim.groupedClaims.get(groupIndex).expectedSize);
@@ -200,13 +384,24 @@ public class MemoryCombiner {
 					long vkBuffer = pBuffer.get(0);
 					instance.debug.name(stack, vkBuffer, VK_OBJECT_TYPE_BUFFER, name);
 
-					vkGetBufferMemoryRequirements(instance.vkDevice(), vkBuffer, requirements);
-					claim.setBuffer(groupIndex, vkBuffer, requirements.size(), requirements.alignment());
+					boolean dedicated = getMemoryRequirements(stack, VK_NULL_HANDLE, vkBuffer, requirements);
+					long memoryAlignment = requirements.alignment();
+					if (key.readback()) {
+						// Ensure that flushing or invalidating this buffer won't affect other buffers
+						memoryAlignment = leastCommonMultiple(
+								memoryAlignment, instance.deviceProperties.limits().nonCoherentAtomSize()
+						);
+					}
+					claim.setBuffer(groupIndex, vkBuffer, requirements.size(), memoryAlignment);
+					claim.groupedClaims.get(groupIndex).dedicated = dedicated && claim.lifetime == null;
 				}
 
 				int memoryTypeIndex;
 				int backupMemoryType;
-				if (key.hostVisible()) {
+				if (key.readback()) {
+					memoryTypeIndex = instance.memoryInfo.recommendedReadbackMemoryType(requirements.memoryTypeBits());
+					backupMemoryType = instance.memoryInfo.recommendedHostVisibleMemoryType(requirements.memoryTypeBits());
+				} else if (key.hostVisible()) {
 					memoryTypeIndex = -1;
 					if (key.preferablyDeviceLocal()) {
 						memoryTypeIndex = instance.memoryInfo.recommendedHybridMemoryType(requirements.memoryTypeBits());
@@ -218,8 +413,13 @@ public class MemoryCombiner {
 					backupMemoryType = instance.memoryInfo.largestMemoryType(requirements.memoryTypeBits());
 				}
 				getClaims(memoryTypeIndex, backupMemoryType, key.priority()).buffers.add(claim);
-			});
+			};
+			buffers.forEach(createBuffers);
+			for (var transientBuffer : transientBuffers) {
+				createBuffers.accept(transientBuffer.key, transientBuffer.claims);
+			}
 			buffers.clear();
+			transientBuffers.clear();
 		}
 	}
 
@@ -284,9 +484,12 @@ public class MemoryCombiner {
 			for (var allocation : toRecycle.allocations) {
 				if (!allocation.wasRecycled) {
 					vkFreeMemory(instance.vkDevice(), allocation.vkAllocation, memoryCallbacks);
+					instance.memoryInfo.trackFree(allocation.memoryType, allocation.size);
 				}
 			}
 		}
 		return block;
 	}
+
+	private record TransientBuffer(BufferUsageKey key, BufferUsageClaims claims) {}
 }
@@ -1,24 +1,40 @@
 package com.github.knokko.boiler.memory;
 
 import com.github.knokko.boiler.BoilerInstance;
-import org.lwjgl.vulkan.VkMemoryRequirements;
-import org.lwjgl.vulkan.VkPhysicalDeviceMemoryProperties;
+import org.lwjgl.vulkan.*;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.EXTMemoryBudget.VK_EXT_MEMORY_BUDGET_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRGetPhysicalDeviceProperties2.VK_KHR_GET_PHYSICAL_DEVICE_PROPERTIES_2_EXTENSION_NAME;
+import static org.lwjgl.vulkan.KHRGetPhysicalDeviceProperties2.vkGetPhysicalDeviceMemoryProperties2KHR;
 import static org.lwjgl.vulkan.VK10.*;
-import static org.lwjgl.vulkan.VK10.VK_MEMORY_PROPERTY_HOST_COHERENT_BIT;
+import static org.lwjgl.vulkan.VK11.vkGetPhysicalDeviceMemoryProperties2;
 
 /**
- * This class is used to cache the results of {@link org.lwjgl.vulkan.VK10#vkGetPhysicalDeviceMemoryProperties}, and
- * can be accessed via {@link BoilerInstance#memoryInfo}. It also contains methods to choose memory types for buffers
- * or images.
+ * <p>
+ *   This class is used to cache the results of {@link org.lwjgl.vulkan.VK10#vkGetPhysicalDeviceMemoryProperties}, and
+ *   can be accessed via {@link BoilerInstance#memoryInfo}. It also contains methods to choose memory types for buffers
+ *   or images.
+ * </p>
+ * <p>
+ *   Furthermore, it tracks the usage and budget of each memory heap. When <i>VK_EXT_memory_budget</i> is enabled, the
+ *   budget and usage are queried from the driver, at most once per {@link #getBudgetRefreshInterval()}. In between
+ *   these queries, the memory allocated and freed by {@link MemoryCombiner} and {@link MemoryBlock} is added to the
+ *   cached usage. When the extension is not enabled, the budget is estimated as 80% of the heap size, and only the
+ *   memory allocated by {@link MemoryCombiner} (without VMA) is counted as usage.
+ * </p>
  */
 public class MemoryInfo {
 
+	private static final long DEFAULT_BUDGET_REFRESH_INTERVAL = 100_000_000L;
+
 	/**
 	 * {@link VkPhysicalDeviceMemoryProperties#memoryTypeCount()}
 	 */
@@ -42,33 +58,110 @@ public class MemoryInfo {
 	 */
 	public final List<Integer> hybridMemoryTypes;
 
+	/**
+	 * All memory type indices with {@link org.lwjgl.vulkan.VK10#VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT} and
+	 * {@link org.lwjgl.vulkan.VK10#VK_MEMORY_PROPERTY_HOST_CACHED_BIT}, which may or may not be host-coherent
+	 */
+	public final List<Integer> hostCachedMemoryTypes;
+
+	/**
+	 * All memory type indices with {@link org.lwjgl.vulkan.VK10#VK_MEMORY_PROPERTY_LAZILY_ALLOCATED_BIT}, which are
+	 * typically only available on tile-based GPUs
+	 */
+	public final List<Integer> lazilyAllocatedMemoryTypes;
+
+	/**
+	 * {@link VkPhysicalDeviceMemoryProperties#memoryHeapCount()}
+	 */
+	public final int numMemoryHeaps;
+
 	private final long[] capacities;
+	private final int[] propertyFlags;
+	private final int[] heapIndices;
+	private final long[] heapSizes;
+	private final int barHeapIndex;
+	private final boolean resizableBar;
+
+	private final VkPhysicalDevice vkPhysicalDevice;
+	private final boolean hasBudgetExtension, useCoreProperties2;
+
+	private final long[] budgets, usages, trackedUsages, trackedUsagesAtRefresh;
+	private long lastBudgetRefresh;
+	private long budgetRefreshInterval = DEFAULT_BUDGET_REFRESH_INTERVAL;
+
+	private final List<MemoryPressureListener> pressureListeners = new CopyOnWriteArrayList<>();
+	private float pressureThreshold = 0.9f;
+	private long heapsUnderPressure;
 
 	/**
 	 * Note: this constructor is meant for internal use only. Use {@link BoilerInstance#memoryInfo} instead.
 	 */
 	public MemoryInfo(BoilerInstance instance) {
+		this.vkPhysicalDevice = instance.vkPhysicalDevice();
+		this.useCoreProperties2 = instance.apiVersion != VK_API_VERSION_1_0;
+		this.hasBudgetExtension = instance.extra.deviceExtensions().contains(VK_EXT_MEMORY_BUDGET_EXTENSION_NAME) &&
+				(useCoreProperties2 || instance.extra.instanceExtensions().contains(
+						VK_KHR_GET_PHYSICAL_DEVICE_PROPERTIES_2_EXTENSION_NAME
+				));
 		try (var stack = stackPush()) {
 			var memory = VkPhysicalDeviceMemoryProperties.calloc(stack);
 			vkGetPhysicalDeviceMemoryProperties(instance.vkPhysicalDevice(), memory);
 			this.numMemoryTypes = memory.memoryTypeCount();
+			this.numMemoryHeaps = memory.memoryHeapCount();
 			this.capacities = new long[numMemoryTypes];
+			this.propertyFlags = new int[numMemoryTypes];
+			this.heapIndices = new int[numMemoryTypes];
+			this.heapSizes = new long[numMemoryHeaps];
+			for (int heapIndex = 0; heapIndex < numMemoryHeaps; heapIndex++) {
+				heapSizes[heapIndex] = memory.memoryHeaps(heapIndex).size();
+			}
 			List<Integer> deviceLocalMemoryTypes = new ArrayList<>();
 			List<Integer> hostVisibleMemoryTypes = new ArrayList<>();
 			List<Integer> hybridMemoryTypes = new ArrayList<>();
+			List<Integer> hostCachedMemoryTypes = new ArrayList<>();
+			List<Integer> lazilyAllocatedMemoryTypes = new ArrayList<>();
 			for (int index = 0; index < numMemoryTypes; index++) {
 				int flags = memory.memoryTypes(index).propertyFlags();
+				propertyFlags[index] = flags;
+				if ((flags & VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT) != 0 && (flags & VK_MEMORY_PROPERTY_HOST_CACHED_BIT) != 0) {
+					hostCachedMemoryTypes.add(index);
+				}
 				if ((flags & VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT) != 0) deviceLocalMemoryTypes.add(index);
+				if ((flags & VK_MEMORY_PROPERTY_LAZILY_ALLOCATED_BIT) != 0) lazilyAllocatedMemoryTypes.add(index);
 				if ((flags & VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT) != 0 && (flags & VK_MEMORY_PROPERTY_HOST_COHERENT_BIT) != 0) {
 					hostVisibleMemoryTypes.add(index);
 					if ((flags & VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT) != 0) hybridMemoryTypes.add(index);
 				}
-				capacities[index] = memory.memoryHeaps(memory.memoryTypes(index).heapIndex()).size();
+				heapIndices[index] = memory.memoryTypes(index).heapIndex();
+				capacities[index] = heapSizes[heapIndices[index]];
 			}
 			this.deviceLocalMemoryTypes = Collections.unmodifiableList(deviceLocalMemoryTypes);
 			this.hostVisibleMemoryTypes = Collections.unmodifiableList(hostVisibleMemoryTypes);
 			this.hybridMemoryTypes = Collections.unmodifiableList(hybridMemoryTypes);
+			this.hostCachedMemoryTypes = Collections.unmodifiableList(hostCachedMemoryTypes);
+			this.lazilyAllocatedMemoryTypes = Collections.unmodifiableList(lazilyAllocatedMemoryTypes);
+
+			int barHeapIndex = -1;
+			for (int memoryType : hybridMemoryTypes) {
+				int heapIndex = heapIndices[memoryType];
+				if (barHeapIndex == -1 || heapSizes[heapIndex] > heapSizes[barHeapIndex]) barHeapIndex = heapIndex;
+			}
+			int largestDeviceHeap = -1;
+			for (int heapIndex = 0; heapIndex < numMemoryHeaps; heapIndex++) {
+				if ((memory.memoryHeaps(heapIndex).flags() & VK_MEMORY_HEAP_DEVICE_LOCAL_BIT) == 0) continue;
+				if (largestDeviceHeap == -1 || heapSizes[heapIndex] > heapSizes[largestDeviceHeap]) {
+					largestDeviceHeap = heapIndex;
+				}
+			}
+			this.barHeapIndex = barHeapIndex;
+			this.resizableBar = barHeapIndex != -1 && barHeapIndex == largestDeviceHeap;
 		}
+
+		this.budgets = new long[numMemoryHeaps];
+		this.usages = new long[numMemoryHeaps];
+		this.trackedUsages = new long[numMemoryHeaps];
+		this.trackedUsagesAtRefresh = new long[numMemoryHeaps];
+		refreshBudget();
 	}
 
 	/**
@@ -78,6 +171,249 @@ public class MemoryInfo {
 		return capacities[memoryTypeIndex];
 	}
 
+	/**
+	 * Gets the {@link VkMemoryType#propertyFlags()} of the memory type with index {@code memoryTypeIndex}
+	 */
+	public int getPropertyFlags(int memoryTypeIndex) {
+		return propertyFlags[memoryTypeIndex];
+	}
+
+	/**
+	 * @return True if and only if the memory type with index {@code memoryTypeIndex} has
+	 * {@link org.lwjgl.vulkan.VK10#VK_MEMORY_PROPERTY_HOST_COHERENT_BIT}
+	 */
+	public boolean isHostCoherent(int memoryTypeIndex) {
+		return (propertyFlags[memoryTypeIndex] & VK_MEMORY_PROPERTY_HOST_COHERENT_BIT) != 0;
+	}
+
+	/**
+	 * Gets the index of the memory heap of the memory type with index {@code memoryTypeIndex}
+	 */
+	public int getHeapIndex(int memoryTypeIndex) {
+		return heapIndices[memoryTypeIndex];
+	}
+
+	/**
+	 * @return The index of the largest memory heap that contains a {@link #hybridMemoryTypes} (typically called the
+	 * BAR heap), or -1 if there are no hybrid memory types
+	 */
+	public int getBarHeapIndex() {
+		return barHeapIndex;
+	}
+
+	/**
+	 * @return True if the host can directly access the largest device-local memory heap, which is the case on
+	 * GPUs with resizable BAR, as well as integrated GPUs. When this is false, the BAR heap (if any) is typically only
+	 * 256 MiB, and should be rationed.
+	 */
+	public boolean hasResizableBar() {
+		return resizableBar;
+	}
+
+	/**
+	 * @return True if and only if the budget and usage are queried using <i>VK_EXT_memory_budget</i>, rather than
+	 * estimated
+	 */
+	public boolean hasBudgetExtension() {
+		return hasBudgetExtension;
+	}
+
+	/**
+	 * Queries the budget and usage of all memory heaps right now, regardless of when it was queried last time. This
+	 * is done automatically by {@link #getBudget} and {@link #getUsage} when the cached values are older than
+	 * {@link #getBudgetRefreshInterval()}. This will call the pressure listeners when needed.
+	 */
+	public void refreshBudget() {
+		long newPressure;
+		synchronized (this) {
+			if (hasBudgetExtension) {
+				try (var stack = stackPush()) {
+					var budgetProperties = VkPhysicalDeviceMemoryBudgetPropertiesEXT.calloc(stack);
+					budgetProperties.sType$Default();
+					if (useCoreProperties2) {
+						var properties = VkPhysicalDeviceMemoryProperties2.calloc(stack);
+						properties.sType$Default();
+						properties.pNext(budgetProperties);
+						vkGetPhysicalDeviceMemoryProperties2(vkPhysicalDevice, properties);
+					} else {
+						var properties = VkPhysicalDeviceMemoryProperties2KHR.calloc(stack);
+						properties.sType$Default();
+						properties.pNext(budgetProperties);
+						vkGetPhysicalDeviceMemoryProperties2KHR(vkPhysicalDevice, properties);
+					}
+
+					for (int heapIndex = 0; heapIndex < numMemoryHeaps; heapIndex++) {
+						// Some drivers report a budget of 0 or larger than the heap size
+						long budget = budgetProperties.heapBudget(heapIndex);
+						budgets[heapIndex] = budget > 0L ? min(budget, heapSizes[heapIndex]) : heapSizes[heapIndex];
+						usages[heapIndex] = budgetProperties.heapUsage(heapIndex);
+					}
+				}
+			} else {
+				for (int heapIndex = 0; heapIndex < numMemoryHeaps; heapIndex++) {
+					budgets[heapIndex] = 8L * (heapSizes[heapIndex] / 10L);
+					usages[heapIndex] = 0L;
+				}
+			}
+			System.arraycopy(trackedUsages, 0, trackedUsagesAtRefresh, 0, numMemoryHeaps);
+			lastBudgetRefresh = System.nanoTime();
+			newPressure = updatePressure();
+		}
+		notifyPressureListeners(newPressure);
+	}
+
+	private void maybeRefreshBudget() {
+		boolean shouldRefresh;
+		synchronized (this) {
+			shouldRefresh = System.nanoTime() - lastBudgetRefresh >= budgetRefreshInterval;
+		}
+		if (shouldRefresh) refreshBudget();
+	}
+
+	private long getCachedUsage(int heapIndex) {
+		long delta = trackedUsages[heapIndex] - trackedUsagesAtRefresh[heapIndex];
+		if (hasBudgetExtension) return max(0L, usages[heapIndex] + delta);
+		else return trackedUsages[heapIndex];
+	}
+
+	/**
+	 * Gets the budget of the memory heap with index {@code heapIndex}, in bytes: the amount of memory that this
+	 * application can allocate from that heap before the driver will probably start paging or failing allocations.
+	 */
+	public long getBudget(int heapIndex) {
+		maybeRefreshBudget();
+		synchronized (this) {
+			return budgets[heapIndex];
+		}
+	}
+
+	/**
+	 * Gets the (estimated) number of bytes that this application is currently using from the memory heap with index
+	 * {@code heapIndex}
+	 */
+	public long getUsage(int heapIndex) {
+		maybeRefreshBudget();
+		synchronized (this) {
+			return getCachedUsage(heapIndex);
+		}
+	}
+
+	/**
+	 * Checks whether allocating {@code size} bytes of the memory type with index {@code memoryTypeIndex} would exceed
+	 * the share of the budget that allocations with the given {@code priority} may use. Allocations with priority 0
+	 * may use up to {@link #getPressureThreshold()} times the budget, whereas allocations with priority 1 may use the
+	 * whole budget. {@link MemoryCombiner} uses this to move low-priority allocations to their backup memory type
+	 * before the budget is exceeded.
+	 */
+	public boolean wouldExceedBudget(int memoryTypeIndex, long size, float priority) {
+		maybeRefreshBudget();
+		int heapIndex = heapIndices[memoryTypeIndex];
+		float fraction = pressureThreshold + (1f - pressureThreshold) * max(0f, min(1f, priority));
+		synchronized (this) {
+			return getCachedUsage(heapIndex) + size > (long) ((double) fraction * budgets[heapIndex]);
+		}
+	}
+
+	/**
+	 * Tells this memory info that {@code size} bytes of memory type {@code memoryTypeIndex} were allocated. This is
+	 * done automatically by {@link MemoryCombiner}, but you should call it when you allocate memory in another way
+	 * (e.g. for sparse images), so that the usage estimates stay accurate between budget refreshes.
+	 */
+	public void trackAllocation(int memoryTypeIndex, long size) {
+		long newPressure;
+		synchronized (this) {
+			trackedUsages[heapIndices[memoryTypeIndex]] += size;
+			newPressure = updatePressure();
+		}
+		notifyPressureListeners(newPressure);
+	}
+
+	/**
+	 * The counterpart of {@link #trackAllocation}, which should be called after freeing the memory
+	 */
+	public void trackFree(int memoryTypeIndex, long size) {
+		synchronized (this) {
+			trackedUsages[heapIndices[memoryTypeIndex]] -= size;
+			updatePressure();
+		}
+	}
+
+	/**
+	 * Updates {@link #heapsUnderPressure}
+	 * @return The heaps that just came under pressure
+	 */
+	private long updatePressure() {
+		long newPressure = 0L;
+		for (int heapIndex = 0; heapIndex < numMemoryHeaps; heapIndex++) {
+			long bit = 1L << heapIndex;
+			boolean underPressure = getCachedUsage(heapIndex) > pressureThreshold * budgets[heapIndex];
+			if (underPressure && (heapsUnderPressure & bit) == 0L) newPressure |= bit;
+			if (underPressure) heapsUnderPressure |= bit;
+			else heapsUnderPressure &= ~bit;
+		}
+		return newPressure;
+	}
+
+	private void notifyPressureListeners(long newPressure) {
+		if (newPressure == 0L) return;
+		for (int heapIndex = 0; heapIndex < numMemoryHeaps; heapIndex++) {
+			if ((newPressure & (1L << heapIndex)) == 0L) continue;
+			long usage, budget;
+			synchronized (this) {
+				usage = getCachedUsage(heapIndex);
+				budget = budgets[heapIndex];
+			}
+			for (var listener : pressureListeners) listener.onMemoryPressure(heapIndex, usage, budget);
+		}
+	}
+
+	/**
+	 * Adds a listener that will be called when the usage of a memory heap exceeds {@link #getPressureThreshold()}
+	 * times its budget. Note that the usage is only checked when memory is allocated by {@link MemoryCombiner}, or
+	 * when the budget is refreshed, so you may want to call {@link #refreshBudget()} periodically (e.g. once per
+	 * second).
+	 */
+	public void addPressureListener(MemoryPressureListener listener) {
+		pressureListeners.add(listener);
+	}
+
+	public void removePressureListener(MemoryPressureListener listener) {
+		pressureListeners.remove(listener);
+	}
+
+	/**
+	 * @return The fraction of the budget above which a heap is considered to be under pressure. The default value is
+	 * 0.9.
+	 */
+	public synchronized float getPressureThreshold() {
+		return pressureThreshold;
+	}
+
+	/**
+	 * Changes the pressure threshold, see {@link #getPressureThreshold()}
+	 */
+	public synchronized void setPressureThreshold(float pressureThreshold) {
+		if (pressureThreshold <= 0f || pressureThreshold > 1f) {
+			throw new IllegalArgumentException("Pressure threshold must be in the range (0, 1], but got " + pressureThreshold);
+		}
+		this.pressureThreshold = pressureThreshold;
+	}
+
+	/**
+	 * @return The maximum age of the cached budget and usage, in nanoseconds. The default value is 100 milliseconds.
+	 */
+	public synchronized long getBudgetRefreshInterval() {
+		return budgetRefreshInterval;
+	}
+
+	/**
+	 * Changes the budget refresh interval, see {@link #getBudgetRefreshInterval()}
+	 */
+	public synchronized void setBudgetRefreshInterval(long nanoseconds) {
+		if (nanoseconds < 0L) throw new IllegalArgumentException("Interval must be non-negative, but got " + nanoseconds);
+		this.budgetRefreshInterval = nanoseconds;
+	}
+
 	/**
 	 * @param memoryTypeBits {@link VkMemoryRequirements#memoryTypeBits()}
 	 * @return The first device-local memory property that is allowed by {@code memoryTypeBits}, or the first memory
@@ -107,6 +443,26 @@ public class MemoryInfo {
 		throw new UnsupportedOperationException("No supported memory type is both HOST_VISIBLE and HOST_COHERENT");
 	}
 
+	/**
+	 * Chooses a memory type for buffers that the device writes and the host reads. Host-cached memory types are
+	 * preferred because host reads from uncached (write-combined) memory are very slow. Among the host-cached memory
+	 * types, host-coherent ones are preferred, since they don't need to be invalidated.
+	 * @param memoryTypeBits {@link VkMemoryRequirements#memoryTypeBits()}
+	 * @return The first host-visible and host-cached memory type that is allowed by {@code memoryTypeBits},
+	 * preferably also host-coherent, or {@link #recommendedHostVisibleMemoryType} if no such memory type is allowed
+	 * @throws UnsupportedOperationException when not a single host-visible memory property is allowed by
+	 * {@code memoryTypeBits}
+	 */
+	public int recommendedReadbackMemoryType(int memoryTypeBits) throws UnsupportedOperationException {
+		for (int index : hostCachedMemoryTypes) {
+			if ((memoryTypeBits & (1 << index)) != 0 && isHostCoherent(index)) return index;
+		}
+		for (int index : hostCachedMemoryTypes) {
+			if ((memoryTypeBits & (1 << index)) != 0) return index;
+		}
+		return recommendedHostVisibleMemoryType(memoryTypeBits);
+	}
+
 	/**
 	 * @param memoryTypeBits {@link VkMemoryRequirements#memoryTypeBits()}
 	 * @return The first allowed by {@code memoryTypeBits} that is both host-visible, host-coherent, and device-local,
@@ -121,6 +477,19 @@ public class MemoryInfo {
 		return -1;
 	}
 
+	/**
+	 * @param memoryTypeBits {@link VkMemoryRequirements#memoryTypeBits()}
+	 * @return The first lazily-allocated memory type that is allowed by {@code memoryTypeBits}, or
+	 * {@link #recommendedDeviceLocalMemoryType} if no such memory type is allowed
+	 * @throws UnsupportedOperationException when {@code memoryTypeBits == 0}
+	 */
+	public int recommendedLazilyAllocatedMemoryType(int memoryTypeBits) throws UnsupportedOperationException {
+		for (int index : lazilyAllocatedMemoryTypes) {
+			if ((memoryTypeBits & (1 << index)) != 0) return index;
+		}
+		return recommendedDeviceLocalMemoryType(memoryTypeBits);
+	}
+
 	/**
 	 * @param memoryTypeBits {@link VkMemoryRequirements#memoryTypeBits()}
 	 * @return The index of the first memory type that uses the largest memory heap, that is also allowed by
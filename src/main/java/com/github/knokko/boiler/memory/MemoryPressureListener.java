@@ -0,0 +1,19 @@
+package com.github.knokko.boiler.memory;
+
+/**
+ * A listener that can be added via {@link MemoryInfo#addPressureListener}. It will be called when the usage of a
+ * memory heap exceeds {@link MemoryInfo#getPressureThreshold()} times its budget. This gives the application the
+ * chance to shed caches (e.g. streamed textures) before the driver starts paging memory out.
+ */
+@FunctionalInterface
+public interface MemoryPressureListener {
+
+	/**
+	 * This method will be called at most once each time the usage of a heap rises above the pressure threshold. It
+	 * will be called again when the usage drops below the threshold, and then rises above it again.
+	 * @param heapIndex The index of the memory heap that is under pressure
+	 * @param usage The (estimated) usage of the heap, in bytes
+	 * @param budget The budget of the heap, in bytes
+	 */
+	void onMemoryPressure(int heapIndex, long usage, long budget);
+}
@@ -1,10 +1,13 @@
 package com.github.knokko.boiler.memory;
 
 import com.github.knokko.boiler.BoilerInstance;
+import com.github.knokko.boiler.buffers.NonCoherentMemory;
 import com.github.knokko.boiler.memory.callbacks.CallbackUserData;
+import org.lwjgl.PointerBuffer;
 import org.lwjgl.util.vma.VmaAllocationCreateInfo;
 import org.lwjgl.util.vma.VmaAllocationInfo;
 import org.lwjgl.vulkan.VkMemoryAllocateInfo;
+import org.lwjgl.vulkan.VkMemoryDedicatedAllocateInfoKHR;
 import org.lwjgl.vulkan.VkMemoryPriorityAllocateInfoEXT;
 import org.lwjgl.vulkan.VkMemoryRequirements;
 
@@ -26,6 +29,7 @@ class MemoryTypeClaims {
 	final Collection<BufferUsageClaims> buffers = new ArrayList<>();
 	final Collection<ImageClaim> images = new ArrayList<>();
 	private boolean[] mapMemory;
+	private long[] dedicatedImages, dedicatedBuffers;
 
 	List<Long> prepareAllocations(long bufferImageGranularity, long maxSize) {
 		var allocationSizes = new ArrayList<Long>();
@@ -34,6 +38,7 @@ class MemoryTypeClaims {
 		for (BufferUsageClaims claim : buffers) {
 			for (int groupIndex = 0; groupIndex < claim.groupedClaims.size(); groupIndex++) {
 				var group = claim.groupedClaims.get(groupIndex);
+				if (group.dedicated || group.lifetime != null) continue;
 				if (group.memorySize > maxSize) {
 					throw new IllegalArgumentException(
 							"Buffer size (" + group.memorySize + ") exceeds maxMemoryAllocationSize (" + maxSize + ")"
@@ -56,9 +61,8 @@ class MemoryTypeClaims {
 			}
 		}
 
-		int numLinearImages = 0;
 		for (ImageClaim claim : images) {
-			if (claim.builder.tiling != VK_IMAGE_TILING_LINEAR) continue;
+			if (isUnshared(claim) || claim.builder.tiling != VK_IMAGE_TILING_LINEAR) continue;
 			if (claim.memorySize > maxSize) {
 				throw new IllegalArgumentException(
 						"Image size " + claim.builder.width + "x" + claim.builder.height +
@@ -81,13 +85,16 @@ class MemoryTypeClaims {
 			claim.allocationIndex = allocationSizes.size();
 		}
 
-		if (numLinearImages != images.size()) {
+		boolean hasOptimalImages = images.stream().anyMatch(
+				claim -> !isUnshared(claim) && claim.builder.tiling != VK_IMAGE_TILING_LINEAR
+		);
+		if (hasOptimalImages) {
 			long oldSize = offset;
 			long bufferEndPage = offset & -bufferImageGranularity;
 			offset = bufferEndPage + bufferImageGranularity;
 
 			for (ImageClaim claim : images) {
-				if (claim.builder.tiling == VK_IMAGE_TILING_LINEAR) continue;
+				if (isUnshared(claim) || claim.builder.tiling == VK_IMAGE_TILING_LINEAR) continue;
 				if (claim.memorySize > maxSize) {
 					throw new IllegalArgumentException(
 							"Image size " + claim.builder.width + "x" + claim.builder.height +
@@ -111,17 +118,159 @@ class MemoryTypeClaims {
 			}
 		}
 
+		offset = prepareTransientClaims(allocationSizes, offset, bufferImageGranularity, maxSize);
 		if (offset > 0L) allocationSizes.add(offset);
+
+		// Each dedicated claim gets its own allocation, after all shared allocations
+		for (BufferUsageClaims claim : buffers) {
+			for (var group : claim.groupedClaims) {
+				if (!group.dedicated) continue;
+				if (group.memorySize > maxSize) {
+					throw new IllegalArgumentException(
+							"Buffer size (" + group.memorySize + ") exceeds maxMemoryAllocationSize (" + maxSize + ")"
+					);
+				}
+				group.memoryOffset = 0L;
+				group.allocationIndex = allocationSizes.size();
+				allocationSizes.add(group.memorySize);
+			}
+		}
+		for (ImageClaim claim : images) {
+			if (!claim.dedicated) continue;
+			if (claim.memorySize > maxSize) {
+				throw new IllegalArgumentException(
+						"Image size " + claim.builder.width + "x" + claim.builder.height +
+								" (" + claim.memorySize + " bytes) exceeds maxMemoryAllocationSize (" + maxSize + ")"
+				);
+			}
+			claim.memoryOffset = 0L;
+			claim.allocationIndex = allocationSizes.size();
+			allocationSizes.add(claim.memorySize);
+		}
+
 		this.mapMemory = new boolean[allocationSizes.size()];
+		this.dedicatedImages = new long[allocationSizes.size()];
+		this.dedicatedBuffers = new long[allocationSizes.size()];
 		for (var bufferClaim : buffers) {
 			for (var grouped : bufferClaim.groupedClaims) {
 				if (grouped.shouldMapMemory) mapMemory[grouped.allocationIndex] = true;
+				if (grouped.dedicated) dedicatedBuffers[grouped.allocationIndex] = grouped.vkBuffer;
 			}
 		}
+		for (var image : images) {
+			if (image.dedicated) dedicatedImages[image.allocationIndex] = image.image.vkImage;
+		}
 
 		return allocationSizes;
 	}
 
+	private static boolean isUnshared(ImageClaim claim) {
+		return claim.dedicated || claim.lifetime != null;
+	}
+
+	/**
+	 * Places all transient claims in an aliased region after the shared claims, where claims with disjoint lifetimes
+	 * can share memory. When the region doesn't fit in the current allocation, it will be placed in a new allocation.
+	 * @return The new end offset of the current allocation
+	 */
+	private long prepareTransientClaims(
+			List<Long> allocationSizes, long offset, long bufferImageGranularity, long maxSize
+	) {
+		var transientBuffers = buffers.stream().flatMap(claim -> claim.groupedClaims.stream()).filter(
+				group -> group.lifetime != null
+		).toList();
+		var transientImages = images.stream().filter(claim -> claim.lifetime != null).toList();
+		if (transientBuffers.isEmpty() && transientImages.isEmpty()) return offset;
+
+		// Linear and optimal resources can only alias when they don't share a bufferImageGranularity page
+		boolean hasLinear = !transientBuffers.isEmpty() || transientImages.stream().anyMatch(
+				claim -> claim.builder.tiling == VK_IMAGE_TILING_LINEAR
+		);
+		boolean hasOptimal = transientImages.stream().anyMatch(claim -> claim.builder.tiling != VK_IMAGE_TILING_LINEAR);
+		long granularity = hasLinear && hasOptimal ? bufferImageGranularity : 1L;
+
+		int numClaims = transientBuffers.size() + transientImages.size();
+		long[] sizes = new long[numClaims];
+		long[] alignments = new long[numClaims];
+		Lifetime[] lifetimes = new Lifetime[numClaims];
+		long[] offsets = new long[numClaims];
+		for (int index = 0; index < transientBuffers.size(); index++) {
+			var group = transientBuffers.get(index);
+			sizes[index] = group.memorySize;
+			alignments[index] = leastCommonMultiple(group.memoryAlignment, granularity);
+			lifetimes[index] = group.lifetime;
+		}
+		for (int index = 0; index < transientImages.size(); index++) {
+			var claim = transientImages.get(index);
+			sizes[transientBuffers.size() + index] = claim.memorySize;
+			alignments[transientBuffers.size() + index] = leastCommonMultiple(claim.alignment, granularity);
+			lifetimes[transientBuffers.size() + index] = claim.lifetime;
+		}
+
+		long regionSize = AliasingPlanner.plan(sizes, alignments, lifetimes, offsets);
+		if (regionSize > maxSize) {
+			throw new IllegalArgumentException(
+					"Transient region size (" + regionSize + ") exceeds maxMemoryAllocationSize (" + maxSize + ")"
+			);
+		}
+
+		long regionStart = 0L;
+		if (offset > 0L) {
+			long pageEnd = (offset & -bufferImageGranularity) + bufferImageGranularity;
+			Set<Long> regionAlignments = new HashSet<>();
+			for (long alignment : alignments) regionAlignments.add(alignment);
+			regionStart = nextMultipleOf(pageEnd, leastCommonMultiple(regionAlignments));
+			if (regionStart + regionSize > maxSize) {
+				allocationSizes.add(offset);
+				regionStart = 0L;
+			}
+		}
+
+		for (int index = 0; index < transientBuffers.size(); index++) {
+			var group = transientBuffers.get(index);
+			group.memoryOffset = regionStart + offsets[index];
+			group.allocationIndex = allocationSizes.size();
+		}
+		for (int index = 0; index < transientImages.size(); index++) {
+			var claim = transientImages.get(index);
+			claim.memoryOffset = regionStart + offsets[transientBuffers.size() + index];
+			claim.allocationIndex = allocationSizes.size();
+		}
+		return regionStart + regionSize;
+	}
+
+	/**
+	 * Moves the allocation to {@code backupMemoryType} when it would exceed the budget share of its priority, but only
+	 * when the backup memory type is in another heap that still has room for it
+	 */
+	private static int steerMemoryType(
+			BoilerInstance instance, int memoryType, int backupMemoryType, long size, float priority
+	) {
+		var memoryInfo = instance.memoryInfo;
+		if (memoryType == backupMemoryType) return memoryType;
+		if (memoryInfo.getHeapIndex(memoryType) == memoryInfo.getHeapIndex(backupMemoryType)) return memoryType;
+		if (!memoryInfo.wouldExceedBudget(memoryType, size, priority)) return memoryType;
+		if (memoryInfo.wouldExceedBudget(backupMemoryType, size, 1f)) return memoryType;
+		return backupMemoryType;
+	}
+
+	private int vmaAllocate(
+			BoilerInstance instance, int allocationIndex, VkMemoryRequirements requirements,
+			VmaAllocationCreateInfo ciAllocation, PointerBuffer pAllocation, VmaAllocationInfo allocationInfo
+	) {
+		if (dedicatedImages[allocationIndex] != VK_NULL_HANDLE) {
+			return vmaAllocateMemoryForImage(
+					instance.vmaAllocator(), dedicatedImages[allocationIndex], ciAllocation, pAllocation, allocationInfo
+			);
+		}
+		if (dedicatedBuffers[allocationIndex] != VK_NULL_HANDLE) {
+			return vmaAllocateMemoryForBuffer(
+					instance.vmaAllocator(), dedicatedBuffers[allocationIndex], ciAllocation, pAllocation, allocationInfo
+			);
+		}
+		return vmaAllocateMemory(instance.vmaAllocator(), requirements, ciAllocation, pAllocation, allocationInfo);
+	}
+
 	void allocate(
 			BoilerInstance instance, String name, boolean useVma, MemoryBlock old,
 			int memoryType, int backupMemoryType, float priority, MemoryBlock block
@@ -136,9 +285,12 @@ class MemoryTypeClaims {
 		);
 		long[] allocations = new long[sizes.size()];
 		long[] hostAddresses = new long[allocations.length];
+		NonCoherentMemory[] nonCoherentMemory = new NonCoherentMemory[allocations.length];
 
 		for (int allocationIndex = 0; allocationIndex < allocations.length; allocationIndex++) {
 			boolean mapMemory = this.mapMemory[allocationIndex];
+			boolean dedicated = dedicatedImages[allocationIndex] != VK_NULL_HANDLE ||
+					dedicatedBuffers[allocationIndex] != VK_NULL_HANDLE;
 			int finalAllocationIndex = allocationIndex;
 			long size = sizes.get(allocationIndex);
 			var currentBufferGroups = buffers.stream().flatMap(
@@ -152,6 +304,7 @@ class MemoryTypeClaims {
 			try (var stack = stackPush()) {
 				var pAllocation = stack.callocPointer(1);
 				if (useVma) {
+					memoryType = steerMemoryType(instance, memoryType, backupMemoryType, size, priority);
 					var vmaRequirements = VkMemoryRequirements.calloc(stack);
 					Set<Long> alignments = new HashSet<>();
 					for (var buffer : currentBufferGroups) alignments.add(buffer.memoryAlignment);
@@ -161,19 +314,21 @@ class MemoryTypeClaims {
 					vmaRequirements.memoryTypeBits(1 << memoryType);
 
 					var ciVmaAllocation = VmaAllocationCreateInfo.calloc(stack);
-					ciVmaAllocation.flags(mapMemory ? VMA_ALLOCATION_CREATE_MAPPED_BIT : 0);
+					int vmaFlags = mapMemory ? VMA_ALLOCATION_CREATE_MAPPED_BIT : 0;
+					if (dedicated) vmaFlags |= VMA_ALLOCATION_CREATE_DEDICATED_MEMORY_BIT;
+					ciVmaAllocation.flags(vmaFlags);
 					ciVmaAllocation.memoryTypeBits(vmaRequirements.memoryTypeBits());
 
 					var allocationInfo = VmaAllocationInfo.calloc(stack);
-					int allocateResult = vmaAllocateMemory(
-							instance.vmaAllocator(), vmaRequirements, ciVmaAllocation, pAllocation, allocationInfo
+					int allocateResult = vmaAllocate(
+							instance, allocationIndex, vmaRequirements, ciVmaAllocation, pAllocation, allocationInfo
 					);
 					if (allocateResult == VK_ERROR_OUT_OF_DEVICE_MEMORY && memoryType != backupMemoryType) {
 						memoryType = backupMemoryType;
 						vmaRequirements.memoryTypeBits(1 << memoryType);
 						ciVmaAllocation.memoryTypeBits(vmaRequirements.memoryTypeBits());
-						allocateResult = vmaAllocateMemory(
-								instance.vmaAllocator(), vmaRequirements, ciVmaAllocation, pAllocation, allocationInfo
+						allocateResult = vmaAllocate(
+								instance, allocationIndex, vmaRequirements, ciVmaAllocation, pAllocation, allocationInfo
 						);
 					}
 					assertVmaSuccess(allocateResult, "AllocateMemory", size + " bytes for " + name);
@@ -183,7 +338,7 @@ class MemoryTypeClaims {
 
 
 				} else {
-					var oldAllocation = old != null ? old.getAllocation(memoryType) : null;
+					var oldAllocation = old != null && !dedicated ? old.getAllocation(memoryType) : null;
 					if (oldAllocation != null && !oldAllocation.wasRecycled) {
 						boolean canRecycle = oldAllocation.size >= size &&
 								(!mapMemory || oldAllocation.hostAddress != 0L) &&
@@ -202,6 +357,7 @@ class MemoryTypeClaims {
 							vkSetDeviceMemoryPriorityEXT(instance.vkDevice(), allocations[allocationIndex], priority);
 						}
 					} else {
+						memoryType = steerMemoryType(instance, memoryType, backupMemoryType, size, priority);
 						var aiMemory = VkMemoryAllocateInfo.calloc(stack);
 						aiMemory.sType$Default();
 						aiMemory.allocationSize(size);
@@ -214,6 +370,14 @@ class MemoryTypeClaims {
 
 							aiMemory.pNext(aiPriority);
 						}
+						if (dedicated) {
+							var aiDedicated = VkMemoryDedicatedAllocateInfoKHR.calloc(stack);
+							aiDedicated.sType$Default();
+							aiDedicated.image(dedicatedImages[allocationIndex]);
+							aiDedicated.buffer(dedicatedBuffers[allocationIndex]);
+
+							aiMemory.pNext(aiDedicated);
+						}
 
 						var pMemory = stack.callocLong(1);
 						int allocationResult = VK_ERROR_OUT_OF_DEVICE_MEMORY;
@@ -235,6 +399,7 @@ class MemoryTypeClaims {
 						assertVkSuccess(allocationResult, "AllocateMemory", context);
 
 						allocations[allocationIndex] = pMemory.get(0);
+						instance.memoryInfo.trackAllocation(memoryType, size);
 					}
 
 					instance.debug.name(stack, allocations[allocationIndex], VK_OBJECT_TYPE_DEVICE_MEMORY, name);
@@ -249,10 +414,17 @@ class MemoryTypeClaims {
 					}
 
 					block.allocations.add(new MemoryBlock.MemoryAllocation(
-							allocations[allocationIndex], size, memoryType, priority, hostAddresses[allocationIndex]
+							allocations[allocationIndex], size, memoryType, priority,
+							hostAddresses[allocationIndex], dedicated
 					));
 				}
 
+				if (mapMemory && !instance.memoryInfo.isHostCoherent(memoryType)) {
+					nonCoherentMemory[allocationIndex] = useVma ?
+							new NonCoherentMemory(VK_NULL_HANDLE, allocations[allocationIndex], size) :
+							new NonCoherentMemory(allocations[allocationIndex], 0L, size);
+				}
+
 				for (var buffer : buffers) {
 					for (var claim : buffer.claims) {
 						if (buffer.groupedClaims.get(claim.groupIndex).allocationIndex == allocationIndex) {
@@ -284,7 +456,10 @@ class MemoryTypeClaims {
 					), "BindBufferMemory", name + ": buffer");
 				}
 				if (bufferGroup.shouldMapMemory) {
-					buffer.setHostAddress(groupIndex, hostAddresses[bufferGroup.allocationIndex]);
+					buffer.setHostAddress(
+							groupIndex, hostAddresses[bufferGroup.allocationIndex],
+							nonCoherentMemory[bufferGroup.allocationIndex]
+					);
 				}
 			}
 		}
@@ -0,0 +1,257 @@
+package com.github.knokko.boiler.memory;
+
+import com.github.knokko.boiler.BoilerInstance;
+import com.github.knokko.boiler.buffers.MappedVkbBuffer;
+import com.github.knokko.boiler.buffers.VkbBuffer;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.lwjgl.vulkan.VK10.VK_BUFFER_USAGE_TRANSFER_DST_BIT;
+import static org.lwjgl.vulkan.VK10.VK_BUFFER_USAGE_TRANSFER_SRC_BIT;
+
+/**
+ * <p>
+ *   Decides whether buffer uploads should be written <i>directly</i> into device-local + host-visible memory (see
+ *   {@link MemoryInfo#hybridMemoryTypes}), or whether they should be written into a staging buffer, and copied to a
+ *   device-local buffer using a transfer command. The direct path saves a copy, but the device-local + host-visible
+ *   memory heap (the BAR heap) is only 256 MiB on GPUs without resizable BAR, so it must be rationed.
+ * </p>
+ *
+ * <p>
+ *   Each policy has a <i>direct budget</i>: the maximum number of bytes that its direct uploads may occupy at the same
+ *   time. An upload is routed to the direct path when:
+ * </p>
+ * <ul>
+ *   <li>there is a BAR heap,</li>
+ *   <li>the upload is not larger than the maximum direct upload size,</li>
+ *   <li>the direct budget has enough room left, and</li>
+ *   <li>the BAR heap would not exceed its budget, see {@link MemoryInfo#wouldExceedBudget}.</li>
+ * </ul>
+ * <p>
+ *   Otherwise, it is routed to the staging path. Use {@link #release} to give the direct budget of an upload back when
+ *   its buffer is destroyed. The number of uploads (and bytes) per path can be read using the methods of
+ *   {@link UploadPolicyMXBean}, or by registering this policy as an MXBean.
+ * </p>
+ */
+public class UploadPolicy implements UploadPolicyMXBean {
+
+	/**
+	 * The default maximum size of a direct upload when the GPU doesn't have resizable BAR
+	 */
+	public static final long SMALL_BAR_MAX_DIRECT_UPLOAD_SIZE = 16L * 1024L * 1024L;
+
+	/**
+	 * @return The default direct budget: half of the budget of the BAR heap when the GPU has resizable BAR, and a
+	 * quarter of it otherwise. When there is no BAR heap, the default direct budget is 0.
+	 */
+	public static long defaultDirectBudget(BoilerInstance instance) {
+		var memoryInfo = instance.memoryInfo;
+		int barHeap = memoryInfo.getBarHeapIndex();
+		if (barHeap == -1) return 0L;
+		return memoryInfo.getBudget(barHeap) / (memoryInfo.hasResizableBar() ? 2 : 4);
+	}
+
+	/**
+	 * @return The default maximum size of a direct upload: unlimited when the GPU has resizable BAR, and
+	 * {@link #SMALL_BAR_MAX_DIRECT_UPLOAD_SIZE} otherwise
+	 */
+	public static long defaultMaxDirectUploadSize(BoilerInstance instance) {
+		return instance.memoryInfo.hasResizableBar() ? Long.MAX_VALUE : SMALL_BAR_MAX_DIRECT_UPLOAD_SIZE;
+	}
+
+	private final BoilerInstance instance;
+	private final int barMemoryType;
+	private final long directBudget, maxDirectUploadSize;
+
+	private final AtomicLong directBytesInUse = new AtomicLong();
+	private final LongAdder directUploadCount = new LongAdder();
+	private final LongAdder directUploadBytes = new LongAdder();
+	private final LongAdder stagedUploadCount = new LongAdder();
+	private final LongAdder stagedUploadBytes = new LongAdder();
+
+	/**
+	 * @param directBudget The maximum number of bytes that the direct uploads of this policy may occupy at the same
+	 *                     time
+	 * @param maxDirectUploadSize Uploads larger than this (in bytes) will always use the staging path
+	 */
+	public UploadPolicy(BoilerInstance instance, long directBudget, long maxDirectUploadSize) {
+		this.instance = instance;
+		this.directBudget = directBudget;
+		this.maxDirectUploadSize = maxDirectUploadSize;
+
+		var memoryInfo = instance.memoryInfo;
+		int barMemoryType = -1;
+		for (int memoryType : memoryInfo.hybridMemoryTypes) {
+			if (memoryInfo.getHeapIndex(memoryType) == memoryInfo.getBarHeapIndex()) {
+				barMemoryType = memoryType;
+				break;
+			}
+		}
+		this.barMemoryType = barMemoryType;
+	}
+
+	/**
+	 * Creates an upload policy with {@link #defaultDirectBudget} and {@link #defaultMaxDirectUploadSize}
+	 */
+	public UploadPolicy(BoilerInstance instance) {
+		this(instance, defaultDirectBudget(instance), defaultMaxDirectUploadSize(instance));
+	}
+
+	private boolean tryReserveDirect(long size) {
+		if (barMemoryType == -1 || size > maxDirectUploadSize) return false;
+		if (instance.memoryInfo.wouldExceedBudget(barMemoryType, size, 0.5f)) return false;
+		while (true) {
+			long inUse = directBytesInUse.get();
+			if (inUse + size > directBudget) return false;
+			if (directBytesInUse.compareAndSet(inUse, inUse + size)) return true;
+		}
+	}
+
+	/**
+	 * Adds the buffer(s) for an upload of {@code size} bytes to the given memory combiners, and decides which path
+	 * will be used.
+	 * <ul>
+	 *   <li>
+	 *     For the direct path, a device-local mapped buffer is added to {@code deviceCombiner}, and it will be both the
+	 *     {@link Upload#destination} and the {@link Upload#hostBuffer}.
+	 *   </li>
+	 *   <li>
+	 *     For the staging path, a device-local buffer is added to {@code deviceCombiner}, and a mapped staging buffer is
+	 *     added to {@code stagingCombiner}.
+	 *   </li>
+	 * </ul>
+	 * @param deviceCombiner The memory combiner for the destination buffer
+	 * @param stagingCombiner The memory combiner for the staging buffer (can be the same as {@code deviceCombiner}).
+	 *                        Its memory can be destroyed after the transfer commands have completed.
+	 * @param size The size of the upload, in bytes
+	 * @param alignment The alignment of the destination buffer, in bytes
+	 * @param usage The buffer usage flags of the destination buffer
+	 * @param priority The memory priority of the destination buffer
+	 * @return The upload. Write the data to {@link Upload#hostBuffer}, and then call {@link #record}.
+	 */
+	public Upload add(
+			MemoryCombiner deviceCombiner, MemoryCombiner stagingCombiner,
+			long size, long alignment, int usage, float priority
+	) {
+		if (tryReserveDirect(size)) {
+			directUploadCount.increment();
+			directUploadBytes.add(size);
+			var buffer = deviceCombiner.addMappedDeviceLocalBuffer(size, alignment, usage, priority);
+			return new Upload(buffer, buffer, true);
+		} else {
+			stagedUploadCount.increment();
+			stagedUploadBytes.add(size);
+			var destination = deviceCombiner.addBuffer(
+					size, alignment, usage | VK_BUFFER_USAGE_TRANSFER_DST_BIT, priority
+			);
+			var staging = stagingCombiner.addMappedBuffer(size, 4L, VK_BUFFER_USAGE_TRANSFER_SRC_BIT);
+			return new Upload(destination, staging, false);
+		}
+	}
+
+	/**
+	 * Flushes the host buffers of all {@code uploads}, and records the copy commands and buffer barriers of all
+	 * uploads that use the staging path. Direct uploads don't need any commands, since host writes are made visible to
+	 * the device when the command buffer is submitted.
+	 * @param recorder The command recorder
+	 * @param nextUsage The usage of the destination buffers after the upload
+	 * @param uploads The uploads, whose data must have been written to their {@link Upload#hostBuffer}
+	 */
+	public void record(CommandRecorder recorder, ResourceUsage nextUsage, Upload... uploads) {
+		var sources = new ArrayList<VkbBuffer>(uploads.length);
+		var destinations = new ArrayList<VkbBuffer>(uploads.length);
+		for (var upload : uploads) {
+			upload.hostBuffer.flush(instance);
+			if (!upload.direct) {
+				sources.add(upload.hostBuffer);
+				destinations.add(upload.destination);
+			}
+		}
+		if (destinations.isEmpty()) return;
+
+		var destinationArray = destinations.toArray(new VkbBuffer[0]);
+		recorder.bulkCopyBuffers(sources.toArray(new VkbBuffer[0]), destinationArray);
+		recorder.bulkBufferBarrier(ResourceUsage.TRANSFER_DEST, nextUsage, destinationArray);
+	}
+
+	/**
+	 * Gives the direct budget of {@code upload} back to this policy. You should call this when the destination buffer
+	 * of the upload is destroyed. Calling this more than once for the same upload, or calling it for a staged upload,
+	 * has no effect.
+	 */
+	public void release(Upload upload) {
+		if (!upload.direct) return;
+		synchronized (upload) {
+			if (upload.released) return;
+			upload.released = true;
+		}
+		directBytesInUse.addAndGet(-upload.destination.size);
+	}
+
+	@Override
+	public long getDirectUploadCount() {
+		return directUploadCount.sum();
+	}
+
+	@Override
+	public long getDirectUploadBytes() {
+		return directUploadBytes.sum();
+	}
+
+	@Override
+	public long getStagedUploadCount() {
+		return stagedUploadCount.sum();
+	}
+
+	@Override
+	public long getStagedUploadBytes() {
+		return stagedUploadBytes.sum();
+	}
+
+	@Override
+	public long getDirectBytesInUse() {
+		return directBytesInUse.get();
+	}
+
+	@Override
+	public long getDirectBudget() {
+		return directBudget;
+	}
+
+	/**
+	 * An upload that was routed by {@link UploadPolicy#add}
+	 */
+	public static class Upload {
+
+		/**
+		 * The buffer that the device should use after the upload
+		 */
+		public final VkbBuffer destination;
+
+		/**
+		 * The buffer to which the host should write the data. For direct uploads, this is the same as
+		 * {@link #destination}.
+		 */
+		public final MappedVkbBuffer hostBuffer;
+
+		private final boolean direct;
+		private boolean released;
+
+		Upload(VkbBuffer destination, MappedVkbBuffer hostBuffer, boolean direct) {
+			this.destination = destination;
+			this.hostBuffer = hostBuffer;
+			this.direct = direct;
+		}
+
+		/**
+		 * @return True if this upload uses the direct path, false if it uses the staging path
+		 */
+		public boolean isDirect() {
+			return direct;
+		}
+	}
+}
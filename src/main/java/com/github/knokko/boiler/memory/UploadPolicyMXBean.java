@@ -0,0 +1,38 @@
+package com.github.knokko.boiler.memory;
+
+/**
+ * The MXBean interface of {@link UploadPolicy}, which allows you to monitor it using JMX
+ */
+public interface UploadPolicyMXBean {
+
+	/**
+	 * @return The number of uploads that were routed to the direct path (host writes into device-local memory)
+	 */
+	long getDirectUploadCount();
+
+	/**
+	 * @return The total size of all uploads that were routed to the direct path, in bytes
+	 */
+	long getDirectUploadBytes();
+
+	/**
+	 * @return The number of uploads that were routed to the staging path (host writes into a staging buffer, followed
+	 * by a copy command)
+	 */
+	long getStagedUploadCount();
+
+	/**
+	 * @return The total size of all uploads that were routed to the staging path, in bytes
+	 */
+	long getStagedUploadBytes();
+
+	/**
+	 * @return The number of bytes of the direct upload budget that are currently in use
+	 */
+	long getDirectBytesInUse();
+
+	/**
+	 * @return The maximum number of bytes that may be used by direct uploads at the same time
+	 */
+	long getDirectBudget();
+}
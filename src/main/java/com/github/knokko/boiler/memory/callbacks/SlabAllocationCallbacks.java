@@ -0,0 +1,457 @@
+package com.github.knokko.boiler.memory.callbacks;
+
+import com.github.knokko.boiler.utilities.LongLongHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.VK_SYSTEM_ALLOCATION_SCOPE_COMMAND;
+
+/**
+ * <p>
+ *   An implementation of {@link VkbAllocationCallbacks} that is meant for production use, rather than debugging. Small
+ *   allocations (at most {@link #MAX_BLOCK_SIZE} bytes) are served from slabs of {@link #SLAB_SIZE} bytes, where each
+ *   slab is split into blocks of a single power-of-two size class. Larger allocations are forwarded to
+ *   <i>nmemAlignedAlloc</i>, and their sizes are tracked in a {@link LongLongHashMap}.
+ * </p>
+ *
+ * <p>
+ *   The size class of a block is stored in the header of its slab, and slabs are aligned to their size, so freeing a
+ *   block only needs to look up its slab in a sorted array that is updated copy-on-write. Each thread has a small cache
+ *   of free blocks per size class, so most allocations and frees don't need any locking. The cached blocks of threads
+ *   that have terminated are moved back to the shared free lists before a new slab is created, and whenever a new
+ *   thread starts using this allocator. Allocations with <i>VK_SYSTEM_ALLOCATION_SCOPE_COMMAND</i> are short-lived, so
+ *   they are served from separate slabs, which prevents them from fragmenting the slabs of long-lived objects.
+ * </p>
+ *
+ * <p>
+ *   Each slab has a bitmap that tracks which of its blocks are allocated. Frees of blocks that are not allocated
+ *   (double frees) are ignored, just like frees of unknown large allocations, so that they can't cause the same block
+ *   to be handed out twice. The number of ignored frees can be queried using {@link #getNumRejectedFrees}.
+ * </p>
+ *
+ * <p>
+ *   The number of allocated bytes and allocations is tracked per {@link CallbackUserData}, see
+ *   {@link #getAllocatedBytes} and {@link #getNumAllocations}. The memory of all slabs and large allocations is freed
+ *   when {@link #destroy()} is called.
+ * </p>
+ */
+public class SlabAllocationCallbacks extends VkbAllocationCallbacks {
+
+	private static final int SLAB_SHIFT = 18;
+
+	/**
+	 * The size of each slab, in bytes. Slabs are aligned to their size.
+	 */
+	public static final long SLAB_SIZE = 1L << SLAB_SHIFT;
+	private static final long SLAB_MASK = SLAB_SIZE - 1L;
+
+	private static final int MIN_BLOCK_SHIFT = 4;
+	private static final int MAX_BLOCK_SHIFT = 14;
+
+	/**
+	 * The maximum size (and alignment) of allocations that are served from slabs. Larger allocations are forwarded to
+	 * <i>nmemAlignedAlloc</i>.
+	 */
+	public static final long MAX_BLOCK_SIZE = 1L << MAX_BLOCK_SHIFT;
+
+	private static final int NUM_CLASSES = MAX_BLOCK_SHIFT - MIN_BLOCK_SHIFT + 1;
+	private static final int POOL_OBJECTS = 0, POOL_COMMANDS = 1, NUM_POOLS = 2;
+
+	/**
+	 * The maximum number of free blocks per size class that each thread keeps in its cache
+	 */
+	static final int CACHE_CAPACITY = 64;
+
+	private static final int NUM_USER_DATA = CallbackUserData.values().length + 1;
+
+	private final BlockStack[][] freeBlocks = new BlockStack[NUM_POOLS][NUM_CLASSES];
+	private final ThreadLocal<ThreadCache> threadCaches = ThreadLocal.withInitial(this::createThreadCache);
+	private final List<ThreadCache> allThreadCaches = new ArrayList<>();
+
+	private final Object slabLock = new Object();
+	private volatile SlabTable slabs = new SlabTable(new long[0], new AtomicLongArray[0]);
+
+	private final LongLongHashMap largeAllocations = new LongLongHashMap();
+
+	private final AtomicLongArray allocatedBytes = new AtomicLongArray(NUM_USER_DATA);
+	private final AtomicLongArray numAllocations = new AtomicLongArray(NUM_USER_DATA);
+	private final AtomicLong numRejectedFrees = new AtomicLong();
+
+	private boolean freedMemory;
+
+	public SlabAllocationCallbacks() {
+		for (var pool : freeBlocks) {
+			for (int classIndex = 0; classIndex < NUM_CLASSES; classIndex++) pool[classIndex] = new BlockStack(CACHE_CAPACITY);
+		}
+	}
+
+	/**
+	 * @return The index of the size class that can hold {@code size} bytes with the given alignment, or -1 if the
+	 * allocation is too large for the slabs
+	 */
+	static int classIndex(long size, long alignment) {
+		long needed = max(size, alignment);
+		if (needed > MAX_BLOCK_SIZE) return -1;
+		int shift = max(MIN_BLOCK_SHIFT, Long.SIZE - Long.numberOfLeadingZeros(needed - 1));
+		return shift - MIN_BLOCK_SHIFT;
+	}
+
+	static long blockSize(int classIndex) {
+		return 1L << (classIndex + MIN_BLOCK_SHIFT);
+	}
+
+	private static int pool(int scope) {
+		return scope == VK_SYSTEM_ALLOCATION_SCOPE_COMMAND ? POOL_COMMANDS : POOL_OBJECTS;
+	}
+
+	private static int statsIndex(long userData) {
+		return userData > 0L && userData < NUM_USER_DATA ? (int) userData : 0;
+	}
+
+	private void recordAllocation(long userData, long size) {
+		int index = statsIndex(userData);
+		allocatedBytes.addAndGet(index, size);
+		numAllocations.incrementAndGet(index);
+	}
+
+	private void recordFree(long userData, long size) {
+		int index = statsIndex(userData);
+		allocatedBytes.addAndGet(index, -size);
+		numAllocations.decrementAndGet(index);
+	}
+
+	private static int blockIndex(long block, int classIndex) {
+		return (int) ((block & SLAB_MASK) >>> (classIndex + MIN_BLOCK_SHIFT));
+	}
+
+	/**
+	 * @return True if {@code allocation} is the start of a block (rather than the slab header or the middle of a block)
+	 */
+	private static boolean isBlockStart(long allocation, int classIndex) {
+		long blockSize = blockSize(classIndex);
+		long offset = allocation & SLAB_MASK;
+		return offset % blockSize == 0L && offset >= max(blockSize, 16L);
+	}
+
+	/**
+	 * @return True if {@code allocation} is the start of a block in the slab at {@code slabIndex}, and that block is
+	 * currently allocated
+	 */
+	private static boolean isAllocatedBlock(SlabTable table, int slabIndex, long allocation) {
+		int classIndex = memGetInt(table.addresses[slabIndex]);
+		if (!isBlockStart(allocation, classIndex)) return false;
+
+		int blockIndex = blockIndex(allocation, classIndex);
+		return (table.allocatedBlocks[slabIndex].get(blockIndex >>> 6) & (1L << blockIndex)) != 0L;
+	}
+
+	private ThreadCache createThreadCache() {
+		synchronized (allThreadCaches) {
+			reclaimDeadThreadCaches();
+			var cache = new ThreadCache(Thread.currentThread());
+			allThreadCaches.add(cache);
+			return cache;
+		}
+	}
+
+	/**
+	 * Moves the cached blocks of all threads that have terminated back to the shared free lists
+	 */
+	private void reclaimDeadThreadCaches() {
+		synchronized (allThreadCaches) {
+			// Thread.isAlive() returning false guarantees that we see all changes that the thread made to its cache
+			allThreadCaches.removeIf(cache -> {
+				if (cache.owner.isAlive()) return false;
+				for (int pool = 0; pool < NUM_POOLS; pool++) {
+					for (int classIndex = 0; classIndex < NUM_CLASSES; classIndex++) {
+						var global = freeBlocks[pool][classIndex];
+						var cached = cache.blocks[pool][classIndex];
+						synchronized (global) {
+							cached.moveTo(global, cached.size);
+						}
+					}
+				}
+				return true;
+			});
+		}
+	}
+
+	@Override
+	protected long allocate(long userData, long size, long alignment, int scope) {
+		if (size == 0L) return alignment;
+
+		int classIndex = classIndex(size, alignment);
+		if (classIndex == -1) {
+			alignment = validAlignment(alignment);
+			long allocation = nmemAlignedAlloc(alignment, size);
+			if (allocation == 0L) return 0L;
+			synchronized (largeAllocations) {
+				largeAllocations.put(allocation, size, 0L);
+			}
+			recordAllocation(userData, size);
+			return allocation;
+		}
+
+		long block = allocateBlock(pool(scope), classIndex);
+		if (block != 0L) recordAllocation(userData, blockSize(classIndex));
+		return block;
+	}
+
+	private long allocateBlock(int pool, int classIndex) {
+		var cache = threadCaches.get().blocks[pool][classIndex];
+		if (cache.size == 0) {
+			var global = freeBlocks[pool][classIndex];
+			synchronized (global) {
+				global.moveTo(cache, CACHE_CAPACITY / 2);
+			}
+			if (cache.size == 0) {
+				// This must happen before locking global, since reclaimDeadThreadCaches locks all free lists
+				reclaimDeadThreadCaches();
+				synchronized (global) {
+					if (global.size == 0) createSlab(pool, classIndex, global);
+					global.moveTo(cache, CACHE_CAPACITY / 2);
+				}
+			}
+			if (cache.size == 0) return 0L;
+		}
+
+		long block = cache.pop();
+		var table = slabs;
+		int blockIndex = blockIndex(block, classIndex);
+		table.allocatedBlocks[Arrays.binarySearch(table.addresses, block & ~SLAB_MASK)].getAndAccumulate(
+				blockIndex >>> 6, 1L << blockIndex, (bits, mask) -> bits | mask
+		);
+		return block;
+	}
+
+	private void createSlab(int pool, int classIndex, BlockStack target) {
+		long slab = nmemAlignedAlloc(SLAB_SIZE, SLAB_SIZE);
+		if (slab == 0L) return;
+
+		// The header of the slab occupies the first block (or the first 16 bytes when the blocks are smaller)
+		memPutInt(slab, classIndex);
+		memPutInt(slab + 4, pool);
+		long blockSize = blockSize(classIndex);
+		var allocatedBlocks = new AtomicLongArray((int) max(1L, SLAB_SIZE / blockSize / Long.SIZE));
+
+		synchronized (slabLock) {
+			var oldSlabs = slabs;
+			int insertionPoint = -Arrays.binarySearch(oldSlabs.addresses, slab) - 1;
+			int oldLength = oldSlabs.addresses.length;
+			long[] newAddresses = new long[oldLength + 1];
+			var newAllocatedBlocks = new AtomicLongArray[oldLength + 1];
+			System.arraycopy(oldSlabs.addresses, 0, newAddresses, 0, insertionPoint);
+			System.arraycopy(oldSlabs.allocatedBlocks, 0, newAllocatedBlocks, 0, insertionPoint);
+			newAddresses[insertionPoint] = slab;
+			newAllocatedBlocks[insertionPoint] = allocatedBlocks;
+			System.arraycopy(
+					oldSlabs.addresses, insertionPoint, newAddresses,
+					insertionPoint + 1, oldLength - insertionPoint
+			);
+			System.arraycopy(
+					oldSlabs.allocatedBlocks, insertionPoint, newAllocatedBlocks,
+					insertionPoint + 1, oldLength - insertionPoint
+			);
+			slabs = new SlabTable(newAddresses, newAllocatedBlocks);
+		}
+
+		long firstBlock = max(blockSize, 16L);
+		for (long offset = SLAB_SIZE - blockSize; offset >= firstBlock; offset -= blockSize) target.push(slab + offset);
+	}
+
+	/**
+	 * @return The number of usable bytes of the given allocation, or -1 if it is not a live allocation of this instance
+	 */
+	private long getCapacity(long allocation) {
+		var table = slabs;
+		long slab = allocation & ~SLAB_MASK;
+		int slabIndex = Arrays.binarySearch(table.addresses, slab);
+		if (slabIndex >= 0) return isAllocatedBlock(table, slabIndex, allocation) ? blockSize(memGetInt(slab)) : -1L;
+		synchronized (largeAllocations) {
+			return largeAllocations.get(allocation, -1L);
+		}
+	}
+
+	@Override
+	protected long relocate(long userData, long oldAllocation, long size, long alignment, int scope) {
+		if (oldAllocation == 0L) return allocate(userData, size, alignment, scope);
+		if (size == 0L) {
+			free(userData, oldAllocation);
+			return alignment;
+		}
+
+		long oldCapacity = getCapacity(oldAllocation);
+		long slab = oldAllocation & ~SLAB_MASK;
+		if (oldCapacity != -1L && Arrays.binarySearch(slabs.addresses, slab) >= 0 &&
+				classIndex(size, alignment) == memGetInt(slab) &&
+				oldAllocation % validAlignment(alignment) == 0L) {
+			// The existing block is already large enough
+			return oldAllocation;
+		}
+
+		long newAllocation = allocate(userData, size, alignment, scope);
+		if (newAllocation == 0L) return 0L;
+
+		if (oldCapacity != -1L) {
+			memCopy(oldAllocation, newAllocation, min(oldCapacity, size));
+			free(userData, oldAllocation);
+		}
+		return newAllocation;
+	}
+
+	@Override
+	protected void free(long userData, long allocation) {
+		if (allocation == 0L) return;
+
+		var table = slabs;
+		long slab = allocation & ~SLAB_MASK;
+		int slabIndex = Arrays.binarySearch(table.addresses, slab);
+		if (slabIndex >= 0) {
+			int classIndex = memGetInt(slab);
+			int pool = memGetInt(slab + 4);
+			if (!isBlockStart(allocation, classIndex)) {
+				numRejectedFrees.incrementAndGet();
+				return;
+			}
+
+			// Clearing the allocated bit atomically ensures that only 1 of multiple concurrent frees can succeed
+			int blockIndex = blockIndex(allocation, classIndex);
+			long mask = 1L << blockIndex;
+			long oldBits = table.allocatedBlocks[slabIndex].getAndAccumulate(
+					blockIndex >>> 6, ~mask, (bits, keep) -> bits & keep
+			);
+			if ((oldBits & mask) == 0L) {
+				numRejectedFrees.incrementAndGet();
+				return;
+			}
+			recordFree(userData, blockSize(classIndex));
+
+			var cache = threadCaches.get().blocks[pool][classIndex];
+			if (cache.size == CACHE_CAPACITY) {
+				var global = freeBlocks[pool][classIndex];
+				synchronized (global) {
+					cache.moveTo(global, CACHE_CAPACITY / 2);
+				}
+			}
+			cache.push(allocation);
+			return;
+		}
+
+		long size;
+		synchronized (largeAllocations) {
+			size = largeAllocations.remove(allocation, -1L);
+		}
+		if (size != -1L) {
+			nmemAlignedFree(allocation);
+			recordFree(userData, size);
+		} else numRejectedFrees.incrementAndGet();
+	}
+
+	/**
+	 * @return The number of bytes that are currently allocated for the given type of Vulkan object. Since small
+	 * allocations are rounded up to their size class, this can be a bit larger than the sum of the requested sizes.
+	 */
+	public long getAllocatedBytes(CallbackUserData type) {
+		return allocatedBytes.get(1 + type.ordinal());
+	}
+
+	/**
+	 * @return The number of allocations that are currently alive for the given type of Vulkan object
+	 */
+	public long getNumAllocations(CallbackUserData type) {
+		return numAllocations.get(1 + type.ordinal());
+	}
+
+	/**
+	 * @return The number of frees that were ignored because the allocation was not alive, for instance because it was
+	 * already freed
+	 */
+	public long getNumRejectedFrees() {
+		return numRejectedFrees.get();
+	}
+
+	/**
+	 * @return The total number of bytes that this allocator reserved from the system: all slabs and large allocations
+	 */
+	public long getReservedBytes() {
+		long reserved = slabs.addresses.length * SLAB_SIZE;
+		synchronized (largeAllocations) {
+			long[] largeSize = { 0L };
+			largeAllocations.forEachKey(allocation -> largeSize[0] += largeAllocations.get(allocation, 0L));
+			reserved += largeSize[0];
+		}
+		return reserved;
+	}
+
+	/**
+	 * Frees the native callback functions, as well as all slabs and large allocations. This must only be called after
+	 * all Vulkan objects that were created with these callbacks have been destroyed.
+	 */
+	@Override
+	public synchronized void destroy() {
+		super.destroy();
+		if (freedMemory) return;
+		freedMemory = true;
+
+		synchronized (slabLock) {
+			for (long slab : slabs.addresses) nmemAlignedFree(slab);
+			slabs = new SlabTable(new long[0], new AtomicLongArray[0]);
+		}
+		synchronized (largeAllocations) {
+			largeAllocations.forEachKey(allocation -> nmemAlignedFree(allocation));
+			largeAllocations.clear();
+		}
+	}
+
+	private static class BlockStack {
+
+		long[] blocks;
+		int size;
+
+		BlockStack(int capacity) {
+			this.blocks = new long[capacity];
+		}
+
+		void push(long block) {
+			if (size == blocks.length) blocks = Arrays.copyOf(blocks, 2 * size);
+			blocks[size++] = block;
+		}
+
+		long pop() {
+			return blocks[--size];
+		}
+
+		void moveTo(BlockStack destination, int amount) {
+			amount = min(amount, size);
+			for (int counter = 0; counter < amount; counter++) destination.push(pop());
+		}
+	}
+
+	/**
+	 * The slabs, sorted by address, and a bitmap per slab that tracks which of its blocks are allocated. This table is
+	 * replaced whenever a slab is created.
+	 */
+	private record SlabTable(long[] addresses, AtomicLongArray[] allocatedBlocks) {}
+
+	private static class ThreadCache {
+
+		final Thread owner;
+		final BlockStack[][] blocks = new BlockStack[NUM_POOLS][NUM_CLASSES];
+
+		ThreadCache(Thread owner) {
+			this.owner = owner;
+			for (var pool : blocks) {
+				for (int classIndex = 0; classIndex < NUM_CLASSES; classIndex++) {
+					pool[classIndex] = new BlockStack(CACHE_CAPACITY);
+				}
+			}
+		}
+	}
+}
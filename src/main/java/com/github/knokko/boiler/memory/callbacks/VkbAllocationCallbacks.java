@@ -23,10 +23,13 @@ import static org.lwjgl.system.MemoryUtil.*;
  *   The default implementations of all the callbacks use {@link org.lwjgl.system.MemoryUtil} to allocate all the memory
  *   requested by the driver. This is almost certainly inefficient, so you should only use the default implementations
  *   for testing purposes. You can take a look at {@link PrintAllocationCallbacks} or {@link SumAllocationCallbacks}
- *   for testing examples. The latter can also be used to estimate the amount of memory used by the driver.
+ *   for testing examples. The latter can also be used to estimate the amount of memory used by the driver. Use
+ *   {@link SlabAllocationCallbacks} if you need allocation callbacks in production.
  * </p>
  * <p>
- *
+ *   The native callback functions are created only once per instance of this class, and are freed when
+ *   {@link #destroy()} is called (which <i>BoilerInstance.destroyInitialObjects</i> does automatically). Therefore,
+ *   each instance of this class should be used by at most 1 <i>BoilerInstance</i>.
  * </p>
  */
 public abstract class VkbAllocationCallbacks {
@@ -37,6 +40,22 @@ public abstract class VkbAllocationCallbacks {
 	 */
 	protected final Map<Long, Long> allocationSizes = new ConcurrentHashMap<>();
 
+	/*
+	 * Every conversion of a method reference to a native function pointer creates a new upcall stub, which is quite
+	 * expensive, and is never freed. Since put(...) is called for every vkCreate* and vkDestroy*, we create the stubs
+	 * only once.
+	 */
+	private final VkAllocationFunction pfnAllocation = VkAllocationFunction.create(this::allocate);
+	private final VkReallocationFunction pfnReallocation = VkReallocationFunction.create(this::relocate);
+	private final VkFreeFunction pfnFree = VkFreeFunction.create(this::free);
+	private final VkInternalAllocationNotification pfnInternalAllocation = VkInternalAllocationNotification.create(
+			this::internalAllocationCallback
+	);
+	private final VkInternalFreeNotification pfnInternalFree = VkInternalFreeNotification.create(
+			this::internalFreeCallback
+	);
+	private volatile boolean destroyed;
+
 	protected long validAlignment(long alignment) {
 		return max(Pointer.POINTER_SIZE, alignment);
 	}
@@ -104,19 +123,36 @@ public abstract class VkbAllocationCallbacks {
 	/**
 	 * Puts an {@link VkAllocationCallbacks} on the given {@link MemoryStack}, and sets all its callback fields to the
 	 * implementations of this {@link VkbAllocationCallbacks}. Furthermore, sets
-	 * {@link VkAllocationCallbacks#pUserData(long)} to {@code userData}.
+	 * {@link VkAllocationCallbacks#pUserData(long)} to {@code userData}. The callback functions are shared by all
+	 * calls, so only {@code pUserData} differs.
 	 */
 	public VkAllocationCallbacks put(MemoryStack stack, long userData) {
+		if (destroyed) throw new IllegalStateException("These allocation callbacks have already been destroyed");
 		var callbacks = VkAllocationCallbacks.calloc(stack);
 		callbacks.pUserData(userData);
-		callbacks.pfnAllocation(this::allocate);
-		callbacks.pfnReallocation(this::relocate);
-		callbacks.pfnFree(this::free);
-		callbacks.pfnInternalAllocation(this::internalAllocationCallback);
-		callbacks.pfnInternalFree(this::internalFreeCallback);
+		callbacks.pfnAllocation(pfnAllocation);
+		callbacks.pfnReallocation(pfnReallocation);
+		callbacks.pfnFree(pfnFree);
+		callbacks.pfnInternalAllocation(pfnInternalAllocation);
+		callbacks.pfnInternalFree(pfnInternalFree);
 		return callbacks;
 	}
 
+	/**
+	 * Frees the native callback functions. This must only be called after all Vulkan objects that were created
+	 * with these callbacks have been destroyed. <i>BoilerInstance.destroyInitialObjects</i> will call this method
+	 * automatically, after destroying the <i>VkInstance</i>. It is safe to call this method more than once.
+	 */
+	public synchronized void destroy() {
+		if (destroyed) return;
+		destroyed = true;
+		pfnAllocation.free();
+		pfnReallocation.free();
+		pfnFree.free();
+		pfnInternalAllocation.free();
+		pfnInternalFree.free();
+	}
+
 	public static class InvalidFreeException extends RuntimeException {
 
 		private InvalidFreeException(long allocation) {
@@ -9,6 +9,7 @@ import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertV
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.vulkan.KHRSwapchain.vkQueuePresentKHR;
 import static org.lwjgl.vulkan.VK10.VK_NULL_HANDLE;
+import static org.lwjgl.vulkan.VK10.vkQueueBindSparse;
 import static org.lwjgl.vulkan.VK10.vkQueueSubmit;
 
 /**
@@ -20,7 +21,7 @@ public record VkbQueue(VkQueue vkQueue, ReadWriteLock waitIdleLock) {
 
 	/**
 	 * This is a variant of the <i>submit</i> method, but without the timeline semaphore parameters.
-	 * @param commandBuffer The command buffer to be submitted
+	 * @param commandBuffer The command buffer to be submitted, or <b>null</b> to submit only the semaphore operations
 	 * @param context When <i>vkQueueSubmit</i> doesn't return <i>VK_SUCCESS</i>, an exception will be thrown, which
 	 *                will contain <i>context</i> in its error message
 	 * @param waitSemaphores The <i>pWaitSemaphores</i>, possibly an empty array. Passing <b>null</b> has the same
@@ -40,7 +41,7 @@ public record VkbQueue(VkQueue vkQueue, ReadWriteLock waitIdleLock) {
 
 	/**
 	 * Submits a single command buffer via <i>vkQueueSubmit</i> using the given parameters
-	 * @param commandBuffer The command buffer to be submitted
+	 * @param commandBuffer The command buffer to be submitted, or <b>null</b> to submit only the semaphore operations
 	 * @param context When <i>vkQueueSubmit</i> doesn't return <i>VK_SUCCESS</i>, an exception will be thrown, which
 	 *                will contain <i>context</i> in its error message
 	 * @param waitSemaphores The <i>pWaitSemaphores</i>, possibly an empty array. Passing <b>null</b> has the same
@@ -88,7 +89,7 @@ public record VkbQueue(VkQueue vkQueue, ReadWriteLock waitIdleLock) {
 				submission.pWaitDstStageMask(pWaitDstStageMasks);
 			}
 
-			submission.pCommandBuffers(stack.pointers(commandBuffer.address()));
+			if (commandBuffer != null) submission.pCommandBuffers(stack.pointers(commandBuffer.address()));
 
 			int numSignalSemaphores = vkSignalSemaphores.length + timelineSignals.length;
 			if (numSignalSemaphores > 0) {
@@ -139,6 +140,29 @@ public record VkbQueue(VkQueue vkQueue, ReadWriteLock waitIdleLock) {
 		}
 	}
 
+	/**
+	 * Calls <i>vkQueueBindSparse</i> with a single bind info. The queue must support
+	 * <i>VK_QUEUE_SPARSE_BINDING_BIT</i>.
+	 * @param bindInfo The sparse bind info
+	 * @param fence The <i>VkbFence</i> that should be signalled when the bind operations complete, may be <b>null</b>
+	 * @param context When <i>vkQueueBindSparse</i> doesn't return <i>VK_SUCCESS</i>, an exception will be thrown,
+	 *                which will contain <i>context</i> in its error message
+	 * @return When <i>fence</i> is not <b>null</b>, this will be a <i>FenceSubmission</i> that will be signalled when
+	 * the bind operations complete. When <i>fence</i> is <b>null</b>, this method will return <b>null</b>.
+	 */
+	public FenceSubmission bindSparse(VkBindSparseInfo bindInfo, VkbFence fence, String context) {
+		long fenceHandle = fence != null ? fence.getVkFenceAndSubmit() : VK_NULL_HANDLE;
+		synchronized (this) {
+			waitIdleLock.readLock().lock();
+			try {
+				assertVkSuccess(vkQueueBindSparse(vkQueue, bindInfo, fenceHandle), "QueueBindSparse", context);
+			} finally {
+				waitIdleLock.readLock().unlock();
+			}
+		}
+		return fence != null ? new FenceSubmission(fence) : null;
+	}
+
 	/**
 	 * Calls <i>vkQueuePresentKHR</i>, and returns the result
 	 */
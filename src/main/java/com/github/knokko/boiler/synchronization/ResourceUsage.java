@@ -34,6 +34,10 @@ public record ResourceUsage(int imageLayout, int accessMask, int stageMask) {
 			VK_IMAGE_LAYOUT_UNDEFINED, VK_ACCESS_HOST_READ_BIT, VK_PIPELINE_STAGE_HOST_BIT
 	);
 
+	public static final ResourceUsage INDIRECT_COMMAND_READ = new ResourceUsage(
+			VK_IMAGE_LAYOUT_UNDEFINED, VK_ACCESS_INDIRECT_COMMAND_READ_BIT, VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT
+	);
+
 	public static ResourceUsage depthStencilAttachmentWrite(int imageLayout) {
 		return new ResourceUsage(
 				imageLayout, VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT,
@@ -31,6 +31,16 @@ public class BoilerMath {
 		return reverted;
 	}
 
+	/**
+	 * @return The number of mip levels of a full mip chain of an image with the given size, which is
+	 * {@code 1 + floor(log2(max(width, height)))}
+	 * @throws IllegalArgumentException If {@code width} or {@code height} is not positive
+	 */
+	public static int mipLevelCount(int width, int height) {
+		if (width <= 0 || height <= 0) throw new IllegalArgumentException("Both parameters must be positive");
+		return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+	}
+
 	// Modified version of https://www.geeksforgeeks.org/lcm-of-given-array-elements/
 
 	/**
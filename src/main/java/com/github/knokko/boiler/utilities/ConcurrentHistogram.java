@@ -0,0 +1,116 @@
+package com.github.knokko.boiler.utilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ *     A lock-free histogram of non-negative <i>long</i> values (typically durations in nanoseconds), which can be
+ *     recorded and queried concurrently by any number of threads. Like HdrHistogram, it uses log-linear buckets:
+ *     values below 64 have their own bucket, and each larger power-of-two range is split into 32 buckets. Hence, the
+ *     relative error of the reported percentiles is at most about 3%, while the memory usage is fixed.
+ * </p>
+ *
+ * <p>
+ *     Recording a value is just a few atomic increments, and never allocates memory. Queries iterate over all
+ *     buckets, so they are much more expensive, and are not atomic with respect to concurrent recordings.
+ * </p>
+ */
+public class ConcurrentHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+	private static final int NUM_BUCKETS = SUB_BUCKETS * (64 - SUB_BUCKET_BITS);
+
+	private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	static int bucketIndex(long value) {
+		if (value < LINEAR_LIMIT) return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return SUB_BUCKETS * (shift + 1) + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	static long bucketUpperBound(int index) {
+		if (index < LINEAR_LIMIT) return index;
+		int shift = index / SUB_BUCKETS - 1;
+		long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Records a value. Negative values are recorded as 0.
+	 */
+	public void record(long value) {
+		if (value < 0) value = 0;
+		counts.incrementAndGet(bucketIndex(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	/**
+	 * @return The number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return The sum of all recorded values
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * @return The largest recorded value, or 0 if no values were recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return The mean of all recorded values, or 0 if no values were recorded
+	 */
+	public double getMean() {
+		long currentCount = count.get();
+		return currentCount == 0 ? 0.0 : (double) sum.get() / currentCount;
+	}
+
+	/**
+	 * Estimates the value at the given percentile, which is the upper bound of the bucket that contains it
+	 * (but never larger than {@link #getMax()}).
+	 * @param percentile The percentile, between 0 and 100 (inclusive)
+	 * @return The estimated value, or 0 if no values were recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (percentile < 0.0 || percentile > 100.0) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100, but got " + percentile);
+		}
+		long total = 0;
+		for (int index = 0; index < NUM_BUCKETS; index++) total += counts.get(index);
+		if (total == 0) return 0;
+
+		long target = Math.max(1, (long) Math.ceil(percentile * total / 100.0));
+		long seen = 0;
+		for (int index = 0; index < NUM_BUCKETS; index++) {
+			seen += counts.get(index);
+			if (seen >= target) return Math.min(bucketUpperBound(index), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * Removes all recorded values. Values that are recorded concurrently may or may not be removed.
+	 */
+	public void reset() {
+		for (int index = 0; index < NUM_BUCKETS; index++) counts.set(index, 0);
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+}
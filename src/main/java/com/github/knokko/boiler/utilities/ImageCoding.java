@@ -1,37 +1,89 @@
 package com.github.knokko.boiler.utilities;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.stream.IntStream;
 
 public class ImageCoding {
 
 	/**
-	 * Stores {@code iamge} in {@code byteBuffer}, using RGBA8 encoding.
+	 * Images with at least this many pixels will be encoded/decoded by multiple threads
+	 */
+	private static final long PARALLEL_THRESHOLD = 512 * 512;
+
+	/**
+	 * The minimum number of rows that each thread should encode/decode
+	 */
+	private static final int MIN_ROWS_PER_TASK = 32;
+
+	/**
+	 * Stores {@code image} in {@code byteBuffer}, using RGBA8 encoding. The position of {@code byteBuffer} will be
+	 * advanced by {@code 4 * width * height}.
 	 */
 	public static void encodeBufferedImage(ByteBuffer byteBuffer, BufferedImage image) {
-		long expectedSize = 4L * image.getWidth() * image.getHeight();
+		int width = image.getWidth();
+		int height = image.getHeight();
+		long expectedSize = 4L * width * height;
 		if (byteBuffer.remaining() != expectedSize) {
 			throw new IllegalArgumentException("Expected destination size to be " + expectedSize + ", but got " + byteBuffer.remaining());
 		}
 
-		for (int y = 0; y < image.getHeight(); y++) {
-			for (int x = 0; x < image.getWidth(); x++) {
-				var pixel = new Color(image.getRGB(x, y), true);
-				byteBuffer.put((byte) pixel.getRed());
-				byteBuffer.put((byte) pixel.getGreen());
-				byteBuffer.put((byte) pixel.getBlue());
-				byteBuffer.put((byte) pixel.getAlpha());
+		var destination = rgbaView(byteBuffer);
+		forEachRowRange(width, height, (minY, boundY) -> encodeRows(image, destination, minY, boundY));
+		byteBuffer.position(byteBuffer.position() + (int) expectedSize);
+	}
+
+	private static void encodeRows(BufferedImage image, IntBuffer destination, int minY, int boundY) {
+		int width = image.getWidth();
+		int type = image.getType();
+		var raster = image.getRaster();
+
+		if (type == BufferedImage.TYPE_4BYTE_ABGR) {
+			// The data elements of each pixel are already in RGBA order
+			var row = new byte[4 * width];
+			var rowInts = ByteBuffer.wrap(row).order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+			for (int y = minY; y < boundY; y++) {
+				raster.getDataElements(0, y, width, 1, row);
+				destination.put(y * width, rowInts, 0, width);
+			}
+			return;
+		}
+
+		var row = new int[width];
+		if (type == BufferedImage.TYPE_3BYTE_BGR) {
+			// The data elements of each pixel are in RGB order
+			var rowBytes = new byte[3 * width];
+			for (int y = minY; y < boundY; y++) {
+				raster.getDataElements(0, y, width, 1, rowBytes);
+				for (int x = 0; x < width; x++) {
+					row[x] = ((rowBytes[3 * x] & 0xFF) << 24) | ((rowBytes[3 * x + 1] & 0xFF) << 16) |
+							((rowBytes[3 * x + 2] & 0xFF) << 8) | 0xFF;
+				}
+				destination.put(y * width, row);
 			}
+			return;
+		}
+
+		boolean isPackedInt = type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_RGB;
+		int alphaMask = type == BufferedImage.TYPE_INT_RGB ? 0xFF000000 : 0;
+		for (int y = minY; y < boundY; y++) {
+			if (isPackedInt) raster.getDataElements(0, y, width, 1, row);
+			else image.getRGB(0, y, width, 1, row, 0, width);
+			for (int x = 0; x < width; x++) row[x] = argbToRgba(row[x] | alphaMask);
+			destination.put(y * width, row);
 		}
 	}
 
 	/**
 	 * Decodes a <i>BufferedImage</i> with the given size from {@code byteBuffer}.
-	 * This method expects the image data to be in RGBA8 format.
+	 * This method expects the image data to be in RGBA8 format. The position of {@code byteBuffer} will be advanced
+	 * by {@code 4 * width * height}.
 	 * @param width The width of the image
 	 * @param height The height of the image
-	 * @return The decoded image
+	 * @return The decoded image, which will have type <i>TYPE_INT_ARGB</i>
 	 */
 	public static BufferedImage decodeBufferedImage(ByteBuffer byteBuffer, int width, int height) {
 		long expectedSize = 4L * width * height;
@@ -40,18 +92,55 @@ public class ImageCoding {
 		}
 
 		var image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-		for (int y = 0; y < image.getHeight(); y++) {
-			for (int x = 0; x < image.getWidth(); x++) {
-				var pixel = new Color(
-						byteBuffer.get() & 0xFF,
-						byteBuffer.get() & 0xFf,
-						byteBuffer.get() & 0xFF,
-						byteBuffer.get() & 0xFF
-				);
-				image.setRGB(x, y, pixel.getRGB());
-			}
-		}
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		var source = rgbaView(byteBuffer);
+		forEachRowRange(width, height, (minY, boundY) -> {
+			int minIndex = minY * width;
+			int boundIndex = boundY * width;
+			source.get(minIndex, pixels, minIndex, boundIndex - minIndex);
+			for (int index = minIndex; index < boundIndex; index++) pixels[index] = rgbaToArgb(pixels[index]);
+		});
+		byteBuffer.position(byteBuffer.position() + (int) expectedSize);
 
 		return image;
 	}
+
+	/**
+	 * Creates a big-endian int view of the remaining bytes of {@code byteBuffer}, such that each int is a pixel whose
+	 * red component is stored in the most significant byte, and whose alpha component is in the least significant
+	 * byte. This allows whole pixels to be written at once, regardless of the byte order of {@code byteBuffer}.
+	 */
+	private static IntBuffer rgbaView(ByteBuffer byteBuffer) {
+		return byteBuffer.slice().order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+	}
+
+	private static int argbToRgba(int argb) {
+		return (argb << 8) | (argb >>> 24);
+	}
+
+	private static int rgbaToArgb(int rgba) {
+		return (rgba >>> 8) | (rgba << 24);
+	}
+
+	private static void forEachRowRange(int width, int height, RowRangeTask task) {
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		if ((long) width * height < PARALLEL_THRESHOLD || numThreads == 1 || height < 2 * MIN_ROWS_PER_TASK) {
+			task.run(0, height);
+			return;
+		}
+
+		int numTasks = Math.min(4 * numThreads, height / MIN_ROWS_PER_TASK);
+		int rowsPerTask = (height + numTasks - 1) / numTasks;
+		IntStream.range(0, numTasks).parallel().forEach(taskIndex -> {
+			int minY = taskIndex * rowsPerTask;
+			int boundY = Math.min(height, minY + rowsPerTask);
+			if (minY < boundY) task.run(minY, boundY);
+		});
+	}
+
+	@FunctionalInterface
+	private interface RowRangeTask {
+
+		void run(int minY, int boundY);
+	}
 }
@@ -0,0 +1,170 @@
+package com.github.knokko.boiler.utilities;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * <p>
+ *     A hash map from <i>long</i> keys to <i>long</i> values, which uses open addressing with linear probing. Unlike a
+ *     {@code HashMap<Long, Long>}, it doesn't box its keys and values, so {@link #put}, {@link #get}, and
+ *     {@link #remove} never allocate memory (except when the table needs to grow).
+ * </p>
+ *
+ * <p>
+ *     The key 0 is reserved to mark empty slots, so it can't be used. This is typically not a problem, since this
+ *     class is meant for (native) addresses and handles. This class is <b>not</b> thread-safe.
+ * </p>
+ */
+public class LongLongHashMap {
+
+	private static final float MAX_LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+	private long[] values;
+	private int size;
+
+	/**
+	 * @param initialCapacity The number of entries that can be stored before the table needs to grow
+	 */
+	public LongLongHashMap(int initialCapacity) {
+		int tableSize = Integer.highestOneBit(Math.max(4, (int) Math.ceil(initialCapacity / MAX_LOAD_FACTOR)) - 1) << 1;
+		this.keys = new long[tableSize];
+		this.values = new long[tableSize];
+	}
+
+	public LongLongHashMap() {
+		this(16);
+	}
+
+	private static int hash(long key) {
+		// The low bits of addresses are typically 0 due to alignment, so we need to mix in the higher bits
+		long mixed = key * 0x9E3779B97F4A7C15L;
+		return (int) (mixed ^ (mixed >>> 32));
+	}
+
+	private int indexOf(long key) {
+		int mask = keys.length - 1;
+		int index = hash(key) & mask;
+		while (true) {
+			long candidate = keys[index];
+			if (candidate == key) return index;
+			if (candidate == 0L) return -1;
+			index = (index + 1) & mask;
+		}
+	}
+
+	private static void checkKey(long key) {
+		if (key == 0L) throw new IllegalArgumentException("The key 0 is reserved");
+	}
+
+	/**
+	 * @return The value associated with {@code key}, or {@code defaultValue} if there is no such value
+	 */
+	public long get(long key, long defaultValue) {
+		checkKey(key);
+		int index = indexOf(key);
+		return index == -1 ? defaultValue : values[index];
+	}
+
+	/**
+	 * @return True if and only if this map contains a value for {@code key}
+	 */
+	public boolean containsKey(long key) {
+		checkKey(key);
+		return indexOf(key) != -1;
+	}
+
+	/**
+	 * Associates {@code value} with {@code key}, replacing the previous value (if any)
+	 * @return The previous value, or {@code defaultValue} if there was no previous value
+	 */
+	public long put(long key, long value, long defaultValue) {
+		checkKey(key);
+		if (size + 1 > MAX_LOAD_FACTOR * keys.length) grow();
+
+		int mask = keys.length - 1;
+		int index = hash(key) & mask;
+		while (true) {
+			long candidate = keys[index];
+			if (candidate == key) {
+				long previous = values[index];
+				values[index] = value;
+				return previous;
+			}
+			if (candidate == 0L) {
+				keys[index] = key;
+				values[index] = value;
+				size += 1;
+				return defaultValue;
+			}
+			index = (index + 1) & mask;
+		}
+	}
+
+	/**
+	 * Removes the value associated with {@code key}, if any
+	 * @return The removed value, or {@code defaultValue} if there was no such value
+	 */
+	public long remove(long key, long defaultValue) {
+		checkKey(key);
+		int index = indexOf(key);
+		if (index == -1) return defaultValue;
+
+		long removed = values[index];
+		size -= 1;
+
+		// Backward shift deletion: move subsequent entries of the same probe sequence into the gap
+		int mask = keys.length - 1;
+		int gap = index;
+		int next = (gap + 1) & mask;
+		while (keys[next] != 0L) {
+			int home = hash(keys[next]) & mask;
+			// Move the entry when its home slot is not in the (cyclic) range (gap, next]
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = 0L;
+		values[gap] = 0L;
+		return removed;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		long[] oldValues = values;
+		keys = new long[2 * oldKeys.length];
+		values = new long[2 * oldValues.length];
+		size = 0;
+		for (int index = 0; index < oldKeys.length; index++) {
+			if (oldKeys[index] != 0L) put(oldKeys[index], oldValues[index], 0L);
+		}
+	}
+
+	/**
+	 * @return The number of entries in this map
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Calls {@code action} for each key in this map. The action must not modify this map.
+	 */
+	public void forEachKey(LongConsumer action) {
+		for (long key : keys) {
+			if (key != 0L) action.accept(key);
+		}
+	}
+
+	/**
+	 * Removes all entries from this map
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0L);
+		Arrays.fill(values, 0L);
+		size = 0;
+	}
+}
@@ -9,33 +9,41 @@ import java.util.function.Consumer;
 
 import static org.lwjgl.vulkan.VK10.VK_NULL_HANDLE;
 
+/**
+ * A swapchain image that has been acquired using <i>VkbWindow.acquireSwapchainImageWithFence</i> or
+ * <i>VkbWindow.acquireSwapchainImageWithSemaphore</i>. To avoid allocating memory every frame, each swapchain image
+ * has a single instance of this class, which is reused whenever that swapchain image is acquired again. Therefore, you
+ * should not use an instance of this class after you presented it.
+ */
 public class AcquiredImage {
 
 	final SwapchainWrapper swapchain;
 	final int index;
 	final VkbImage image;
-	final int presentMode;
-
-	final long acquireSemaphore;
 	final long presentSemaphore;
-	final FenceSubmission acquireSubmission;
-	final VkbFence presentFence;
+
+	int presentMode;
+	long acquireSemaphore;
+	FenceSubmission acquireSubmission;
+	VkbFence presentFence;
+	long presentId;
 
 	Consumer<VkPresentInfoKHR> beforePresentCallback;
 
-	AcquiredImage(
-			SwapchainWrapper swapchain, int index, VkbImage image, int presentMode,
-			long acquireSemaphore, FenceSubmission acquireSubmission,
-			long presentSemaphore, VkbFence presentFence
-	) {
+	AcquiredImage(SwapchainWrapper swapchain, int index, VkbImage image, long presentSemaphore) {
 		this.swapchain = swapchain;
 		this.index = index;
 		this.image = image;
+		this.presentSemaphore = presentSemaphore;
+	}
+
+	void reset(int presentMode, long acquireSemaphore, FenceSubmission acquireSubmission, VkbFence presentFence) {
 		this.presentMode = presentMode;
 		this.acquireSemaphore = acquireSemaphore;
 		this.acquireSubmission = acquireSubmission;
-		this.presentSemaphore = presentSemaphore;
 		this.presentFence = presentFence;
+		this.presentId = 0L;
+		this.beforePresentCallback = null;
 	}
 
 	public int getIndex() {
@@ -0,0 +1,322 @@
+package com.github.knokko.boiler.window;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>
+ *     Paces the frames of a {@link WindowRenderLoop}, to cap the frame rate and/or the latency between the start of a
+ *     frame (when the input is typically sampled) and the completion of its GPU work. You can attach a pacer to a
+ *     render loop using {@link WindowRenderLoop#setFramePacer}.
+ * </p>
+ *
+ * <p>
+ *     The pacer measures:
+ * </p>
+ * <ul>
+ *     <li>The CPU time of each frame: the time between the start of the frame and its presentation, minus the time
+ *     that the render thread was blocked (see {@link #beginWait()} and {@link #endWait()})</li>
+ *     <li>The time that the render thread was blocked during each frame, for instance while acquiring a swapchain
+ *     image or waiting on a fence</li>
+ *     <li>The latency of each frame: the time between the start of the frame and the completion of its GPU work
+ *     (see {@link #gpuCompleted})</li>
+ *     <li>The interval between consecutive presentations</li>
+ * </ul>
+ *
+ * <p>
+ *     When a frame rate cap is used, the pacer will delay the start of each frame until at least
+ *     {@code minFrameTime} nanoseconds have passed since the start of the previous frame. When a latency target is
+ *     used, the pacer will additionally:
+ * </p>
+ * <ul>
+ *     <li>Delay the start of each frame by the (average) time that the render thread would otherwise be blocked,
+ *     minus a small safety margin. This 'just in time' pacing moves the waiting to <i>before</i> the input is
+ *     sampled, rather than after, which reduces the latency without reducing the frame rate.</li>
+ *     <li>Decrease the number of frames in flight (see {@link #framesInFlight}) when the latency is above the target,
+ *     and increase it again when there is enough room.</li>
+ * </ul>
+ *
+ * <p>
+ *     When the window supports <i>VK_KHR_present_wait</i>, you can additionally limit the number of presented frames
+ *     that have not been displayed yet, using {@link #setMaxQueuedPresents}. The render loop will then wait until
+ *     frame {@code N - maxQueuedPresents} has been displayed before starting frame {@code N}, which prevents
+ *     frames from piling up in the presentation queue. When present wait is not supported, this is ignored, and only
+ *     the GPU completion of frames is used.
+ * </p>
+ *
+ * <p>
+ *     All averages are exponential moving averages. This class is <b>not</b> thread-safe: it should only be used by
+ *     the render thread.
+ * </p>
+ */
+public class FramePacer {
+
+	/**
+	 * The weight of each new sample in the exponential moving averages
+	 */
+	private static final double SMOOTHING = 0.125;
+
+	/**
+	 * The number of frames that must pass between consecutive changes of the number of frames in flight
+	 */
+	static final int ADJUSTMENT_INTERVAL = 30;
+
+	/**
+	 * The minimum safety margin of the just-in-time delay, in nanoseconds
+	 */
+	static final long MIN_SAFETY_MARGIN = 500_000L;
+
+	/**
+	 * The number of frames whose start times are remembered, which limits the number of frames in flight for which
+	 * {@link #gpuCompleted} can be reported
+	 */
+	private static final int HISTORY_SIZE = 16;
+
+	private final long minFrameTime, targetLatency;
+	private final LongSupplier clock;
+	private final LongConsumer sleeper;
+
+	private final long[] frameStartTimes = new long[HISTORY_SIZE];
+	private long nextFrame;
+	private long lastStartTime, lastPresentTime;
+	private long currentDelay, currentWaitTime, waitStartTime;
+	private boolean isWaiting, hasPresented;
+
+	private double averageCpuTime, averageWaitTime, averageSlack, averageLatency, averagePresentInterval;
+	private boolean hasCpuTime, hasSlack, hasLatency, hasPresentInterval;
+
+	private int framesInFlight = -1;
+	private long lastAdjustment;
+
+	private int maxQueuedPresents;
+
+	/**
+	 * @param minFrameTime The minimum time between the start of consecutive frames, in nanoseconds, or 0 to disable
+	 *                     the frame rate cap. For instance, use {@code 1_000_000_000L / 60} to cap the frame rate
+	 *                     at 60 frames per second.
+	 * @param targetLatency The target latency between the start of a frame and the completion of its GPU work, in
+	 *                      nanoseconds, or 0 to disable latency pacing
+	 */
+	public FramePacer(long minFrameTime, long targetLatency) {
+		this(minFrameTime, targetLatency, System::nanoTime, FramePacer::sleepNanos);
+	}
+
+	FramePacer(long minFrameTime, long targetLatency, LongSupplier clock, LongConsumer sleeper) {
+		if (minFrameTime < 0) throw new IllegalArgumentException("minFrameTime (" + minFrameTime + ") must not be negative");
+		if (targetLatency < 0) throw new IllegalArgumentException("targetLatency (" + targetLatency + ") must not be negative");
+		this.minFrameTime = minFrameTime;
+		this.targetLatency = targetLatency;
+		this.clock = clock;
+		this.sleeper = sleeper;
+	}
+
+	private static void sleepNanos(long nanos) {
+		long deadline = System.nanoTime() + nanos;
+		long remaining = nanos;
+		while (remaining > 0) {
+			LockSupport.parkNanos(remaining);
+			remaining = deadline - System.nanoTime();
+		}
+	}
+
+	private static double smooth(double average, long sample, boolean hasAverage) {
+		return hasAverage ? average + SMOOTHING * (sample - average) : sample;
+	}
+
+	/**
+	 * Computes how long the start of the next frame should be delayed, in nanoseconds, based on the measurements of
+	 * the previous frames. This is called by {@link #startFrame()}, and can also be used for diagnostics.
+	 */
+	public long computeStartDelay() {
+		if (nextFrame == 0) return 0L;
+		long now = clock.getAsLong();
+		long delay = 0L;
+
+		if (minFrameTime > 0) delay = lastStartTime + minFrameTime - now;
+
+		if (targetLatency > 0 && hasSlack) {
+			long margin = Math.max(MIN_SAFETY_MARGIN, (long) (averageSlack / 8));
+			long justInTimeDelay = (long) averageSlack - margin;
+			long elapsed = now - lastPresentTime;
+			delay = Math.max(delay, justInTimeDelay - Math.max(elapsed, 0L));
+		}
+
+		return Math.max(delay, 0L);
+	}
+
+	/**
+	 * Sleeps until the next frame should start (see {@link #computeStartDelay()}), and marks the start of the
+	 * next frame. The render loop calls this at the start of each frame, before acquiring a swapchain image.
+	 * @return The index of the frame that was started. The first frame has index 0, and each subsequent frame
+	 * has an index that is 1 larger than that of the previous frame.
+	 */
+	public long startFrame() {
+		long delay = computeStartDelay();
+		if (delay > 0) sleeper.accept(delay);
+
+		long frame = nextFrame;
+		lastStartTime = clock.getAsLong();
+		frameStartTimes[(int) (frame % HISTORY_SIZE)] = lastStartTime;
+		currentDelay = delay;
+		currentWaitTime = 0L;
+		isWaiting = false;
+		nextFrame += 1;
+		return frame;
+	}
+
+	/**
+	 * @return The index of the frame that was most recently started by {@link #startFrame()}, or -1 if no frame
+	 * has been started yet
+	 */
+	public long getCurrentFrame() {
+		return nextFrame - 1;
+	}
+
+	/**
+	 * Marks the start of an operation during which the render thread is blocked, for instance acquiring a swapchain
+	 * image or waiting on a fence. This must be followed by a call to {@link #endWait()}.
+	 */
+	public void beginWait() {
+		if (isWaiting) throw new IllegalStateException("beginWait() was already called");
+		isWaiting = true;
+		waitStartTime = clock.getAsLong();
+	}
+
+	/**
+	 * Marks the end of an operation during which the render thread was blocked
+	 */
+	public void endWait() {
+		if (!isWaiting) throw new IllegalStateException("beginWait() was not called");
+		isWaiting = false;
+		currentWaitTime += clock.getAsLong() - waitStartTime;
+	}
+
+	/**
+	 * Reports that the GPU work of the given frame has completed. If the exact completion time is unknown, this
+	 * should be called as soon as possible after observing the completion (e.g. right after waiting on the fence of
+	 * the frame), since the current time is used as the completion time.
+	 * @param frame The index of the frame, as returned by {@link #startFrame()}
+	 */
+	public void gpuCompleted(long frame) {
+		if (frame >= nextFrame) throw new IllegalArgumentException("Frame " + frame + " hasn't started yet");
+		if (frame <= nextFrame - HISTORY_SIZE) return;
+
+		long latency = clock.getAsLong() - frameStartTimes[(int) (frame % HISTORY_SIZE)];
+		averageLatency = smooth(averageLatency, latency, hasLatency);
+		hasLatency = true;
+	}
+
+	/**
+	 * Marks the end of the current frame, which should happen right after its swapchain image has been presented
+	 */
+	public void framePresented() {
+		if (isWaiting) endWait();
+		long now = clock.getAsLong();
+
+		long cpuTime = now - lastStartTime - currentWaitTime;
+		averageCpuTime = smooth(averageCpuTime, cpuTime, hasCpuTime);
+		averageWaitTime = smooth(averageWaitTime, currentWaitTime, hasCpuTime);
+		hasCpuTime = true;
+
+		// The slack includes the delay of this frame: otherwise, a larger delay would lead to a smaller wait time,
+		// which would lead to a smaller delay, which causes oscillations
+		averageSlack = smooth(averageSlack, currentWaitTime + currentDelay, hasSlack);
+		hasSlack = true;
+
+		if (hasPresented) {
+			averagePresentInterval = smooth(averagePresentInterval, now - lastPresentTime, hasPresentInterval);
+			hasPresentInterval = true;
+		}
+		lastPresentTime = now;
+		hasPresented = true;
+	}
+
+	/**
+	 * Determines how many frames may be in flight at the same time, which is at most {@code maxFramesInFlight}.
+	 * When a latency target is used, this will decrease when the average latency is above the target, and increase
+	 * when the average latency plus the average present interval is below the target. To avoid oscillations, the
+	 * number of frames in flight changes at most once per {@link #ADJUSTMENT_INTERVAL} frames.<br>
+	 *
+	 * Render loops should ensure that frame {@code f - framesInFlight} has completed before submitting frame
+	 * {@code f}.
+	 * @param maxFramesInFlight The number of frame-in-flight resources of the render loop
+	 */
+	public int framesInFlight(int maxFramesInFlight) {
+		if (framesInFlight == -1 || framesInFlight > maxFramesInFlight) framesInFlight = maxFramesInFlight;
+		if (targetLatency == 0 || !hasLatency || nextFrame - lastAdjustment < ADJUSTMENT_INTERVAL) {
+			return framesInFlight;
+		}
+
+		if (averageLatency > targetLatency && framesInFlight > 1) {
+			framesInFlight -= 1;
+			lastAdjustment = nextFrame;
+		} else if (
+				averageLatency + averagePresentInterval < targetLatency && framesInFlight < maxFramesInFlight
+		) {
+			framesInFlight += 1;
+			lastAdjustment = nextFrame;
+		}
+		return framesInFlight;
+	}
+
+	/**
+	 * Limits the number of presented frames that may not have been displayed yet when a new frame starts. This is
+	 * only used when the window supports <i>VK_KHR_present_wait</i>.
+	 * @param maxQueuedPresents The maximum number of queued presentations, or 0 to disable this limit (default).
+	 *                          Use 1 for the lowest latency: each frame will start right after the previous frame
+	 *                          has been displayed.
+	 */
+	public void setMaxQueuedPresents(int maxQueuedPresents) {
+		if (maxQueuedPresents < 0) {
+			throw new IllegalArgumentException("maxQueuedPresents (" + maxQueuedPresents + ") must not be negative");
+		}
+		this.maxQueuedPresents = maxQueuedPresents;
+	}
+
+	/**
+	 * @return The maximum number of queued presentations, see {@link #setMaxQueuedPresents}
+	 */
+	public int getMaxQueuedPresents() {
+		return maxQueuedPresents;
+	}
+
+	/**
+	 * Determines which presentation should be displayed before the next frame can start
+	 * @param lastPresentId The present ID of the most recent presentation of the window (0 if nothing has been
+	 *                      presented yet)
+	 * @return The present ID to wait for, or 0 if there is no need to wait
+	 */
+	public long presentIdToAwait(long lastPresentId) {
+		if (maxQueuedPresents == 0) return 0L;
+		return Math.max(lastPresentId - maxQueuedPresents + 1, 0L);
+	}
+
+	/**
+	 * @return The average CPU time per frame, in nanoseconds, excluding the time that the render thread was blocked
+	 */
+	public long getAverageCpuTime() {
+		return (long) averageCpuTime;
+	}
+
+	/**
+	 * @return The average time per frame that the render thread was blocked, in nanoseconds
+	 */
+	public long getAverageWaitTime() {
+		return (long) averageWaitTime;
+	}
+
+	/**
+	 * @return The average time between the start of a frame and the completion of its GPU work, in nanoseconds
+	 */
+	public long getAverageLatency() {
+		return (long) averageLatency;
+	}
+
+	/**
+	 * @return The average time between consecutive presentations, in nanoseconds
+	 */
+	public long getAveragePresentInterval() {
+		return (long) averagePresentInterval;
+	}
+}
@@ -0,0 +1,429 @@
+package com.github.knokko.boiler.window;
+
+import com.github.knokko.boiler.BoilerInstance;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.memory.callbacks.CallbackUserData;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+import com.github.knokko.boiler.synchronization.VkbFence;
+import com.github.knokko.boiler.synchronization.WaitSemaphore;
+import org.lwjgl.sdl.SDL_Event;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkCommandBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.github.knokko.boiler.exceptions.SDLFailureException.assertSdlSuccess;
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static java.lang.Thread.sleep;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.sdl.SDLEvents.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+/**
+ * <p>
+ *     A render loop that renders any number of windows on a single thread. Every frame, it acquires a swapchain image
+ *     from each window that is neither minimized nor occluded, lets {@link #recordFrame} record the commands for all
+ *     these images into a single command buffer, submits that command buffer once, and presents all images using a
+ *     single <i>vkQueuePresentKHR</i> call (when the windows share the same present queue).
+ * </p>
+ *
+ * <p>
+ *     Compared to using a <i>WindowRenderLoop</i> per window, this needs only 1 render thread, and only 1 command
+ *     pool, command buffer, and fence per frame-in-flight, regardless of the number of windows. This is especially
+ *     useful when you have many windows that are cheap to render. Swapchain images are always acquired using
+ *     semaphores.
+ * </p>
+ *
+ * <p>
+ *     Like <i>WindowRenderLoop</i>, this class can either be used in isolation (by calling {@link #start()} on the
+ *     main thread), or in combination with a <i>WindowEventLoop</i> (by calling
+ *     <i>WindowEventLoop.addWindows</i>). A window is destroyed when it is closed, and the render loop stops when
+ *     all its windows have been closed. See docs/swapchain.md for more information.
+ * </p>
+ */
+public abstract class MultiWindowRenderLoop {
+
+	protected final BoilerInstance instance;
+	protected final int numFramesInFlight;
+	private final ResourceUsage firstUsage, lastUsage;
+
+	private final Map<VkbWindow, WindowState> states = new ConcurrentHashMap<>();
+	private final Queue<WindowState> newWindows = new ConcurrentLinkedQueue<>();
+	private final List<WindowState> windows = new ArrayList<>();
+	private final PresentBatch batch = new PresentBatch();
+
+	private WindowEventLoop eventLoop;
+	private volatile boolean didStart, stopped;
+	volatile Thread thread;
+
+	private long[] commandPools;
+	private VkCommandBuffer[] commandBuffers;
+	private VkbFence[] commandFences;
+
+	/**
+	 * @param instance The VkBoiler instance
+	 * @param numFramesInFlight The number of frames-in-flight. This must not be larger than the
+	 *                          <i>maxFramesInFlight</i> of any window that is added to this render loop.
+	 * @param firstUsage The first usage of the swapchain images (typically
+	 *                   <i>ResourceUsage.COLOR_ATTACHMENT_WRITE</i>)
+	 * @param lastUsage The last usage of the swapchain images. If you don't insert any barriers, this should be the
+	 *                  same as <i>firstUsage</i>
+	 */
+	public MultiWindowRenderLoop(
+			BoilerInstance instance, int numFramesInFlight, ResourceUsage firstUsage, ResourceUsage lastUsage
+	) {
+		this.instance = instance;
+		this.numFramesInFlight = numFramesInFlight;
+		this.firstUsage = firstUsage;
+		this.lastUsage = lastUsage;
+	}
+
+	/**
+	 * Adds a window to this render loop. This method can be called from any thread, before or after the render loop
+	 * has started. The window will be rendered from the next frame onward.
+	 * @param window The window, which must not be rendered by any other render loop
+	 * @throws IllegalStateException When this loop has already stopped, see {@link #hasStopped()}
+	 * @param presentMode The initial present mode of the window, which can be changed using
+	 *                    {@link #setPresentMode}
+	 */
+	public synchronized void addWindow(VkbWindow window, int presentMode) {
+		if (stopped) throw new IllegalStateException("This loop has already stopped");
+		if (window.properties.maxFramesInFlight() < numFramesInFlight) {
+			throw new IllegalArgumentException("The maxFramesInFlight of window " + window.properties.title() +
+					" is " + window.properties.maxFramesInFlight() + ", but this loop needs " + numFramesInFlight);
+		}
+		var state = new WindowState(window, presentMode);
+		if (states.putIfAbsent(window, state) != null) {
+			throw new IllegalArgumentException("Window " + window.properties.title() + " was already added");
+		}
+
+		if (window.instance.useSDL) {
+			assertSdlSuccess(SDL_AddEventWatch((userData, rawEvent) -> {
+				if (SDL_Event.ntype(rawEvent) == SDL_EVENT_WINDOW_CLOSE_REQUESTED &&
+						nSDL_GetWindowFromEvent(rawEvent) == window.properties.handle()) state.closeRequested = true;
+				return false;
+			}, 0L), "AddEventWatch");
+		}
+		if (eventLoop != null) registerWindow(state);
+		newWindows.add(state);
+	}
+
+	/**
+	 * Changes the present mode that will be used for the given window, starting from the next frame. This method can
+	 * be called from any thread.
+	 */
+	public void setPresentMode(VkbWindow window, int presentMode) {
+		var state = states.get(window);
+		if (state == null) throw new IllegalArgumentException("Window " + window.properties.title() + " is not part of this loop");
+		state.presentMode = presentMode;
+	}
+
+	synchronized void attach(WindowEventLoop eventLoop) {
+		if (didStart) throw new IllegalStateException("This loop already started");
+		if (this.eventLoop != null) throw new IllegalStateException("This loop was already added to an event loop");
+		this.eventLoop = eventLoop;
+		for (var state : newWindows) registerWindow(state);
+	}
+
+	private void registerWindow(WindowState state) {
+		eventLoop.registerWindow(state.window, () -> {
+			if (state.destroyed) return true;
+			Thread renderThread = thread;
+			return renderThread != null && !renderThread.isAlive();
+		});
+	}
+
+	/**
+	 * Starts the render loop. If this loop has been added to a <i>WindowEventLoop</i>, the rendering will happen in
+	 * another thread. If not, the render/event loop will happen on this thread, and this method will block until
+	 * all windows have been closed.<br>
+	 *
+	 * Note: you should <b>not</b> call this method yourself when you have added this loop via
+	 * <i>WindowEventLoop.addWindows</i> because that method will automatically start this render loop.
+	 */
+	public void start() {
+		synchronized (this) {
+			if (didStart) throw new IllegalStateException("This loop already started");
+			didStart = true;
+		}
+
+		if (eventLoop == null) {
+			this.run();
+		} else {
+			this.thread = new Thread(this::run);
+			thread.setDaemon(true); // Ensure that the render thread dies when the main thread dies (unexpectedly)
+			thread.start();
+		}
+	}
+
+	private void run() {
+		try (var stack = stackPush()) {
+			commandPools = instance.commands.createPools(
+					VK_COMMAND_POOL_CREATE_TRANSIENT_BIT,
+					instance.queueFamilies().graphics().index(),
+					numFramesInFlight, getClass().getSimpleName() + "Pool"
+			);
+			commandBuffers = instance.commands.createPrimaryBufferPerPool(
+					getClass().getSimpleName() + "Buffer", commandPools
+			);
+			commandFences = instance.sync.fenceBank.borrowFences(
+					numFramesInFlight, true, getClass().getSimpleName() + "CommandFence"
+			);
+			setup(instance, stack);
+		} catch (Throwable setupFailed) {
+			synchronized (this) {
+				stopped = true;
+			}
+			try {
+				windows.addAll(newWindows);
+				for (var state : windows) destroyWindow(state);
+				throw setupFailed;
+			} catch (Throwable destructionFailed) {
+				throw setupFailed;
+			}
+		}
+
+		try {
+			long currentFrame = 0;
+			while (true) {
+				adoptNewWindows();
+				if (eventLoop == null) pollEvents();
+				destroyClosedWindows();
+				synchronized (this) {
+					if (windows.isEmpty() && newWindows.isEmpty()) {
+						stopped = true;
+						break;
+					}
+				}
+
+				int frameIndex = (int) (currentFrame % numFramesInFlight);
+				try (var stack = stackPush()) {
+					boolean isAnyWindowVisible = false;
+					for (var state : windows) {
+						var window = state.window;
+						if (window.getWidth() == 0 || window.getHeight() == 0 || window.isOccluded()) continue;
+						isAnyWindowVisible = true;
+
+						var acquiredImage = window.acquireSwapchainImageWithSemaphore(state.presentMode);
+						if (acquiredImage != null) batch.add(window, acquiredImage);
+					}
+
+					if (batch.size() == 0) {
+						if (!isAnyWindowVisible) {
+							//noinspection BusyWait
+							sleep(100);
+						}
+						continue;
+					}
+
+					renderFrame(stack, frameIndex);
+					batch.present();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				} finally {
+					batch.clear();
+				}
+				currentFrame += 1;
+			}
+		} finally {
+			synchronized (this) {
+				stopped = true;
+			}
+			try {
+				for (var fence : commandFences) fence.waitIfSubmitted();
+				cleanUp(instance);
+				instance.sync.fenceBank.returnFences(commandFences);
+				try (var stack = stackPush()) {
+					for (var commandPool : commandPools) {
+						vkDestroyCommandPool(
+								instance.vkDevice(), commandPool,
+								CallbackUserData.COMMAND_POOL.put(stack, instance)
+						);
+					}
+				}
+				adoptNewWindows();
+				for (var state : windows) destroyWindow(state);
+				windows.clear();
+			} catch (Throwable cleanUpFailed) {
+				// The purpose of this catch block is to ensure that errors during cleanUp don't suppress the
+				// more important errors encountered in the try block
+				System.err.println("Failed to clean-up MultiWindowRenderLoop:");
+				//noinspection CallToPrintStackTrace
+				cleanUpFailed.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return <i>true</i> if and only if this loop has stopped because all its windows were closed. Windows can no
+	 * longer be added after the loop has stopped.
+	 */
+	public boolean hasStopped() {
+		return stopped;
+	}
+
+	private void adoptNewWindows() {
+		WindowState state;
+		while ((state = newWindows.poll()) != null) {
+			if (eventLoop == null) state.window.registerCallbacks();
+			windows.add(state);
+		}
+	}
+
+	private void pollEvents() {
+		if (instance.useSDL) {
+			try (var stack = stackPush()) {
+				var event = SDL_Event.calloc(stack);
+				//noinspection StatementWithEmptyBody
+				while (SDL_PollEvent(event)) {
+					// Users should use SDL_AddEventWatch to listen for events
+				}
+			}
+		} else {
+			glfwPollEvents();
+		}
+		for (var state : windows) state.window.updateSize();
+	}
+
+	private void destroyClosedWindows() {
+		boolean waitedOnFences = false;
+		var iterator = windows.iterator();
+		while (iterator.hasNext()) {
+			var state = iterator.next();
+			boolean shouldClose = instance.useSDL ? state.closeRequested :
+					glfwWindowShouldClose(state.window.properties.handle());
+			if (!shouldClose) continue;
+
+			// The swapchain images of the window may still be used by pending submissions
+			if (!waitedOnFences) {
+				for (var fence : commandFences) fence.waitIfSubmitted();
+				waitedOnFences = true;
+			}
+			destroyWindow(state);
+			iterator.remove();
+		}
+	}
+
+	private void destroyWindow(WindowState state) {
+		try {
+			state.window.destroy();
+		} finally {
+			states.remove(state.window);
+			state.destroyed = true;
+		}
+	}
+
+	private void renderFrame(MemoryStack stack, int frameIndex) {
+		var fence = commandFences[frameIndex];
+		fence.waitAndReset();
+
+		int numImages = batch.size();
+		var waitSemaphores = new WaitSemaphore[numImages];
+		long[] signalSemaphores = new long[numImages];
+		for (int index = 0; index < numImages; index++) {
+			var acquiredImage = batch.getImage(index);
+			waitSemaphores[index] = new WaitSemaphore(acquiredImage.getAcquireSemaphore(), lastUsage.stageMask());
+			signalSemaphores[index] = acquiredImage.presentSemaphore;
+		}
+
+		CommandRecorder recorder;
+		try {
+			recorder = beginCommands(stack, frameIndex);
+			for (int index = 0; index < numImages; index++) {
+				var acquiredImage = batch.getImage(index);
+				recorder.transitionLayout(
+						acquiredImage.image, ResourceUsage.invalidate(lastUsage.stageMask()), firstUsage
+				);
+				recordFrame(stack, frameIndex, recorder, batch.getWindow(index), acquiredImage, instance);
+				recorder.transitionLayout(acquiredImage.image, lastUsage, ResourceUsage.PRESENT);
+			}
+		} catch (Throwable recordingFailed) {
+			// The acquired images must still be submitted and presented, since they can't be acquired again otherwise
+			try {
+				recorder = beginCommands(stack, frameIndex);
+				for (int index = 0; index < numImages; index++) {
+					recorder.transitionLayout(
+							batch.getImage(index).image, ResourceUsage.invalidate(lastUsage.stageMask()),
+							ResourceUsage.PRESENT
+					);
+				}
+				recorder.end();
+				submitCommands(frameIndex, waitSemaphores, signalSemaphores);
+				batch.present();
+			} catch (Throwable releaseFailed) {
+				recordingFailed.addSuppressed(releaseFailed);
+			}
+			throw recordingFailed;
+		}
+		recorder.end();
+		submitCommands(frameIndex, waitSemaphores, signalSemaphores);
+	}
+
+	private CommandRecorder beginCommands(MemoryStack stack, int frameIndex) {
+		assertVkSuccess(vkResetCommandPool(
+				instance.vkDevice(), commandPools[frameIndex], 0
+		), "ResetCommandPool", getClass().getSimpleName());
+
+		return CommandRecorder.begin(
+				commandBuffers[frameIndex], instance, stack,
+				VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT,
+				getClass().getSimpleName()
+		);
+	}
+
+	private void submitCommands(int frameIndex, WaitSemaphore[] waitSemaphores, long[] signalSemaphores) {
+		instance.queueFamilies().graphics().first().submit(
+				commandBuffers[frameIndex], getClass().getSimpleName(),
+				waitSemaphores, commandFences[frameIndex], signalSemaphores
+		);
+	}
+
+	/**
+	 * This method will be called once before the actual rendering starts, and can be used to create the resources
+	 * that are needed for rendering.
+	 */
+	protected void setup(BoilerInstance instance, MemoryStack stack) {}
+
+	/**
+	 * Records the commands to render onto the swapchain image of 1 window. This method will be called once for each
+	 * acquired swapchain image during every frame, and all commands will be recorded into the same command buffer.
+	 * Do <b>not</b> call <i>recorder.end()</i> because that will automatically happen after the last window has
+	 * been recorded. When this method throws, the acquired images of the frame will still be presented (with
+	 * undefined content), after which the exception is propagated and the render loop stops.
+	 * @param stack A <i>MemoryStack</i> onto which you can allocate structures that you need for rendering
+	 * @param frameIndex The index into the frame-in-flight-resource arrays. The render loop will increment a
+	 *                   <i>counter</i> every frame, and <i>frameIndex = counter % numFramesInFlight</i>
+	 * @param recorder The <i>CommandRecorder</i> onto which you should record the commands
+	 * @param window The window to which the swapchain image belongs
+	 * @param acquiredImage The acquired swapchain image
+	 * @param instance The VkBoiler instance
+	 */
+	protected abstract void recordFrame(
+			MemoryStack stack, int frameIndex, CommandRecorder recorder,
+			VkbWindow window, AcquiredImage acquiredImage, BoilerInstance instance
+	);
+
+	/**
+	 * This method will be called after the render loop has finished, after all submissions have completed, and
+	 * should be used to destroy all resources that you created during <i>setup</i>
+	 */
+	protected void cleanUp(BoilerInstance instance) {}
+
+	private static class WindowState {
+
+		final VkbWindow window;
+		volatile int presentMode;
+		volatile boolean closeRequested, destroyed;
+
+		WindowState(VkbWindow window, int presentMode) {
+			this.window = window;
+			this.presentMode = presentMode;
+		}
+	}
+}
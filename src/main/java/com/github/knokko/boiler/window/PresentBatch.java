@@ -0,0 +1,78 @@
+package com.github.knokko.boiler.window;
+
+import java.util.Arrays;
+
+/**
+ * A reusable list of swapchain images of different windows, which can be presented using a single
+ * <i>vkQueuePresentKHR</i> call. This is used by {@link MultiWindowRenderLoop}.
+ */
+class PresentBatch {
+
+	private VkbWindow[] windows = new VkbWindow[4];
+	private AcquiredImage[] images = new AcquiredImage[4];
+	private SwapchainManager[] managers = new SwapchainManager[4];
+	private int[] results = new int[4];
+	private int size;
+
+	void add(VkbWindow window, AcquiredImage image) {
+		if (size == windows.length) {
+			windows = Arrays.copyOf(windows, 2 * size);
+			images = Arrays.copyOf(images, 2 * size);
+			managers = Arrays.copyOf(managers, 2 * size);
+			results = Arrays.copyOf(results, 2 * size);
+		}
+		windows[size] = window;
+		images[size] = image;
+		managers[size] = window.swapchains;
+		size += 1;
+	}
+
+	int size() {
+		return size;
+	}
+
+	VkbWindow getWindow(int index) {
+		return windows[index];
+	}
+
+	AcquiredImage getImage(int index) {
+		return images[index];
+	}
+
+	/**
+	 * Presents all images in this batch, and clears this batch. When the windows don't share the same present queue,
+	 * or when they need to be presented on the main thread (on Wayland), each image will be presented separately.
+	 */
+	void present() {
+		try {
+			if (size == 0) return;
+			if (size == 1 || !canPresentTogether()) {
+				for (int index = 0; index < size; index++) windows[index].presentSwapchainImage(images[index]);
+				return;
+			}
+
+			windows[0].instance.checkForFatalValidationErrors();
+			SwapchainManager.presentAll(managers, images, size, results);
+			for (int index = 0; index < size; index++) windows[index].onPresented();
+		} finally {
+			clear();
+		}
+	}
+
+	private boolean canPresentTogether() {
+		var queue = windows[0].presentFamily.first();
+		for (int index = 0; index < size; index++) {
+			var window = windows[index];
+			if (window.windowLoop != null && window.windowLoop.onWayland) return false;
+			if (window.presentFamily.first() != queue) return false;
+		}
+		return true;
+	}
+
+	void clear() {
+		Arrays.fill(windows, 0, size, null);
+		Arrays.fill(images, 0, size, null);
+		Arrays.fill(managers, 0, size, null);
+		size = 0;
+	}
+}
@@ -3,52 +3,96 @@ package com.github.knokko.boiler.window;
 import org.lwjgl.system.MemoryStack;
 
 import java.nio.IntBuffer;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
+/**
+ * Tracks the supported, used, and compatible present modes of a window. Since {@link #acquire} and
+ * {@link #present} are called every frame, the used and compatible present modes are stored as bitmasks rather than
+ * sets of boxed integers: bit {@code i} represents the {@code i}th element of {@link #supportedArray}.
+ */
 class PresentModes {
 
 	final Set<Integer> supported;
-	final Set<Integer> compatible = new HashSet<>();
-	final Set<Integer> used = new HashSet<>();
+	private final int[] supportedArray;
+
+	long compatible, used;
 
 	int current = -1;
 
 	PresentModes(Collection<Integer> supported, Collection<Integer> requested) {
 		this.supported = Set.copyOf(supported);
-		this.used.addAll(requested);
-		this.used.retainAll(this.supported);
+		this.supportedArray = this.supported.stream().mapToInt(Integer::intValue).sorted().toArray();
+		if (supportedArray.length > Long.SIZE) {
+			throw new IllegalArgumentException("Too many supported present modes: " + supported);
+		}
+		for (int mode : requested) this.used |= bit(mode);
+	}
+
+	/**
+	 * @return The bit that represents the given present mode, or 0 if the present mode is not supported
+	 */
+	long bit(int mode) {
+		int index = Arrays.binarySearch(supportedArray, mode);
+		return index >= 0 ? 1L << index : 0L;
 	}
 
 	private void checkSupported(int mode) {
-		if (!supported.contains(mode)) {
+		if (bit(mode) == 0L) {
 			throw new IllegalArgumentException(
 					"Unsupported present mode " + mode + ": supported present modes are " + supported
 			);
 		}
 	}
 
+	boolean isUsed(int mode) {
+		return (used & bit(mode)) != 0L;
+	}
+
+	boolean isCompatible(int mode) {
+		return (compatible & bit(mode)) != 0L;
+	}
+
+	int getNumUsed() {
+		return Long.bitCount(used);
+	}
+
+	/**
+	 * Marks the given present mode as compatible with the current swapchain. Unsupported present modes are ignored.
+	 */
+	void addCompatible(int mode) {
+		compatible |= bit(mode);
+	}
+
+	/**
+	 * @return The present modes that are represented by the given bitmask. This method allocates memory, so it
+	 * should only be used for diagnostics and testing.
+	 */
+	Set<Integer> toSet(long mask) {
+		Set<Integer> result = new HashSet<>();
+		for (int index = 0; index < supportedArray.length; index++) {
+			if ((mask & (1L << index)) != 0L) result.add(supportedArray[index]);
+		}
+		return result;
+	}
+
 	IntBuffer createSwapchain(MemoryStack stack, int presentMode, IntBuffer compatiblePresentModes) {
 		checkSupported(presentMode);
-		used.add(presentMode);
+		used |= bit(presentMode);
 		current = presentMode;
 
-		compatible.clear();
-		compatible.add(presentMode);
+		compatible = bit(presentMode);
 		if (compatiblePresentModes != null) {
 			for (int index = compatiblePresentModes.position(); index < compatiblePresentModes.limit(); index++) {
-				int compatiblePresentMode = compatiblePresentModes.get(index);
-				compatible.add(compatiblePresentMode);
+				addCompatible(compatiblePresentModes.get(index));
 			}
 		}
-		compatible.retainAll(used);
+		compatible &= used;
 
 		IntBuffer pPresentModes = null;
 		if (stack != null) {
-			pPresentModes = stack.callocInt(compatible.size());
-			for (int compatiblePresentMode : compatible) {
-				pPresentModes.put(compatiblePresentMode);
+			pPresentModes = stack.callocInt(Long.bitCount(compatible));
+			for (int index = 0; index < supportedArray.length; index++) {
+				if ((compatible & (1L << index)) != 0L) pPresentModes.put(supportedArray[index]);
 			}
 			pPresentModes.flip();
 		}
@@ -58,15 +102,15 @@ class PresentModes {
 
 	boolean acquire(int mode) {
 		checkSupported(mode);
-		used.add(mode);
-		return compatible.contains(mode);
+		used |= bit(mode);
+		return isCompatible(mode);
 	}
 
 	boolean present(int mode) {
 		if (mode != current) {
 			checkSupported(mode);
-			used.add(mode);
-			return compatible.contains(mode);
+			used |= bit(mode);
+			return isCompatible(mode);
 		} else return false;
 	}
 }
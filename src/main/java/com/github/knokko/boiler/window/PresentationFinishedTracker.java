@@ -9,8 +9,8 @@ class PresentationFinishedTracker {
 	private final boolean[] hasAcquired;
 	private final boolean hasSwapchainMaintenance;
 
-	private boolean hasAcquiredAnything;
-	private AwaitableSubmission finished;
+	private boolean hasAcquiredAnything, awaitingPresentFence;
+	private volatile AwaitableSubmission finished;
 
 	PresentationFinishedTracker(int numImages, boolean hasSwapchainMaintenance) {
 		this.hasAcquired = new boolean[numImages];
@@ -28,11 +28,31 @@ class PresentationFinishedTracker {
 	boolean needsPresentFence(int imageIndex, boolean hasOldSwapchains) {
 		hasAcquired[imageIndex] = true;
 		hasAcquiredAnything = true;
-		return hasSwapchainMaintenance && finished == null && hasOldSwapchains;
+		if (!hasSwapchainMaintenance || finished != null || awaitingPresentFence || !hasOldSwapchains) return false;
+		awaitingPresentFence = true;
+		return true;
 	}
 
+	/**
+	 * Should be called after the present fence (requested by <i>needsPresentFence</i>) has been passed to
+	 * <i>vkQueuePresentKHR</i>. The fence submission must not be created any earlier, since it can't be awaited
+	 * before it has actually been submitted.
+	 */
 	void usePresentFence(VkbFence presentFence) {
 		finished = new FenceSubmission(presentFence);
+		awaitingPresentFence = false;
+	}
+
+	/**
+	 * Should be called when the image whose present fence was requested will never be presented, so that the next
+	 * image can request a present fence instead
+	 */
+	void cancelPresentFence() {
+		awaitingPresentFence = false;
+	}
+
+	AwaitableSubmission getFinishedSubmission() {
+		return finished;
 	}
 
 	boolean hasFinishedAtLeastOnePresentation() {
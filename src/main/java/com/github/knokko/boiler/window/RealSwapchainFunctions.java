@@ -4,12 +4,12 @@ import com.github.knokko.boiler.BoilerInstance;
 import com.github.knokko.boiler.images.VkbImage;
 import com.github.knokko.boiler.memory.callbacks.CallbackUserData;
 import com.github.knokko.boiler.queues.VkbQueueFamily;
+import com.github.knokko.boiler.synchronization.AwaitableSubmission;
 import com.github.knokko.boiler.synchronization.VkbFence;
-import org.lwjgl.system.MemoryStack;
+import com.github.knokko.boiler.synchronization.WaitSemaphore;
 import org.lwjgl.vulkan.*;
 
 import java.nio.IntBuffer;
-import java.util.Objects;
 import java.util.Set;
 
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
@@ -18,6 +18,7 @@ import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.vulkan.EXTFragmentDensityMap.VK_IMAGE_USAGE_FRAGMENT_DENSITY_MAP_BIT_EXT;
 import static org.lwjgl.vulkan.KHRFragmentShadingRate.VK_IMAGE_USAGE_FRAGMENT_SHADING_RATE_ATTACHMENT_BIT_KHR;
 import static org.lwjgl.vulkan.KHRGetSurfaceCapabilities2.vkGetPhysicalDeviceSurfaceCapabilities2KHR;
+import static org.lwjgl.vulkan.KHRPresentWait.vkWaitForPresentKHR;
 import static org.lwjgl.vulkan.KHRSurface.*;
 import static org.lwjgl.vulkan.KHRSwapchain.*;
 import static org.lwjgl.vulkan.KHRVideoDecodeQueue.VK_IMAGE_USAGE_VIDEO_DECODE_DPB_BIT_KHR;
@@ -34,6 +35,8 @@ class RealSwapchainFunctions implements SwapchainFunctions {
 	private final VkbQueueFamily presentFamily;
 	private final WindowProperties properties;
 
+	volatile SwapchainMetrics metrics;
+
 	RealSwapchainFunctions(BoilerInstance instance, VkbQueueFamily presentFamily, WindowProperties properties) {
 		this.instance = instance;
 		this.presentFamily = presentFamily;
@@ -45,6 +48,11 @@ class RealSwapchainFunctions implements SwapchainFunctions {
 		instance.deviceWaitIdle("RealSwapchainFunctions");
 	}
 
+	@Override
+	public void awaitSubmission(AwaitableSubmission submission) {
+		submission.awaitCompletion();
+	}
+
 	@Override
 	public void getSurfaceCapabilities(VkSurfaceCapabilitiesKHR capabilities) {
 		assertVkSuccess(vkGetPhysicalDeviceSurfaceCapabilitiesKHR(
@@ -96,13 +104,12 @@ class RealSwapchainFunctions implements SwapchainFunctions {
 			}
 			int minImageCount = max(desiredImageCount, surfaceCapabilities.minImageCount());
 
-			presentModes.compatible.clear();
-			presentModes.compatible.add(presentMode);
+			presentModes.compatible = presentModes.bit(presentMode);
 
 			var ciSwapchain = VkSwapchainCreateInfoKHR.calloc(stack);
 			IntBuffer compatiblePresentModeBuffer = null;
 			if (instance.extra.swapchainMaintenance()) {
-				if (presentModes.used.size() > 1) {
+				if (presentModes.getNumUsed() > 1) {
 					var presentModeCompatibility = VkSurfacePresentModeCompatibilityEXT.calloc(stack);
 					presentModeCompatibility.sType$Default();
 
@@ -237,8 +244,7 @@ class RealSwapchainFunctions implements SwapchainFunctions {
 
 	@Override
 	public int acquireImage(
-			long vkSwapchain, MemoryStack stack, IntBuffer pImageIndex,
-			VkbFence acquireFence, long acquireSemaphore
+			long vkSwapchain, IntBuffer pImageIndex, VkbFence acquireFence, long acquireSemaphore
 	) {
 		long vkFence = acquireFence != null ? acquireFence.getVkFenceAndSubmit() : VK_NULL_HANDLE;
 		return vkAcquireNextImageKHR(
@@ -256,7 +262,8 @@ class RealSwapchainFunctions implements SwapchainFunctions {
 			presentInfo.swapchainCount(1);
 			presentInfo.pSwapchains(stack.longs(image.swapchain.vkSwapchain));
 			presentInfo.pImageIndices(stack.ints(image.index));
-			presentInfo.pResults(stack.callocInt(1));
+			var pResults = stack.callocInt(1);
+			presentInfo.pResults(pResults);
 
 			if (image.beforePresentCallback != null) image.beforePresentCallback.accept(presentInfo);
 
@@ -277,42 +284,166 @@ class RealSwapchainFunctions implements SwapchainFunctions {
 				presentInfo.pNext(attachPresentFence);
 			}
 
-			String debugName = image.swapchain.debugName + "Present" + image.index;
+			if (image.presentId != 0L) {
+				var attachPresentId = VkPresentIdKHR.calloc(stack);
+				attachPresentId.sType$Default();
+				attachPresentId.swapchainCount(1);
+				attachPresentId.pPresentIds(stack.longs(image.presentId));
+
+				presentInfo.pNext(attachPresentId);
+			}
+
 			int presentResult = presentFamily.first().present(presentInfo);
-			assertVkSuccess(presentResult, "QueuePresentKHR", debugName, VK_ERROR_OUT_OF_DATE_KHR, VK_SUBOPTIMAL_KHR);
-			assertVkSuccess(
-					Objects.requireNonNull(presentInfo.pResults()).get(0),
-					"QueuePresentKHR", debugName, VK_ERROR_OUT_OF_DATE_KHR, VK_SUBOPTIMAL_KHR
-			);
+			checkPresentResult(presentResult, image);
+			checkPresentResult(pResults.get(0), image);
 			return presentResult;
 		}
 	}
 
+	@Override
+	public void presentImages(AcquiredImage[] images, int numImages, boolean switchPresentModes, int[] results) {
+		try (var stack = stackPush()) {
+			var pWaitSemaphores = stack.callocLong(numImages);
+			var pSwapchains = stack.callocLong(numImages);
+			var pImageIndices = stack.callocInt(numImages);
+			var pResults = stack.callocInt(numImages);
+			boolean hasPresentFences = false, hasPresentIds = false;
+			for (int index = 0; index < numImages; index++) {
+				var image = images[index];
+				pWaitSemaphores.put(index, image.presentSemaphore);
+				pSwapchains.put(index, image.swapchain.vkSwapchain);
+				pImageIndices.put(index, image.index);
+				if (image.presentFence != null) hasPresentFences = true;
+				if (image.presentId != 0L) hasPresentIds = true;
+			}
+
+			var presentInfo = VkPresentInfoKHR.calloc(stack);
+			presentInfo.sType$Default();
+			presentInfo.pWaitSemaphores(pWaitSemaphores);
+			presentInfo.swapchainCount(numImages);
+			presentInfo.pSwapchains(pSwapchains);
+			presentInfo.pImageIndices(pImageIndices);
+			presentInfo.pResults(pResults);
+
+			for (int index = 0; index < numImages; index++) {
+				var callback = images[index].beforePresentCallback;
+				if (callback != null) callback.accept(presentInfo);
+			}
+
+			if (switchPresentModes) {
+				var pPresentModes = stack.callocInt(numImages);
+				for (int index = 0; index < numImages; index++) pPresentModes.put(index, images[index].presentMode);
+
+				var changePresentModes = VkSwapchainPresentModeInfoEXT.calloc(stack);
+				changePresentModes.sType$Default();
+				changePresentModes.pNext(presentInfo.pNext());
+				changePresentModes.pPresentModes(pPresentModes);
+
+				presentInfo.pNext(changePresentModes);
+			}
+
+			if (hasPresentFences) {
+				// Swapchains without present fence get VK_NULL_HANDLE
+				var pFences = stack.callocLong(numImages);
+				for (int index = 0; index < numImages; index++) {
+					var presentFence = images[index].presentFence;
+					if (presentFence != null) pFences.put(index, presentFence.getVkFenceAndSubmit());
+				}
+
+				var attachPresentFences = VkSwapchainPresentFenceInfoKHR.calloc(stack);
+				attachPresentFences.sType$Default();
+				attachPresentFences.pNext(presentInfo.pNext());
+				attachPresentFences.swapchainCount(numImages);
+				attachPresentFences.pFences(pFences);
+
+				presentInfo.pNext(attachPresentFences);
+			}
+
+			if (hasPresentIds) {
+				// Swapchains without present ID get 0
+				var pPresentIds = stack.callocLong(numImages);
+				for (int index = 0; index < numImages; index++) pPresentIds.put(index, images[index].presentId);
+
+				var attachPresentIds = VkPresentIdKHR.calloc(stack);
+				attachPresentIds.sType$Default();
+				attachPresentIds.pNext(presentInfo.pNext());
+				attachPresentIds.swapchainCount(numImages);
+				attachPresentIds.pPresentIds(pPresentIds);
+
+				presentInfo.pNext(attachPresentIds);
+			}
+
+			checkPresentResult(presentFamily.first().present(presentInfo), images[0]);
+			for (int index = 0; index < numImages; index++) {
+				results[index] = pResults.get(index);
+				checkPresentResult(results[index], images[index]);
+			}
+		}
+	}
+
+	private static void checkPresentResult(int result, AcquiredImage image) {
+		// Only build the context string when something went wrong, since this is called every frame
+		if (result != VK_SUCCESS && result != VK_ERROR_OUT_OF_DATE_KHR && result != VK_SUBOPTIMAL_KHR) {
+			assertVkSuccess(result, "QueuePresentKHR", image.swapchain.debugName + "Present" + image.index);
+		}
+	}
+
 	@Override
 	public boolean hasSwapchainMaintenance() {
 		return instance.extra.swapchainMaintenance();
 	}
 
+	@Override
+	public boolean hasPresentWait() {
+		return instance.extra.presentWait();
+	}
+
+	@Override
+	public int waitForPresent(long vkSwapchain, long presentId, long timeout) {
+		int result = vkWaitForPresentKHR(instance.vkDevice(), vkSwapchain, presentId, timeout);
+		assertVkSuccess(
+				result, "WaitForPresentKHR", properties.title(),
+				VK_SUCCESS, VK_TIMEOUT, VK_SUBOPTIMAL_KHR, VK_ERROR_OUT_OF_DATE_KHR
+		);
+		return result;
+	}
+
 	@Override
 	public VkbFence borrowFence(boolean startSignaled, String debugName) {
+		var metrics = this.metrics;
+		if (metrics != null) metrics.borrowedFences.increment();
 		return instance.sync.fenceBank.borrowFence(startSignaled, debugName);
 	}
 
 	@Override
 	public void returnFence(VkbFence fence) {
+		var metrics = this.metrics;
+		if (metrics != null) metrics.returnedFences.increment();
 		instance.sync.fenceBank.returnFence(fence);
 	}
 
 	@Override
 	public long borrowSemaphore(String debugName) {
+		var metrics = this.metrics;
+		if (metrics != null) metrics.borrowedSemaphores.increment();
 		return instance.sync.semaphoreBank.borrowSemaphore(debugName);
 	}
 
 	@Override
 	public void returnSemaphore(long vkSemaphore) {
+		var metrics = this.metrics;
+		if (metrics != null) metrics.returnedSemaphores.increment();
 		instance.sync.semaphoreBank.returnSemaphores(vkSemaphore);
 	}
 
+	@Override
+	public void unsignalSemaphore(long vkSemaphore) {
+		presentFamily.first().submit(
+				null, "UnsignalPresentSemaphore",
+				new WaitSemaphore[] { new WaitSemaphore(vkSemaphore, VK_PIPELINE_STAGE_ALL_COMMANDS_BIT) }, null
+		);
+	}
+
 	@Override
 	public void destroySwapchain(long vkSwapchain, VkbImage[] images) {
 		try (var stack = stackPush()) {
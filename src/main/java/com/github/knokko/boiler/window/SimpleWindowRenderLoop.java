@@ -9,6 +9,8 @@ import com.github.knokko.boiler.synchronization.WaitSemaphore;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.VkCommandBuffer;
 
+import java.util.Arrays;
+
 import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.vulkan.VK10.*;
@@ -22,6 +24,7 @@ public abstract class SimpleWindowRenderLoop extends WindowRenderLoop {
 	private long[] commandPools;
 	private VkCommandBuffer[] commandBuffers;
 	private VkbFence[] commandFences;
+	private long[] pacedFrames;
 	private final ResourceUsage firstUsage, lastUsage;
 
 	/**
@@ -54,6 +57,24 @@ public abstract class SimpleWindowRenderLoop extends WindowRenderLoop {
 		commandFences = instance.sync.fenceBank.borrowFences(
 				numFramesInFlight, true, getClass().getSimpleName() + "CommandFence"
 		);
+		pacedFrames = new long[numFramesInFlight];
+		Arrays.fill(pacedFrames, -1L);
+	}
+
+	private void reportCompletedFrames() {
+		for (int index = 0; index < numFramesInFlight; index++) {
+			if (pacedFrames[index] != -1L && commandFences[index].isSignaled()) {
+				framePacer.gpuCompleted(pacedFrames[index]);
+				pacedFrames[index] = -1L;
+			}
+		}
+	}
+
+	private void awaitFence(int frameIndex) {
+		framePacer.beginWait();
+		commandFences[frameIndex].waitIfSubmitted();
+		framePacer.endWait();
+		reportCompletedFrames();
 	}
 
 	@Override
@@ -61,6 +82,16 @@ public abstract class SimpleWindowRenderLoop extends WindowRenderLoop {
 			MemoryStack stack, int frameIndex, AcquiredImage acquiredImage, BoilerInstance instance
 	) {
 		var fence = commandFences[frameIndex];
+		if (framePacer != null) {
+			reportCompletedFrames();
+
+			// Limit the number of frames in flight by waiting on the fence of an older frame
+			int framesInFlight = framePacer.framesInFlight(numFramesInFlight);
+			if (framesInFlight < numFramesInFlight) {
+				awaitFence((frameIndex + numFramesInFlight - framesInFlight) % numFramesInFlight);
+			}
+			awaitFence(frameIndex);
+		}
 		fence.waitAndReset();
 
 		assertVkSuccess(vkResetCommandPool(
@@ -85,6 +116,7 @@ public abstract class SimpleWindowRenderLoop extends WindowRenderLoop {
 		instance.queueFamilies().graphics().first().submit(
 				commandBuffer, "Fill", waitSemaphores, fence, acquiredImage.presentSemaphore
 		);
+		if (framePacer != null) pacedFrames[frameIndex] = framePacer.getCurrentFrame();
 	}
 
 	/**
@@ -1,5 +1,6 @@
 package com.github.knokko.boiler.window;
 
+import org.lwjgl.vulkan.VkExtent2D;
 import org.lwjgl.vulkan.VkSurfaceCapabilitiesKHR;
 
 class SizeTracker {
@@ -8,7 +9,12 @@ class SizeTracker {
 	private final VkSurfaceCapabilitiesKHR capabilities;
 	private int windowWidth, windowHeight;
 
-	private volatile WindowSize windowSizeFromMainThread;
+	/**
+	 * The window size that was last reported by the main thread, packed as {@code (width << 32) | height}, or -1 if
+	 * the main thread didn't report anything yet. Packing the size into a <i>long</i> avoids allocating an object
+	 * whenever the size is reported.
+	 */
+	private volatile long windowSizeFromMainThread = -1L;
 	private long nextSurfaceCapabilitiesQuery = Long.MIN_VALUE;
 
 	SizeTracker(SwapchainFunctions functions, VkSurfaceCapabilitiesKHR capabilities) {
@@ -35,26 +41,29 @@ class SizeTracker {
 			nextSurfaceCapabilitiesQuery = currentTime + 5_000_000L;
 		}
 
-		int newWidth = capabilities.currentExtent().width();
-		int newHeight = capabilities.currentExtent().height();
+		long currentExtent = capabilities.address() + VkSurfaceCapabilitiesKHR.CURRENTEXTENT;
+		int newWidth = VkExtent2D.nwidth(currentExtent);
+		int newHeight = VkExtent2D.nheight(currentExtent);
 		if (newWidth != -1 && newHeight != -1) {
 			windowWidth = newWidth;
 			windowHeight = newHeight;
 		}
 
-		var mainSize = windowSizeFromMainThread;
-		if (mainSize != null) {
-			if (mainSize.width() == 0 || mainSize.height() == 0) {
+		long mainSize = windowSizeFromMainThread;
+		if (mainSize != -1L) {
+			int mainWidth = (int) (mainSize >>> 32);
+			int mainHeight = (int) mainSize;
+			if (mainWidth == 0 || mainHeight == 0) {
 				windowWidth = 0;
 				windowHeight = 0;
 			} else if (newWidth == -1 || newHeight == -1) {
-				windowWidth = mainSize.width();
-				windowHeight = mainSize.height();
+				windowWidth = mainWidth;
+				windowHeight = mainHeight;
 			}
 		}
 	}
 
 	void setWindowSizeFromMainThread(int width, int height) {
-		windowSizeFromMainThread = new WindowSize(width, height);
+		windowSizeFromMainThread = ((long) width << 32) | (height & 0xFFFFFFFFL);
 	}
 }
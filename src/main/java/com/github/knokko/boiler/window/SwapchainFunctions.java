@@ -1,8 +1,8 @@
 package com.github.knokko.boiler.window;
 
 import com.github.knokko.boiler.images.VkbImage;
+import com.github.knokko.boiler.synchronization.AwaitableSubmission;
 import com.github.knokko.boiler.synchronization.VkbFence;
-import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.VkSurfaceCapabilitiesKHR;
 
 import java.nio.IntBuffer;
@@ -12,6 +12,8 @@ interface SwapchainFunctions {
 
 	void deviceWaitIdle();
 
+	void awaitSubmission(AwaitableSubmission submission);
+
 	void getSurfaceCapabilities(VkSurfaceCapabilitiesKHR capabilities);
 
 	SwapchainWrapper createSwapchain(
@@ -23,14 +25,29 @@ interface SwapchainFunctions {
 	VkbImage[] getSwapchainImages(long vkSwapchain, int width, int height, int imageUsage, String debugName);
 
 	int acquireImage(
-			long vkSwapchain, MemoryStack stack, IntBuffer pImageIndex,
-			VkbFence acquireFence, long acquireSemaphore
+			long vkSwapchain, IntBuffer pImageIndex, VkbFence acquireFence, long acquireSemaphore
 	);
 
 	int presentImage(AcquiredImage image, boolean switchPresentMode);
 
+	/**
+	 * Presents the given images, which must belong to different swapchains, using a single
+	 * <i>vkQueuePresentKHR</i> call. The result for each swapchain will be stored in {@code results}.
+	 */
+	void presentImages(AcquiredImage[] images, int numImages, boolean switchPresentModes, int[] results);
+
 	boolean hasSwapchainMaintenance();
 
+	/**
+	 * @return True if and only if the <i>VK_KHR_present_id</i> and <i>VK_KHR_present_wait</i> features are enabled
+	 */
+	boolean hasPresentWait();
+
+	/**
+	 * Calls <i>vkWaitForPresentKHR</i>, and returns its result
+	 */
+	int waitForPresent(long vkSwapchain, long presentId, long timeout);
+
 	VkbFence borrowFence(boolean startSignaled, String debugName);
 
 	void returnFence(VkbFence fence);
@@ -39,5 +56,10 @@ interface SwapchainFunctions {
 
 	void returnSemaphore(long vkSemaphore);
 
+	/**
+	 * Submits a batch that only waits on the given (signalled) binary semaphore, so that it can be signalled again
+	 */
+	void unsignalSemaphore(long vkSemaphore);
+
 	void destroySwapchain(long vkSwapchain, VkbImage[] images);
 }
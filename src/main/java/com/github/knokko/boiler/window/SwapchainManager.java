@@ -21,6 +21,18 @@ class SwapchainManager {
 
 	private SwapchainWrapper currentSwapchain;
 	private int currentSwapchainID;
+	private long lastRecreationTime;
+	private int preparedWidth, preparedHeight;
+	private volatile long lastPresentId;
+
+	volatile SwapchainMetrics metrics;
+
+	/**
+	 * When not null, this will be run at the start of each swapchain recreation, on the acquiring thread. The window
+	 * uses this to ensure that no images that were queued for presentation target a swapchain that is about to be
+	 * destroyed.
+	 */
+	Runnable beforeRecreation;
 
 	SwapchainManager(SwapchainFunctions functions, WindowProperties properties, PresentModes presentModes) {
 		this.functions = functions;
@@ -34,6 +46,7 @@ class SwapchainManager {
 	}
 
 	AcquiredImage acquire(int presentMode, boolean useFence) {
+		var metrics = this.metrics;
 		if (currentSwapchain != null && !oldSwapchains.isEmpty() && currentSwapchain.canDestroyOldSwapchains()) {
 			for (SwapchainWrapper old : oldSwapchains) old.destroy();
 			oldSwapchains.clear();
@@ -41,31 +54,176 @@ class SwapchainManager {
 
 		sizeTracker.update();
 
-		if (!presentModes.acquire(presentMode)) recreateSwapchain(presentMode);
+		if (!presentModes.acquire(presentMode)) recreateSwapchain(presentMode, metrics);
 
-		if (currentSwapchain == null) recreateSwapchain(presentMode);
+		if (currentSwapchain == null) recreateSwapchain(presentMode, metrics);
 		if (currentSwapchain == null) return null;
 		currentSwapchain.updateWindowSize(sizeTracker.getWindowWidth(), sizeTracker.getWindowHeight());
-		if (currentSwapchain.isOutdated()) recreateSwapchain(presentMode);
+		if (currentSwapchain.isOutdated()) {
+			if (currentSwapchain.isOutOfDate() || hasCoalescedResizes()) {
+				recreateSwapchain(presentMode, metrics);
+			} else prepareAssociations();
+		}
 		if (currentSwapchain == null) return null;
 
-		var acquiredImage = currentSwapchain.acquireImage(
-				presentMode, useFence, !oldSwapchains.isEmpty()
-		);
-		if (acquiredImage == null && currentSwapchain.isOutdated()) {
-			recreateSwapchain(presentMode);
+		if (metrics != null) metrics.oldSwapchains.record(oldSwapchains.size());
+		var acquiredImage = acquireImage(presentMode, useFence, metrics);
+		if (acquiredImage == null && currentSwapchain.isOutOfDate()) {
+			recreateSwapchain(presentMode, metrics);
 			if (currentSwapchain == null) return null;
-			acquiredImage = currentSwapchain.acquireImage(
-					presentMode, useFence, !oldSwapchains.isEmpty()
-			);
+			acquiredImage = acquireImage(presentMode, useFence, metrics);
 		}
 
 		return acquiredImage;
 	}
 
+	/**
+	 * @return The number of images that can be acquired, without being presented yet, before the next acquire could
+	 * block indefinitely. When the current swapchain has {@code N} images, and the surface needs {@code M} images,
+	 * this will be {@code N - M}.
+	 */
+	int getAcquireCapacity() {
+		if (currentSwapchain == null) return 0;
+		return Math.max(0, currentSwapchain.getNumImages() - surfaceCapabilities.minImageCount());
+	}
+
+	private boolean hasCoalescedResizes() {
+		long coalescingTime = properties.resizeCoalescingTime();
+		return coalescingTime == 0L || System.nanoTime() - lastRecreationTime >= coalescingTime;
+	}
+
+	/**
+	 * Gives the swapchain resource managers the chance to build their resources for the new window size in the
+	 * background, while the recreation of the swapchain is postponed to coalesce resizes
+	 */
+	private void prepareAssociations() {
+		int width = sizeTracker.getWindowWidth();
+		int height = sizeTracker.getWindowHeight();
+		if (width == preparedWidth && height == preparedHeight) return;
+		preparedWidth = width;
+		preparedHeight = height;
+		for (var association : associations) association.prepare(width, height, currentSwapchain.getNumImages());
+	}
+
+	private AcquiredImage acquireImage(int presentMode, boolean useFence, SwapchainMetrics metrics) {
+		if (metrics == null) return currentSwapchain.acquireImage(presentMode, useFence, !oldSwapchains.isEmpty());
+
+		long startTime = System.nanoTime();
+		var acquiredImage = currentSwapchain.acquireImage(presentMode, useFence, !oldSwapchains.isEmpty());
+		metrics.acquireTime.record(System.nanoTime() - startTime);
+		return acquiredImage;
+	}
+
+	void present(AcquiredImage image) {
+		assignPresentId(image);
+		var metrics = this.metrics;
+		if (metrics == null) {
+			image.swapchain.presentImage(image);
+		} else {
+			long startTime = System.nanoTime();
+			image.swapchain.presentImage(image);
+			metrics.presentTime.record(System.nanoTime() - startTime);
+		}
+		if (image.presentId != 0L) lastPresentId = image.presentId;
+	}
+
+	/**
+	 * Tags the given image with the next present ID, when <i>VK_KHR_present_wait</i> is enabled. The present IDs
+	 * of a window are consecutive, and keep increasing when the swapchain is recreated.
+	 */
+	private void assignPresentId(AcquiredImage image) {
+		if (!functions.hasPresentWait()) return;
+		image.presentId = lastPresentId + 1L;
+		if (image.swapchain.firstPresentId == 0L) image.swapchain.firstPresentId = image.presentId;
+	}
+
+	/**
+	 * @return The present ID of the most recent presentation, or 0 if nothing has been presented with a present ID
+	 */
+	long getLastPresentId() {
+		return lastPresentId;
+	}
+
+	/**
+	 * Waits until the presentation with the given present ID has been displayed, or until the timeout expires. This
+	 * must be called on the thread that acquires the swapchain images, since it must not race with swapchain
+	 * recreations.
+	 * @return False if the timeout expired, true otherwise. Presentations to older swapchains, and presentations
+	 * that will never be displayed because the swapchain is out of date, are considered to be displayed.
+	 */
+	boolean waitForPresent(long presentId, long timeout) {
+		if (presentId <= 0L || presentId > lastPresentId) {
+			throw new IllegalArgumentException("Invalid present ID " + presentId + ": last present ID is " + lastPresentId);
+		}
+		var swapchain = currentSwapchain;
+		if (swapchain == null) return true;
+
+		long firstPresentId = swapchain.firstPresentId;
+		if (firstPresentId == 0L || presentId < firstPresentId) return true;
+
+		return functions.waitForPresent(swapchain.vkSwapchain, presentId, timeout) != VK_TIMEOUT;
+	}
+
+	/**
+	 * Presents the images of multiple windows using a single <i>vkQueuePresentKHR</i> call
+	 * @param managers The swapchain managers of the windows, which must share the same present queue
+	 * @param images The acquired images: {@code images[i]} must have been acquired from {@code managers[i]}
+	 * @param numImages The number of images to present, which must be at most the length of the arrays
+	 * @param results The array in which the present result of each swapchain will be stored
+	 */
+	static void presentAll(SwapchainManager[] managers, AcquiredImage[] images, int numImages, int[] results) {
+		boolean switchPresentModes = false;
+		for (int index = 0; index < numImages; index++) {
+			if (images[index].swapchain.shouldSwitchPresentMode(images[index])) switchPresentModes = true;
+			managers[index].assignPresentId(images[index]);
+		}
+
+		long startTime = System.nanoTime();
+		managers[0].functions.presentImages(images, numImages, switchPresentModes, results);
+		long presentTime = System.nanoTime() - startTime;
+
+		for (int index = 0; index < numImages; index++) {
+			images[index].swapchain.onPresented(images[index], results[index]);
+			if (images[index].presentId != 0L) managers[index].lastPresentId = images[index].presentId;
+			var metrics = managers[index].metrics;
+			if (metrics != null) metrics.presentTime.record(presentTime);
+		}
+	}
+
+	private void recreateSwapchain(int presentMode, SwapchainMetrics metrics) {
+		if (metrics == null) {
+			recreateSwapchain(presentMode);
+			return;
+		}
+
+		long startTime = System.nanoTime();
+		recreateSwapchain(presentMode);
+		metrics.recreationTime.record(System.nanoTime() - startTime);
+	}
+
+	private boolean hasTooManyOldSwapchains() {
+		return (currentSwapchain != null || !oldSwapchains.isEmpty()) && oldSwapchains.size() + 1 > properties.maxOldSwapchains();
+	}
+
 	private void recreateSwapchain(int presentMode) {
-		if ((currentSwapchain != null || !oldSwapchains.isEmpty()) && oldSwapchains.size() + 1 > properties.maxOldSwapchains()) {
-			functions.deviceWaitIdle();
+		if (beforeRecreation != null) beforeRecreation.run();
+
+		if (hasTooManyOldSwapchains() && properties.maxOldSwapchains() > 0 && currentSwapchain != null && !oldSwapchains.isEmpty()) {
+			// When the current swapchain has finished a presentation, all presentations of the old swapchains must
+			// have finished as well, so we can retire them without waiting until the whole device is idle. This
+			// doesn't help when maxOldSwapchains is 0, since the current swapchain will be destroyed right after
+			// the recreation, which requires vkDeviceWaitIdle anyway.
+			var finishedPresentation = currentSwapchain.getFinishedPresentation();
+			if (finishedPresentation != null) {
+				functions.awaitSubmission(finishedPresentation);
+				for (var swapchain : oldSwapchains) swapchain.destroy();
+				oldSwapchains.clear();
+			}
+		}
+
+		// Re-check, since retiring the old swapchains using the fence may have been enough
+		if (hasTooManyOldSwapchains()) {
+			deviceWaitIdle();
 			for (var swapchain : oldSwapchains) swapchain.destroy();
 			oldSwapchains.clear();
 		}
@@ -80,6 +238,9 @@ class SwapchainManager {
 		long oldSwapchain = VK_NULL_HANDLE;
 		if (!oldSwapchains.isEmpty()) oldSwapchain = oldSwapchains.get(oldSwapchains.size() - 1).vkSwapchain;
 		currentSwapchainID += 1;
+		lastRecreationTime = System.nanoTime();
+		preparedWidth = 0;
+		preparedHeight = 0;
 
 		currentSwapchain = functions.createSwapchain(
 				presentModes, presentMode, associations,
@@ -94,6 +255,12 @@ class SwapchainManager {
 		}
 	}
 
+	private void deviceWaitIdle() {
+		var metrics = this.metrics;
+		if (metrics != null) metrics.deviceWaitIdleCount.increment();
+		functions.deviceWaitIdle();
+	}
+
 	void setWindowSizeFromMainThread(int width, int height) {
 		sizeTracker.setWindowSizeFromMainThread(width, height);
 	}
@@ -108,7 +275,7 @@ class SwapchainManager {
 
 	void destroy() {
 		surfaceCapabilities.free();
-		if (currentSwapchain != null || !oldSwapchains.isEmpty()) functions.deviceWaitIdle();
+		if (currentSwapchain != null || !oldSwapchains.isEmpty()) deviceWaitIdle();
 		for (SwapchainWrapper swapchain : oldSwapchains) swapchain.destroy();
 		oldSwapchains.clear();
 		if (currentSwapchain != null) currentSwapchain.destroy();
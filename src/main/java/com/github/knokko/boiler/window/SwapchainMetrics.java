@@ -0,0 +1,174 @@
+package com.github.knokko.boiler.window;
+
+import com.github.knokko.boiler.utilities.ConcurrentHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ *     Timing and resource metrics of the swapchain management of a window. You can attach an instance of this class to
+ *     a window using {@link VkbWindow#setMetrics}. When no metrics are attached (which is the default), the swapchain
+ *     management doesn't measure anything.
+ * </p>
+ *
+ * <p>
+ *     All histograms and counters are lock-free, so they can be read from any thread while the render thread is
+ *     recording. You can either read the public fields directly, or register this object as an MXBean:
+ * </p>
+ * <pre>{@code
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(
+ *     metrics, new ObjectName("com.github.knokko.boiler:type=SwapchainMetrics,name=MyWindow")
+ * );
+ * }</pre>
+ */
+public class SwapchainMetrics implements SwapchainMetricsMXBean {
+
+	/**
+	 * The durations of <i>vkAcquireNextImageKHR</i> calls, in nanoseconds. This is typically the time that the render
+	 * thread spends waiting for the presentation engine.
+	 */
+	public final ConcurrentHistogram acquireTime = new ConcurrentHistogram();
+
+	/**
+	 * The durations of <i>vkQueuePresentKHR</i> calls, in nanoseconds
+	 */
+	public final ConcurrentHistogram presentTime = new ConcurrentHistogram();
+
+	/**
+	 * The durations of swapchain recreations, in nanoseconds. This includes the time needed to destroy old
+	 * swapchains (and the potential <i>vkDeviceWaitIdle</i>), and to create the new swapchain and its images.
+	 */
+	public final ConcurrentHistogram recreationTime = new ConcurrentHistogram();
+
+	/**
+	 * The number of old swapchains that have not been destroyed yet, sampled during each acquire
+	 */
+	public final ConcurrentHistogram oldSwapchains = new ConcurrentHistogram();
+
+	final LongAdder deviceWaitIdleCount = new LongAdder();
+	final LongAdder borrowedFences = new LongAdder();
+	final LongAdder returnedFences = new LongAdder();
+	final LongAdder borrowedSemaphores = new LongAdder();
+	final LongAdder returnedSemaphores = new LongAdder();
+
+	@Override
+	public long getAcquireCount() {
+		return acquireTime.getCount();
+	}
+
+	@Override
+	public double getAcquireMeanNanos() {
+		return acquireTime.getMean();
+	}
+
+	@Override
+	public long getAcquireP99Nanos() {
+		return acquireTime.getValueAtPercentile(99.0);
+	}
+
+	@Override
+	public long getAcquireMaxNanos() {
+		return acquireTime.getMax();
+	}
+
+	@Override
+	public long getPresentCount() {
+		return presentTime.getCount();
+	}
+
+	@Override
+	public double getPresentMeanNanos() {
+		return presentTime.getMean();
+	}
+
+	@Override
+	public long getPresentP99Nanos() {
+		return presentTime.getValueAtPercentile(99.0);
+	}
+
+	@Override
+	public long getPresentMaxNanos() {
+		return presentTime.getMax();
+	}
+
+	@Override
+	public long getRecreationCount() {
+		return recreationTime.getCount();
+	}
+
+	@Override
+	public double getRecreationMeanNanos() {
+		return recreationTime.getMean();
+	}
+
+	@Override
+	public long getRecreationMaxNanos() {
+		return recreationTime.getMax();
+	}
+
+	@Override
+	public double getMeanOldSwapchains() {
+		return oldSwapchains.getMean();
+	}
+
+	@Override
+	public long getMaxOldSwapchains() {
+		return oldSwapchains.getMax();
+	}
+
+	/**
+	 * @return The number of times that the swapchain management called <i>vkDeviceWaitIdle</i>
+	 */
+	@Override
+	public long getDeviceWaitIdleCount() {
+		return deviceWaitIdleCount.sum();
+	}
+
+	/**
+	 * @return The number of fences that the swapchain management borrowed from the fence bank
+	 */
+	@Override
+	public long getBorrowedFences() {
+		return borrowedFences.sum();
+	}
+
+	/**
+	 * @return The number of fences that the swapchain management returned to the fence bank
+	 */
+	@Override
+	public long getReturnedFences() {
+		return returnedFences.sum();
+	}
+
+	/**
+	 * @return The number of semaphores that the swapchain management borrowed from the semaphore bank
+	 */
+	@Override
+	public long getBorrowedSemaphores() {
+		return borrowedSemaphores.sum();
+	}
+
+	/**
+	 * @return The number of semaphores that the swapchain management returned to the semaphore bank
+	 */
+	@Override
+	public long getReturnedSemaphores() {
+		return returnedSemaphores.sum();
+	}
+
+	/**
+	 * Resets all histograms and counters
+	 */
+	@Override
+	public void reset() {
+		acquireTime.reset();
+		presentTime.reset();
+		recreationTime.reset();
+		oldSwapchains.reset();
+		deviceWaitIdleCount.reset();
+		borrowedFences.reset();
+		returnedFences.reset();
+		borrowedSemaphores.reset();
+		returnedSemaphores.reset();
+	}
+}
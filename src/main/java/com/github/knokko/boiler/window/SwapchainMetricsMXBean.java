@@ -0,0 +1,46 @@
+package com.github.knokko.boiler.window;
+
+/**
+ * The management interface of {@link SwapchainMetrics}, which allows the metrics to be inspected using JMX tools like
+ * JConsole or VisualVM. All durations are in nanoseconds.
+ */
+public interface SwapchainMetricsMXBean {
+
+	long getAcquireCount();
+
+	double getAcquireMeanNanos();
+
+	long getAcquireP99Nanos();
+
+	long getAcquireMaxNanos();
+
+	long getPresentCount();
+
+	double getPresentMeanNanos();
+
+	long getPresentP99Nanos();
+
+	long getPresentMaxNanos();
+
+	long getRecreationCount();
+
+	double getRecreationMeanNanos();
+
+	long getRecreationMaxNanos();
+
+	double getMeanOldSwapchains();
+
+	long getMaxOldSwapchains();
+
+	long getDeviceWaitIdleCount();
+
+	long getBorrowedFences();
+
+	long getReturnedFences();
+
+	long getBorrowedSemaphores();
+
+	long getReturnedSemaphores();
+
+	void reset();
+}
@@ -3,11 +3,23 @@ package com.github.knokko.boiler.window;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 
 /**
- * <i>SwapchainResourceManager</i>s can be used to <i>associate</i> (Vulkan) objects with swapchain images, such that
- * they will be created when the swapchain image is first acquired, and destroyed after the swapchain is destroyed.
+ * <p>
+ *     <i>SwapchainResourceManager</i>s can be used to <i>associate</i> (Vulkan) objects with swapchain images, such
+ *     that they will be created when the swapchain image is first acquired, and destroyed after the swapchain is
+ *     destroyed.
+ * </p>
+ *
+ * <p>
+ *     When a <i>helper</i> executor is given, and the window coalesces resizes (see
+ *     <i>WindowBuilder.coalesceResizes</i>), the swapchain resources for the new window size (e.g. depth images) will
+ *     be created on the helper executor while the render thread keeps using the old swapchain. In that case,
+ *     {@link #createSwapchain} must be safe to call from the helper executor.
+ * </p>
  * @param <S> The type of resource to associate with swapchains
  * @param <I> The type of resource to associate with swapchain images
  */
@@ -19,6 +31,26 @@ public abstract class SwapchainResourceManager<S, I> {
 
 	private final Queue<S> recycledSwapchains = new ConcurrentLinkedQueue<>();
 
+	private final Executor helper;
+	private final List<CompletableFuture<S>> discardedPreparations = new ArrayList<>();
+	private PreparedSwapchain<S> prepared;
+
+	/**
+	 * Creates a resource manager that creates all resources on the render thread, during the first acquire of
+	 * each swapchain (image)
+	 */
+	public SwapchainResourceManager() {
+		this(null);
+	}
+
+	/**
+	 * @param helper The executor on which the swapchain resources for a new window size may be created ahead of
+	 *               time, or <b>null</b> to create them on the render thread
+	 */
+	public SwapchainResourceManager(Executor helper) {
+		this.helper = helper;
+	}
+
 	protected S createSwapchain(int width, int height, int numImages) {
 		return null;
 	}
@@ -43,8 +75,19 @@ public abstract class SwapchainResourceManager<S, I> {
 				currentImageResources.add(null);
 			}
 			currentSwapchain = swapchainImage.swapchain;
+			var preparedResource = takePrepared(
+					swapchainImage.getWidth(), swapchainImage.getHeight(), currentImageResources.size()
+			);
 			var oldSwapchainResource = recycledSwapchains.poll();
-			if (oldSwapchainResource == null) {
+			if (preparedResource != null) {
+				currentSwapchainResource = preparedResource;
+
+				// The recycled resources are not needed, since the resource has been prepared ahead of time
+				while (oldSwapchainResource != null) {
+					destroySwapchain(oldSwapchainResource);
+					oldSwapchainResource = recycledSwapchains.poll();
+				}
+			} else if (oldSwapchainResource == null) {
 				currentSwapchainResource = createSwapchain(
 						swapchainImage.getWidth(), swapchainImage.getHeight(), currentImageResources.size()
 				);
@@ -62,6 +105,45 @@ public abstract class SwapchainResourceManager<S, I> {
 		}
 	}
 
+	/**
+	 * Starts creating the swapchain resource for the given size on the helper executor, if this manager has a
+	 * helper executor. This is called by the swapchain manager when it postpones a swapchain recreation.
+	 */
+	void prepare(int width, int height, int numImages) {
+		if (helper == null) return;
+		if (prepared != null && prepared.matches(width, height, numImages)) return;
+
+		discardPrepared();
+		prepared = new PreparedSwapchain<>(
+				width, height, numImages,
+				CompletableFuture.supplyAsync(() -> createSwapchain(width, height, numImages), helper)
+		);
+	}
+
+	private S takePrepared(int width, int height, int numImages) {
+		if (prepared == null) return null;
+		if (!prepared.matches(width, height, numImages)) {
+			discardPrepared();
+			return null;
+		}
+
+		var resource = prepared.resource.join();
+		prepared = null;
+		return resource;
+	}
+
+	private void discardPrepared() {
+		if (prepared == null) return;
+
+		// The resource for the wrong size can still be recycled
+		discardedPreparations.removeIf(CompletableFuture::isDone);
+		discardedPreparations.add(prepared.resource.thenApply(resource -> {
+			if (resource != null) recycledSwapchains.add(resource);
+			return resource;
+		}));
+		prepared = null;
+	}
+
 	public I getImageAssociation(AcquiredImage swapchainImage) {
 		prepareAssociation(swapchainImage);
 
@@ -84,6 +166,16 @@ public abstract class SwapchainResourceManager<S, I> {
 	}
 
 	void destroy() {
+		discardPrepared();
+		for (var preparation : discardedPreparations) preparation.join();
+		discardedPreparations.clear();
 		for (S swapchain : recycledSwapchains) destroySwapchain(swapchain);
 	}
+
+	private record PreparedSwapchain<S>(int width, int height, int numImages, CompletableFuture<S> resource) {
+
+		boolean matches(int width, int height, int numImages) {
+			return this.width == width && this.height == height && this.numImages == numImages;
+		}
+	}
 }
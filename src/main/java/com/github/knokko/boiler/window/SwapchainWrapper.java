@@ -2,13 +2,14 @@ package com.github.knokko.boiler.window;
 
 import com.github.knokko.boiler.exceptions.VulkanFailureException;
 import com.github.knokko.boiler.images.VkbImage;
+import com.github.knokko.boiler.synchronization.AwaitableSubmission;
 import com.github.knokko.boiler.synchronization.FenceSubmission;
 import com.github.knokko.boiler.synchronization.VkbFence;
+import org.lwjgl.BufferUtils;
 
 import java.nio.IntBuffer;
 import java.util.*;
 
-import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.vulkan.KHRSwapchain.VK_ERROR_OUT_OF_DATE_KHR;
 import static org.lwjgl.vulkan.KHRSwapchain.VK_SUBOPTIMAL_KHR;
 import static org.lwjgl.vulkan.VK10.*;
@@ -19,6 +20,9 @@ class SwapchainWrapper {
 	private final SwapchainFunctions functions;
 	private final PresentModes presentModes;
 	private final VkbImage[] swapchainImages;
+	private final AcquiredImage[] acquiredImages;
+	private final IntBuffer pImageIndex = BufferUtils.createIntBuffer(1);
+	private final String acquireFenceName, presentFenceName;
 	private final PresentSemaphores presentSemaphores;
 	private final AcquireSemaphores acquireSemaphores;
 	private final PresentationFinishedTracker finishedPresentation;
@@ -28,7 +32,13 @@ class SwapchainWrapper {
 	final Set<SwapchainResourceManager<?, ?>> associations;
 	private final int width, height;
 
-	private boolean outdated;
+	private boolean outOfDate, suboptimal;
+
+	/**
+	 * The present ID of the first presentation to this swapchain, or 0 if nothing has been presented with a present
+	 * ID yet. This is written by the presenting thread, which is the main thread on Wayland.
+	 */
+	volatile long firstPresentId;
 
 	SwapchainWrapper(
 			long vkSwapchain, SwapchainFunctions functions, WindowProperties properties, PresentModes presentModes,
@@ -44,32 +54,55 @@ class SwapchainWrapper {
 		this.swapchainImages = functions.getSwapchainImages(
 				vkSwapchain, width, height, properties.swapchainImageUsage(), debugName
 		);
+		this.acquiredImages = new AcquiredImage[swapchainImages.length];
 		this.presentSemaphores = new PresentSemaphores(functions, debugName, swapchainImages.length);
 		this.acquireSemaphores = acquireSemaphores;
 		this.finishedPresentation = new PresentationFinishedTracker(
 				swapchainImages.length, properties.usesSwapchainMaintenance()
 		);
 		this.debugName = debugName;
+		this.acquireFenceName = debugName + "Acquire";
+		this.presentFenceName = debugName + "Present";
 	}
 
 	int getNumImages() {
 		return swapchainImages.length;
 	}
 
+	/**
+	 * @return True if this swapchain should be recreated, either because it is out of date, or because it is
+	 * suboptimal (e.g. because the window was resized)
+	 */
 	boolean isOutdated() {
-		return outdated;
+		return outOfDate || suboptimal;
+	}
+
+	/**
+	 * @return True if this swapchain can no longer be used, so it must be recreated immediately
+	 */
+	boolean isOutOfDate() {
+		return outOfDate;
 	}
 
 	boolean canDestroyOldSwapchains() {
 		return finishedPresentation.hasFinishedAtLeastOnePresentation();
 	}
 
+	/**
+	 * @return A submission that will complete after at least 1 presentation of this swapchain has finished, which
+	 * implies that all presentations of older swapchains have finished. This will be <b>null</b> when no such
+	 * submission is available (yet).
+	 */
+	AwaitableSubmission getFinishedPresentation() {
+		return finishedPresentation.getFinishedSubmission();
+	}
+
 	void updateWindowSize(int windowWidth, int windowHeight) {
-		if (windowWidth != this.width || windowHeight != this.height) outdated = true;
+		if (windowWidth != this.width || windowHeight != this.height) suboptimal = true;
 	}
 
 	AcquiredImage acquireImage(int presentMode, boolean useFence, boolean hasOldSwapchains) {
-		if (outdated) return null;
+		if (outOfDate) return null;
 
 		long acquireSemaphore = VK_NULL_HANDLE;
 		VkbFence acquireFence = null;
@@ -77,21 +110,16 @@ class SwapchainWrapper {
 
 		boolean needsAcquireFenceForDestruction = finishedPresentation.needsAcquireFence(hasOldSwapchains);
 		if (useFence || needsAcquireFenceForDestruction) {
-			acquireFence = functions.borrowFence(false, debugName + "Acquire");
+			acquireFence = functions.borrowFence(false, acquireFenceName);
 		}
 
 		if (!useFence) acquireSemaphore = acquireSemaphores.next();
 
-		int imageIndex;
-		int acquireResult;
-		try (var stack = stackPush()) {
-			IntBuffer pImageIndex = stack.callocInt(1);
-			acquireResult = functions.acquireImage(vkSwapchain, stack, pImageIndex, acquireFence, acquireSemaphore);
-			imageIndex = pImageIndex.get(0);
-		}
+		int acquireResult = functions.acquireImage(vkSwapchain, pImageIndex, acquireFence, acquireSemaphore);
+		int imageIndex = pImageIndex.get(0);
 
 		if (acquireResult == VK_SUCCESS || acquireResult == VK_SUBOPTIMAL_KHR) {
-			if (acquireResult == VK_SUBOPTIMAL_KHR) outdated = true;
+			if (acquireResult == VK_SUBOPTIMAL_KHR) suboptimal = true;
 
 			FenceSubmission acquireSubmission = null;
 			if (acquireFence != null) {
@@ -102,16 +130,18 @@ class SwapchainWrapper {
 			if (needsAcquireFenceForDestruction) finishedPresentation.useAcquireFence(imageIndex, acquireSubmission);
 
 			if (finishedPresentation.needsPresentFence(imageIndex, hasOldSwapchains)) {
-				presentFence = functions.borrowFence(false, debugName + "Present");
-				finishedPresentation.usePresentFence(presentFence);
+				presentFence = functions.borrowFence(false, presentFenceName);
 			}
 
-			long presentSemaphore = presentSemaphores.get(imageIndex);
-			return new AcquiredImage(
-					this, imageIndex, swapchainImages[imageIndex], presentMode,
-					acquireSemaphore, acquireSubmission,
-					presentSemaphore, presentFence
-			);
+			var acquiredImage = acquiredImages[imageIndex];
+			if (acquiredImage == null) {
+				acquiredImage = new AcquiredImage(
+						this, imageIndex, swapchainImages[imageIndex], presentSemaphores.get(imageIndex)
+				);
+				acquiredImages[imageIndex] = acquiredImage;
+			}
+			acquiredImage.reset(presentMode, acquireSemaphore, acquireSubmission, presentFence);
+			return acquiredImage;
 		} else if (acquireResult == VK_ERROR_OUT_OF_DATE_KHR || acquireResult == VK_TIMEOUT) {
 			if (acquireFence != null) {
 				acquireFence.forceSignal();
@@ -120,7 +150,7 @@ class SwapchainWrapper {
 			if (acquireSemaphore != VK_NULL_HANDLE) {
 				acquireSemaphores.cancelPrevious();
 			}
-			if (acquireResult == VK_ERROR_OUT_OF_DATE_KHR) outdated = true;
+			if (acquireResult == VK_ERROR_OUT_OF_DATE_KHR) outOfDate = true;
 			return null;
 		} else {
 			throw new VulkanFailureException("AcquireNextImageKHR", acquireResult, "SwapchainWrapper");
@@ -128,9 +158,40 @@ class SwapchainWrapper {
 	}
 
 	void presentImage(AcquiredImage image) {
-		int presentResult = functions.presentImage(image, presentModes.present(image.presentMode));
-		if (presentResult == VK_ERROR_OUT_OF_DATE_KHR || presentResult == VK_SUBOPTIMAL_KHR) outdated = true;
-		if (image.presentFence != null) functions.returnFence(image.presentFence);
+		onPresented(image, functions.presentImage(image, shouldSwitchPresentMode(image)));
+	}
+
+	/**
+	 * @return True if the present mode of this swapchain needs to be switched to the present mode of the given image
+	 * (using <i>VK_EXT_swapchain_maintenance1</i>) when the image is presented
+	 */
+	boolean shouldSwitchPresentMode(AcquiredImage image) {
+		return presentModes.present(image.presentMode);
+	}
+
+	/**
+	 * Processes the result of presenting the given image, which must have been acquired from this swapchain
+	 */
+	void onPresented(AcquiredImage image, int presentResult) {
+		if (presentResult == VK_ERROR_OUT_OF_DATE_KHR) outOfDate = true;
+		if (presentResult == VK_SUBOPTIMAL_KHR) suboptimal = true;
+		if (image.presentFence != null) {
+			finishedPresentation.usePresentFence(image.presentFence);
+			functions.returnFence(image.presentFence);
+		}
+	}
+
+	/**
+	 * Releases the present fence of the given image, and unsignals its present semaphore. The image must have been
+	 * acquired from this swapchain, and rendered, but it will never be presented.
+	 */
+	void discardImage(AcquiredImage image) {
+		functions.unsignalSemaphore(image.presentSemaphore);
+		if (image.presentFence != null) {
+			image.presentFence.forceSignal();
+			finishedPresentation.cancelPresentFence();
+			functions.returnFence(image.presentFence);
+		}
 	}
 
 	void destroy() {
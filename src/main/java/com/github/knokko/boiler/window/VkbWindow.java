@@ -7,6 +7,10 @@ import org.lwjgl.sdl.SDL_Event;
 
 import java.nio.IntBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.github.knokko.boiler.exceptions.SDLFailureException.assertSdlSuccess;
 import static org.lwjgl.glfw.GLFW.*;
@@ -34,13 +38,25 @@ public class VkbWindow {
 	private final ShowCounter showCounter;
 
 	volatile boolean showFromMainThread;
-	volatile AcquiredImage presentFromMainThread;
+
+	/**
+	 * On Wayland, swapchain images must be presented on the main thread. Render threads put their images in this
+	 * queue, which is drained by the window event loop. The render thread can keep acquiring images while the queue
+	 * is being drained, so the swapchain manager is guarded by {@link #swapchainLock}.
+	 */
+	final Queue<AcquiredImage> presentRequests = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingPresents = new AtomicInteger();
+	private final ReentrantLock swapchainLock = new ReentrantLock();
+	private volatile Thread presentWaiter;
+	private volatile Throwable presentFailure;
 
 	private boolean hasBeenDestroyed;
 
 	WindowEventLoop windowLoop;
 
-	private SwapchainManager swapchains;
+	private RealSwapchainFunctions swapchainFunctions;
+	SwapchainManager swapchains;
+	private volatile boolean occluded;
 
 	/**
 	 * This constructor is meant for internal use only. You should use <i>BoilerBuilder.addWindow</i> or
@@ -62,11 +78,30 @@ public class VkbWindow {
 	public void setInstance(BoilerInstance instance) {
 		if (swapchains != null) throw new IllegalStateException();
 
-		SwapchainFunctions functions = new RealSwapchainFunctions(instance, presentFamily, properties);
-		this.swapchains = new SwapchainManager(functions, properties, presentModes);
+		this.swapchainFunctions = new RealSwapchainFunctions(instance, presentFamily, properties);
+		this.swapchains = new SwapchainManager(swapchainFunctions, properties, presentModes);
+		this.swapchains.beforeRecreation = this::awaitPresentsBeforeRecreation;
 		this.instance = instance;
 	}
 
+	/**
+	 * Attaches swapchain metrics to this window, or detaches them. This method can be called at any time, from any
+	 * thread. When no metrics are attached (which is the default), the swapchain management doesn't measure
+	 * anything. See docs/swapchain.md for more information.
+	 * @param metrics The metrics to which the measurements should be recorded, or <i>null</i> to stop measuring
+	 */
+	public void setMetrics(SwapchainMetrics metrics) {
+		swapchainFunctions.metrics = metrics;
+		swapchains.metrics = metrics;
+	}
+
+	/**
+	 * @return The metrics that were attached using {@link #setMetrics}, or <i>null</i> if there are none
+	 */
+	public SwapchainMetrics getMetrics() {
+		return swapchains.metrics;
+	}
+
 	/**
 	 * An immutable set of all supported <i>VkPresentModeKHR</i>s of the <i>VkSurfaceKHR</i> of this window.
 	 */
@@ -115,7 +150,29 @@ public class VkbWindow {
 
 	private AcquiredImage acquireSwapchainImage(int presentMode, boolean useAcquireFence) {
 		instance.checkForFatalValidationErrors();
-		return swapchains.acquire(presentMode, useAcquireFence);
+
+		// Images that are queued for presentation count as acquired images, so acquiring too many could block forever
+		awaitPendingPresents(swapchains.getAcquireCapacity());
+		swapchainLock.lock();
+		try {
+			return swapchains.acquire(presentMode, useAcquireFence);
+		} finally {
+			swapchainLock.unlock();
+		}
+	}
+
+	/**
+	 * Swapchain recreations may destroy old swapchains, so all queued images must be presented before the recreation
+	 * starts. The main thread needs the swapchain lock to present them.
+	 */
+	private void awaitPresentsBeforeRecreation() {
+		if (pendingPresents.get() == 0) return;
+		swapchainLock.unlock();
+		try {
+			awaitPendingPresents(0);
+		} finally {
+			swapchainLock.lock();
+		}
 	}
 
 	void showWindowNow() {
@@ -145,7 +202,11 @@ public class VkbWindow {
 			IntBuffer pWidth = stack.callocInt(1);
 			IntBuffer pHeight = stack.callocInt(1);
 			if (instance.useSDL) {
-				if ((SDL_GetWindowFlags(properties.handle()) & SDL_WINDOW_MINIMIZED) == 0) {
+				long flags = SDL_GetWindowFlags(properties.handle());
+
+				// Hidden windows may also be reported as occluded, but they need to render their first frames
+				occluded = (flags & (SDL_WINDOW_OCCLUDED | SDL_WINDOW_HIDDEN)) == SDL_WINDOW_OCCLUDED;
+				if ((flags & SDL_WINDOW_MINIMIZED) == 0) {
 					assertSdlSuccess(SDL_GetWindowSizeInPixels(
 							properties.handle(), pWidth, pHeight
 					), "GetWindowSizeInPixels");
@@ -162,7 +223,11 @@ public class VkbWindow {
 	void presentSwapchainImageNow(AcquiredImage image) {
 		if (windowLoop != null && windowLoop.onWayland) assertMainThread();
 		instance.checkForFatalValidationErrors();
-		image.swapchain.presentImage(image);
+		swapchains.present(image);
+		onPresented();
+	}
+
+	void onPresented() {
 		if (showCounter.shouldShowNow()) {
 			if (windowLoop == null) showWindowNow();
 			else showFromMainThread = true;
@@ -170,21 +235,120 @@ public class VkbWindow {
 	}
 
 	/**
-	 * Presents a previously acquired swapchain image
-	 * @param image The swapchain image
+	 * @return True if and only if the <i>VK_KHR_present_id</i> and <i>VK_KHR_present_wait</i> features are enabled
+	 * (see <i>BoilerBuilder.enablePresentWait</i>). When this returns false, {@link #getLastPresentId()} will always
+	 * return 0, and you should not call {@link #waitForPresent}.
 	 */
-	public void presentSwapchainImage(AcquiredImage image) {
-		instance.checkForFatalValidationErrors();
-		if (windowLoop != null && windowLoop.onWayland) {
-			this.presentFromMainThread = image;
-			while (this.presentFromMainThread != null) {
-				Thread.yield();
+	public boolean supportsPresentWait() {
+		return swapchainFunctions.hasPresentWait();
+	}
+
+	/**
+	 * When present wait is supported, each presentation of this window is tagged with a present ID. The first
+	 * presentation gets ID 1, and each subsequent presentation gets an ID that is 1 larger than the previous one (also
+	 * when the swapchain is recreated).
+	 * @return The present ID of the most recent presentation, or 0 if nothing has been presented yet, or present wait
+	 * is not supported
+	 */
+	public long getLastPresentId() {
+		return swapchains.getLastPresentId();
+	}
+
+	/**
+	 * Waits until the presentation with the given present ID has been displayed (using <i>vkWaitForPresentKHR</i>).
+	 * This can be used to wait until frame {@code N - k} has been displayed before starting frame {@code N}. Use
+	 * a timeout of 0 to check whether it has been displayed, without blocking.<br>
+	 *
+	 * This method must only be called on the thread that acquires the swapchain images of this window, and only when
+	 * {@link #supportsPresentWait()} returns true.
+	 * @param presentId The present ID, which must be positive and at most {@link #getLastPresentId()}
+	 * @param timeout The timeout, in nanoseconds
+	 * @return False if the timeout expired before the presentation was displayed, true otherwise. Presentations to
+	 * swapchains that have been replaced, or that became out of date, are considered to be displayed.
+	 */
+	public boolean waitForPresent(long presentId, long timeout) {
+		if (pendingPresents.get() > 0) awaitPendingPresents(0);
+		return swapchains.waitForPresent(presentId, timeout);
+	}
+
+	/**
+	 * @return True if the window is known to be completely covered by other windows, in which case there is
+	 * typically no point in rendering it. This is only reported by SDL: GLFW windows are never considered occluded.
+	 */
+	public boolean isOccluded() {
+		return occluded;
+	}
+
+	/**
+	 * Presents the images in {@link #presentRequests}, and wakes up the render thread that is waiting for them. This
+	 * method must be called on the main thread. After a presentation failed, the remaining images will be discarded
+	 * rather than presented: their present semaphores and present fences will be recycled.
+	 */
+	void presentQueuedImages() {
+		AcquiredImage image;
+		while ((image = presentRequests.poll()) != null) {
+			swapchainLock.lock();
+			try {
+				if (presentFailure == null) presentSwapchainImageNow(image);
+				else image.swapchain.discardImage(image);
+			} catch (Throwable failure) {
+				if (presentFailure == null) presentFailure = failure;
+				else presentFailure.addSuppressed(failure);
+			} finally {
+				swapchainLock.unlock();
+			}
+			pendingPresents.decrementAndGet();
+
+			Thread waiter = presentWaiter;
+			if (waiter != null) LockSupport.unpark(waiter);
+		}
+	}
+
+	private void checkPresentFailure() {
+		Throwable failure = presentFailure;
+		if (failure != null) throw new IllegalStateException("Failed to present on the main thread", failure);
+	}
+
+	/**
+	 * Parks the current thread until at most {@code maxPendingPresents} images in {@link #presentRequests} are still
+	 * waiting to be presented by the main thread
+	 */
+	private void awaitPendingPresents(int maxPendingPresents) {
+		if (pendingPresents.get() <= maxPendingPresents) {
+			checkPresentFailure();
+			return;
+		}
+
+		presentWaiter = Thread.currentThread();
+		try {
+			while (pendingPresents.get() > maxPendingPresents) {
+				// The timeout is just a safety net: presentQueuedImages will unpark this thread
+				LockSupport.parkNanos(this, 10_000_000L);
 				instance.checkForFatalValidationErrors();
 				Thread eventLoopThread = windowLoop.thread;
 				if (eventLoopThread != null && !eventLoopThread.isAlive()) {
 					throw new IllegalStateException("Stopping window render thread because the event thread stopped");
 				}
 			}
+		} finally {
+			presentWaiter = null;
+		}
+		checkPresentFailure();
+	}
+
+	/**
+	 * Presents a previously acquired swapchain image. On Wayland, the image will be presented on the main thread by
+	 * the window event loop (if any): this method will return immediately, and the next acquire will only wait when
+	 * so many images are queued that acquiring another image could block forever.
+	 * @param image The swapchain image
+	 */
+	public void presentSwapchainImage(AcquiredImage image) {
+		instance.checkForFatalValidationErrors();
+		if (windowLoop != null && windowLoop.onWayland) {
+			checkPresentFailure();
+			pendingPresents.incrementAndGet();
+			presentRequests.add(image);
+			windowLoop.wakeUp();
 		} else presentSwapchainImageNow(image);
 	}
 
@@ -219,6 +383,7 @@ public class VkbWindow {
 		if (hasBeenDestroyed) return;
 
 		try (var stack = stackPush()) {
+			if (pendingPresents.get() > 0) awaitPendingPresents(0);
 			swapchains.destroy();
 			vkDestroySurfaceKHR(instance.vkInstance(), properties.vkSurface(), CallbackUserData.SURFACE.put(stack, instance));
 		} finally {
@@ -3,6 +3,7 @@ package com.github.knokko.boiler.window;
 import org.lwjgl.sdl.SDL_Event;
 
 import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.sdl.SDLEvents.*;
@@ -21,7 +22,7 @@ public class WindowEventLoop {
 
 	volatile Thread thread;
 	volatile boolean onWayland;
-	private boolean useSDL;
+	private volatile boolean useSDL;
 
 	/**
 	 * @param waitTimeout The timeout (in seconds) that will be passed to each call to <i>glfwWaitEventsTimeout</i> or
@@ -56,7 +57,7 @@ public class WindowEventLoop {
 				state.initialized = true;
 			}
 
-			if (state.renderLoop.thread != null && !state.renderLoop.thread.isAlive()) {
+			if (state.hasStopped.getAsBoolean()) {
 				window.destroyHandle();
 				iterator.remove();
 			}
@@ -66,28 +67,60 @@ public class WindowEventLoop {
 				window.showFromMainThread = false;
 			}
 
-			AcquiredImage imageToPresent = window.presentFromMainThread;
-			if (imageToPresent != null) {
-				window.presentSwapchainImageNow(imageToPresent);
-				window.presentFromMainThread = null;
-			}
+			window.presentQueuedImages();
 		}
 	}
 
+	/**
+	 * Causes the current (or next) call to <i>glfwWaitEvents(Timeout)</i> or <i>SDL_WaitEvent(Timeout)</i> to return
+	 * early. This is used by render threads to hand their swapchain images over to the main thread on Wayland. This
+	 * method can be called from any thread.
+	 */
+	void wakeUp() {
+		if (useSDL) {
+			try (var stack = stackPush()) {
+				var event = SDL_Event.calloc(stack);
+				event.type(SDL_EVENT_USER);
+				SDL_PushEvent(event);
+			}
+		} else glfwPostEmptyEvent();
+	}
+
 	/**
 	 * Adds the given window (render loop) to the event loop. After this method returns, this event loop will
 	 * handle swapchain recreations for the given window. This method can be called from any thread.
 	 */
 	public void addWindow(WindowRenderLoop renderLoop) {
-		useSDL = renderLoop.window.instance.useSDL;
+		registerWindow(renderLoop.window, () -> {
+			Thread renderThread = renderLoop.thread;
+			return renderThread != null && !renderThread.isAlive();
+		});
+		renderLoop.start();
+	}
+
+	/**
+	 * Adds all windows of the given multi-window render loop to this event loop, and starts the render loop. Windows
+	 * that are added to the render loop later will be added to this event loop automatically. This method can be
+	 * called from any thread.
+	 */
+	public void addWindows(MultiWindowRenderLoop renderLoop) {
+		renderLoop.attach(this);
+		renderLoop.start();
+	}
+
+	/**
+	 * Lets this event loop handle the events of the given window, until its render loop has stopped
+	 * @param hasStopped Should return true when the render loop of the window has stopped (and destroyed the window)
+	 */
+	void registerWindow(VkbWindow window, BooleanSupplier hasStopped) {
+		useSDL = window.instance.useSDL;
 		if (useSDL) {
 			if (!onWayland && "wayland".equals(SDL_GetCurrentVideoDriver())) onWayland = true;
 		} else {
 			if (!onWayland && glfwGetPlatform() == GLFW_PLATFORM_WAYLAND) onWayland = true;
 		}
-		stateMap.put(renderLoop.window, new State(renderLoop));
-		renderLoop.window.windowLoop = this;
-		renderLoop.start();
+		stateMap.put(window, new State(hasStopped));
+		window.windowLoop = this;
 	}
 
 	/**
@@ -101,8 +134,8 @@ public class WindowEventLoop {
 				if (useSDL) {
 					var event = SDL_Event.calloc(stack);
 
-					// Never block the main thread on Wayland, since we need it for vkQueuePresentKHR
-					if (!onWayland) {
+					// On Wayland, render threads will wake us up when they need us to present an image
+					if (presentRequestsAreEmpty()) {
 						if (waitTimeout > 0.0) SDL_WaitEventTimeout(event, (int) (1000 * waitTimeout));
 						else SDL_WaitEvent(event);
 					}
@@ -112,8 +145,8 @@ public class WindowEventLoop {
 						// Users can respond to events by using SDL_AddEventWatcher
 					}
 				} else {
-					// Never block the main thread on Wayland, since we need it for vkQueuePresentKHR
-					if (onWayland) {
+					// On Wayland, render threads will wake us up when they need us to present an image
+					if (!presentRequestsAreEmpty()) {
 						glfwPollEvents();
 					} else {
 						if (waitTimeout > 0.0) glfwWaitEventsTimeout(waitTimeout);
@@ -126,13 +159,20 @@ public class WindowEventLoop {
 		}
 	}
 
+	private boolean presentRequestsAreEmpty() {
+		for (VkbWindow window : stateMap.keySet()) {
+			if (!window.presentRequests.isEmpty()) return false;
+		}
+		return true;
+	}
+
 	private static class State {
 
-		final WindowRenderLoop renderLoop;
+		final BooleanSupplier hasStopped;
 		boolean initialized;
 
-		State(WindowRenderLoop renderLoop) {
-			this.renderLoop = renderLoop;
+		State(BooleanSupplier hasStopped) {
+			this.hasStopped = hasStopped;
 		}
 	}
 }
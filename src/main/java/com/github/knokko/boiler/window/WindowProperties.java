@@ -16,12 +16,16 @@ package com.github.knokko.boiler.window;
  * @param usesSwapchainMaintenance Whether the swapchain of this window will
  *                                 use the <i>VK_EXT_swapchain_maintenance1</i> extension.
  * @param maxOldSwapchains The maximum number of old swapchains that the swapchain manager will allow to be piled up.
- *                         When the limit is reached, the old swapchains will be destroyed after a call to
- *                         <i>vkDeviceWaitIdle</i>, which is potentially bad for smooth resizing, but keeps memory
- *                         usage under control.
+ *                         When the limit is reached, the old swapchains will be destroyed after waiting on the fence
+ *                         that proves that their presentations have finished. When no such fence is available, it
+ *                         will call <i>vkDeviceWaitIdle</i> instead, which is potentially bad for smooth resizing,
+ *                         but keeps memory usage under control.
  * @param maxFramesInFlight The maximum number of frames-in-flight that the swapchain manager can handle. Using more
  *                          will result into potentially invalid synchronization.
  * @param acquireTimeout The timeout (in nanoseconds) that will be supplied to <i>VK_ACQUIRE_NEXT_IMAGE_KHR</i>
+ * @param resizeCoalescingTime The minimum time (in nanoseconds) between two swapchain recreations that are caused by
+ *                             resizing the window. Recreations that are needed because the swapchain is out of date
+ *                             will always happen immediately.
  */
 public record WindowProperties(
 		long handle,
@@ -35,6 +39,22 @@ public record WindowProperties(
 		boolean usesSwapchainMaintenance,
 		int maxOldSwapchains,
 		int maxFramesInFlight,
-		long acquireTimeout
+		long acquireTimeout,
+		long resizeCoalescingTime
 ) {
+
+	/**
+	 * Constructs window properties without resize coalescing
+	 */
+	public WindowProperties(
+			long handle, String title, long vkSurface, int numHiddenFrames, int surfaceFormat, int surfaceColorSpace,
+			int swapchainImageUsage, int swapchainCompositeAlpha, boolean usesSwapchainMaintenance,
+			int maxOldSwapchains, int maxFramesInFlight, long acquireTimeout
+	) {
+		this(
+				handle, title, vkSurface, numHiddenFrames, surfaceFormat, surfaceColorSpace, swapchainImageUsage,
+				swapchainCompositeAlpha, usesSwapchainMaintenance, maxOldSwapchains, maxFramesInFlight,
+				acquireTimeout, 0L
+		);
+	}
 }
@@ -17,10 +17,17 @@ import static org.lwjgl.system.MemoryStack.stackPush;
  */
 public abstract class WindowRenderLoop {
 
+	/**
+	 * The maximum time (in nanoseconds) that the render loop will wait until an older frame is displayed. This
+	 * prevents the render loop from getting stuck when the window is hidden.
+	 */
+	private static final long PRESENT_WAIT_TIMEOUT = 100_000_000L;
+
 	protected final VkbWindow window;
 	protected final int numFramesInFlight;
 	protected boolean acquireSwapchainImageWithFence;
 	protected int presentMode;
+	protected FramePacer framePacer;
 	private volatile boolean didStart;
 	volatile Thread thread;
 	private boolean sdlCloseRequested;
@@ -63,6 +70,16 @@ public abstract class WindowRenderLoop {
 		try {
 			long currentFrame = 0;
 			while (!sdlCloseRequested && (window.instance.useSDL || !glfwWindowShouldClose(window.properties.handle()))) {
+				var pacer = framePacer;
+				if (pacer != null) {
+					// Wait for the display of an older frame *before* starting this frame, so that its input is as
+					// recent as possible
+					long displayedPresentId = window.supportsPresentWait() ?
+							pacer.presentIdToAwait(window.getLastPresentId()) : 0L;
+					if (displayedPresentId != 0L) window.waitForPresent(displayedPresentId, PRESENT_WAIT_TIMEOUT);
+					pacer.startFrame();
+				}
+
 				if (window.windowLoop == null) {
 					try (var stack = stackPush()) {
 						if (window.instance.useSDL) {
@@ -82,9 +99,14 @@ public abstract class WindowRenderLoop {
 
 				try (var stack = stackPush()) {
 					AcquiredImage acquiredImage;
+					if (pacer != null) pacer.beginWait();
 					if (acquireSwapchainImageWithFence) {
 						acquiredImage = window.acquireSwapchainImageWithFence(presentMode);
 					} else acquiredImage = window.acquireSwapchainImageWithSemaphore(presentMode);
+					if (acquireSwapchainImageWithFence && acquiredImage != null) {
+						acquiredImage.acquireSubmission.awaitCompletion();
+					}
+					if (pacer != null) pacer.endWait();
 					if (acquiredImage == null) {
 						if (window.getWidth() == 0 || window.getHeight() == 0) {
 							//noinspection BusyWait
@@ -93,10 +115,9 @@ public abstract class WindowRenderLoop {
 						continue;
 					}
 
-					if (acquireSwapchainImageWithFence) acquiredImage.acquireSubmission.awaitCompletion();
-
 					renderFrame(stack, frameIndex, acquiredImage, window.instance);
 					window.presentSwapchainImage(acquiredImage);
+					if (pacer != null) pacer.framePresented();
 				} catch (InterruptedException e) {
 					throw new RuntimeException(e);
 				}
@@ -138,6 +159,16 @@ public abstract class WindowRenderLoop {
 		}
 	}
 
+	/**
+	 * Attaches a <i>FramePacer</i> to this render loop, which will be used to cap the frame rate and/or latency.
+	 * This must be called before the render loop starts.
+	 * @param framePacer The frame pacer, or <i>null</i> to render as fast as swapchain images can be acquired
+	 */
+	public void setFramePacer(FramePacer framePacer) {
+		if (didStart) throw new IllegalStateException("The frame pacer must be set before the loop starts");
+		this.framePacer = framePacer;
+	}
+
 	/**
 	 * This method will be called once before the actual rendering starts, and should be used to create the resources
 	 * that are needed for rendering.
@@ -1,4 +0,0 @@
-package com.github.knokko.boiler.window;
-
-record WindowSize(int width, int height) {
-}
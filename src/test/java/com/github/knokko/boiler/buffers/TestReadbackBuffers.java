@@ -0,0 +1,75 @@
+package com.github.knokko.boiler.buffers;
+
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import com.github.knokko.boiler.commands.SingleTimeCommands;
+import com.github.knokko.boiler.memory.MemoryCombiner;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestReadbackBuffers {
+
+	private void testReadback(boolean useVma) {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestReadbackBuffers", 1
+		).validation().forbidValidationErrors().build();
+
+		var combiner = new MemoryCombiner(instance, "ReadbackMemory");
+		var sourceBuffer = combiner.addMappedBuffer(1000L, 4L, VK_BUFFER_USAGE_TRANSFER_SRC_BIT);
+		var readback1 = combiner.addMappedReadbackBuffer(100L, 4L, VK_BUFFER_USAGE_TRANSFER_DST_BIT);
+		var readback2 = combiner.addMappedReadbackBuffer(900L, 4L, VK_BUFFER_USAGE_TRANSFER_DST_BIT);
+		var memory = combiner.build(useVma);
+
+		long atomSize = instance.deviceProperties.limits().nonCoherentAtomSize();
+		assertEquals(0L, readback1.offset % atomSize);
+		assertEquals(0L, readback2.offset % atomSize);
+		assertEquals(0L, readback1.memoryOffset % atomSize);
+		assertEquals(0L, readback2.memoryOffset % atomSize);
+		assertNull(sourceBuffer.nonCoherentMemory);
+
+		var memoryInfo = instance.memoryInfo;
+		if (!memoryInfo.hostCachedMemoryTypes.isEmpty()) {
+			assertTrue(memoryInfo.hostCachedMemoryTypes.contains(readback1.memoryTypeIndex));
+		}
+		assertEquals(memoryInfo.isHostCoherent(readback1.memoryTypeIndex), readback1.nonCoherentMemory == null);
+
+		var hostSource = sourceBuffer.byteBuffer();
+		for (int index = 0; index < 1000; index++) hostSource.put((byte) index);
+		sourceBuffer.flush(instance);
+
+		SingleTimeCommands.submit(instance, "Readback", recorder -> {
+			recorder.copyBuffer(sourceBuffer.child(0L, 100L), readback1);
+			recorder.copyBuffer(sourceBuffer.child(100L, 900L), readback2);
+			recorder.bulkBufferBarrier(ResourceUsage.TRANSFER_DEST, ResourceUsage.HOST_READ, readback1, readback2);
+		}).destroy();
+
+		readback1.invalidate(instance);
+		readback2.invalidate(instance, 0L, 900L);
+		var hostReadback1 = readback1.byteBuffer();
+		for (int index = 0; index < 100; index++) assertEquals((byte) index, hostReadback1.get());
+		var hostReadback2 = readback2.byteBuffer();
+		for (int index = 100; index < 1000; index++) assertEquals((byte) index, hostReadback2.get());
+
+		// The child should share the memory allocation of its parent
+		var child = readback2.child(10L, 20L);
+		assertEquals(readback2.memoryOffset + 10L, child.memoryOffset);
+		assertSame(readback2.nonCoherentMemory, child.nonCoherentMemory);
+		child.invalidate(instance, 5L, 15L);
+		assertThrows(IllegalArgumentException.class, () -> child.invalidate(instance, 5L, 16L));
+
+		memory.destroy(instance);
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testReadbackWithoutVma() {
+		testReadback(false);
+	}
+
+	@Test
+	public void testReadbackWithVma() {
+		testReadback(true);
+	}
+}
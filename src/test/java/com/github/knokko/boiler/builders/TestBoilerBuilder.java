@@ -3,13 +3,16 @@ package com.github.knokko.boiler.builders;
 import com.github.knokko.boiler.builders.instance.ValidationFeatures;
 import com.github.knokko.boiler.builders.queue.QueueFamilyAllocation;
 import com.github.knokko.boiler.builders.queue.QueueFamilyMapping;
+import com.github.knokko.boiler.builders.startup.StartupSpan;
 import com.github.knokko.boiler.debug.ValidationException;
 import com.github.knokko.boiler.exceptions.NoVkPhysicalDeviceException;
 import com.github.knokko.boiler.utilities.CollectionHelper;
 import org.junit.jupiter.api.Test;
 import org.lwjgl.vulkan.*;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 
 import static com.github.knokko.boiler.utilities.CollectionHelper.createSet;
@@ -461,4 +464,85 @@ public class TestBoilerBuilder {
 			assertEquals("Mission completed", message);
 		}
 	}
+
+	@Test
+	public void testStartupListener() {
+		List<StartupSpan> spans = new ArrayList<>();
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestStartupListener", 1
+		).validation().forbidValidationErrors().startupListener(spans::add).build();
+
+		var names = spans.stream().map(StartupSpan::name).toList();
+		assertTrue(names.contains("instance"), "spans were " + names);
+		assertTrue(names.contains("device-selection"), "spans were " + names);
+		assertTrue(names.contains("device-creation"), "spans were " + names);
+		assertTrue(names.contains("vma"), "spans were " + names);
+		assertTrue(names.stream().anyMatch(name -> name.startsWith("device-filter ")), "spans were " + names);
+		assertEquals("total", names.get(names.size() - 1));
+
+		var total = spans.get(spans.size() - 1);
+		for (var span : spans) {
+			assertTrue(span.startNanos() >= 0);
+			assertTrue(span.startNanos() + span.durationNanos() <= total.durationNanos());
+		}
+
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testSequentialInitialization() {
+		var callingThread = Thread.currentThread();
+		boolean[] pDidCallRequirements = { false };
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestSequentialInitialization", 1
+		).validation().forbidValidationErrors().sequentialInitialization().vkInstanceCreator((ciInstance, callbacks, stack) -> {
+			assertSame(callingThread, Thread.currentThread());
+			return BoilerBuilder.DEFAULT_VK_INSTANCE_CREATOR.vkCreateInstance(ciInstance, callbacks, stack);
+		}).extraDeviceRequirements("same thread", (physicalDevice, windowSurfaces, stack) -> {
+			assertSame(callingThread, Thread.currentThread());
+			pDidCallRequirements[0] = true;
+			return true;
+		}).build();
+
+		assertTrue(pDidCallRequirements[0]);
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testParallelInitialization() {
+		var callingThread = Thread.currentThread();
+		Thread[] pRequirementsThread = { null };
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestParallelInitialization", 1
+		).validation().forbidValidationErrors().extraDeviceRequirements("other thread", (physicalDevice, windowSurfaces, stack) -> {
+			pRequirementsThread[0] = Thread.currentThread();
+			return true;
+		}).build();
+
+		assertNotNull(pRequirementsThread[0]);
+		assertNotSame(callingThread, pRequirementsThread[0]);
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testForbidValidationErrorsDuringParallelDeviceFilter() {
+		var builder = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestForbidValidationErrorsDuringParallelDeviceFilter", 1
+		).validation().forbidValidationErrors().extraDeviceRequirements("swallow", (physicalDevice, windowSurfaces, stack) -> {
+			var properties = VkImageFormatProperties.calloc(stack);
+			try {
+				// Intentionally use usage 0, which should cause a validation error
+				vkGetPhysicalDeviceImageFormatProperties(
+						physicalDevice, VK_FORMAT_R8G8B8A8_UNORM, VK_IMAGE_TYPE_2D,
+						VK_IMAGE_TILING_OPTIMAL, 0, 0, properties
+				);
+			} catch (ValidationException swallowed) {
+				// The builder should notice the validation error anyway, even though it happened on another thread
+			}
+			return true;
+		});
+
+		String message = assertThrows(ValidationException.class, builder::build).getMessage();
+		assertEquals("A validation error occurred during initialization", message);
+	}
 }
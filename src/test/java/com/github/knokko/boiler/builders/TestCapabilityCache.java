@@ -0,0 +1,141 @@
+package com.github.knokko.boiler.builders;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.memByteBuffer;
+import static org.lwjgl.vulkan.VK10.VK_API_VERSION_1_0;
+import static org.lwjgl.vulkan.VK10.VK_QUEUE_GRAPHICS_BIT;
+
+public class TestCapabilityCache {
+
+	@Test
+	public void testSnapshotRoundTrip() throws IOException {
+		var features10 = new byte[VkPhysicalDeviceFeatures.SIZEOF];
+		features10[0] = 1;
+		var queueFamilies = new byte[2 * VkQueueFamilyProperties.SIZEOF];
+		try (var stack = stackPush()) {
+			var pQueueFamilies = VkQueueFamilyProperties.calloc(2, stack);
+			pQueueFamilies.get(1).queueFlags(VK_QUEUE_GRAPHICS_BIT);
+			pQueueFamilies.get(1).queueCount(3);
+			memByteBuffer(pQueueFamilies.address(), queueFamilies.length).get(queueFamilies);
+		}
+
+		var original = new CapabilitySnapshot(
+				Set.of("VK_KHR_swapchain", "VK_EXT_memory_budget"), features10,
+				null, null, null, null, queueFamilies
+		);
+
+		var byteOutput = new ByteArrayOutputStream();
+		try (var output = new DataOutputStream(byteOutput)) {
+			original.write(output);
+		}
+		var restored = CapabilitySnapshot.read(new DataInputStream(new ByteArrayInputStream(byteOutput.toByteArray())));
+
+		assertEquals(original.extensions(), restored.extensions());
+		assertNull(restored.features11());
+		assertNull(restored.features14());
+		try (var stack = stackPush()) {
+			var features = restored.supportedFeatures(stack);
+			assertTrue(features.features10().robustBufferAccess());
+			assertFalse(features.features10().fullDrawIndexUint32());
+			assertNull(features.features12());
+
+			var pQueueFamilies = restored.queueFamilies(stack);
+			assertEquals(2, pQueueFamilies.capacity());
+			assertEquals(0, pQueueFamilies.get(0).queueFlags());
+			assertEquals(VK_QUEUE_GRAPHICS_BIT, pQueueFamilies.get(1).queueFlags());
+			assertEquals(3, pQueueFamilies.get(1).queueCount());
+		}
+	}
+
+	@Test
+	public void testRejectWrongStructSize() throws IOException {
+		var byteOutput = new ByteArrayOutputStream();
+		try (var output = new DataOutputStream(byteOutput)) {
+			output.writeInt(0);
+			output.writeInt(VkPhysicalDeviceFeatures.SIZEOF + 4);
+			output.write(new byte[VkPhysicalDeviceFeatures.SIZEOF + 4]);
+		}
+		assertThrows(IOException.class, () -> CapabilitySnapshot.read(
+				new DataInputStream(new ByteArrayInputStream(byteOutput.toByteArray()))
+		));
+	}
+
+	@Test
+	public void testRejectHugeExtensionCount() throws IOException {
+		var byteOutput = new ByteArrayOutputStream();
+		try (var output = new DataOutputStream(byteOutput)) {
+			output.writeInt(Integer.MAX_VALUE);
+			output.writeUTF("VK_KHR_swapchain");
+		}
+		assertThrows(IOException.class, () -> CapabilitySnapshot.read(
+				new DataInputStream(new ByteArrayInputStream(byteOutput.toByteArray()))
+		));
+	}
+
+	@Test
+	public void testRejectHugeQueueFamiliesSize() throws IOException {
+		var byteOutput = new ByteArrayOutputStream();
+		try (var output = new DataOutputStream(byteOutput)) {
+			output.writeInt(0);
+			for (int counter = 0; counter < 5; counter++) output.writeInt(-1);
+			output.writeInt((Integer.MAX_VALUE / VkQueueFamilyProperties.SIZEOF) * VkQueueFamilyProperties.SIZEOF);
+		}
+		assertThrows(IOException.class, () -> CapabilitySnapshot.read(
+				new DataInputStream(new ByteArrayInputStream(byteOutput.toByteArray()))
+		));
+	}
+
+	@Test
+	public void testIgnoreInvalidSnapshotCount() throws IOException {
+		var file = Files.createTempFile("vk-boiler-capabilities", ".bin");
+		try {
+			for (int numSnapshots : new int[] { -1, Integer.MAX_VALUE }) {
+				try (var output = new DataOutputStream(Files.newOutputStream(file))) {
+					output.writeInt(0x766B6263);
+					output.writeInt(1);
+					output.writeInt(numSnapshots);
+				}
+				new CapabilityCache(file, VK_API_VERSION_1_0, Set.of(), false);
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testCacheFile() throws IOException {
+		var file = Files.createTempFile("vk-boiler-capabilities", ".bin");
+		Files.delete(file);
+
+		try {
+			var firstInstance = new BoilerBuilder(
+					VK_API_VERSION_1_0, "TestCapabilityCache", 1
+			).validation().forbidValidationErrors().capabilityCache(file).build();
+			var firstDevice = firstInstance.deviceProperties.deviceNameString();
+			firstInstance.destroyInitialObjects();
+			assertTrue(Files.size(file) > 0);
+
+			var secondInstance = new BoilerBuilder(
+					VK_API_VERSION_1_0, "TestCapabilityCache", 1
+			).validation().forbidValidationErrors().capabilityCache(file).build();
+			assertEquals(firstDevice, secondInstance.deviceProperties.deviceNameString());
+			secondInstance.destroyInitialObjects();
+
+			// Corrupt files should be ignored
+			Files.write(file, new byte[] { 1, 2, 3 });
+			new BoilerBuilder(
+					VK_API_VERSION_1_0, "TestCapabilityCache", 1
+			).validation().forbidValidationErrors().capabilityCache(file).build().destroyInitialObjects();
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.github.knokko.boiler.culling;
+
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestAABBTree {
+
+	private static int[] bruteForce(FrustumCuller culler, AABBArray boxes, boolean[] removed) {
+		long[] visible = new long[(boxes.size() + 63) / 64];
+		culler.cullAABBs(boxes, visible);
+		return IntStream.range(0, boxes.size()).filter(
+				index -> !removed[index] && (visible[index / 64] & (1L << (index % 64))) != 0L
+		).toArray();
+	}
+
+	private static void assertSameValues(int[] expected, int[] actual) {
+		var sortedActual = actual.clone();
+		Arrays.sort(sortedActual);
+		assertArrayEquals(expected, sortedActual);
+	}
+
+	@Test
+	public void testEmptyTree() {
+		var tree = new AABBTree(0, 0f);
+		var culler = new FrustumCuller(new Vector3f(), 0f, 0f, 1f, 70f, 0.1f, 100f);
+		assertEquals(0, tree.size());
+		assertEquals(0, tree.height());
+		assertEquals(0, tree.cull(culler).length);
+		assertEquals(0, tree.cullParallel(culler).length);
+	}
+
+	@Test
+	public void testCullMatchesBruteForce() {
+		var rng = new Random(1234);
+		var tree = new AABBTree(10, 0f);
+		var boxes = new AABBArray(10);
+		int numBoxes = 50_000;
+		int[] proxies = new int[numBoxes];
+		boolean[] removed = new boolean[numBoxes];
+
+		for (int index = 0; index < numBoxes; index++) {
+			float minX = -1000f + 2000f * rng.nextFloat();
+			float minY = -100f + 200f * rng.nextFloat();
+			float minZ = -1000f + 2000f * rng.nextFloat();
+			float maxX = minX + 10f * rng.nextFloat();
+			float maxY = minY + 10f * rng.nextFloat();
+			float maxZ = minZ + 10f * rng.nextFloat();
+			boxes.add(minX, minY, minZ, maxX, maxY, maxZ);
+			proxies[index] = tree.insert(minX, minY, minZ, maxX, maxY, maxZ, index);
+		}
+		assertEquals(numBoxes, tree.size());
+
+		// A balanced tree with 50k leaves should have a height of about 16
+		assertTrue(tree.height() < 40, "Height is " + tree.height());
+
+		// Move some boxes, and remove some others
+		for (int index = 0; index < numBoxes; index += 3) {
+			float minX = -1000f + 2000f * rng.nextFloat();
+			float minY = boxes.minY[index];
+			float minZ = -1000f + 2000f * rng.nextFloat();
+			float maxX = minX + 10f * rng.nextFloat();
+			float maxY = boxes.maxY[index];
+			float maxZ = minZ + 10f * rng.nextFloat();
+			boxes.set(index, minX, minY, minZ, maxX, maxY, maxZ);
+			assertTrue(tree.update(proxies[index], minX, minY, minZ, maxX, maxY, maxZ));
+		}
+		for (int index = 1; index < numBoxes; index += 7) {
+			tree.remove(proxies[index]);
+			removed[index] = true;
+		}
+		int numRemoved = (numBoxes - 1 + 6) / 7;
+		assertEquals(numBoxes - numRemoved, tree.size());
+
+		var cullers = new FrustumCuller[] {
+				new FrustumCuller(new Vector3f(), 0f, 0f, 1.5f, 70f, 0.1f, 500f),
+				new FrustumCuller(new Vector3f(100f, 20f, -50f), 135f, -20f, 2f, 90f, 1f, 2000f),
+				new FrustumCuller(new Vector3f(0f, 5000f, 0f), 0f, 0f, 1f, 60f, 0.1f, 100f)
+		};
+		for (var culler : cullers) {
+			int[] expected = bruteForce(culler, boxes, removed);
+			assertSameValues(expected, tree.cull(culler));
+			assertSameValues(expected, tree.cullParallel(culler));
+		}
+	}
+
+	@Test
+	public void testMarginAndProxies() {
+		var tree = new AABBTree(1, 1f);
+		int proxy = tree.insert(new FrustumCuller.AABB(0f, 0f, 0f, 1f, 1f, 1f), 12);
+		assertEquals(12, tree.getValue(proxy));
+
+		// The new bounds are still inside the fat box
+		assertFalse(tree.update(proxy, 0.5f, 0.5f, 0.5f, 1.5f, 1.5f, 1.5f));
+
+		// These bounds are not
+		assertTrue(tree.update(proxy, 5f, 0f, 0f, 6f, 1f, 1f));
+		assertEquals(12, tree.getValue(proxy));
+
+		var culler = new FrustumCuller(
+				new Vector3f(), new Vector3f(1f, 0f, 0f), new Vector3f(0f, 1f, 0f), 1f, 90f, 0.1f, 100f
+		);
+		assertArrayEquals(new int[] { 12 }, tree.cull(culler));
+
+		var values = new HashMap<Integer, Integer>();
+		for (int value = 0; value < 100; value++) values.put(tree.insert(value, 0f, 0f, value + 1, 1f, 1f, value), value);
+		for (var entry : values.entrySet()) assertEquals(entry.getValue(), tree.getValue(entry.getKey()));
+
+		tree.remove(proxy);
+		assertThrows(IllegalArgumentException.class, () -> tree.remove(proxy));
+		assertThrows(IllegalArgumentException.class, () -> tree.getValue(proxy));
+		assertEquals(100, tree.size());
+	}
+}
@@ -0,0 +1,71 @@
+package com.github.knokko.boiler.culling;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.util.shaderc.Shaderc.*;
+
+public class TestCullingShaders {
+
+	/**
+	 * Compiles the GLSL source next to the bundled SPIR-V at {@code spvPath} using shaderc (the compiler behind glslc,
+	 * with the default options of glslc), and checks that the bundled SPIR-V is exactly the compiler output. When the
+	 * environment variable <i>VK_BOILER_REGENERATE_SHADERS</i> is set, the bundled SPIR-V will be overwritten with the
+	 * compiler output instead.
+	 */
+	static void assertBundledShaderIsUpToDate(String spvPath) throws IOException {
+		assertTrue(spvPath.endsWith(".spv"));
+		var spvFile = Path.of("src/main/resources", spvPath);
+		var glslFile = Path.of("src/main/resources", spvPath.substring(0, spvPath.length() - 4));
+
+		long compiler = shaderc_compiler_initialize();
+		long options = shaderc_compile_options_initialize();
+		assertNotEquals(0L, compiler);
+		assertNotEquals(0L, options);
+		shaderc_compile_options_set_target_env(options, shaderc_target_env_vulkan, shaderc_env_version_vulkan_1_0);
+
+		long result = shaderc_compile_into_spv(
+				compiler, Files.readString(glslFile), shaderc_glsl_compute_shader,
+				glslFile.getFileName().toString(), "main", options
+		);
+		try {
+			assertEquals(
+					shaderc_compilation_status_success, shaderc_result_get_compilation_status(result),
+					shaderc_result_get_error_message(result)
+			);
+			var compiledBuffer = shaderc_result_get_bytes(result);
+			assertNotNull(compiledBuffer);
+			var compiled = new byte[compiledBuffer.remaining()];
+			compiledBuffer.get(compiled);
+
+			if (System.getenv("VK_BOILER_REGENERATE_SHADERS") != null) Files.write(spvFile, compiled);
+			assertArrayEquals(
+					compiled, Files.readAllBytes(spvFile),
+					spvFile + " is outdated: run this test with VK_BOILER_REGENERATE_SHADERS=1 to regenerate it"
+			);
+		} finally {
+			shaderc_result_release(result);
+			shaderc_compile_options_release(options);
+			shaderc_compiler_release(compiler);
+		}
+	}
+
+	@Test
+	public void testFrustumCullShader() throws IOException {
+		assertBundledShaderIsUpToDate(GpuFrustumCuller.SHADER_PATH);
+	}
+
+	@Test
+	public void testHiZReduceShader() throws IOException {
+		assertBundledShaderIsUpToDate(HiZOcclusionCuller.REDUCE_SHADER_PATH);
+	}
+
+	@Test
+	public void testHiZCullShader() throws IOException {
+		assertBundledShaderIsUpToDate(HiZOcclusionCuller.CULL_SHADER_PATH);
+	}
+}
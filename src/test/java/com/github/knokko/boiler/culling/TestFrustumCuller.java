@@ -3,8 +3,12 @@ package com.github.knokko.boiler.culling;
 import org.joml.Vector3f;
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
+
 import static com.github.knokko.boiler.culling.FrustumCuller.isOnForwardPlane;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestFrustumCuller {
@@ -163,4 +167,87 @@ public class TestFrustumCuller {
 			assertTrue(frustum.shouldCullAABB(new FrustumCuller.AABB(95f, -20f, 35f, 105f, -10f, 45f)));
 		}
 	}
+
+	private static void checkCullAABBs(FrustumCuller frustum, int numBoxes, long seed) {
+		var rng = new Random(seed);
+		var boxes = new AABBArray(10);
+		for (int counter = 0; counter < numBoxes; counter++) {
+			float minX = -500f + 1000f * rng.nextFloat();
+			float minY = -500f + 1000f * rng.nextFloat();
+			float minZ = -500f + 1000f * rng.nextFloat();
+			boxes.add(minX, minY, minZ, minX + 50f * rng.nextFloat(), minY + 50f * rng.nextFloat(), minZ + 50f * rng.nextFloat());
+		}
+
+		// Fill the bitset with garbage to check that the culled bits are cleared
+		long[] visible = new long[(numBoxes + 63) / 64];
+		for (int index = 0; index < visible.length; index++) visible[index] = rng.nextLong();
+		frustum.cullAABBs(boxes, visible);
+
+		int numVisible = 0;
+		for (int index = 0; index < numBoxes; index++) {
+			var box = new FrustumCuller.AABB(
+					boxes.minX[index], boxes.minY[index], boxes.minZ[index],
+					boxes.maxX[index], boxes.maxY[index], boxes.maxZ[index]
+			);
+			boolean isVisible = (visible[index / 64] & (1L << (index % 64))) != 0L;
+			if (isVisible) numVisible += 1;
+
+			// Skip boxes that are so close to a plane that rounding errors could matter
+			var grownBox = new FrustumCuller.AABB(
+					box.minX() - 0.01f, box.minY() - 0.01f, box.minZ() - 0.01f,
+					box.maxX() + 0.01f, box.maxY() + 0.01f, box.maxZ() + 0.01f
+			);
+			var shrunkBox = new FrustumCuller.AABB(
+					box.minX() + 0.001f, box.minY() + 0.001f, box.minZ() + 0.001f,
+					box.maxX() - 0.001f, box.maxY() - 0.001f, box.maxZ() - 0.001f
+			);
+			if (frustum.shouldCullAABB(grownBox) != frustum.shouldCullAABB(shrunkBox)) continue;
+
+			assertEquals(!frustum.shouldCullAABB(box), isVisible, "box " + index);
+		}
+
+		for (int index = numBoxes; index < 64 * visible.length; index++) {
+			assertEquals(0L, visible[index / 64] & (1L << (index % 64)));
+		}
+
+		// Sanity check: the test is useless when all boxes are culled, or when no boxes are culled
+		assertTrue(numVisible > 0);
+		assertTrue(numVisible < numBoxes);
+	}
+
+	@Test
+	public void testCullAABBs() {
+		var frustum = new FrustumCuller(
+				new Vector3f(10f, 20f, -30f), 35f, 20f, 1.5f, 80f, 0.1f, 400f
+		);
+		checkCullAABBs(frustum, 1000, 123);
+		checkCullAABBs(frustum, 1 << 17, 456);
+		checkCullAABBs(frustum, 100_003, 789);
+	}
+
+	@Test
+	public void testCullAABBsOffset() {
+		var frustum = new FrustumCuller(
+				new Vector3f(), new Vector3f(0f, 0f, -1f), new Vector3f(0f, 1f, 0f),
+				1f, 90f, 0.1f, 100f
+		);
+		var boxes = new AABBArray(0);
+		boxes.add(-1f, -1f, 10f, 1f, 1f, 20f);
+		boxes.add(-1f, -1f, -20f, 1f, 1f, -10f);
+		boxes.add(-1f, -1f, -20f, 1f, 1f, -10f);
+		boxes.add(200f, -1f, -20f, 201f, 1f, -10f);
+		boxes.add(-1f, -1f, -20f, 1f, 1f, -10f);
+
+		long[] visible = { -1L };
+		frustum.cullAABBs(
+				boxes.minX, boxes.minY, boxes.minZ, boxes.maxX, boxes.maxY, boxes.maxZ,
+				1, 4, visible
+		);
+		assertEquals(0b1011L, visible[0]);
+
+		assertThrows(IllegalArgumentException.class, () -> frustum.cullAABBs(
+				boxes.minX, boxes.minY, boxes.minZ, boxes.maxX, boxes.maxY, boxes.maxZ,
+				0, 65, new long[1]
+		));
+	}
 }
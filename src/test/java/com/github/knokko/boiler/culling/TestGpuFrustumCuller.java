@@ -0,0 +1,200 @@
+package com.github.knokko.boiler.culling;
+
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import com.github.knokko.boiler.commands.SingleTimeCommands;
+import com.github.knokko.boiler.descriptors.DescriptorCombiner;
+import com.github.knokko.boiler.memory.MemoryCombiner;
+import com.github.knokko.boiler.memory.callbacks.CallbackUserData;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestGpuFrustumCuller {
+
+	/**
+	 * Does the same as the compute shader, using the packed planes and instance
+	 */
+	private static boolean emulateShader(ByteBuffer pushConstants, ByteBuffer instance) {
+		float centerX = (instance.getFloat(0) + instance.getFloat(16)) * 0.5f;
+		float centerY = (instance.getFloat(4) + instance.getFloat(20)) * 0.5f;
+		float centerZ = (instance.getFloat(8) + instance.getFloat(24)) * 0.5f;
+		float halfX = (instance.getFloat(16) - instance.getFloat(0)) * 0.5f;
+		float halfY = (instance.getFloat(20) - instance.getFloat(4)) * 0.5f;
+		float halfZ = (instance.getFloat(24) - instance.getFloat(8)) * 0.5f;
+		for (int plane = 0; plane < 6; plane++) {
+			float normalX = pushConstants.getFloat(16 * plane);
+			float normalY = pushConstants.getFloat(16 * plane + 4);
+			float normalZ = pushConstants.getFloat(16 * plane + 8);
+			float distance = pushConstants.getFloat(16 * plane + 12);
+			float radius = halfX * Math.abs(normalX) + halfY * Math.abs(normalY) + halfZ * Math.abs(normalZ);
+			if (normalX * centerX + normalY * centerY + normalZ * centerZ - distance < -radius) return false;
+		}
+		return true;
+	}
+
+	@Test
+	public void testLayoutSizes() {
+		assertEquals(20, GpuFrustumCuller.COMMAND_SIZE);
+		assertEquals(96, FrustumCuller.PLANES_SIZE);
+
+		// Vulkan guarantees at least 128 bytes of push constants
+		assertTrue(GpuFrustumCuller.PUSH_CONSTANTS_SIZE <= 128);
+		assertTrue(HiZOcclusionCuller.CULL_PUSH_CONSTANTS_SIZE <= 128);
+	}
+
+	@Test
+	public void testPutInstance() {
+		var instances = ByteBuffer.allocate(3 * GpuFrustumCuller.INSTANCE_SIZE).order(ByteOrder.nativeOrder());
+		GpuFrustumCuller.putInstance(
+				instances, 1, new FrustumCuller.AABB(1f, 2f, 3f, 4f, 5f, 6f), 100, 200, -30, 7
+		);
+		int offset = GpuFrustumCuller.INSTANCE_SIZE;
+		assertEquals(0, instances.position());
+		assertEquals(0, instances.getInt(offset - 4));
+		assertEquals(1f, instances.getFloat(offset));
+		assertEquals(3f, instances.getFloat(offset + 8));
+		assertEquals(4f, instances.getFloat(offset + 16));
+		assertEquals(6f, instances.getFloat(offset + 24));
+		assertEquals(100, instances.getInt(offset + 32));
+		assertEquals(200, instances.getInt(offset + 36));
+		assertEquals(-30, instances.getInt(offset + 40));
+		assertEquals(7, instances.getInt(offset + 44));
+		assertEquals(0, instances.getInt(offset + GpuFrustumCuller.INSTANCE_SIZE));
+	}
+
+	@Test
+	public void testPackedPlanesMatchFrustumCuller() {
+		var culler = new FrustumCuller(new Vector3f(1f, 2f, 3f), 60f, 10f, 1.6f, 75f, 0.1f, 300f);
+		var pushConstants = ByteBuffer.allocate(GpuFrustumCuller.PUSH_CONSTANTS_SIZE).order(ByteOrder.nativeOrder());
+		GpuFrustumCuller.putPushConstants(pushConstants, culler, 1234);
+		assertEquals(GpuFrustumCuller.PUSH_CONSTANTS_SIZE, pushConstants.position());
+		assertEquals(1234, pushConstants.getInt(FrustumCuller.PLANES_SIZE));
+
+		var rng = new Random(42);
+		var instance = ByteBuffer.allocate(GpuFrustumCuller.INSTANCE_SIZE).order(ByteOrder.nativeOrder());
+		int numVisible = 0;
+		for (int counter = 0; counter < 10_000; counter++) {
+			float minX = -400f + 800f * rng.nextFloat();
+			float minY = -400f + 800f * rng.nextFloat();
+			float minZ = -400f + 800f * rng.nextFloat();
+			var box = new FrustumCuller.AABB(minX, minY, minZ, minX + 20f, minY + 20f, minZ + 20f);
+			GpuFrustumCuller.putInstance(instance, 0, box, 0, 0, 0, 0);
+
+			// Skip boxes that are so close to a plane that rounding errors could matter
+			var grownBox = new FrustumCuller.AABB(minX - 0.01f, minY - 0.01f, minZ - 0.01f, minX + 20.01f, minY + 20.01f, minZ + 20.01f);
+			var shrunkBox = new FrustumCuller.AABB(minX + 0.01f, minY + 0.01f, minZ + 0.01f, minX + 19.99f, minY + 19.99f, minZ + 19.99f);
+			if (culler.shouldCullAABB(grownBox) != culler.shouldCullAABB(shrunkBox)) continue;
+
+			boolean isVisible = emulateShader(pushConstants, instance);
+			assertEquals(!culler.shouldCullAABB(box), isVisible);
+			if (isVisible) numVisible += 1;
+		}
+		assertTrue(numVisible > 0);
+	}
+
+	@Test
+	public void testCullOnGpu() {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestGpuFrustumCuller", VK_MAKE_VERSION(0, 1, 0)
+		).validation().forbidValidationErrors().build();
+		var gpuCuller = new GpuFrustumCuller(instance, "FrustumCuller");
+
+		// The camera is at the origin, and looks in the -Z direction
+		var frustum = new FrustumCuller(
+				new Vector3f(), new Vector3f(0f, 0f, -1f), new Vector3f(0f, 1f, 0f), 1f, 90f, 0.1f, 100f
+		);
+		FrustumCuller.AABB[] boxes = {
+				new FrustumCuller.AABB(-1f, -1f, -11f, 1f, 1f, -9f), // in front of the camera
+				new FrustumCuller.AABB(-1f, -1f, 9f, 1f, 1f, 11f), // behind the camera
+				new FrustumCuller.AABB(-1f, -1f, -201f, 1f, 1f, -199f), // beyond the far plane
+				new FrustumCuller.AABB(50f, -1f, -11f, 52f, 1f, -9f), // too far to the right
+				new FrustumCuller.AABB(-1f, -1f, -51f, 1f, 1f, -49f), // in front of the camera
+				new FrustumCuller.AABB(-5f, -5f, -5f, 5f, 5f, 5f), // around the camera
+		};
+		boolean[] expectVisible = { true, false, false, false, true, true };
+		for (int index = 0; index < boxes.length; index++) {
+			assertEquals(expectVisible[index], !frustum.shouldCullAABB(boxes[index]));
+		}
+
+		// Use enough instances to span multiple work groups
+		int instanceCount = 150;
+
+		try (var stack = stackPush()) {
+			long alignment = instance.deviceProperties.limits().minStorageBufferOffsetAlignment();
+			var combiner = new MemoryCombiner(instance, "CullMemory");
+			var instances = combiner.addMappedDeviceLocalBuffer(
+					(long) instanceCount * GpuFrustumCuller.INSTANCE_SIZE, alignment,
+					VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, 0.5f
+			);
+			var commands = combiner.addMappedDeviceLocalBuffer(
+					(long) instanceCount * GpuFrustumCuller.COMMAND_SIZE, alignment,
+					VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT, 0.5f
+			);
+			var count = combiner.addMappedDeviceLocalBuffer(
+					4, alignment, VK_BUFFER_USAGE_STORAGE_BUFFER_BIT |
+							VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT, 0.5f
+			);
+			var memory = combiner.build(false);
+
+			var hostInstances = instances.byteBuffer();
+			for (int index = 0; index < instanceCount; index++) {
+				GpuFrustumCuller.putInstance(
+						hostInstances, index, boxes[index % boxes.length], 3 * index, 10 + index, -index, index
+				);
+			}
+			count.intBuffer().put(0, 1234);
+
+			var descriptors = new DescriptorCombiner(instance);
+			long[] descriptorSet = descriptors.addMultiple(gpuCuller.descriptorSetLayout, 1);
+			long descriptorPool = descriptors.build("CullDescriptorPool");
+			gpuCuller.updateDescriptorSet(stack, descriptorSet[0], instances, commands, count);
+
+			SingleTimeCommands.submit(instance, "Culling", recorder -> {
+				gpuCuller.record(recorder, descriptorSet[0], frustum, instanceCount, commands, count);
+				recorder.bulkBufferBarrier(
+						ResourceUsage.computeBuffer(VK_ACCESS_SHADER_WRITE_BIT), ResourceUsage.HOST_READ,
+						commands, count
+				);
+			}).destroy();
+
+			int expectedCount = 0;
+			for (int index = 0; index < instanceCount; index++) {
+				if (expectVisible[index % boxes.length]) expectedCount += 1;
+			}
+			int drawCount = count.intBuffer().get(0);
+			assertEquals(expectedCount, drawCount);
+
+			// The order of the draw commands is undefined, so the firstInstance is used to find the instance
+			var hostCommands = commands.byteBuffer();
+			boolean[] wasDrawn = new boolean[instanceCount];
+			for (int drawIndex = 0; drawIndex < drawCount; drawIndex++) {
+				int offset = drawIndex * GpuFrustumCuller.COMMAND_SIZE;
+				int index = hostCommands.getInt(offset + 16);
+				assertTrue(expectVisible[index % boxes.length]);
+				assertFalse(wasDrawn[index]);
+				wasDrawn[index] = true;
+
+				assertEquals(3 * index, hostCommands.getInt(offset));
+				assertEquals(1, hostCommands.getInt(offset + 4));
+				assertEquals(10 + index, hostCommands.getInt(offset + 8));
+				assertEquals(-index, hostCommands.getInt(offset + 12));
+			}
+
+			vkDestroyDescriptorPool(
+					instance.vkDevice(), descriptorPool, CallbackUserData.DESCRIPTOR_POOL.put(stack, instance)
+			);
+			memory.destroy(instance);
+		}
+
+		gpuCuller.destroy();
+		instance.destroyInitialObjects();
+	}
+}
@@ -0,0 +1,167 @@
+package com.github.knokko.boiler.culling;
+
+import com.github.knokko.boiler.BoilerInstance;
+import com.github.knokko.boiler.buffers.MappedVkbBuffer;
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import com.github.knokko.boiler.commands.CommandRecorder;
+import com.github.knokko.boiler.commands.SingleTimeCommands;
+import com.github.knokko.boiler.images.ImageBuilder;
+import com.github.knokko.boiler.memory.MemoryCombiner;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+import org.joml.Matrix4f;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkClearAttachment;
+import org.lwjgl.vulkan.VkClearRect;
+
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_IMAGE_LAYOUT_DEPTH_ATTACHMENT_OPTIMAL;
+import static org.lwjgl.vulkan.VK13.VK_API_VERSION_1_3;
+
+public class TestHiZOcclusionCuller {
+
+	private static void submitAndWait(BoilerInstance instance, Consumer<CommandRecorder> commands) {
+		SingleTimeCommands.submit(instance, "HiZ", commands).destroy();
+	}
+
+	private static void assertDrawnInstances(
+			MappedVkbBuffer commands, MappedVkbBuffer count, int instanceCount, int... expectedInstances
+	) {
+		assertEquals(expectedInstances.length, count.intBuffer().get(0));
+
+		// The order of the draw commands is undefined, so the firstInstance is used to find the instance
+		var hostCommands = commands.byteBuffer();
+		boolean[] wasDrawn = new boolean[instanceCount];
+		for (int drawIndex = 0; drawIndex < expectedInstances.length; drawIndex++) {
+			int offset = drawIndex * GpuFrustumCuller.COMMAND_SIZE;
+			int index = hostCommands.getInt(offset + 16);
+			assertFalse(wasDrawn[index]);
+			wasDrawn[index] = true;
+
+			assertEquals(3 * index, hostCommands.getInt(offset));
+			assertEquals(1, hostCommands.getInt(offset + 4));
+			assertEquals(10 + index, hostCommands.getInt(offset + 8));
+			assertEquals(-index, hostCommands.getInt(offset + 12));
+		}
+		for (int index : expectedInstances) assertTrue(wasDrawn[index], "Expected instance " + index);
+	}
+
+	@Test
+	public void testCullAgainstKnownDepthPyramid() {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_3, "TestHiZOcclusionCuller", VK_MAKE_VERSION(0, 1, 0)
+		).validation().forbidValidationErrors().enableDynamicRendering().build();
+
+		int size = 16;
+		var combiner = new MemoryCombiner(instance, "HiZMemory");
+		var depthImage = combiner.addImage(new ImageBuilder("Depth", size, size).depthAttachment(
+				VK_FORMAT_D32_SFLOAT
+		).addUsage(VK_IMAGE_USAGE_SAMPLED_BIT), 0.5f);
+
+		// Identity view-projection matrix: the positions of the boxes are their normalized device coordinates
+		FrustumCuller.AABB[] boxes = {
+				new FrustumCuller.AABB(-0.9f, -0.5f, 0.1f, -0.6f, 0.5f, 0.2f), // in front of the occluder
+				new FrustumCuller.AABB(-0.9f, -0.5f, 0.5f, -0.6f, 0.5f, 0.6f), // behind the occluder
+				new FrustumCuller.AABB(0.3f, -0.5f, 0.5f, 0.6f, 0.5f, 0.6f), // next to the occluder
+				new FrustumCuller.AABB(-0.5f, -0.5f, 0.5f, 0.5f, 0.5f, 0.6f), // partially behind the occluder
+				new FrustumCuller.AABB(1.5f, -0.5f, 0.1f, 2f, 0.5f, 0.2f), // outside the frustum
+		};
+		int instanceCount = boxes.length;
+
+		long alignment = instance.deviceProperties.limits().minStorageBufferOffsetAlignment();
+		int indirectUsage = VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT;
+		var instances = combiner.addMappedDeviceLocalBuffer(
+				(long) instanceCount * GpuFrustumCuller.INSTANCE_SIZE, alignment,
+				VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, 0.5f
+		);
+		var commands = combiner.addMappedDeviceLocalBuffer(
+				(long) instanceCount * GpuFrustumCuller.COMMAND_SIZE, alignment, indirectUsage, 0.5f
+		);
+		var count = combiner.addMappedDeviceLocalBuffer(
+				4, alignment, indirectUsage | VK_BUFFER_USAGE_TRANSFER_DST_BIT, 0.5f
+		);
+		var visibility = combiner.addMappedDeviceLocalBuffer(
+				4L * instanceCount, alignment,
+				VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT, 0.5f
+		);
+		var memory = combiner.build(false);
+
+		var hostInstances = instances.byteBuffer();
+		for (int index = 0; index < instanceCount; index++) {
+			GpuFrustumCuller.putInstance(hostInstances, index, boxes[index], 3 * index, 10 + index, -index, index);
+		}
+
+		var culler = new HiZOcclusionCuller(instance, depthImage, "HiZ");
+		culler.setBuffers(instances, commands, count, visibility);
+		var viewProjection = new Matrix4f();
+
+		submitAndWait(instance, recorder -> {
+			// The left half of the screen is covered by an occluder at depth 0.25, and the right half is empty
+			var depthWrite = ResourceUsage.depthStencilAttachmentWrite(VK_IMAGE_LAYOUT_DEPTH_ATTACHMENT_OPTIMAL);
+			recorder.transitionLayout(depthImage, null, depthWrite);
+			var depthAttachment = recorder.simpleDepthRenderingAttachment(
+					depthImage.vkImageView, VK_IMAGE_LAYOUT_DEPTH_ATTACHMENT_OPTIMAL,
+					VK_ATTACHMENT_STORE_OP_STORE, 1f, 0
+			);
+			recorder.beginSimpleDynamicRendering(size, size, null, depthAttachment, null);
+
+			var clearAttachments = VkClearAttachment.calloc(1, recorder.stack);
+			clearAttachments.aspectMask(VK_IMAGE_ASPECT_DEPTH_BIT);
+			clearAttachments.clearValue().depthStencil().set(0.25f, 0);
+			var clearRects = VkClearRect.calloc(1, recorder.stack);
+			clearRects.rect().offset().set(0, 0);
+			clearRects.rect().extent().set(size / 2, size);
+			clearRects.baseArrayLayer(0);
+			clearRects.layerCount(1);
+			vkCmdClearAttachments(recorder.commandBuffer, clearAttachments, clearRects);
+
+			recorder.endDynamicRendering();
+			recorder.transitionLayout(
+					depthImage, depthWrite, ResourceUsage.shaderRead(VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT)
+			);
+			culler.recordResetVisibility(recorder);
+			culler.recordBuildPyramid(recorder);
+			culler.recordCull(recorder, 1, viewProjection, instanceCount);
+			recorder.bulkBufferBarrier(
+					ResourceUsage.computeBuffer(VK_ACCESS_SHADER_WRITE_BIT), ResourceUsage.HOST_READ,
+					commands, count, visibility
+			);
+		});
+
+		// Only the box behind the occluder and the box outside the frustum should be culled
+		assertDrawnInstances(commands, count, instanceCount, 0, 2, 3);
+		var hostVisibility = visibility.intBuffer();
+		int[] expectedVisibility = { 1, 0, 1, 1, 0 };
+		for (int index = 0; index < instanceCount; index++) {
+			assertEquals(expectedVisibility[index], hostVisibility.get(index));
+		}
+
+		// Phase 0 of the next frame should draw the instances that were visible during the previous frame
+		submitAndWait(instance, recorder -> {
+			culler.recordCull(recorder, 0, viewProjection, instanceCount);
+			recorder.bulkBufferBarrier(
+					ResourceUsage.computeBuffer(VK_ACCESS_SHADER_WRITE_BIT), ResourceUsage.HOST_READ, commands, count
+			);
+		});
+		assertDrawnInstances(commands, count, instanceCount, 0, 2, 3);
+
+		// Phase 1 should not draw them again
+		submitAndWait(instance, recorder -> {
+			culler.recordCull(recorder, 1, viewProjection, instanceCount);
+			recorder.bulkBufferBarrier(
+					ResourceUsage.computeBuffer(VK_ACCESS_SHADER_WRITE_BIT), ResourceUsage.HOST_READ,
+					commands, count, visibility
+			);
+		});
+		assertDrawnInstances(commands, count, instanceCount);
+		for (int index = 0; index < instanceCount; index++) {
+			assertEquals(expectedVisibility[index], hostVisibility.get(index));
+		}
+
+		culler.destroy();
+		memory.destroy(instance);
+		instance.destroyInitialObjects();
+	}
+}
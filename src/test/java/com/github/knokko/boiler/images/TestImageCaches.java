@@ -0,0 +1,110 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import com.github.knokko.boiler.memory.MemoryCombiner;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestImageCaches {
+
+	@Test
+	public void testSamplerCache() {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestSamplerCache", 1
+		).validation().forbidValidationErrors().build();
+
+		var cache = instance.images.samplerCache;
+		long nearest1 = cache.borrowSimpleSampler(
+				VK_FILTER_NEAREST, VK_SAMPLER_MIPMAP_MODE_NEAREST, VK_SAMPLER_ADDRESS_MODE_REPEAT, "Nearest1"
+		);
+		long nearest2 = cache.borrowSampler(
+				VK_FILTER_NEAREST, VK_SAMPLER_MIPMAP_MODE_NEAREST, VK_SAMPLER_ADDRESS_MODE_REPEAT,
+				0f, VK_LOD_CLAMP_NONE, true, "Nearest2"
+		);
+		long linear = cache.borrowSimpleSampler(
+				VK_FILTER_LINEAR, VK_SAMPLER_MIPMAP_MODE_NEAREST, VK_SAMPLER_ADDRESS_MODE_REPEAT, "Linear"
+		);
+		long clamped = cache.borrowSampler(
+				VK_FILTER_NEAREST, VK_SAMPLER_MIPMAP_MODE_NEAREST, VK_SAMPLER_ADDRESS_MODE_REPEAT,
+				0f, 2f, true, "Clamped"
+		);
+
+		assertEquals(nearest1, nearest2);
+		assertNotEquals(nearest1, linear);
+		assertNotEquals(nearest1, clamped);
+		assertNotEquals(linear, clamped);
+		assertEquals(3, cache.size());
+		assertEquals(2, cache.referenceCount(nearest1));
+		assertEquals(1, cache.referenceCount(linear));
+
+		cache.returnSampler(nearest1);
+		assertEquals(1, cache.referenceCount(nearest2));
+		assertEquals(3, cache.size());
+
+		cache.returnSampler(nearest2);
+		assertEquals(0, cache.referenceCount(nearest2));
+		assertEquals(2, cache.size());
+		assertThrows(IllegalArgumentException.class, () -> cache.returnSampler(nearest2));
+
+		cache.returnSampler(linear);
+		assertThrows(IllegalStateException.class, cache::destroy);
+		cache.returnSampler(clamped);
+		assertEquals(0, cache.size());
+
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testImageViewCache() {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestImageViewCache", 1
+		).validation().forbidValidationErrors().build();
+
+		var combiner = new MemoryCombiner(instance, "CachedImages");
+		var image1 = combiner.addImage(new ImageBuilder("CachedImage1", 10, 10).texture().doNotCreateView(), 0.5f);
+		var image2 = combiner.addImage(new ImageBuilder("CachedImage2", 10, 10).texture().doNotCreateView(), 0.5f);
+		var mipImage = combiner.addImage(
+				new ImageBuilder("CachedMipImage", 8, 8).texture().mipLevels(4).doNotCreateView(), 0.5f
+		);
+		var memory = combiner.build(false);
+
+		var cache = instance.images.viewCache;
+		long view1 = cache.borrowSimpleView(image1.vkImage, VK_FORMAT_R8G8B8A8_SRGB, VK_IMAGE_ASPECT_COLOR_BIT, "V1");
+		long view2 = cache.borrowView(
+				image1.vkImage, VK_FORMAT_R8G8B8A8_SRGB, VK_IMAGE_ASPECT_COLOR_BIT, 1, 1, "V2"
+		);
+		long view3 = cache.borrowSimpleView(image2.vkImage, VK_FORMAT_R8G8B8A8_SRGB, VK_IMAGE_ASPECT_COLOR_BIT, "V3");
+
+		assertEquals(view1, view2);
+		assertNotEquals(view1, view3);
+		assertEquals(2, cache.referenceCount(view1));
+		assertEquals(2, cache.size());
+
+		// Views of different mip levels must not be shared
+		long mipView0 = cache.borrowView(
+				mipImage.vkImage, VK_FORMAT_R8G8B8A8_SRGB, VK_IMAGE_ASPECT_COLOR_BIT, 0, 1, 1, "Mip0"
+		);
+		long mipView1 = cache.borrowView(
+				mipImage.vkImage, VK_FORMAT_R8G8B8A8_SRGB, VK_IMAGE_ASPECT_COLOR_BIT, 1, 1, 1, "Mip1"
+		);
+		long mipView0Again = cache.borrowSimpleView(
+				mipImage.vkImage, VK_FORMAT_R8G8B8A8_SRGB, VK_IMAGE_ASPECT_COLOR_BIT, "Mip0Again"
+		);
+		assertNotEquals(mipView0, mipView1);
+		assertEquals(mipView0, mipView0Again);
+		assertEquals(4, cache.size());
+
+		cache.returnView(view1);
+		cache.returnView(view2);
+		cache.returnView(view3);
+		cache.returnView(mipView0);
+		cache.returnView(mipView1);
+		cache.returnView(mipView0Again);
+		assertEquals(0, cache.size());
+
+		memory.destroy(instance);
+		instance.destroyInitialObjects();
+	}
+}
@@ -0,0 +1,190 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import com.github.knokko.boiler.commands.SingleTimeCommands;
+import com.github.knokko.boiler.memory.MemoryCombiner;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestImageReadback {
+
+	@Test
+	public void testTiledReadback() throws InterruptedException {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestImageReadback", 1
+		).validation().forbidValidationErrors().build();
+
+		var combiner = new MemoryCombiner(instance, "ReadbackImage");
+		var image = combiner.addImage(new ImageBuilder(
+				"CapturedImage", 20, 35
+		).format(VK_FORMAT_R8G8B8A8_UNORM).setUsage(
+				VK_IMAGE_USAGE_TRANSFER_SRC_BIT | VK_IMAGE_USAGE_TRANSFER_DST_BIT
+		).doNotCreateView(), 0.5f);
+		var memory = combiner.build(false);
+
+		var rowIndices = new ArrayList<Integer>();
+		var pixels = new byte[4 * 20 * 35];
+		var finished = new CountDownLatch(1);
+		List<Long> finishedFrames = new ArrayList<>();
+
+		// Each slot can hold 10 rows, so 4 slots are needed per capture
+		var readback = new ImageReadback(instance, 4 * 20 * 10, 6, 4, new ImageReadback.Consumer() {
+			@Override
+			public void consumeRows(ImageReadback.Capture capture, int firstRow, int numRows, ByteBuffer rows) {
+				assertEquals(4 * 20 * numRows, rows.remaining());
+				rowIndices.add(firstRow);
+				rows.get(pixels, 4 * 20 * firstRow, rows.remaining());
+			}
+
+			@Override
+			public void finished(ImageReadback.Capture capture) {
+				finishedFrames.add(capture.frameIndex);
+				finished.countDown();
+			}
+		}, "TestReadback");
+
+		var commands = new SingleTimeCommands(instance);
+		var captures = new ImageReadback.Capture[2];
+		var submission = commands.submit("Capture", recorder -> {
+			recorder.transitionLayout(image, null, ResourceUsage.TRANSFER_DEST);
+			recorder.clearColorImage(image.vkImage, 1f, 0f, 1f, 0.6f);
+			recorder.transitionLayout(image, ResourceUsage.TRANSFER_DEST, ResourceUsage.TRANSFER_SOURCE);
+			captures[0] = readback.record(recorder, image, 12);
+
+			// There are not enough free slots left for a second capture
+			captures[1] = readback.record(recorder, image, 13);
+		});
+		assertNotNull(captures[0]);
+		assertNull(captures[1]);
+		assertEquals(1, readback.droppedCaptures());
+		assertEquals(12, captures[0].frameIndex);
+		assertEquals(20, captures[0].width);
+		assertEquals(35, captures[0].height);
+
+		readback.submit(captures[0], submission);
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of(0, 10, 20, 30), rowIndices);
+		assertEquals(List.of(12L), finishedFrames);
+
+		for (int index = 0; index < pixels.length; index += 4) {
+			assertEquals((byte) 255, pixels[index]);
+			assertEquals((byte) 0, pixels[index + 1]);
+			assertEquals((byte) 255, pixels[index + 2]);
+			assertEquals((byte) 153, pixels[index + 3]);
+		}
+
+		commands.destroy();
+		readback.destroy();
+		memory.destroy(instance);
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testAbandonAndConsumerFailure() throws InterruptedException {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestImageReadbackFailures", 1
+		).validation().forbidValidationErrors().build();
+
+		var combiner = new MemoryCombiner(instance, "ReadbackImage");
+		var image = combiner.addImage(new ImageBuilder(
+				"CapturedImage", 4, 4
+		).format(VK_FORMAT_R8G8B8A8_UNORM).setUsage(
+				VK_IMAGE_USAGE_TRANSFER_SRC_BIT | VK_IMAGE_USAGE_TRANSFER_DST_BIT
+		).doNotCreateView(), 0.5f);
+		var memory = combiner.build(false);
+
+		List<Long> finishedFrames = new ArrayList<>();
+		var finished = new CountDownLatch(1);
+
+		// Each capture needs the only slot, and the consumer fails on frame 1
+		var readback = new ImageReadback(instance, 4 * 4 * 4, 1, 4, new ImageReadback.Consumer() {
+			@Override
+			public void consumeRows(ImageReadback.Capture capture, int firstRow, int numRows, ByteBuffer rows) {
+				if (capture.frameIndex == 1) throw new RuntimeException("Intentional consumer failure");
+			}
+
+			@Override
+			public void finished(ImageReadback.Capture capture) {
+				finishedFrames.add(capture.frameIndex);
+				finished.countDown();
+			}
+		}, "TestReadbackFailures");
+
+		var commands = new SingleTimeCommands(instance);
+		var captures = new ImageReadback.Capture[3];
+		commands.submit("Prepare", recorder -> {
+			recorder.transitionLayout(image, null, ResourceUsage.TRANSFER_DEST);
+			recorder.clearColorImage(image.vkImage, 1f, 0f, 1f, 0.6f);
+			recorder.transitionLayout(image, ResourceUsage.TRANSFER_DEST, ResourceUsage.TRANSFER_SOURCE);
+			captures[0] = readback.record(recorder, image, 0);
+		}).awaitCompletion();
+
+		// The abandoned capture must return its slot, so that the next capture is not dropped
+		assertNotNull(captures[0]);
+		readback.abandon(captures[0]);
+		assertThrows(IllegalStateException.class, () -> readback.abandon(captures[0]));
+
+		var submission1 = commands.submit("Capture1", recorder -> captures[1] = readback.record(recorder, image, 1));
+		assertNotNull(captures[1]);
+		readback.submit(captures[1], submission1);
+
+		// Wait until the consumer failed on frame 1, after which its slot should be available again
+		long deadline = System.nanoTime() + 5_000_000_000L;
+		while (readback.failedCaptures() == 0 && System.nanoTime() < deadline) Thread.sleep(1);
+		assertEquals(1, readback.failedCaptures());
+
+		// The consumer failure of frame 1 must not stop the background thread
+		var submission2 = commands.submit("Capture2", recorder -> captures[2] = readback.record(recorder, image, 2));
+		assertNotNull(captures[2]);
+		readback.submit(captures[2], submission2);
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of(2L), finishedFrames);
+		assertEquals(1, readback.failedCaptures());
+		assertEquals(0, readback.droppedCaptures());
+
+		commands.destroy();
+		readback.destroy();
+		memory.destroy(instance);
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testRejectImageLargerThanAllSlots() {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestImageReadbackTooLarge", 1
+		).validation().forbidValidationErrors().build();
+
+		var combiner = new MemoryCombiner(instance, "ReadbackImage");
+		var image = combiner.addImage(new ImageBuilder(
+				"CapturedImage", 20, 35
+		).format(VK_FORMAT_R8G8B8A8_UNORM).setUsage(VK_IMAGE_USAGE_TRANSFER_SRC_BIT).doNotCreateView(), 0.5f);
+		var memory = combiner.build(false);
+
+		// Each slot can hold 10 rows, so 4 slots would be needed per capture, but there are only 3
+		var readback = new ImageReadback(
+				instance, 4 * 20 * 10, 3, 4, (capture, firstRow, numRows, rows) -> {}, "TestReadbackTooLarge"
+		);
+
+		var commands = new SingleTimeCommands(instance);
+		commands.submit("Capture", recorder -> {
+			var failure = assertThrows(IllegalArgumentException.class, () -> readback.record(recorder, image, 0));
+			assertTrue(failure.getMessage().contains("at least 4 slots"), failure.getMessage());
+			assertTrue(failure.getMessage().contains("at least 960 bytes"), failure.getMessage());
+		}).awaitCompletion();
+		assertEquals(0, readback.droppedCaptures());
+
+		commands.destroy();
+		readback.destroy();
+		memory.destroy(instance);
+		instance.destroyInitialObjects();
+	}
+}
@@ -0,0 +1,188 @@
+package com.github.knokko.boiler.images;
+
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import com.github.knokko.boiler.commands.SingleTimeCommands;
+import com.github.knokko.boiler.memory.MemoryCombiner;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkBufferImageCopy;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.lwjgl.system.MemoryUtil.memGetInt;
+import static org.lwjgl.system.MemoryUtil.memPutInt;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestTextureUploader {
+
+	@Test
+	public void testDownsampleRGBA8() {
+		var source = ByteBuffer.allocate(4 * 3 * 2);
+		// Row 0: (0, 0, 0, 0), (100, 200, 40, 255), (7, 7, 7, 7)
+		source.put(new byte[] { 0, 0, 0, 0, 100, (byte) 200, 40, (byte) 255, 7, 7, 7, 7 });
+		// Row 1: (100, 0, 0, 255), (0, 200, 40, 255), (9, 9, 9, 9)
+		source.put(new byte[] { 100, 0, 0, (byte) 255, 0, (byte) 200, 40, (byte) 255, 9, 9, 9, 9 });
+		source.flip();
+
+		var destination = ByteBuffer.allocate(4);
+		TextureUploader.downsampleRGBA8(source, 3, 2, destination, false);
+		assertEquals(50, destination.get(0) & 0xFF);
+		assertEquals(100, destination.get(1) & 0xFF);
+		assertEquals(20, destination.get(2) & 0xFF);
+		assertEquals(191, destination.get(3) & 0xFF);
+
+		// A uniform image must stay the same, also in sRGB mode
+		var uniform = ByteBuffer.allocate(4 * 4);
+		for (int index = 0; index < 4; index++) uniform.put(new byte[] { 10, (byte) 128, (byte) 250, 77 });
+		uniform.flip();
+		TextureUploader.downsampleRGBA8(uniform, 2, 2, destination, true);
+		assertEquals(10, destination.get(0) & 0xFF);
+		assertEquals(128, destination.get(1) & 0xFF);
+		assertEquals(250, destination.get(2) & 0xFF);
+		assertEquals(77, destination.get(3) & 0xFF);
+
+		// Black and white should average to 188 in sRGB space
+		var blackWhite = ByteBuffer.allocate(4 * 2);
+		blackWhite.put(new byte[] { 0, 0, 0, 0, (byte) 255, (byte) 255, (byte) 255, (byte) 255 });
+		blackWhite.flip();
+		TextureUploader.downsampleRGBA8(blackWhite, 2, 1, destination, true);
+		assertEquals(188, destination.get(0) & 0xFF);
+		assertEquals(128, destination.get(3) & 0xFF);
+	}
+
+	@Test
+	public void testStagingAlignment() {
+		// Textures with 1 mip level don't need the BoilerInstance
+		var uploader = new TextureUploader(null);
+		assertEquals(16, uploader.stagingAlignment());
+
+		assertEquals(0, uploader.add(new VkbImage(0L, 5, 1, VK_IMAGE_ASPECT_COLOR_BIT), VK_FORMAT_R8G8B8A8_UNORM, 4));
+		assertEquals(20, uploader.stagingSize());
+
+		// The level offsets must be multiples of the texel size, so 3-byte and 6-byte texels need special care
+		assertEquals(1, uploader.add(new VkbImage(0L, 1, 1, VK_IMAGE_ASPECT_COLOR_BIT), VK_FORMAT_R8G8B8_UNORM, 3));
+		assertEquals(48 + 3, uploader.stagingSize());
+		assertEquals(2, uploader.add(
+				new VkbImage(0L, 2, 1, VK_IMAGE_ASPECT_COLOR_BIT), VK_FORMAT_R16G16B16_UNORM, 6
+		));
+		assertEquals(96 + 12, uploader.stagingSize());
+		assertEquals(48, uploader.stagingAlignment());
+	}
+
+	@Test
+	public void testUploadMipmappedTextures() {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestTextureUploader", 1
+		).validation().forbidValidationErrors().build();
+
+		var combiner = new MemoryCombiner(instance, "Textures");
+		var texture1 = combiner.addImage(new ImageBuilder(
+				"Texture1", 8, 4
+		).texture().format(VK_FORMAT_R8G8B8A8_UNORM).fullMipChain(), 0.5f);
+		var texture2 = combiner.addImage(new ImageBuilder(
+				"Texture2", 5, 17
+		).texture().format(VK_FORMAT_R8G8B8A8_UNORM).fullMipChain(), 0.5f);
+		assertEquals(4, texture1.mipLevels);
+		assertEquals(5, texture2.mipLevels);
+
+		var uploader = new TextureUploader(instance);
+		assertEquals(0, uploader.add(texture1, VK_FORMAT_R8G8B8A8_UNORM, 4));
+		assertEquals(1, uploader.add(texture2, VK_FORMAT_R8G8B8A8_UNORM, 4));
+
+		var stagingBuffer = combiner.addMappedBuffer(uploader.stagingSize(), 16, VK_BUFFER_USAGE_TRANSFER_SRC_BIT);
+		var readbackBuffer = combiner.addMappedBuffer(8, 4, VK_BUFFER_USAGE_TRANSFER_DST_BIT);
+		var memory = combiner.build(false);
+
+		var level1 = uploader.level0(stagingBuffer, 0);
+		for (long offset = 0; offset < level1.size; offset += 4) memPutInt(level1.hostAddress + offset, 0x12345678);
+		var level2 = uploader.level0(stagingBuffer, 1);
+		for (long offset = 0; offset < level2.size; offset += 4) memPutInt(level2.hostAddress + offset, 0x0A0B0C0D);
+
+		SingleTimeCommands.submit(instance, "UploadTextures", recorder -> {
+			uploader.record(recorder, stagingBuffer, ResourceUsage.TRANSFER_SOURCE);
+
+			var copyRegions = VkBufferImageCopy.calloc(1, recorder.stack);
+			var copyRegion = copyRegions.get(0);
+			instance.images.subresourceLayers(copyRegion.imageSubresource(), VK_IMAGE_ASPECT_COLOR_BIT);
+			copyRegion.imageExtent().set(1, 1, 1);
+
+			copyRegion.bufferOffset(readbackBuffer.offset);
+			copyRegion.imageSubresource().mipLevel(3);
+			vkCmdCopyImageToBuffer(
+					recorder.commandBuffer, texture1.vkImage, VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+					readbackBuffer.vkBuffer, copyRegions
+			);
+
+			copyRegion.bufferOffset(readbackBuffer.offset + 4);
+			copyRegion.imageSubresource().mipLevel(4);
+			vkCmdCopyImageToBuffer(
+					recorder.commandBuffer, texture2.vkImage, VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+					readbackBuffer.vkBuffer, copyRegions
+			);
+			recorder.bufferBarrier(readbackBuffer, ResourceUsage.TRANSFER_DEST, ResourceUsage.HOST_READ);
+		}).destroy();
+
+		assertEquals(0x12345678, memGetInt(readbackBuffer.hostAddress));
+		assertEquals(0x0A0B0C0D, memGetInt(readbackBuffer.hostAddress + 4));
+
+		memory.destroy(instance);
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testUploadCpuMipmappedTexture() {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestTextureUploaderCpu", 1
+		).validation().forbidValidationErrors().build();
+
+		// Integer formats never support linear filtering, so their mip levels must be computed on the CPU
+		int format = VK_FORMAT_R8G8B8A8_UINT;
+		var combiner = new MemoryCombiner(instance, "Texture");
+		var texture = combiner.addImage(new ImageBuilder(
+				"Texture", 4, 2
+		).texture().format(format).fullMipChain(), 0.5f);
+		assertEquals(3, texture.mipLevels);
+
+		var uploader = new TextureUploader(instance);
+		assertEquals(0, uploader.add(texture, format, 4));
+		assertTrue(uploader.usesCpuMipmaps(0));
+
+		var stagingBuffer = combiner.addMappedBuffer(
+				uploader.stagingSize(), uploader.stagingAlignment(), VK_BUFFER_USAGE_TRANSFER_SRC_BIT
+		);
+		var readbackBuffer = combiner.addMappedBuffer(4, 4, VK_BUFFER_USAGE_TRANSFER_DST_BIT);
+		var memory = combiner.build(false);
+
+		// All channels of pixel (x, y) are 40x + 100y, so mip level 1 is (70, 150), and mip level 2 is 55
+		var level0 = uploader.level0(stagingBuffer, 0).byteBuffer();
+		for (int y = 0; y < 2; y++) {
+			for (int x = 0; x < 4; x++) {
+				for (int channel = 0; channel < 4; channel++) level0.put((byte) (40 * x + 100 * y));
+			}
+		}
+
+		SingleTimeCommands.submit(instance, "UploadTexture", recorder -> {
+			uploader.record(recorder, stagingBuffer, ResourceUsage.TRANSFER_SOURCE);
+
+			var copyRegions = VkBufferImageCopy.calloc(1, recorder.stack);
+			var copyRegion = copyRegions.get(0);
+			instance.images.subresourceLayers(copyRegion.imageSubresource(), VK_IMAGE_ASPECT_COLOR_BIT);
+			copyRegion.imageSubresource().mipLevel(2);
+			copyRegion.imageExtent().set(1, 1, 1);
+			copyRegion.bufferOffset(readbackBuffer.offset);
+			vkCmdCopyImageToBuffer(
+					recorder.commandBuffer, texture.vkImage, VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+					readbackBuffer.vkBuffer, copyRegions
+			);
+			recorder.bufferBarrier(readbackBuffer, ResourceUsage.TRANSFER_DEST, ResourceUsage.HOST_READ);
+		}).destroy();
+
+		var smallestLevel = readbackBuffer.byteBuffer();
+		for (int channel = 0; channel < 4; channel++) assertEquals(55, smallestLevel.get(channel) & 0xFF);
+
+		memory.destroy(instance);
+		instance.destroyInitialObjects();
+	}
+}
@@ -0,0 +1,77 @@
+package com.github.knokko.boiler.images.sparse;
+
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import com.github.knokko.boiler.images.ImageBuilder;
+import com.github.knokko.boiler.memory.MemoryCombiner;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkQueueFamilyProperties;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestSparseImage {
+
+	@Test
+	public void testStreamTiles() {
+		boolean[] supportsSparse = { false };
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestSparseImage", 1
+		).validation().forbidValidationErrors().featurePicker10((stack, supported, toEnable) -> {
+			if (supported.sparseBinding() && supported.sparseResidencyImage2D()) {
+				toEnable.sparseBinding(true);
+				toEnable.sparseResidencyImage2D(true);
+				supportsSparse[0] = true;
+			}
+		}).build();
+
+		var queueFamily = instance.queueFamilies().graphics();
+		try (var stack = stackPush()) {
+			var pNumFamilies = stack.callocInt(1);
+			vkGetPhysicalDeviceQueueFamilyProperties(instance.vkPhysicalDevice(), pNumFamilies, null);
+			var families = VkQueueFamilyProperties.calloc(pNumFamilies.get(0), stack);
+			vkGetPhysicalDeviceQueueFamilyProperties(instance.vkPhysicalDevice(), pNumFamilies, families);
+			if ((families.get(queueFamily.index()).queueFlags() & VK_QUEUE_SPARSE_BINDING_BIT) == 0) {
+				supportsSparse[0] = false;
+			}
+		}
+
+		if (supportsSparse[0]) {
+			var builder = new ImageBuilder("SparseHeightmap", 4096, 4096).texture().format(
+					VK_FORMAT_R8G8B8A8_UNORM
+			).fullMipChain().sparseResidency();
+			var sparseImage = new SparseImage(instance, builder, 8, queueFamily.first());
+			var pageTable = sparseImage.residency.pageTable;
+			assertTrue(pageTable.numTiles() > 8);
+			assertNotEquals(VK_NULL_HANDLE, sparseImage.image.vkImageView);
+
+			// Request more tiles than there are pages
+			for (int frame = 0; frame < 3; frame++) {
+				int[] requested = pageTable.tilesInRegion(0, frame * 1000, 0, frame * 1000 + 600, 600);
+				var update = sparseImage.residency.update(requested, 6);
+				var fence = instance.sync.fenceBank.borrowFence(false, "SparseBind");
+				sparseImage.applyUpdate(queueFamily.first(), update, new long[0], fence).awaitCompletion();
+				instance.sync.fenceBank.returnFence(fence);
+				assertTrue(pageTable.numResidentTiles() <= 8);
+			}
+
+			sparseImage.destroy();
+		}
+
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testRejectSparseImagesInMemoryCombiner() {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestSparseImage", 1
+		).validation().forbidValidationErrors().build();
+
+		var combiner = new MemoryCombiner(instance, "Sparse");
+		assertThrows(IllegalArgumentException.class, () -> combiner.addImage(
+				new ImageBuilder("Sparse", 10, 10).texture().sparseResidency(), 0.5f
+		));
+
+		instance.destroyInitialObjects();
+	}
+}
@@ -0,0 +1,65 @@
+package com.github.knokko.boiler.images.sparse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSparsePageTable {
+
+	@Test
+	public void testTileIndices() {
+		// Mip 0: 3x2 tiles, mip 1: 2x1 tiles, mip 2: 1x1 tiles
+		var pageTable = new SparsePageTable(300, 200, 128, 128, 3);
+		assertEquals(3, pageTable.tilesX(0));
+		assertEquals(2, pageTable.tilesY(0));
+		assertEquals(2, pageTable.tilesX(1));
+		assertEquals(1, pageTable.tilesY(1));
+		assertEquals(1, pageTable.tilesX(2));
+		assertEquals(1, pageTable.tilesY(2));
+		assertEquals(9, pageTable.numTiles());
+
+		for (int tile = 0; tile < pageTable.numTiles(); tile++) {
+			int mipLevel = pageTable.mipLevel(tile);
+			assertEquals(tile, pageTable.tileIndex(mipLevel, pageTable.tileX(tile), pageTable.tileY(tile)));
+		}
+		assertEquals(5, pageTable.tileIndex(0, 2, 1));
+		assertEquals(6, pageTable.tileIndex(1, 0, 0));
+		assertEquals(8, pageTable.tileIndex(2, 0, 0));
+
+		assertThrows(IllegalArgumentException.class, () -> pageTable.tileIndex(0, 3, 0));
+		assertThrows(IllegalArgumentException.class, () -> pageTable.tileIndex(3, 0, 0));
+		assertThrows(IllegalArgumentException.class, () -> pageTable.getPage(9));
+	}
+
+	@Test
+	public void testResidency() {
+		var pageTable = new SparsePageTable(256, 256, 128, 128, 1);
+		assertFalse(pageTable.isResident(2));
+		assertEquals(-1, pageTable.getPage(2));
+
+		pageTable.setPage(2, 5);
+		assertTrue(pageTable.isResident(2));
+		assertEquals(5, pageTable.getPage(2));
+		assertEquals(1, pageTable.numResidentTiles());
+
+		pageTable.setPage(2, -1);
+		assertFalse(pageTable.isResident(2));
+		assertEquals(0, pageTable.numResidentTiles());
+	}
+
+	@Test
+	public void testTilesInRegion() {
+		var pageTable = new SparsePageTable(1024, 512, 128, 128, 2);
+		assertArrayEquals(new int[] {
+				pageTable.tileIndex(0, 1, 0), pageTable.tileIndex(0, 2, 0),
+				pageTable.tileIndex(0, 1, 1), pageTable.tileIndex(0, 2, 1)
+		}, pageTable.tilesInRegion(0, 200, 100, 300, 129));
+
+		// The region should be clamped to the mip level
+		assertArrayEquals(new int[] {
+				pageTable.tileIndex(1, 3, 0), pageTable.tileIndex(1, 3, 1)
+		}, pageTable.tilesInRegion(1, 500, -50, 5000, 5000));
+
+		assertEquals(0, pageTable.tilesInRegion(0, 100, 100, 100, 200).length);
+	}
+}
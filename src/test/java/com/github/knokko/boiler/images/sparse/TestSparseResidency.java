@@ -0,0 +1,104 @@
+package com.github.knokko.boiler.images.sparse;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSparseResidency {
+
+	@Test
+	public void testTileLru() {
+		var lru = new TileLru(10);
+		assertEquals(-1, lru.leastRecentlyUsed());
+
+		lru.touch(3);
+		lru.touch(5);
+		lru.touch(7);
+		assertEquals(3, lru.size());
+		assertEquals(3, lru.leastRecentlyUsed());
+
+		lru.touch(3);
+		assertEquals(3, lru.size());
+		assertEquals(5, lru.leastRecentlyUsed());
+
+		lru.remove(5);
+		assertFalse(lru.contains(5));
+		assertEquals(7, lru.leastRecentlyUsed());
+
+		lru.remove(7);
+		lru.remove(7);
+		assertEquals(1, lru.size());
+		assertEquals(3, lru.leastRecentlyUsed());
+
+		lru.remove(3);
+		assertEquals(0, lru.size());
+		assertEquals(-1, lru.leastRecentlyUsed());
+	}
+
+	@Test
+	public void testBindFreePages() {
+		var residency = new SparseResidency(new SparsePageTable(512, 512, 128, 128, 1), 3);
+		var update = residency.update(new int[] { 4, 8 }, 10);
+		assertArrayEquals(new int[] { 4, 8 }, update.boundTiles());
+		assertArrayEquals(new int[] { 0, 1 }, update.boundPages());
+		assertEquals(0, update.unboundTiles().length);
+		assertEquals(1, residency.numFreePages());
+		assertEquals(0, residency.pageTable.getPage(4));
+
+		// Resident tiles don't need to be bound again
+		assertTrue(residency.update(new int[] { 4, 8 }, 10).isEmpty());
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() {
+		var residency = new SparseResidency(new SparsePageTable(512, 512, 128, 128, 1), 2);
+		residency.update(new int[] { 1, 2 }, 10);
+		residency.update(new int[] { 1 }, 10);
+
+		// Tile 2 was used less recently than tile 1, so its page should be taken
+		var update = residency.update(new int[] { 3 }, 10);
+		assertArrayEquals(new int[] { 3 }, update.boundTiles());
+		assertArrayEquals(new int[] { 1 }, update.boundPages());
+		assertArrayEquals(new int[] { 2 }, update.unboundTiles());
+		assertFalse(residency.pageTable.isResident(2));
+		assertTrue(residency.pageTable.isResident(1));
+	}
+
+	@Test
+	public void testDoNotEvictRequestedTiles() {
+		var residency = new SparseResidency(new SparsePageTable(512, 512, 128, 128, 1), 2);
+		residency.update(new int[] { 1, 2 }, 10);
+
+		// All resident tiles are requested, so there is no room for tile 3
+		var update = residency.update(new int[] { 1, 2, 3 }, 10);
+		assertTrue(update.isEmpty());
+		assertFalse(residency.pageTable.isResident(3));
+	}
+
+	@Test
+	public void testMaxBinds() {
+		var residency = new SparseResidency(new SparsePageTable(512, 512, 128, 128, 1), 10);
+		var update = residency.update(new int[] { 5, 6, 7, 8 }, 2);
+		assertArrayEquals(new int[] { 5, 6 }, update.boundTiles());
+
+		update = residency.update(new int[] { 5, 6, 7, 8 }, 2);
+		assertArrayEquals(new int[] { 7, 8 }, update.boundTiles());
+	}
+
+	@Test
+	public void testEvict() {
+		var residency = new SparseResidency(new SparsePageTable(512, 512, 128, 128, 1), 2);
+		residency.update(new int[] { 1, 2 }, 10);
+		assertTrue(residency.evict(1));
+		assertFalse(residency.evict(1));
+		assertTrue(residency.evict(2));
+		assertEquals(2, residency.numFreePages());
+
+		// Tile 2 is bound again, so only tile 1 needs to be unbound
+		var update = residency.update(new int[] { 2 }, 10);
+		assertArrayEquals(new int[] { 2 }, update.boundTiles());
+		assertArrayEquals(new int[] { 1 }, update.unboundTiles());
+
+		assertTrue(residency.update(new int[] { 2 }, 10).isEmpty());
+	}
+}
@@ -0,0 +1,110 @@
+package com.github.knokko.boiler.memory;
+
+import com.github.knokko.boiler.buffers.VkbBuffer;
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import com.github.knokko.boiler.images.ImageBuilder;
+import com.github.knokko.boiler.images.VkbImage;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK11.VK_API_VERSION_1_1;
+
+public class TestDedicatedAllocations {
+
+	private void testLargeRenderTarget(int apiVersion, boolean useVma) {
+		var instance = new BoilerBuilder(
+				apiVersion, "TestDedicatedAllocations", 1
+		).validation().forbidValidationErrors().build();
+
+		var combiner = new MemoryCombiner(instance, "DedicatedMemory");
+		var renderTarget = combiner.addImage(new ImageBuilder("RenderTarget", 2048, 2048).colorAttachment(), 1f);
+		var texture = combiner.addImage(new ImageBuilder("SmallTexture", 16, 16).texture(), 0.5f);
+		var buffer = combiner.addBuffer(1000L, 4L, VK_BUFFER_USAGE_VERTEX_BUFFER_BIT, 0.5f);
+		var memory = combiner.build(useVma);
+
+		assertNotEquals(VK_NULL_HANDLE, renderTarget.vkImageView);
+		assertNotEquals(VK_NULL_HANDLE, texture.vkImageView);
+		assertNotEquals(VK_NULL_HANDLE, buffer.vkBuffer);
+
+		if (useVma) memory.destroy(instance);
+		else {
+			// Dedicated allocations must not be recycled for other images
+			var recycler = new MemoryCombiner(instance, "RecycledMemory");
+			recycler.addImage(new ImageBuilder("OtherTarget", 2048, 2048).colorAttachment(), 1f);
+			recycler.addImage(new ImageBuilder("OtherTexture", 16, 16).texture(), 0.5f);
+			recycler.buildAndRecycle(memory).destroy(instance);
+		}
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testLargeRenderTarget() {
+		for (int apiVersion : new int[] { VK_API_VERSION_1_0, VK_API_VERSION_1_1 }) {
+			testLargeRenderTarget(apiVersion, false);
+			testLargeRenderTarget(apiVersion, true);
+		}
+	}
+
+	@Test
+	public void checkArithmetic() {
+		var claims = new MemoryTypeClaims();
+
+		var bufferClaims = new BufferUsageClaims();
+		bufferClaims.claims.add(new BufferClaim(new VkbBuffer(100L), 4L));
+		bufferClaims.groupClaims(12345);
+		bufferClaims.setBuffer(0, 123L, 100L, 4L);
+		claims.buffers.add(bufferClaims);
+
+		var dedicatedBufferClaims = new BufferUsageClaims();
+		dedicatedBufferClaims.claims.add(new BufferClaim(new VkbBuffer(5000L), 4L));
+		dedicatedBufferClaims.groupClaims(12345);
+		dedicatedBufferClaims.setBuffer(0, 124L, 5000L, 4L);
+		dedicatedBufferClaims.groupedClaims.get(0).dedicated = true;
+		claims.buffers.add(dedicatedBufferClaims);
+
+		var smallImage = new ImageClaim(
+				new VkbImage(10L, 1, 1, VK_IMAGE_ASPECT_COLOR_BIT), new ImageBuilder("Small", 1, 1), 200L, 64L
+		);
+		var largeImage = new ImageClaim(
+				new VkbImage(11L, 100, 100, VK_IMAGE_ASPECT_COLOR_BIT), new ImageBuilder("Large", 100, 100), 9000L, 64L
+		);
+		largeImage.dedicated = true;
+		claims.images.add(largeImage);
+		claims.images.add(smallImage);
+
+		var sizes = claims.prepareAllocations(1024L, 123456L);
+		assertEquals(3, sizes.size());
+
+		// The shared allocation contains the small buffer at offset 0 and the small image on the next page
+		assertEquals(0, bufferClaims.groupedClaims.get(0).allocationIndex);
+		assertEquals(0L, bufferClaims.groupedClaims.get(0).memoryOffset);
+		assertEquals(0, smallImage.allocationIndex);
+		assertEquals(1024L, smallImage.memoryOffset);
+		assertEquals(1224L, sizes.get(0));
+
+		// The dedicated claims get their own allocation, without any other claims
+		assertEquals(1, dedicatedBufferClaims.groupedClaims.get(0).allocationIndex);
+		assertEquals(0L, dedicatedBufferClaims.groupedClaims.get(0).memoryOffset);
+		assertEquals(5000L, sizes.get(1));
+		assertEquals(2, largeImage.allocationIndex);
+		assertEquals(0L, largeImage.memoryOffset);
+		assertEquals(9000L, sizes.get(2));
+	}
+
+	@Test
+	public void checkArithmeticWithOnlyDedicatedClaims() {
+		var claims = new MemoryTypeClaims();
+		var largeImage = new ImageClaim(
+				new VkbImage(11L, 100, 100, VK_IMAGE_ASPECT_COLOR_BIT), new ImageBuilder("Large", 100, 100), 9000L, 64L
+		);
+		largeImage.dedicated = true;
+		claims.images.add(largeImage);
+
+		// There should not be an empty shared allocation
+		var sizes = claims.prepareAllocations(1024L, 123456L);
+		assertEquals(1, sizes.size());
+		assertEquals(9000L, sizes.get(0));
+		assertEquals(0, largeImage.allocationIndex);
+	}
+}
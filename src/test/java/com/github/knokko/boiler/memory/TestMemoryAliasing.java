@@ -0,0 +1,123 @@
+package com.github.knokko.boiler.memory;
+
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import com.github.knokko.boiler.images.ImageBuilder;
+import com.github.knokko.boiler.images.VkbImage;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestMemoryAliasing {
+
+	@Test
+	public void testPlanChain() {
+		long[] sizes = { 100L, 100L, 100L, 100L };
+		long[] alignments = { 1L, 1L, 1L, 1L };
+		Lifetime[] lifetimes = {
+				new Lifetime(0, 1), new Lifetime(1, 2), new Lifetime(2, 3), new Lifetime(3, 4)
+		};
+		long[] offsets = new long[4];
+
+		// Only 2 images are alive at the same time
+		assertEquals(200L, AliasingPlanner.plan(sizes, alignments, lifetimes, offsets));
+		assertEquals(0L, offsets[0]);
+		assertEquals(100L, offsets[1]);
+		assertEquals(0L, offsets[2]);
+		assertEquals(100L, offsets[3]);
+	}
+
+	@Test
+	public void testPlanGapsAndAlignment() {
+		long[] sizes = { 1000L, 300L, 50L, 600L };
+		long[] alignments = { 1L, 1L, 64L, 1L };
+		Lifetime[] lifetimes = {
+				new Lifetime(0, 0), new Lifetime(1, 5), new Lifetime(2, 2), new Lifetime(3, 3)
+		};
+		long[] offsets = new long[4];
+
+		// The largest claim goes first, and the others overlap with claim 1, but not with each other
+		assertEquals(1000L, AliasingPlanner.plan(sizes, alignments, lifetimes, offsets));
+		assertEquals(0L, offsets[0]);
+		assertEquals(0L, offsets[3]);
+		assertEquals(600L, offsets[1]);
+		assertEquals(0L, offsets[2]);
+	}
+
+	@Test
+	public void testPlanWithoutAliasing() {
+		long[] sizes = { 10L, 20L, 30L };
+		long[] alignments = { 16L, 16L, 16L };
+		Lifetime[] lifetimes = { new Lifetime(0, 5), new Lifetime(2, 3), new Lifetime(3, 4) };
+		long[] offsets = new long[3];
+
+		assertEquals(74L, AliasingPlanner.plan(sizes, alignments, lifetimes, offsets));
+		assertEquals(0L, offsets[2]);
+		assertEquals(32L, offsets[1]);
+		assertEquals(64L, offsets[0]);
+	}
+
+	@Test
+	public void testInvalidLifetime() {
+		assertThrows(IllegalArgumentException.class, () -> new Lifetime(3, 2));
+	}
+
+	private void testPostProcessingChain(boolean useVma) {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestMemoryAliasing", 1
+		).validation().forbidValidationErrors().build();
+
+		var combiner = new MemoryCombiner(instance, "AliasedMemory");
+		combiner.setDedicatedAllocationThreshold(Long.MAX_VALUE);
+		var sceneImage = combiner.addImage(new ImageBuilder("Scene", 256, 256).colorAttachment(), 1f);
+		var images = new VkbImage[4];
+		for (int pass = 0; pass < images.length; pass++) {
+			images[pass] = combiner.addTransientImage(
+					new ImageBuilder("PostProcessing" + pass, 256, 256).colorAttachment().addUsage(
+							VK_IMAGE_USAGE_SAMPLED_BIT
+					), pass, pass + 1, 1f
+			);
+		}
+		var transientBuffer = combiner.addTransientBuffer(
+				12345L, 16L, VK_BUFFER_USAGE_STORAGE_BUFFER_BIT, 4, 5, 1f
+		);
+		var depthImage = combiner.addImage(
+				new ImageBuilder("Depth", 256, 256).depthAttachment(VK_FORMAT_D32_SFLOAT).lazilyAllocated(), 1f
+		);
+
+		// The post-processing images have the same memory requirements, so they should get the same memory type
+		var transientMemoryTypes = combiner.claims.values().stream().filter(
+				claims -> claims.images.stream().anyMatch(claim -> claim.lifetime != null)
+		).toList();
+		assertEquals(1, transientMemoryTypes.size());
+		var transientClaims = transientMemoryTypes.get(0).images.stream().filter(claim -> claim.lifetime != null).toList();
+		var memory = combiner.build(useVma);
+
+		assertNotEquals(VK_NULL_HANDLE, sceneImage.vkImageView);
+		assertNotEquals(VK_NULL_HANDLE, transientBuffer.vkBuffer);
+		assertNotEquals(VK_NULL_HANDLE, depthImage.vkImageView);
+
+		// Images with disjoint lifetimes should share memory
+		assertEquals(4, transientClaims.size());
+		var claim0 = transientClaims.stream().filter(claim -> claim.image == images[0]).findAny().orElseThrow();
+		var claim2 = transientClaims.stream().filter(claim -> claim.image == images[2]).findAny().orElseThrow();
+		var claim1 = transientClaims.stream().filter(claim -> claim.image == images[1]).findAny().orElseThrow();
+		assertEquals(claim0.allocationIndex, claim1.allocationIndex);
+		assertEquals(claim0.allocationIndex, claim2.allocationIndex);
+		assertEquals(claim0.memoryOffset, claim2.memoryOffset);
+		assertNotEquals(claim0.memoryOffset, claim1.memoryOffset);
+
+		memory.destroy(instance);
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testPostProcessingChainWithoutVma() {
+		testPostProcessingChain(false);
+	}
+
+	@Test
+	public void testPostProcessingChainWithVma() {
+		testPostProcessingChain(true);
+	}
+}
@@ -0,0 +1,93 @@
+package com.github.knokko.boiler.memory;
+
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK11.VK_API_VERSION_1_1;
+
+public class TestMemoryBudget {
+
+	private void testBudget(int apiVersion) {
+		var instance = new BoilerBuilder(
+				apiVersion, "TestMemoryBudget", 1
+		).validation().forbidValidationErrors().build();
+
+		var memoryInfo = instance.memoryInfo;
+		for (int heapIndex = 0; heapIndex < memoryInfo.numMemoryHeaps; heapIndex++) {
+			assertTrue(memoryInfo.getBudget(heapIndex) > 0L);
+			assertTrue(memoryInfo.getUsage(heapIndex) >= 0L);
+		}
+
+		List<Integer> pressuredHeaps = new ArrayList<>();
+		memoryInfo.addPressureListener((heapIndex, usage, budget) -> {
+			assertTrue(usage > 0L);
+			assertTrue(budget > 0L);
+			pressuredHeaps.add(heapIndex);
+		});
+
+		// Prevent automatic refreshes, so that we can observe the effect of the allocation on the cached usage
+		memoryInfo.setBudgetRefreshInterval(Long.MAX_VALUE);
+		memoryInfo.refreshBudget();
+
+		var combiner = new MemoryCombiner(instance, "BudgetMemory");
+		var buffer = combiner.addBuffer(10_000_000L, 4L, VK_BUFFER_USAGE_TRANSFER_DST_BIT, 0.5f);
+		var block = combiner.build(false);
+
+		int heapIndex = memoryInfo.getHeapIndex(buffer.memoryTypeIndex);
+		memoryInfo.setPressureThreshold(Float.MIN_VALUE);
+		memoryInfo.refreshBudget();
+		assertTrue(pressuredHeaps.contains(heapIndex));
+
+		// The listener should not be called again while the heap stays under pressure
+		pressuredHeaps.clear();
+		memoryInfo.refreshBudget();
+		assertFalse(pressuredHeaps.contains(heapIndex));
+
+		long usageAllocated = memoryInfo.getUsage(heapIndex);
+		block.destroy(instance);
+		assertTrue(memoryInfo.getUsage(heapIndex) <= usageAllocated - 10_000_000L);
+		assertThrows(IllegalArgumentException.class, () -> memoryInfo.setPressureThreshold(0f));
+		instance.destroyInitialObjects();
+	}
+
+	@Test
+	public void testBudgetVulkan10() {
+		testBudget(VK_API_VERSION_1_0);
+	}
+
+	@Test
+	public void testBudgetVulkan11() {
+		testBudget(VK_API_VERSION_1_1);
+	}
+
+	@Test
+	public void testWouldExceedBudget() {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestWouldExceedBudget", 1
+		).validation().forbidValidationErrors().build();
+
+		var memoryInfo = instance.memoryInfo;
+		for (int memoryType = 0; memoryType < memoryInfo.numMemoryTypes; memoryType++) {
+			long budget = memoryInfo.getBudget(memoryInfo.getHeapIndex(memoryType));
+			assertFalse(memoryInfo.wouldExceedBudget(memoryType, 1L, 0f));
+			assertTrue(memoryInfo.wouldExceedBudget(memoryType, budget + 1L, 1f));
+
+			// Low-priority allocations should hit the limit before high-priority allocations
+			memoryInfo.setPressureThreshold(0.5f);
+			long usage = memoryInfo.getUsage(memoryInfo.getHeapIndex(memoryType));
+			long size = (long) (0.75 * budget) - usage;
+			if (size > 0L) {
+				assertTrue(memoryInfo.wouldExceedBudget(memoryType, size, 0f));
+				assertFalse(memoryInfo.wouldExceedBudget(memoryType, size, 1f));
+			}
+			memoryInfo.setPressureThreshold(0.9f);
+		}
+
+		instance.destroyInitialObjects();
+	}
+}
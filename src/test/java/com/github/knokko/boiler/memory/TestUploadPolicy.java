@@ -0,0 +1,76 @@
+package com.github.knokko.boiler.memory;
+
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import com.github.knokko.boiler.commands.SingleTimeCommands;
+import com.github.knokko.boiler.synchronization.ResourceUsage;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestUploadPolicy {
+
+	@Test
+	public void testUploadPaths() {
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestUploadPolicy", 1
+		).validation().forbidValidationErrors().build();
+
+		var memoryInfo = instance.memoryInfo;
+		boolean hasBar = memoryInfo.getBarHeapIndex() != -1;
+		assertEquals(hasBar, !memoryInfo.hybridMemoryTypes.isEmpty());
+		if (memoryInfo.hasResizableBar()) assertTrue(hasBar);
+
+		// Allow 1 direct upload of 1000 bytes
+		var policy = new UploadPolicy(instance, 1500L, 1000L);
+		var combiner = new MemoryCombiner(instance, "UploadMemory");
+		int usage = VK_BUFFER_USAGE_TRANSFER_SRC_BIT;
+		var first = policy.add(combiner, combiner, 1000L, 4L, usage, 0.5f);
+		var second = policy.add(combiner, combiner, 1000L, 4L, usage, 0.5f);
+		var tooLarge = policy.add(combiner, combiner, 1001L, 4L, usage, 0.5f);
+
+		assertEquals(hasBar, first.isDirect());
+		assertFalse(second.isDirect());
+		assertFalse(tooLarge.isDirect());
+		if (first.isDirect()) assertSame(first.destination, first.hostBuffer);
+		assertNotSame(second.destination, second.hostBuffer);
+
+		assertEquals(hasBar ? 1L : 0L, policy.getDirectUploadCount());
+		assertEquals(hasBar ? 1000L : 0L, policy.getDirectUploadBytes());
+		assertEquals(hasBar ? 2L : 3L, policy.getStagedUploadCount());
+		assertEquals(hasBar ? 2001L : 3001L, policy.getStagedUploadBytes());
+		assertEquals(hasBar ? 1000L : 0L, policy.getDirectBytesInUse());
+
+		var memory = combiner.build(false);
+		var uploads = new UploadPolicy.Upload[] { first, second, tooLarge };
+		for (var upload : uploads) {
+			var hostBuffer = upload.hostBuffer.byteBuffer();
+			for (int index = 0; index < hostBuffer.capacity(); index++) hostBuffer.put(index, (byte) (3 * index));
+		}
+
+		var readbackCombiner = new MemoryCombiner(instance, "ReadbackMemory");
+		var readback = readbackCombiner.addMappedReadbackBuffer(1000L, 4L, VK_BUFFER_USAGE_TRANSFER_DST_BIT);
+		var readbackMemory = readbackCombiner.build(false);
+
+		for (var upload : uploads) {
+			SingleTimeCommands.submit(instance, "Upload", recorder -> {
+				policy.record(recorder, ResourceUsage.TRANSFER_SOURCE, upload);
+				recorder.copyBuffer(upload.destination.child(0L, 1000L), readback);
+				recorder.bufferBarrier(readback, ResourceUsage.TRANSFER_DEST, ResourceUsage.HOST_READ);
+			}).destroy();
+
+			readback.invalidate(instance);
+			var hostReadback = readback.byteBuffer();
+			for (int index = 0; index < 1000; index++) assertEquals((byte) (3 * index), hostReadback.get(index));
+		}
+
+		policy.release(first);
+		policy.release(first);
+		policy.release(second);
+		assertEquals(0L, policy.getDirectBytesInUse());
+
+		readbackMemory.destroy(instance);
+		memory.destroy(instance);
+		instance.destroyInitialObjects();
+	}
+}
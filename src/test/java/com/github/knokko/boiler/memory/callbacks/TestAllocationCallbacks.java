@@ -0,0 +1,78 @@
+package com.github.knokko.boiler.memory.callbacks;
+
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkSemaphoreCreateInfo;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VkAllocationCallbacks.*;
+
+public class TestAllocationCallbacks {
+
+	@Test
+	public void testPutReusesCallbackFunctions() {
+		var callbacks = new SumAllocationCallbacks();
+		try (var stack = stackPush()) {
+			var first = callbacks.put(stack, 1L);
+			var second = CallbackUserData.SEMAPHORE.put(stack, callbacks);
+
+			assertEquals(1L, first.pUserData());
+			assertEquals(1L + CallbackUserData.SEMAPHORE.ordinal(), second.pUserData());
+
+			assertNotEquals(0L, npfnAllocation(first.address()));
+			assertEquals(npfnAllocation(first.address()), npfnAllocation(second.address()));
+			assertEquals(npfnReallocation(first.address()), npfnReallocation(second.address()));
+			assertEquals(npfnFree(first.address()), npfnFree(second.address()));
+			assertEquals(npfnInternalAllocation(first.address()), npfnInternalAllocation(second.address()));
+			assertEquals(npfnInternalFree(first.address()), npfnInternalFree(second.address()));
+
+			callbacks.destroy();
+			callbacks.destroy();
+			assertThrows(IllegalStateException.class, () -> callbacks.put(stack, 1L));
+		}
+	}
+
+	@Test
+	public void testManyObjectsWithCallbacks() {
+		var callbacks = new SumAllocationCallbacks();
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestManyObjectsWithCallbacks", 1
+		).allocationCallbacks(callbacks).validation().forbidValidationErrors().build();
+
+		long userData = 1L + CallbackUserData.SEMAPHORE.ordinal();
+		try (var stack = stackPush()) {
+			var ciSemaphore = VkSemaphoreCreateInfo.calloc(stack);
+			ciSemaphore.sType$Default();
+			var pSemaphore = stack.callocLong(1);
+
+			// Before the native callback functions were shared, each of these calls would create 5 new upcall stubs
+			long[] semaphores = new long[10_000];
+			for (int index = 0; index < semaphores.length; index++) {
+				try (var innerStack = stackPush()) {
+					assertVkSuccess(vkCreateSemaphore(
+							instance.vkDevice(), ciSemaphore,
+							CallbackUserData.SEMAPHORE.put(innerStack, instance), pSemaphore
+					), "CreateSemaphore", "TestManyObjects");
+				}
+				semaphores[index] = pSemaphore.get(0);
+			}
+
+			for (long semaphore : semaphores) {
+				try (var innerStack = stackPush()) {
+					vkDestroySemaphore(instance.vkDevice(), semaphore, CallbackUserData.SEMAPHORE.put(innerStack, instance));
+				}
+			}
+		}
+
+		assertEquals(0L, callbacks.copySimpleSizes().getOrDefault(userData, 0L));
+		instance.destroyInitialObjects();
+		assertThrows(IllegalStateException.class, () -> {
+			try (var stack = stackPush()) {
+				callbacks.put(stack, userData);
+			}
+		});
+	}
+}
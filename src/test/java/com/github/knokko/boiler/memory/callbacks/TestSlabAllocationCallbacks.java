@@ -0,0 +1,249 @@
+package com.github.knokko.boiler.memory.callbacks;
+
+import com.github.knokko.boiler.builders.BoilerBuilder;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkSemaphoreCreateInfo;
+
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.github.knokko.boiler.exceptions.VulkanFailureException.assertVkSuccess;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.system.MemoryStack.stackPush;
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class TestSlabAllocationCallbacks {
+
+	private static final long SEMAPHORE = 1L + CallbackUserData.SEMAPHORE.ordinal();
+	private static final long BUFFER = 1L + CallbackUserData.BUFFER.ordinal();
+
+	@Test
+	public void testClassIndex() {
+		assertEquals(0, SlabAllocationCallbacks.classIndex(1, 1));
+		assertEquals(0, SlabAllocationCallbacks.classIndex(16, 8));
+		assertEquals(1, SlabAllocationCallbacks.classIndex(17, 8));
+		assertEquals(2, SlabAllocationCallbacks.classIndex(20, 64));
+		assertEquals(10, SlabAllocationCallbacks.classIndex(SlabAllocationCallbacks.MAX_BLOCK_SIZE, 8));
+		assertEquals(-1, SlabAllocationCallbacks.classIndex(SlabAllocationCallbacks.MAX_BLOCK_SIZE + 1, 8));
+		assertEquals(-1, SlabAllocationCallbacks.classIndex(8, 2 * SlabAllocationCallbacks.MAX_BLOCK_SIZE));
+	}
+
+	@Test
+	public void testAlignmentAndReuse() {
+		var callbacks = new SlabAllocationCallbacks();
+		var allocations = new HashSet<Long>();
+		for (long alignment = 1; alignment <= 4096; alignment *= 2) {
+			long allocation = callbacks.allocate(SEMAPHORE, 24, alignment, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT);
+			assertNotEquals(0L, allocation);
+			assertEquals(0L, allocation % alignment);
+			assertTrue(allocations.add(allocation));
+			memSet(allocation, 1, 24);
+		}
+
+		assertEquals(13, callbacks.getNumAllocations(CallbackUserData.SEMAPHORE));
+		for (long allocation : allocations) callbacks.free(SEMAPHORE, allocation);
+		assertEquals(0L, callbacks.getNumAllocations(CallbackUserData.SEMAPHORE));
+		assertEquals(0L, callbacks.getAllocatedBytes(CallbackUserData.SEMAPHORE));
+
+		// The most recently freed block should be reused right away
+		long first = callbacks.allocate(SEMAPHORE, 100, 8, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT);
+		callbacks.free(SEMAPHORE, first);
+		assertEquals(first, callbacks.allocate(SEMAPHORE, 100, 8, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT));
+		callbacks.free(SEMAPHORE, first);
+
+		// Command allocations should not share slabs with object allocations
+		long command = callbacks.allocate(SEMAPHORE, 100, 8, VK_SYSTEM_ALLOCATION_SCOPE_COMMAND);
+		assertNotEquals(first & -SlabAllocationCallbacks.SLAB_SIZE, command & -SlabAllocationCallbacks.SLAB_SIZE);
+		callbacks.free(SEMAPHORE, command);
+
+		assertEquals(8L, callbacks.allocate(SEMAPHORE, 0, 8, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT));
+		callbacks.destroy();
+	}
+
+	@Test
+	public void testLargeAllocations() {
+		var callbacks = new SlabAllocationCallbacks();
+		long size = 3 * SlabAllocationCallbacks.MAX_BLOCK_SIZE;
+		long allocation = callbacks.allocate(BUFFER, size, 64, VK_SYSTEM_ALLOCATION_SCOPE_DEVICE);
+		assertNotEquals(0L, allocation);
+		assertEquals(0L, allocation % 64);
+		memSet(allocation, 2, size);
+
+		assertEquals(size, callbacks.getAllocatedBytes(CallbackUserData.BUFFER));
+		assertEquals(1L, callbacks.getNumAllocations(CallbackUserData.BUFFER));
+		assertEquals(size, callbacks.getReservedBytes());
+
+		callbacks.free(BUFFER, allocation);
+		assertEquals(0L, callbacks.getAllocatedBytes(CallbackUserData.BUFFER));
+		assertEquals(0L, callbacks.getReservedBytes());
+
+		// Unknown allocations should be ignored, just like the default implementation does
+		callbacks.free(BUFFER, allocation);
+		assertEquals(1L, callbacks.getNumRejectedFrees());
+		callbacks.destroy();
+	}
+
+	@Test
+	public void testDoubleFreeIsRejected() {
+		var callbacks = new SlabAllocationCallbacks();
+		long allocation = callbacks.allocate(SEMAPHORE, 100, 8, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT);
+		callbacks.free(SEMAPHORE, allocation);
+		callbacks.free(SEMAPHORE, allocation);
+		assertEquals(1L, callbacks.getNumRejectedFrees());
+		assertEquals(0L, callbacks.getNumAllocations(CallbackUserData.SEMAPHORE));
+		assertEquals(0L, callbacks.getAllocatedBytes(CallbackUserData.SEMAPHORE));
+
+		// The block must not be handed out twice
+		long first = callbacks.allocate(SEMAPHORE, 100, 8, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT);
+		long second = callbacks.allocate(SEMAPHORE, 100, 8, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT);
+		assertNotEquals(first, second);
+
+		// Pointers into the middle of a block or into the slab header should be rejected as well
+		callbacks.free(SEMAPHORE, first + 8);
+		callbacks.free(SEMAPHORE, first & -SlabAllocationCallbacks.SLAB_SIZE);
+		assertEquals(3L, callbacks.getNumRejectedFrees());
+		assertEquals(2L, callbacks.getNumAllocations(CallbackUserData.SEMAPHORE));
+
+		callbacks.free(SEMAPHORE, first);
+		callbacks.free(SEMAPHORE, second);
+		assertEquals(3L, callbacks.getNumRejectedFrees());
+		assertEquals(0L, callbacks.getNumAllocations(CallbackUserData.SEMAPHORE));
+		callbacks.destroy();
+	}
+
+	@Test
+	public void testDeadThreadCachesAreReclaimed() throws InterruptedException {
+		var callbacks = new SlabAllocationCallbacks();
+		int blocksPerSlab = (int) (SlabAllocationCallbacks.SLAB_SIZE / 128) - 1;
+
+		var worker = new Thread(() -> {
+			long[] allocations = new long[blocksPerSlab];
+			for (int index = 0; index < blocksPerSlab; index++) {
+				allocations[index] = callbacks.allocate(SEMAPHORE, 100, 8, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT);
+			}
+			for (long allocation : allocations) callbacks.free(SEMAPHORE, allocation);
+		});
+		worker.start();
+		worker.join();
+		assertEquals(SlabAllocationCallbacks.SLAB_SIZE, callbacks.getReservedBytes());
+
+		// The blocks in the cache of the terminated worker should be reused, so no new slab is needed
+		long[] allocations = new long[blocksPerSlab];
+		for (int index = 0; index < blocksPerSlab; index++) {
+			allocations[index] = callbacks.allocate(SEMAPHORE, 100, 8, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT);
+			assertNotEquals(0L, allocations[index]);
+		}
+		assertEquals(SlabAllocationCallbacks.SLAB_SIZE, callbacks.getReservedBytes());
+
+		for (long allocation : allocations) callbacks.free(SEMAPHORE, allocation);
+		assertEquals(0L, callbacks.getNumRejectedFrees());
+		callbacks.destroy();
+	}
+
+	@Test
+	public void testRelocatePreservesData() {
+		var callbacks = new SlabAllocationCallbacks();
+		long allocation = callbacks.allocate(BUFFER, 20, 4, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT);
+		for (int index = 0; index < 20; index++) memPutByte(allocation + index, (byte) index);
+
+		// Growing within the same size class should keep the allocation in place
+		assertEquals(allocation, callbacks.relocate(BUFFER, allocation, 30, 4, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT));
+
+		long small = callbacks.relocate(BUFFER, allocation, 1000, 4, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT);
+		assertNotEquals(allocation, small);
+		for (int index = 0; index < 20; index++) assertEquals((byte) index, memGetByte(small + index));
+		assertEquals(1L, callbacks.getNumAllocations(CallbackUserData.BUFFER));
+		assertEquals(1024L, callbacks.getAllocatedBytes(CallbackUserData.BUFFER));
+
+		long large = callbacks.relocate(BUFFER, small, 100_000, 16, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT);
+		for (int index = 0; index < 20; index++) assertEquals((byte) index, memGetByte(large + index));
+		assertEquals(100_000L, callbacks.getAllocatedBytes(CallbackUserData.BUFFER));
+
+		long shrunk = callbacks.relocate(BUFFER, large, 10, 4, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT);
+		for (int index = 0; index < 10; index++) assertEquals((byte) index, memGetByte(shrunk + index));
+		assertEquals(16L, callbacks.getAllocatedBytes(CallbackUserData.BUFFER));
+
+		assertEquals(4L, callbacks.relocate(BUFFER, shrunk, 0, 4, VK_SYSTEM_ALLOCATION_SCOPE_OBJECT));
+		assertEquals(0L, callbacks.getNumAllocations(CallbackUserData.BUFFER));
+		callbacks.destroy();
+	}
+
+	@Test
+	public void testConcurrentAllocations() throws InterruptedException {
+		var callbacks = new SlabAllocationCallbacks();
+		var liveAllocations = ConcurrentHashMap.<Long>newKeySet();
+		var failure = new AtomicReference<Throwable>();
+
+		var threads = new Thread[8];
+		for (int threadIndex = 0; threadIndex < threads.length; threadIndex++) {
+			int seed = threadIndex;
+			threads[threadIndex] = new Thread(() -> {
+				try {
+					long[] allocations = new long[500];
+					for (int round = 0; round < 20; round++) {
+						for (int index = 0; index < allocations.length; index++) {
+							long size = 1 + ((index * 31L + seed) % 2000);
+							int scope = index % 3 == 0 ? VK_SYSTEM_ALLOCATION_SCOPE_COMMAND : VK_SYSTEM_ALLOCATION_SCOPE_OBJECT;
+							allocations[index] = callbacks.allocate(SEMAPHORE, size, 8, scope);
+							if (!liveAllocations.add(allocations[index])) throw new AssertionError("Duplicate allocation");
+							memPutLong(allocations[index], seed);
+						}
+						for (long allocation : allocations) {
+							if (memGetLong(allocation) != seed) throw new AssertionError("Allocations overlap");
+							liveAllocations.remove(allocation);
+							callbacks.free(SEMAPHORE, allocation);
+						}
+					}
+				} catch (Throwable problem) {
+					failure.set(problem);
+				}
+			});
+			threads[threadIndex].start();
+		}
+		for (var thread : threads) thread.join();
+
+		assertNull(failure.get());
+		assertEquals(0L, callbacks.getNumAllocations(CallbackUserData.SEMAPHORE));
+		assertEquals(0L, callbacks.getAllocatedBytes(CallbackUserData.SEMAPHORE));
+		callbacks.destroy();
+		assertEquals(0L, callbacks.getReservedBytes());
+	}
+
+	@Test
+	public void testWithBoilerInstance() {
+		var callbacks = new SlabAllocationCallbacks();
+		var instance = new BoilerBuilder(
+				VK_API_VERSION_1_0, "TestSlabAllocationCallbacks", 1
+		).allocationCallbacks(callbacks).validation().forbidValidationErrors().build();
+
+		try (var stack = stackPush()) {
+			var ciSemaphore = VkSemaphoreCreateInfo.calloc(stack);
+			ciSemaphore.sType$Default();
+			var pSemaphore = stack.callocLong(1);
+
+			long[] semaphores = new long[1000];
+			for (int index = 0; index < semaphores.length; index++) {
+				try (var innerStack = stackPush()) {
+					assertVkSuccess(vkCreateSemaphore(
+							instance.vkDevice(), ciSemaphore,
+							CallbackUserData.SEMAPHORE.put(innerStack, instance), pSemaphore
+					), "CreateSemaphore", "TestSlabAllocationCallbacks");
+				}
+				semaphores[index] = pSemaphore.get(0);
+			}
+
+			for (long semaphore : semaphores) {
+				try (var innerStack = stackPush()) {
+					vkDestroySemaphore(instance.vkDevice(), semaphore, CallbackUserData.SEMAPHORE.put(innerStack, instance));
+				}
+			}
+		}
+
+		assertEquals(0L, callbacks.getNumAllocations(CallbackUserData.SEMAPHORE));
+		assertEquals(0L, callbacks.getAllocatedBytes(CallbackUserData.SEMAPHORE));
+		instance.destroyInitialObjects();
+		assertEquals(0L, callbacks.getReservedBytes());
+	}
+}
@@ -18,6 +18,17 @@ public class TestBoilerMath {
 		assertEquals(12, nextMultipleOf(10, 4));
 	}
 
+	@Test
+	public void testMipLevelCount() {
+		assertEquals(1, mipLevelCount(1, 1));
+		assertEquals(2, mipLevelCount(2, 1));
+		assertEquals(2, mipLevelCount(1, 3));
+		assertEquals(3, mipLevelCount(4, 4));
+		assertEquals(9, mipLevelCount(256, 100));
+		assertEquals(10, mipLevelCount(300, 512));
+		assertEquals(13, mipLevelCount(4096, 4096));
+	}
+
 	@Test
 	public void testNextMultipleOfLong() {
 		assertEquals(10L, nextMultipleOf(10L, 1L));
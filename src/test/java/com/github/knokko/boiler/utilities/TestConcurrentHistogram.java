@@ -0,0 +1,75 @@
+package com.github.knokko.boiler.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestConcurrentHistogram {
+
+	@Test
+	public void testBucketIndices() {
+		for (long value = 0; value < 100_000; value++) {
+			int index = ConcurrentHistogram.bucketIndex(value);
+			assertTrue(value <= ConcurrentHistogram.bucketUpperBound(index));
+			if (index > 0) assertTrue(value > ConcurrentHistogram.bucketUpperBound(index - 1));
+		}
+
+		int largestIndex = ConcurrentHistogram.bucketIndex(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, ConcurrentHistogram.bucketUpperBound(largestIndex));
+	}
+
+	@Test
+	public void testEmpty() {
+		var histogram = new ConcurrentHistogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0.0, histogram.getMean());
+		assertEquals(0, histogram.getValueAtPercentile(50.0));
+	}
+
+	@Test
+	public void testPercentiles() {
+		var histogram = new ConcurrentHistogram();
+		for (long value = 1; value <= 1000; value++) histogram.record(1000 * value);
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000_000, histogram.getMax());
+		assertEquals(500_500.0, histogram.getMean());
+		assertEquals(1000 * 1000 * 1001 / 2, histogram.getSum());
+
+		long median = histogram.getValueAtPercentile(50.0);
+		assertTrue(median >= 500_000 && median <= 500_000 * 1.035, "Median is " + median);
+		long p99 = histogram.getValueAtPercentile(99.0);
+		assertTrue(p99 >= 990_000 && p99 <= 990_000 * 1.035, "P99 is " + p99);
+		assertEquals(1000_000, histogram.getValueAtPercentile(100.0));
+		assertEquals(1000, histogram.getValueAtPercentile(0.0), 1000 * 0.035);
+
+		assertThrows(IllegalArgumentException.class, () -> histogram.getValueAtPercentile(101.0));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getValueAtPercentile(99.0));
+	}
+
+	@Test
+	public void testNegativeValues() {
+		var histogram = new ConcurrentHistogram();
+		histogram.record(-5);
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getMax());
+	}
+
+	@Test
+	public void testConcurrentRecording() {
+		var histogram = new ConcurrentHistogram();
+		IntStream.range(0, 8).parallel().forEach(thread -> {
+			for (int value = 0; value < 100_000; value++) histogram.record(value % 100);
+		});
+		assertEquals(800_000, histogram.getCount());
+		assertEquals(99, histogram.getMax());
+		assertEquals(8L * 1000 * 4950, histogram.getSum());
+		assertEquals(49, histogram.getValueAtPercentile(50.0));
+	}
+}
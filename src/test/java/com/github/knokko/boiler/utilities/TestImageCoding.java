@@ -0,0 +1,112 @@
+package com.github.knokko.boiler.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestImageCoding {
+
+	private static byte[] referenceEncode(BufferedImage image) {
+		var bytes = new byte[4 * image.getWidth() * image.getHeight()];
+		int index = 0;
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				var pixel = new Color(image.getRGB(x, y), true);
+				bytes[index++] = (byte) pixel.getRed();
+				bytes[index++] = (byte) pixel.getGreen();
+				bytes[index++] = (byte) pixel.getBlue();
+				bytes[index++] = (byte) pixel.getAlpha();
+			}
+		}
+		return bytes;
+	}
+
+	private static BufferedImage randomImage(Random rng, int width, int height, int type) {
+		var image = new BufferedImage(width, height, type);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) image.setRGB(x, y, rng.nextInt());
+		}
+		return image;
+	}
+
+	private static void checkEncode(BufferedImage image, ByteBuffer destination) {
+		var expected = referenceEncode(image);
+		int startPosition = destination.position();
+		ImageCoding.encodeBufferedImage(destination, image);
+		assertEquals(startPosition + expected.length, destination.position());
+
+		var actual = new byte[expected.length];
+		destination.get(startPosition, actual);
+		assertArrayEquals(expected, actual);
+	}
+
+	@Test
+	public void testEncodeMatchesReference() {
+		var rng = new Random(1234);
+		int[] types = {
+				BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_4BYTE_ABGR,
+				BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_INT_ARGB_PRE,
+				BufferedImage.TYPE_BYTE_GRAY
+		};
+		for (int type : types) {
+			for (int[] size : new int[][] { { 1, 1 }, { 3, 7 }, { 37, 2 }, { 700, 800 } }) {
+				var image = randomImage(rng, size[0], size[1], type);
+				int expectedSize = 4 * size[0] * size[1];
+
+				checkEncode(image, ByteBuffer.allocate(expectedSize));
+				checkEncode(image, ByteBuffer.allocateDirect(expectedSize).order(ByteOrder.nativeOrder()));
+				checkEncode(image, ByteBuffer.allocateDirect(expectedSize + 5).position(3).limit(expectedSize + 3));
+			}
+		}
+	}
+
+	@Test
+	public void testEncodeSubImage() {
+		var image = randomImage(new Random(42), 50, 40, BufferedImage.TYPE_INT_ARGB);
+		checkEncode(image.getSubimage(3, 5, 20, 30), ByteBuffer.allocate(4 * 20 * 30));
+
+		var byteImage = randomImage(new Random(43), 50, 40, BufferedImage.TYPE_4BYTE_ABGR);
+		checkEncode(byteImage.getSubimage(7, 2, 33, 11), ByteBuffer.allocate(4 * 33 * 11));
+	}
+
+	@Test
+	public void testDecodeMatchesReference() {
+		var rng = new Random(5678);
+		for (int[] size : new int[][] { { 1, 1 }, { 5, 3 }, { 900, 700 } }) {
+			int width = size[0];
+			int height = size[1];
+			var bytes = new byte[4 * width * height];
+			rng.nextBytes(bytes);
+
+			for (var source : new ByteBuffer[] {
+					ByteBuffer.wrap(bytes),
+					ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.LITTLE_ENDIAN).put(bytes).flip()
+			}) {
+				var image = ImageCoding.decodeBufferedImage(source, width, height);
+				assertEquals(bytes.length, source.position());
+				assertEquals(BufferedImage.TYPE_INT_ARGB, image.getType());
+
+				int index = 0;
+				for (int y = 0; y < height; y++) {
+					for (int x = 0; x < width; x++) {
+						var expected = new Color(
+								bytes[index] & 0xFF, bytes[index + 1] & 0xFF,
+								bytes[index + 2] & 0xFF, bytes[index + 3] & 0xFF
+						);
+						assertEquals(expected.getRGB(), image.getRGB(x, y));
+						index += 4;
+					}
+				}
+
+				assertArrayEquals(bytes, referenceEncode(image));
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.github.knokko.boiler.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLongLongHashMap {
+
+	@Test
+	public void testSimple() {
+		var map = new LongLongHashMap();
+		assertEquals(0, map.size());
+		assertEquals(-1L, map.get(1234L, -1L));
+		assertFalse(map.containsKey(1234L));
+
+		assertEquals(-1L, map.put(1234L, 5L, -1L));
+		assertEquals(5L, map.get(1234L, -1L));
+		assertTrue(map.containsKey(1234L));
+		assertEquals(1, map.size());
+
+		assertEquals(5L, map.put(1234L, 6L, -1L));
+		assertEquals(6L, map.get(1234L, -1L));
+		assertEquals(1, map.size());
+
+		assertEquals(6L, map.remove(1234L, -1L));
+		assertEquals(-1L, map.remove(1234L, -1L));
+		assertEquals(0, map.size());
+
+		assertThrows(IllegalArgumentException.class, () -> map.put(0L, 1L, -1L));
+		assertThrows(IllegalArgumentException.class, () -> map.get(0L, -1L));
+	}
+
+	@Test
+	public void testCompareWithHashMap() {
+		var rng = new Random(1234);
+		var map = new LongLongHashMap(2);
+		var reference = new HashMap<Long, Long>();
+
+		for (int counter = 0; counter < 200_000; counter++) {
+			// Use aligned 'addresses' with a limited range to get many collisions and removals
+			long key = 4096L * (1 + rng.nextInt(5000));
+			long value = rng.nextLong();
+			if (rng.nextBoolean()) {
+				assertEquals((long) reference.getOrDefault(key, -1L), map.put(key, value, -1L));
+				reference.put(key, value);
+			} else {
+				Long expected = reference.remove(key);
+				assertEquals(expected != null ? expected : -1L, map.remove(key, -1L));
+			}
+			assertEquals(reference.size(), map.size());
+		}
+
+		for (var entry : reference.entrySet()) assertEquals((long) entry.getValue(), map.get(entry.getKey(), -1L));
+
+		Set<Long> keys = new HashSet<>();
+		map.forEachKey(keys::add);
+		assertEquals(reference.keySet(), keys);
+
+		map.clear();
+		assertEquals(0, map.size());
+		for (long key : keys) assertFalse(map.containsKey(key));
+	}
+}
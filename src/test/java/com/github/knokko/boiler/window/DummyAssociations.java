@@ -1,12 +1,23 @@
 package com.github.knokko.boiler.window;
 
+import java.util.concurrent.Executor;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
 class DummyAssociations extends SwapchainResourceManager<DummyAssociations.Swapchain, DummyAssociations.Image> {
 
+	int createdSwapchains;
+
+	DummyAssociations() {}
+
+	DummyAssociations(Executor helper) {
+		super(helper);
+	}
+
 	@Override
 	public Swapchain createSwapchain(int width, int height, int numImages) {
+		createdSwapchains += 1;
 		return new Swapchain(width, height, numImages);
 	}
 
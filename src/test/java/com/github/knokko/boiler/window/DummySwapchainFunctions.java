@@ -1,6 +1,7 @@
 package com.github.knokko.boiler.window;
 
 import com.github.knokko.boiler.images.VkbImage;
+import com.github.knokko.boiler.synchronization.AwaitableSubmission;
 import com.github.knokko.boiler.synchronization.DummyFence;
 import com.github.knokko.boiler.synchronization.VkbFence;
 import org.lwjgl.system.MemoryStack;
@@ -24,10 +25,12 @@ class DummySwapchainFunctions implements SwapchainFunctions {
 	VkSurfacePresentModeCompatibilityEXT presentModeCompatibility;
 	WindowProperties properties;
 	int deviceWaitIdleCount;
+	int awaitedSubmissionCount;
 
 	// For borrowing semaphores
 	private long nextSemaphore = 1L;
 	Set<Long> borrowedSemaphores = new HashSet<>();
+	List<Long> unsignaledSemaphores = new ArrayList<>();
 
 	// For swapchains
 	long nextSwapchain = 12L;
@@ -48,6 +51,15 @@ class DummySwapchainFunctions implements SwapchainFunctions {
 	// For vkQueuePresentKHR
 	boolean expectedSwitchPresentMode;
 	int nextPresentResult;
+	int batchedPresentCount;
+
+	// For vkWaitForPresentKHR
+	boolean presentWait;
+	List<Long> presentIds = new ArrayList<>();
+	long expectedWaitSwapchain;
+	long expectedWaitPresentId;
+	int nextPresentWaitResult;
+	int presentWaitCount;
 
 	DummySwapchainFunctions() {
 		int numFences = 5;
@@ -65,6 +77,15 @@ class DummySwapchainFunctions implements SwapchainFunctions {
 		}
 	}
 
+	@Override
+	public void awaitSubmission(AwaitableSubmission submission) {
+		this.awaitedSubmissionCount += 1;
+		for (VkbFence fence : availableFences) {
+			if (fence.isPending()) fence.forceSignal();
+		}
+		assertTrue(submission.hasCompleted());
+	}
+
 	@Override
 	public void getSurfaceCapabilities(VkSurfaceCapabilitiesKHR capabilities) {
 		memCopy(this.capabilities, capabilities);
@@ -86,7 +107,7 @@ class DummySwapchainFunctions implements SwapchainFunctions {
 				for (int index = 0; index < numCompatiblePresentModes; index++) {
 					assert compatiblePresentModeBuffer != null;
 					int compatiblePresentMode = compatiblePresentModeBuffer.get(index);
-					presentModes.compatible.add(compatiblePresentMode);
+					presentModes.addCompatible(compatiblePresentMode);
 				}
 				presentModes.createSwapchain(stack, presentMode, compatiblePresentModeBuffer);
 			}
@@ -109,7 +130,7 @@ class DummySwapchainFunctions implements SwapchainFunctions {
 	}
 
 	@Override
-	public int acquireImage(long vkSwapchain, MemoryStack stack, IntBuffer pImageIndex, VkbFence acquireFence, long acquireSemaphore) {
+	public int acquireImage(long vkSwapchain, IntBuffer pImageIndex, VkbFence acquireFence, long acquireSemaphore) {
 		assertEquals(expectedSwapchain, vkSwapchain);
 		assertEquals(expectedAcquireSemaphore, acquireSemaphore);
 		assertSame(expectedAcquireFence, acquireFence);
@@ -126,14 +147,37 @@ class DummySwapchainFunctions implements SwapchainFunctions {
 			assertFalse(image.presentFence.isSignaled());
 			image.presentFence.getVkFenceAndSubmit();
 		}
+		if (image.presentId != 0L) presentIds.add(image.presentId);
 		return nextPresentResult;
 	}
 
+	@Override
+	public void presentImages(AcquiredImage[] images, int numImages, boolean switchPresentModes, int[] results) {
+		batchedPresentCount += 1;
+		for (int index = 0; index < numImages; index++) {
+			results[index] = presentImage(images[index], switchPresentModes);
+		}
+	}
+
 	@Override
 	public boolean hasSwapchainMaintenance() {
 		return properties.usesSwapchainMaintenance();
 	}
 
+	@Override
+	public boolean hasPresentWait() {
+		return presentWait;
+	}
+
+	@Override
+	public int waitForPresent(long vkSwapchain, long presentId, long timeout) {
+		assertTrue(presentWait);
+		assertEquals(expectedWaitSwapchain, vkSwapchain);
+		assertEquals(expectedWaitPresentId, presentId);
+		presentWaitCount += 1;
+		return nextPresentWaitResult;
+	}
+
 	@Override
 	public VkbFence borrowFence(boolean startSignaled, String debugName) {
 		var iterator = returnedFences.iterator();
@@ -169,6 +213,12 @@ class DummySwapchainFunctions implements SwapchainFunctions {
 		borrowedSemaphores.remove(vkSemaphore);
 	}
 
+	@Override
+	public void unsignalSemaphore(long vkSemaphore) {
+		assertTrue(borrowedSemaphores.contains(vkSemaphore));
+		unsignaledSemaphores.add(vkSemaphore);
+	}
+
 	@Override
 	public void destroySwapchain(long vkSwapchain, VkbImage[] images) {
 		destroyedSwapchains.add(vkSwapchain);
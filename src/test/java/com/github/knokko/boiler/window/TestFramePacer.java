@@ -0,0 +1,188 @@
+package com.github.knokko.boiler.window;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestFramePacer {
+
+	private static final long MILLIS = 1_000_000L;
+
+	private static class FakeClock {
+
+		long time;
+
+		long now() {
+			return time;
+		}
+
+		void sleep(long nanos) {
+			assertTrue(nanos > 0);
+			time += nanos;
+		}
+
+		void awaitNextVsync(long interval) {
+			time = interval * ((time + interval - 1) / interval);
+		}
+	}
+
+	@Test
+	public void testFrameRateCap() {
+		var clock = new FakeClock();
+		var pacer = new FramePacer(10 * MILLIS, 0L, clock::now, clock::sleep);
+
+		long lastStart = -1L;
+		for (int frame = 0; frame < 20; frame++) {
+			assertEquals(frame, pacer.startFrame());
+			assertEquals(frame, pacer.getCurrentFrame());
+			if (lastStart != -1L) assertEquals(10 * MILLIS, clock.time - lastStart);
+			lastStart = clock.time;
+
+			clock.time += 3 * MILLIS;
+			pacer.framePresented();
+		}
+
+		assertEquals(3 * MILLIS, pacer.getAverageCpuTime());
+		assertEquals(0L, pacer.getAverageWaitTime());
+		assertEquals(10 * MILLIS, pacer.getAveragePresentInterval());
+	}
+
+	@Test
+	public void testFrameRateCapDoesNotDelaySlowFrames() {
+		var clock = new FakeClock();
+		var pacer = new FramePacer(10 * MILLIS, 0L, clock::now, clock::sleep);
+
+		pacer.startFrame();
+		clock.time += 15 * MILLIS;
+		pacer.framePresented();
+		assertEquals(0L, pacer.computeStartDelay());
+	}
+
+	@Test
+	public void testJustInTimePacing() {
+		long vsyncInterval = 16 * MILLIS;
+		var clock = new FakeClock();
+		var pacer = new FramePacer(0L, 50 * MILLIS, clock::now, clock::sleep);
+
+		for (int frame = 0; frame < 200; frame++) {
+			pacer.startFrame();
+
+			// Simulate a FIFO swapchain: acquiring blocks until the next vertical blank
+			pacer.beginWait();
+			clock.awaitNextVsync(vsyncInterval);
+			pacer.endWait();
+
+			clock.time += 2 * MILLIS;
+			pacer.framePresented();
+		}
+
+		// Without pacing, the render thread would be blocked for 14ms per frame. With just-in-time pacing, the
+		// waiting should happen before the start of the frame, except for the safety margin
+		assertTrue(pacer.getAverageWaitTime() < 3 * MILLIS, "Wait time is " + pacer.getAverageWaitTime());
+		assertTrue(pacer.getAverageWaitTime() >= FramePacer.MIN_SAFETY_MARGIN / 2);
+
+		// The frame rate must not be affected
+		assertEquals(vsyncInterval, pacer.getAveragePresentInterval(), MILLIS / 10);
+		assertEquals(2 * MILLIS, pacer.getAverageCpuTime());
+	}
+
+	@Test
+	public void testNoJustInTimePacingWithoutLatencyTarget() {
+		var clock = new FakeClock();
+		var pacer = new FramePacer(0L, 0L, clock::now, clock::sleep);
+
+		for (int frame = 0; frame < 50; frame++) {
+			pacer.startFrame();
+			pacer.beginWait();
+			clock.awaitNextVsync(16 * MILLIS);
+			pacer.endWait();
+			clock.time += 2 * MILLIS;
+			pacer.framePresented();
+			assertEquals(0L, pacer.computeStartDelay());
+		}
+		assertEquals(14 * MILLIS, pacer.getAverageWaitTime(), MILLIS / 10);
+	}
+
+	@Test
+	public void testDynamicFramesInFlight() {
+		var clock = new FakeClock();
+		var pacer = new FramePacer(0L, 20 * MILLIS, clock::now, clock::sleep);
+
+		// Phase 1: the latency is 40ms, which is too high
+		int lastFramesInFlight = 3;
+		long lastChange = 0L;
+		for (int counter = 0; counter < 200; counter++) {
+			long frame = pacer.startFrame();
+			if (frame >= 4) pacer.gpuCompleted(frame - 4);
+			clock.time += 10 * MILLIS;
+			pacer.framePresented();
+
+			int framesInFlight = pacer.framesInFlight(3);
+			assertTrue(framesInFlight <= lastFramesInFlight);
+			if (framesInFlight != lastFramesInFlight) {
+				assertTrue(frame - lastChange >= FramePacer.ADJUSTMENT_INTERVAL - 1);
+				lastChange = frame;
+			}
+			lastFramesInFlight = framesInFlight;
+		}
+		assertEquals(40 * MILLIS, pacer.getAverageLatency());
+		assertEquals(1, lastFramesInFlight);
+
+		// Phase 2: the latency is 5ms, so there is room for more frames in flight
+		for (int counter = 0; counter < 200; counter++) {
+			long frame = pacer.startFrame();
+			clock.time += 5 * MILLIS;
+			pacer.gpuCompleted(frame);
+			clock.time += 5 * MILLIS;
+			pacer.framePresented();
+
+			int framesInFlight = pacer.framesInFlight(3);
+			assertTrue(framesInFlight >= lastFramesInFlight);
+			lastFramesInFlight = framesInFlight;
+		}
+		assertEquals(3, lastFramesInFlight);
+
+		// The number of frames in flight must never exceed the maximum
+		assertEquals(2, pacer.framesInFlight(2));
+	}
+
+	@Test
+	public void testPresentIdToAwait() {
+		var clock = new FakeClock();
+		var pacer = new FramePacer(0L, 0L, clock::now, clock::sleep);
+
+		// Without a limit, the pacer never waits for presentations to be displayed
+		assertEquals(0, pacer.getMaxQueuedPresents());
+		assertEquals(0L, pacer.presentIdToAwait(0L));
+		assertEquals(0L, pacer.presentIdToAwait(100L));
+
+		pacer.setMaxQueuedPresents(1);
+		assertEquals(0L, pacer.presentIdToAwait(0L));
+		assertEquals(1L, pacer.presentIdToAwait(1L));
+		assertEquals(100L, pacer.presentIdToAwait(100L));
+
+		pacer.setMaxQueuedPresents(3);
+		assertEquals(0L, pacer.presentIdToAwait(1L));
+		assertEquals(0L, pacer.presentIdToAwait(2L));
+		assertEquals(1L, pacer.presentIdToAwait(3L));
+		assertEquals(98L, pacer.presentIdToAwait(100L));
+
+		assertThrows(IllegalArgumentException.class, () -> pacer.setMaxQueuedPresents(-1));
+	}
+
+	@Test
+	public void testInvalidUsage() {
+		var clock = new FakeClock();
+		assertThrows(IllegalArgumentException.class, () -> new FramePacer(-1L, 0L, clock::now, clock::sleep));
+		assertThrows(IllegalArgumentException.class, () -> new FramePacer(0L, -1L, clock::now, clock::sleep));
+
+		var pacer = new FramePacer(0L, 0L, clock::now, clock::sleep);
+		assertEquals(-1L, pacer.getCurrentFrame());
+		assertThrows(IllegalStateException.class, pacer::endWait);
+		assertThrows(IllegalArgumentException.class, () -> pacer.gpuCompleted(0L));
+
+		pacer.startFrame();
+		pacer.beginWait();
+		assertThrows(IllegalStateException.class, pacer::beginWait);
+	}
+}
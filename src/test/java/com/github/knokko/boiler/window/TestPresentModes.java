@@ -19,28 +19,28 @@ public class TestPresentModes {
 
 		assertEquals(supported, modes.supported);
 		assertNotSame(supported, modes.supported);
-		assertEquals(0, modes.used.size());
+		assertEquals(0L, modes.used);
 		assertEquals(-1, modes.current);
 
 		//noinspection DataFlowIssue
 		assertThrows(Exception.class, () -> modes.supported.add(12));
 
 		assertThrows(Exception.class, () -> modes.createSwapchain(null, 2, null));
-		assertEquals(0, modes.compatible.size());
-		modes.compatible.add(1);
+		assertEquals(0L, modes.compatible);
+		modes.addCompatible(1);
 		assertNull(modes.createSwapchain(null, 1, null));
 
 		assertEquals(1, modes.current);
-		assertEquals(createSet(1), modes.used);
+		assertEquals(createSet(1), modes.toSet(modes.used));
 
 		modes.acquire(1);
 		assertFalse(modes.present(1));
 
-		assertEquals(createSet(1), modes.used);
+		assertEquals(createSet(1), modes.toSet(modes.used));
 		modes.acquire(5);
-		assertEquals(modes.supported, modes.used);
+		assertEquals(modes.supported, modes.toSet(modes.used));
 		assertFalse(modes.present(5));
-		assertEquals(modes.supported, modes.used);
+		assertEquals(modes.supported, modes.toSet(modes.used));
 
 		assertThrows(Exception.class, () -> modes.acquire(3));
 		assertThrows(Exception.class, () -> modes.present(3));
@@ -52,20 +52,20 @@ public class TestPresentModes {
 		PresentModes modes = new PresentModes(supported, createSet(2, 3));
 
 		assertEquals(supported, modes.supported);
-		assertEquals(createSet(2), modes.used);
+		assertEquals(createSet(2), modes.toSet(modes.used));
 		assertEquals(-1, modes.current);
 
-		assertEquals(0, modes.compatible.size());
+		assertEquals(0L, modes.compatible);
 		assertNull(modes.createSwapchain(null, 6, IntBuffer.allocate(0)));
 
-		assertEquals(createSet(6), modes.compatible);
-		assertEquals(createSet(2, 6), modes.used);
+		assertEquals(createSet(6), modes.toSet(modes.compatible));
+		assertEquals(createSet(2, 6), modes.toSet(modes.used));
 		assertEquals(6, modes.current);
 
 		modes.acquire(6);
 		assertFalse(modes.present(5));
 
-		assertEquals(createSet(2, 5, 6), modes.used);
+		assertEquals(createSet(2, 5, 6), modes.toSet(modes.used));
 		assertEquals(6, modes.current);
 
 		try (MemoryStack stack = MemoryStack.stackPush()) {
@@ -76,8 +76,8 @@ public class TestPresentModes {
 		}
 
 		assertEquals(5, modes.current);
-		assertEquals(createSet(2, 5, 6), modes.used);
-		assertEquals(createSet(2, 5), modes.compatible);
+		assertEquals(createSet(2, 5, 6), modes.toSet(modes.used));
+		assertEquals(createSet(2, 5), modes.toSet(modes.compatible));
 
 		modes.acquire(2);
 		assertTrue(modes.present(2));
@@ -90,7 +90,33 @@ public class TestPresentModes {
 		}
 
 		assertEquals(1, modes.current);
-		assertEquals(createSet(1, 2, 5, 6), modes.used);
-		assertEquals(createSet(1, 6), modes.compatible);
+		assertEquals(createSet(1, 2, 5, 6), modes.toSet(modes.used));
+		assertEquals(createSet(1, 6), modes.toSet(modes.compatible));
+	}
+
+	@Test
+	public void testExtensionPresentModes() {
+		int sharedDemandRefresh = 1000111000;
+		int sharedContinuousRefresh = 1000111001;
+		PresentModes modes = new PresentModes(
+				createSet(0, 2, sharedDemandRefresh, sharedContinuousRefresh), createSet(sharedContinuousRefresh)
+		);
+
+		assertTrue(modes.isUsed(sharedContinuousRefresh));
+		assertFalse(modes.isUsed(sharedDemandRefresh));
+		assertEquals(1, modes.getNumUsed());
+		assertEquals(0L, modes.bit(1));
+		assertEquals(0L, modes.bit(1000111002));
+
+		var compatiblePresentModes = IntBuffer.wrap(new int[] { 1, 2, sharedContinuousRefresh });
+		assertNull(modes.createSwapchain(null, sharedDemandRefresh, compatiblePresentModes));
+		assertTrue(modes.isCompatible(sharedDemandRefresh));
+		assertTrue(modes.isCompatible(sharedContinuousRefresh));
+		assertFalse(modes.isCompatible(2));
+		assertEquals(2, modes.getNumUsed());
+
+		assertFalse(modes.acquire(2));
+		assertTrue(modes.present(sharedContinuousRefresh));
+		assertEquals(createSet(2, sharedDemandRefresh, sharedContinuousRefresh), modes.toSet(modes.used));
 	}
 }
@@ -7,8 +7,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.Random;
 
-import static org.junit.jupiter.api.Assertions.assertFalse;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 public class TestPresentationFinishedTracker {
 
@@ -114,4 +113,29 @@ public class TestPresentationFinishedTracker {
 			assertTrue(tracker.hasFinishedAtLeastOnePresentation());
 		}
 	}
+
+	@Test
+	public void testPendingPresentFence() {
+		PresentationFinishedTracker tracker = new PresentationFinishedTracker(3, true);
+
+		// While the first present fence hasn't been presented yet, no other image should request a present fence
+		assertTrue(tracker.needsPresentFence(0, true));
+		assertFalse(tracker.needsPresentFence(1, true));
+		assertNull(tracker.getFinishedSubmission());
+
+		// When the image with the present fence is discarded, the next image should request a present fence instead
+		tracker.cancelPresentFence();
+		assertNull(tracker.getFinishedSubmission());
+		assertTrue(tracker.needsPresentFence(2, true));
+
+		VkbFence fence = new DummyFence(false);
+		fence.getVkFenceAndSubmit();
+		tracker.usePresentFence(fence);
+		assertNotNull(tracker.getFinishedSubmission());
+		assertFalse(tracker.needsPresentFence(0, true));
+		assertFalse(tracker.hasFinishedAtLeastOnePresentation());
+
+		fence.forceSignal();
+		assertTrue(tracker.hasFinishedAtLeastOnePresentation());
+	}
 }
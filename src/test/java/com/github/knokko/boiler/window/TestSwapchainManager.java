@@ -5,6 +5,7 @@ import org.lwjgl.BufferUtils;
 import org.lwjgl.vulkan.VkSurfaceCapabilitiesKHR;
 import org.lwjgl.vulkan.VkSurfacePresentModeCompatibilityEXT;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -796,7 +797,8 @@ public class TestSwapchainManager {
 		// -------------------------present 4------------------------------
 
 		// -------------------------acquire 5------------------------------
-		// Now we have 2 old swapchains, which is too many, so we do vkDeviceWaitIdle to destroy the second one
+		// Now we have 2 old swapchains, which is too many. Since the present fence of present 4 proves that the
+		// second swapchain has finished its presentations, we can wait on that fence instead of vkDeviceWaitIdle.
 		functions.expectedSwapchain = 15L;
 		functions.expectedOldSwapchain = 14L;
 		functions.expectedAcquireSemaphore = 0L;
@@ -807,7 +809,8 @@ public class TestSwapchainManager {
 		assertEquals(15L, functions.nextSwapchain);
 		var image5 = swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, true);
 
-		assertEquals(1, functions.deviceWaitIdleCount);
+		assertEquals(0, functions.deviceWaitIdleCount);
+		assertEquals(1, functions.awaitedSubmissionCount);
 		assertEquals(16L, functions.nextSwapchain);
 		assertEquals(15L, image5.swapchain.vkSwapchain);
 		assertEquals(0, image5.index);
@@ -822,7 +825,7 @@ public class TestSwapchainManager {
 		assertEquals(8L, image5.getPresentSemaphore());
 		// -------------------------acquire 5------------------------------
 
-		// The first two swapchains are destroyed due to vkDeviceWaitIdle
+		// The first two swapchains are destroyed after waiting on the present fence
 		// We should have destroyed the old swapchain and the corresponding image attachments,
 		// but not the swapchain attachments themselves
 		assertFalse(associatedSwapchain1.wasDestroyed);
@@ -840,7 +843,7 @@ public class TestSwapchainManager {
 		// -------------------------present 5------------------------------
 
 		swapchains.destroy();
-		assertEquals(2, functions.deviceWaitIdleCount);
+		assertEquals(1, functions.deviceWaitIdleCount);
 		assertEquals(createSet(), functions.borrowedSemaphores);
 		assertEquals(createList(12L, 13L, 14L, 15L), functions.destroyedSwapchains);
 		assertTrue(associatedSwapchain1.wasDestroyed);
@@ -914,6 +917,8 @@ public class TestSwapchainManager {
 		assertEquals(13L, functions.nextSwapchain);
 		assertEquals(12L, image2.swapchain.vkSwapchain);
 		assertEquals(0, image2.index);
+		// The AcquiredImage of swapchain image 0 should be reused, since image1 has already been presented
+		assertSame(image1, image2);
 		assertNotNull(image2.acquireSubmission);
 		assertThrows(UnsupportedOperationException.class, image2::getAcquireSemaphore);
 		assertEquals(600, image2.getWidth());
@@ -934,4 +939,408 @@ public class TestSwapchainManager {
 		assertEquals(1, functions.returnedFences.size());
 		assertEquals(createList(12L), functions.destroyedSwapchains);
 	}
+
+	@Test
+	public void testPresentMultipleSwapchainsAtOnce() {
+		var properties = new WindowProperties(
+				1234L, "TestTitle", 12345L, 2, VK_FORMAT_R8G8B8A8_UNORM,
+				VK_COLOR_SPACE_SRGB_NONLINEAR_KHR, VK_IMAGE_USAGE_TRANSFER_DST_BIT,
+				VK_COMPOSITE_ALPHA_INHERIT_BIT_KHR, false, 0, 2,
+				123L
+		);
+
+		var functions = new DummySwapchainFunctions();
+		functions.capabilities = VkSurfaceCapabilitiesKHR.create();
+		functions.properties = properties;
+		functions.numSwapchainImages = 3;
+		functions.capabilities.currentExtent().set(600, 200);
+
+		var managers = new SwapchainManager[2];
+		for (int index = 0; index < managers.length; index++) {
+			managers[index] = new SwapchainManager(functions, properties, new PresentModes(
+					createSet(VK_PRESENT_MODE_FIFO_KHR), createSet(VK_PRESENT_MODE_FIFO_KHR)
+			));
+		}
+
+		functions.expectedAcquireFence = null;
+		functions.nextAcquireResult = VK_SUCCESS;
+		functions.nextImageIndex = 1;
+
+		functions.expectedSwapchain = 12L;
+		functions.expectedAcquireSemaphore = 1L;
+		var image1 = managers[0].acquire(VK_PRESENT_MODE_FIFO_KHR, false);
+		assertEquals(12L, image1.swapchain.vkSwapchain);
+
+		functions.expectedSwapchain = 13L;
+		functions.expectedAcquireSemaphore = 3L;
+		var image2 = managers[1].acquire(VK_PRESENT_MODE_FIFO_KHR, false);
+		assertEquals(13L, image2.swapchain.vkSwapchain);
+		assertEquals(createSet(1L, 2L, 3L, 4L), functions.borrowedSemaphores);
+
+		functions.expectedSwitchPresentMode = false;
+		functions.nextPresentResult = VK_SUCCESS;
+		int[] results = { -1, -1, -1 };
+		SwapchainManager.presentAll(managers, new AcquiredImage[] { image1, image2, null }, 2, results);
+		assertEquals(1, functions.batchedPresentCount);
+		assertArrayEquals(new int[] { VK_SUCCESS, VK_SUCCESS, -1 }, results);
+
+		// Both images were presented, so their AcquiredImages should be reused
+		functions.expectedSwapchain = 12L;
+		functions.expectedAcquireSemaphore = 5L;
+		assertSame(image1, managers[0].acquire(VK_PRESENT_MODE_FIFO_KHR, false));
+		managers[0].present(image1);
+
+		functions.expectedSwapchain = 13L;
+		functions.expectedAcquireSemaphore = 6L;
+		assertSame(image2, managers[1].acquire(VK_PRESENT_MODE_FIFO_KHR, false));
+		managers[1].present(image2);
+		assertEquals(1, functions.batchedPresentCount);
+
+		for (var manager : managers) manager.destroy();
+		assertEquals(createSet(), functions.borrowedSemaphores);
+		assertEquals(createList(12L, 13L), functions.destroyedSwapchains);
+	}
+
+	@Test
+	public void testPresentWait() throws InterruptedException {
+		var presentModes = new PresentModes(createSet(VK_PRESENT_MODE_FIFO_KHR), createSet(VK_PRESENT_MODE_FIFO_KHR));
+		var properties = new WindowProperties(
+				1234L, "TestTitle", 12345L, 2, VK_FORMAT_R8G8B8A8_UNORM,
+				VK_COLOR_SPACE_SRGB_NONLINEAR_KHR, VK_IMAGE_USAGE_TRANSFER_DST_BIT,
+				VK_COMPOSITE_ALPHA_INHERIT_BIT_KHR, false, 0, 2,
+				123L
+		);
+
+		var functions = new DummySwapchainFunctions();
+		functions.capabilities = VkSurfaceCapabilitiesKHR.create();
+		functions.properties = properties;
+		functions.numSwapchainImages = 3;
+		functions.presentWait = true;
+		functions.capabilities.currentExtent().set(600, 200);
+
+		var swapchains = new SwapchainManager(functions, properties, presentModes);
+		functions.expectedSwapchain = 12L;
+		functions.expectedAcquireFence = null;
+		functions.nextAcquireResult = VK_SUCCESS;
+		functions.expectedSwitchPresentMode = false;
+		functions.nextPresentResult = VK_SUCCESS;
+
+		assertEquals(0L, swapchains.getLastPresentId());
+		assertThrows(IllegalArgumentException.class, () -> swapchains.waitForPresent(1L, 0L));
+
+		for (int frame = 0; frame < 3; frame++) {
+			functions.nextImageIndex = frame;
+			functions.expectedAcquireSemaphore = 1L + 2L * frame;
+			swapchains.present(swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, false));
+		}
+		assertEquals(createList(1L, 2L, 3L), functions.presentIds);
+		assertEquals(3L, swapchains.getLastPresentId());
+		assertThrows(IllegalArgumentException.class, () -> swapchains.waitForPresent(4L, 0L));
+		assertThrows(IllegalArgumentException.class, () -> swapchains.waitForPresent(0L, 0L));
+
+		functions.expectedWaitSwapchain = 12L;
+		functions.expectedWaitPresentId = 2L;
+		functions.nextPresentWaitResult = VK_SUCCESS;
+		assertTrue(swapchains.waitForPresent(2L, 1000L));
+		functions.nextPresentWaitResult = VK_TIMEOUT;
+		assertFalse(swapchains.waitForPresent(2L, 1000L));
+		functions.nextPresentWaitResult = VK_ERROR_OUT_OF_DATE_KHR;
+		assertTrue(swapchains.waitForPresent(2L, 1000L));
+		assertEquals(3, functions.presentWaitCount);
+
+		// The present IDs must keep increasing when the swapchain is recreated
+		functions.capabilities.currentExtent().set(606, 202);
+		functions.expectedSwapchain = 13L;
+		functions.expectedOldSwapchain = 12L;
+		functions.expectedAcquireSemaphore = 1L;
+		functions.nextImageIndex = 0;
+		Thread.sleep(6); // Note that the size tracker has a rate-limit of once every 5 milliseconds
+		var image = swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, false);
+		assertEquals(13L, image.swapchain.vkSwapchain);
+
+		// Presentations to the old swapchain are considered to be displayed, since they can't be awaited
+		assertTrue(swapchains.waitForPresent(3L, 1000L));
+		assertEquals(3, functions.presentWaitCount);
+
+		swapchains.present(image);
+		assertEquals(createList(1L, 2L, 3L, 4L), functions.presentIds);
+		assertEquals(4L, swapchains.getLastPresentId());
+
+		functions.expectedWaitSwapchain = 13L;
+		functions.expectedWaitPresentId = 4L;
+		functions.nextPresentWaitResult = VK_SUCCESS;
+		assertTrue(swapchains.waitForPresent(4L, 1000L));
+		assertEquals(4, functions.presentWaitCount);
+
+		swapchains.destroy();
+	}
+
+	@Test
+	public void testNoPresentIdsWithoutPresentWait() {
+		var presentModes = new PresentModes(createSet(VK_PRESENT_MODE_FIFO_KHR), createSet(VK_PRESENT_MODE_FIFO_KHR));
+		var properties = new WindowProperties(
+				1234L, "TestTitle", 12345L, 2, VK_FORMAT_R8G8B8A8_UNORM,
+				VK_COLOR_SPACE_SRGB_NONLINEAR_KHR, VK_IMAGE_USAGE_TRANSFER_DST_BIT,
+				VK_COMPOSITE_ALPHA_INHERIT_BIT_KHR, false, 0, 2,
+				123L
+		);
+
+		var functions = new DummySwapchainFunctions();
+		functions.capabilities = VkSurfaceCapabilitiesKHR.create();
+		functions.properties = properties;
+		functions.numSwapchainImages = 3;
+		functions.capabilities.currentExtent().set(600, 200);
+
+		var swapchains = new SwapchainManager(functions, properties, presentModes);
+		functions.expectedSwapchain = 12L;
+		functions.expectedAcquireFence = null;
+		functions.expectedAcquireSemaphore = 1L;
+		functions.nextAcquireResult = VK_SUCCESS;
+		functions.expectedSwitchPresentMode = false;
+		functions.nextPresentResult = VK_SUCCESS;
+
+		var image = swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, false);
+		swapchains.present(image);
+		assertEquals(0L, image.presentId);
+		assertEquals(0L, swapchains.getLastPresentId());
+		assertEquals(createList(), functions.presentIds);
+		swapchains.destroy();
+	}
+
+	@Test
+	public void testAcquireAndPresentDoNotAllocateMemory() {
+		var presentModes = new PresentModes(createSet(VK_PRESENT_MODE_FIFO_KHR), createSet(VK_PRESENT_MODE_FIFO_KHR));
+		var properties = new WindowProperties(
+				1234L, "TestTitle", 12345L, 2, VK_FORMAT_R8G8B8A8_UNORM,
+				VK_COLOR_SPACE_SRGB_NONLINEAR_KHR, VK_IMAGE_USAGE_TRANSFER_DST_BIT,
+				VK_COMPOSITE_ALPHA_INHERIT_BIT_KHR, false, 0, 2,
+				123L
+		);
+
+		var functions = new DummySwapchainFunctions();
+		functions.capabilities = VkSurfaceCapabilitiesKHR.create();
+		functions.properties = properties;
+		functions.numSwapchainImages = 3;
+		functions.capabilities.currentExtent().set(600, 200);
+
+		var swapchains = new SwapchainManager(functions, properties, presentModes);
+		functions.expectedSwapchain = 12L;
+		functions.expectedAcquireFence = null;
+		functions.nextAcquireResult = VK_SUCCESS;
+		functions.expectedSwitchPresentMode = false;
+		functions.nextPresentResult = VK_SUCCESS;
+
+		var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assertTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		long allocatedBytes = threads.getCurrentThreadAllocatedBytes();
+		for (int frame = 0; frame < 2000; frame++) {
+			// Start measuring after all swapchain images, semaphores, and AcquiredImages have been created
+			if (frame == 1000) allocatedBytes = threads.getCurrentThreadAllocatedBytes();
+
+			// Each acquire borrows an acquire semaphore, and the first acquire of each image borrows a present
+			// semaphore. Since maxFramesInFlight is 2, there are 3 acquire semaphores: 1, 3, and 5.
+			functions.nextImageIndex = frame % 3;
+			functions.expectedAcquireSemaphore = 1L + 2L * (frame % 3);
+
+			var image = swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, false);
+			swapchains.present(image);
+		}
+		allocatedBytes = threads.getCurrentThreadAllocatedBytes() - allocatedBytes;
+
+		assertEquals(0L, allocatedBytes);
+		assertEquals(13L, functions.nextSwapchain);
+		swapchains.destroy();
+	}
+
+	@Test
+	public void testMetrics() throws InterruptedException {
+		var presentModes = new PresentModes(createSet(VK_PRESENT_MODE_FIFO_KHR), createSet(VK_PRESENT_MODE_FIFO_KHR));
+		var properties = new WindowProperties(
+				1234L, "TestTitle", 12345L, 2, VK_FORMAT_R8G8B8A8_UNORM,
+				VK_COLOR_SPACE_SRGB_NONLINEAR_KHR, VK_IMAGE_USAGE_TRANSFER_DST_BIT,
+				VK_COMPOSITE_ALPHA_INHERIT_BIT_KHR, false, 0, 2,
+				123L
+		);
+
+		var functions = new DummySwapchainFunctions();
+		functions.capabilities = VkSurfaceCapabilitiesKHR.create();
+		functions.properties = properties;
+		functions.numSwapchainImages = 3;
+
+		var swapchains = new SwapchainManager(functions, properties, presentModes);
+		var metrics = new SwapchainMetrics();
+		swapchains.metrics = metrics;
+
+		functions.expectedSwapchain = 12L;
+		functions.expectedAcquireSemaphore = 1L;
+		functions.expectedAcquireFence = null;
+		functions.nextImageIndex = 1;
+		functions.nextAcquireResult = VK_SUCCESS;
+		functions.capabilities.currentExtent().set(600, 200);
+
+		var image1 = swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, false);
+		assertEquals(1, metrics.getAcquireCount());
+		assertEquals(1, metrics.getRecreationCount());
+		assertEquals(0, metrics.getMaxOldSwapchains());
+
+		functions.expectedSwitchPresentMode = false;
+		functions.nextPresentResult = VK_SUCCESS;
+		swapchains.present(image1);
+		assertEquals(1, metrics.getPresentCount());
+
+		// Change swapchain extent to trigger a recreation, which needs vkDeviceWaitIdle since maxOldSwapchains is 0
+		functions.capabilities.currentExtent().set(606, 202);
+		functions.expectedSwapchain = 13L;
+		functions.expectedAcquireSemaphore = 3L;
+		functions.expectedOldSwapchain = 12L;
+		functions.nextImageIndex = 2;
+		Thread.sleep(6); // Note that the size tracker has a rate-limit of once every 5 milliseconds
+		var image2 = swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, false);
+		swapchains.present(image2);
+
+		assertEquals(2, metrics.getAcquireCount());
+		assertEquals(2, metrics.getPresentCount());
+		assertEquals(2, metrics.getRecreationCount());
+		assertEquals(1, metrics.getDeviceWaitIdleCount());
+		assertEquals(2, metrics.oldSwapchains.getCount());
+		assertTrue(metrics.getRecreationMaxNanos() > 0);
+
+		// Detached metrics should no longer be updated
+		swapchains.metrics = null;
+		functions.expectedAcquireSemaphore = 5L;
+		functions.nextImageIndex = 0;
+		swapchains.present(swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, false));
+		assertEquals(2, metrics.getAcquireCount());
+		assertEquals(2, metrics.getPresentCount());
+
+		metrics.reset();
+		assertEquals(0, metrics.getRecreationCount());
+		assertEquals(0, metrics.getDeviceWaitIdleCount());
+	}
+
+	@Test
+	public void testCoalescedResize() throws InterruptedException {
+		var presentModes = new PresentModes(createSet(VK_PRESENT_MODE_FIFO_KHR), createSet(VK_PRESENT_MODE_FIFO_KHR));
+		var properties = new WindowProperties(
+				1234L, "TestTitle", 12345L, 0, VK_FORMAT_R8G8B8A8_UNORM,
+				VK_COLOR_SPACE_SRGB_NONLINEAR_KHR, VK_IMAGE_USAGE_TRANSFER_DST_BIT,
+				VK_COMPOSITE_ALPHA_INHERIT_BIT_KHR, false, 0, 2,
+				123L, 3600_000_000_000L
+		);
+
+		var functions = new DummySwapchainFunctions();
+		functions.capabilities = VkSurfaceCapabilitiesKHR.create();
+		functions.properties = properties;
+		functions.numSwapchainImages = 3;
+
+		// Use a synchronous 'helper' to make this test deterministic
+		var associations = new DummyAssociations(Runnable::run);
+		var swapchains = new SwapchainManager(functions, properties, presentModes);
+
+		functions.expectedSwapchain = 12L;
+		functions.expectedAcquireSemaphore = 1L;
+		functions.expectedAcquireFence = null;
+		functions.nextImageIndex = 1;
+		functions.nextAcquireResult = VK_SUCCESS;
+		functions.capabilities.currentExtent().set(600, 200);
+
+		var image1 = swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, false);
+		var associatedSwapchain1 = associations.getSwapchainAssociation(image1);
+		assertEquals(1, associations.createdSwapchains);
+
+		functions.expectedSwitchPresentMode = false;
+		functions.nextPresentResult = VK_SUCCESS;
+		swapchains.present(image1);
+
+		// The window is resized, but the recreation should be postponed, since the previous recreation was recent
+		functions.capabilities.currentExtent().set(606, 202);
+		functions.expectedAcquireSemaphore = 3L;
+		functions.nextImageIndex = 2;
+		Thread.sleep(6); // Note that the size tracker has a rate-limit of once every 5 milliseconds
+		var image2 = swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, false);
+		assertEquals(13L, functions.nextSwapchain);
+		assertEquals(12L, image2.swapchain.vkSwapchain);
+		assertEquals(600, image2.getWidth());
+		assertEquals(200, image2.getHeight());
+		assertSame(associatedSwapchain1, associations.getSwapchainAssociation(image2));
+
+		// The swapchain resources for the new size should have been prepared ahead of time
+		assertEquals(2, associations.createdSwapchains);
+
+		// When the swapchain becomes out of date, it must be recreated immediately
+		functions.nextPresentResult = VK_ERROR_OUT_OF_DATE_KHR;
+		swapchains.present(image2);
+
+		functions.expectedSwapchain = 13L;
+		functions.expectedOldSwapchain = 12L;
+		functions.expectedAcquireSemaphore = 5L;
+		functions.nextImageIndex = 0;
+		var image3 = swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, false);
+		assertEquals(14L, functions.nextSwapchain);
+		assertEquals(13L, image3.swapchain.vkSwapchain);
+		assertEquals(606, image3.getWidth());
+		assertEquals(202, image3.getHeight());
+		assertEquals(1, functions.deviceWaitIdleCount);
+		assertEquals(createList(12L), functions.destroyedSwapchains);
+
+		// The prepared resources should be used, and the old resources should be destroyed rather than recycled
+		var associatedSwapchain3 = associations.getSwapchainAssociation(image3);
+		assertEquals(2, associations.createdSwapchains);
+		assertEquals(606, associatedSwapchain3.width);
+		assertEquals(202, associatedSwapchain3.height);
+		assertTrue(associatedSwapchain1.wasDestroyed);
+		assertFalse(associatedSwapchain1.wasRecycled);
+
+		functions.nextPresentResult = VK_SUCCESS;
+		swapchains.present(image3);
+		swapchains.destroy();
+		assertTrue(associatedSwapchain3.wasDestroyed);
+	}
+
+	@Test
+	public void testAcquireCapacityAndDiscardImage() {
+		var presentModes = new PresentModes(createSet(VK_PRESENT_MODE_FIFO_KHR), createSet(VK_PRESENT_MODE_FIFO_KHR));
+		var properties = new WindowProperties(
+				1234L, "TestTitle", 12345L, 2, VK_FORMAT_R8G8B8A8_UNORM,
+				VK_COLOR_SPACE_SRGB_NONLINEAR_KHR, VK_IMAGE_USAGE_TRANSFER_DST_BIT,
+				VK_COMPOSITE_ALPHA_INHERIT_BIT_KHR, false, 0, 2,
+				123L
+		);
+
+		var functions = new DummySwapchainFunctions();
+		functions.capabilities = VkSurfaceCapabilitiesKHR.create();
+		functions.capabilities.minImageCount(2);
+		functions.properties = properties;
+		functions.numSwapchainImages = 3;
+
+		var swapchains = new SwapchainManager(functions, properties, presentModes);
+		int[] recreationCount = { 0 };
+		swapchains.beforeRecreation = () -> recreationCount[0] += 1;
+
+		// Without a swapchain, nothing can be acquired
+		assertEquals(0, swapchains.getAcquireCapacity());
+
+		functions.expectedSwapchain = 12L;
+		functions.expectedAcquireSemaphore = 1L;
+		functions.expectedAcquireFence = null;
+		functions.nextImageIndex = 1;
+		functions.nextAcquireResult = VK_SUCCESS;
+		functions.capabilities.currentExtent().set(600, 200);
+
+		var image = swapchains.acquire(VK_PRESENT_MODE_FIFO_KHR, false);
+		assertEquals(1, recreationCount[0]);
+
+		// There are 3 swapchain images, and the surface needs 2 of them
+		assertEquals(1, swapchains.getAcquireCapacity());
+
+		// When the image won't be presented, its present semaphore must be unsignaled
+		assertEquals(createList(), functions.unsignaledSemaphores);
+		image.swapchain.discardImage(image);
+		assertEquals(createList(image.getPresentSemaphore()), functions.unsignaledSemaphores);
+
+		swapchains.destroy();
+		assertEquals(createSet(), functions.borrowedSemaphores);
+	}
 }